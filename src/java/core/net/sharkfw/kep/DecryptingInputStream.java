@@ -1,32 +1,66 @@
 package net.sharkfw.kep;
 
+import java.io.EOFException;
 import java.io.IOException;
 import java.io.InputStream;
+import java.security.GeneralSecurityException;
 import java.security.Key;
+import javax.crypto.AEADBadTagException;
 import javax.crypto.Cipher;
+import javax.crypto.spec.GCMParameterSpec;
 import net.sharkfw.system.L;
 
 /**
+ * Decrypts a KEP message. Framing must be the one used by the sender.
  *
+ * @see EncryptingOutputStream
  * @author thsc
  */
 public class DecryptingInputStream extends InputStream {
     private final InputStream is;
     private final Key key;
+    private final int framing;
     private Cipher cipher;
     private int blocksize;
     private byte[] block;
     private int counter = 0;
-    
+
+    // number of decrypted bytes in block
+    private int limit = 0;
+
+    // CHUNKS only
+    private byte[] frame;
+    private byte[] nonce;
+    private int frameNumber = 0;
+    private boolean lastFrameRead = false;
+
     public DecryptingInputStream(InputStream is, Key key) {
+        this(is, key, EncryptingOutputStream.BLOCKS);
+    }
+
+    /**
+     * @param is stream with encrypted data
+     * @param key AES session key
+     * @param framing EncryptingOutputStream.BLOCKS or CHUNKS
+     */
+    public DecryptingInputStream(InputStream is, Key key, int framing) {
         this.is = is;
         this.key = key;
-        
+        this.framing = framing;
+
         try {
-            this.cipher = Cipher.getInstance("AES");
-//            this.cipher.init(Cipher.DECRYPT_MODE, this.key);
-            
-            this.blocksize = this.cipher.getBlockSize();
+            if(framing == EncryptingOutputStream.CHUNKS) {
+                this.cipher = Cipher.getInstance("AES/GCM/NoPadding");
+                this.block = new byte[EncryptingOutputStream.CHUNK_SIZE];
+                this.frame = new byte[EncryptingOutputStream.CHUNK_SIZE
+                        + EncryptingOutputStream.TAG_BITS / 8];
+            } else {
+                this.cipher = Cipher.getInstance("AES");
+                // ECB: doFinal resets cipher - init once
+                this.cipher.init(Cipher.DECRYPT_MODE, this.key);
+                this.blocksize = this.cipher.getBlockSize();
+                this.frame = new byte[2 * this.blocksize];
+            }
         } catch (Exception ex) {
             L.e(ex.getMessage(), this);
         }
@@ -34,53 +68,122 @@ public class DecryptingInputStream extends InputStream {
 
     @Override
     public int read() throws IOException {
-        
         // refill block?
-        if(this.block == null || this.counter == this.blocksize) {
-            this.refillBlock();
+        if(this.counter == this.limit) {
+            if(!this.refillBlock()) {
+                return -1;
+            }
         }
-        
-        byte b = this.block[this.counter];
-        int retVal = b;
-//        System.out.print("r(" + this.counter + ")" + retVal + ",");
-//        if(this.counter == 15) {
-//            System.out.print("\n");
-//        };
-        
-        this.counter++;
-
-//        System.out.println("\n>>>>>>>>>>>>>>> return from read with " + retVal);
-        return retVal;
+
+        return this.block[this.counter++] & 0xff;
     }
-    
-    private void refillBlock() {
+
+    @Override
+    public int read(byte[] b, int off, int len) throws IOException {
+        if(len == 0) {
+            return 0;
+        }
+
+        if(this.counter == this.limit) {
+            if(!this.refillBlock()) {
+                return -1;
+            }
+        }
+
+        int copy = Math.min(len, this.limit - this.counter);
+        System.arraycopy(this.block, this.counter, b, off, copy);
+        this.counter += copy;
+
+        return copy;
+    }
+
+    @Override
+    public int available() {
+        return this.limit - this.counter;
+    }
+
+    /**
+     * @return false if message has ended
+     */
+    private boolean refillBlock() throws IOException {
+        if(this.framing == EncryptingOutputStream.CHUNKS) {
+            return this.readFrame();
+        }
+
+        try {
+            // first: read block length from stream
+            int length = this.is.read();
+            if(length < 0) {
+                return false;
+            }
+
+            byte[] encodedBlock = length <= this.frame.length ? this.frame : new byte[length];
+            this.readFully(encodedBlock, length);
+
+            // decode
+            this.block = this.cipher.doFinal(encodedBlock, 0, length);
+            this.counter = 0;
+            this.limit = this.block.length;
+        } catch (GeneralSecurityException ex) {
+            L.d(ex.getMessage(), this);
+            throw new IOException("cannot decrypt: " + ex.getMessage());
+        }
+
+        return true;
+    }
+
+    private boolean readFrame() throws IOException {
+        do {
+            if(this.lastFrameRead) {
+                return false;
+            }
+
+            if(this.nonce == null) {
+                this.nonce = new byte[EncryptingOutputStream.NONCE_LENGTH];
+                this.readFully(this.nonce, EncryptingOutputStream.NONCE_PREFIX_LENGTH);
+            }
+
+            byte[] header = new byte[EncryptingOutputStream.FRAME_HEADER_LENGTH];
+            this.readFully(header, header.length);
+            int h = ((header[0] & 0xff) << 24) | ((header[1] & 0xff) << 16)
+                    | ((header[2] & 0xff) << 8) | (header[3] & 0xff);
+
+            boolean last = (h & EncryptingOutputStream.LAST_FRAME) != 0;
+            int length = h & ~EncryptingOutputStream.LAST_FRAME;
+            if(length > this.frame.length) {
+                throw new IOException("encrypted frame too long: " + length);
+            }
+
+            this.readFully(this.frame, length);
+
             try {
-                // first: read block length from stream
-                int length = this.is.read();
-                byte[] encodedBlock = new byte[length];
-                
-//                System.err.println(">>>>>>>>>>>>>> going to received encode block with size: " + length);
-                this.is.read(encodedBlock);
-//                System.out.println(">>>>>>>>>>>>>> received encode block with size: " + encodedBlock.length);
-//                for(int i = 0; i < length; i++) {
-//                    System.out.print("de[" + i + "]" + encodedBlock[i] + ",");
-//                }
-//                System.out.print("\n");
-
-                // decode
-                this.cipher.init(Cipher.DECRYPT_MODE, this.key);
-                this.block = this.cipher.doFinal(encodedBlock);
+                EncryptingOutputStream.setFrameNumber(this.nonce, this.frameNumber++);
+                this.cipher.init(Cipher.DECRYPT_MODE, this.key,
+                        new GCMParameterSpec(EncryptingOutputStream.TAG_BITS, this.nonce));
+                this.cipher.updateAAD(new byte[] {(byte) (last ? 1 : 0)});
+
+                this.limit = this.cipher.doFinal(this.frame, 0, length, this.block, 0);
                 this.counter = 0;
-            } catch (Exception ex) {
-                L.d(ex.getMessage(), this);
-                ex.printStackTrace();
-                System.err.println(ex.getLocalizedMessage());
+            } catch (AEADBadTagException ex) {
+                throw new IOException("encrypted message was modified");
+            } catch (GeneralSecurityException ex) {
+                throw new IOException("cannot decrypt: " + ex.getMessage());
             }
-            
-//            System.out.println(">>>>>>>>>>>>>>>>>>>>>>>>>>>>> decrypted following block with size: " + block.length);
-//            for(int i = 0; i < block.length; i++) {
-//                System.out.print("d[" + i + "]" + block[i] + ",");
-//            }
-//            System.out.print("\n");
+
+            this.lastFrameRead = last;
+        } while(this.limit == 0);
+
+        return true;
+    }
+
+    private void readFully(byte[] b, int len) throws IOException {
+        int n = 0;
+        while(n < len) {
+            int read = this.is.read(b, n, len - n);
+            if(read < 0) {
+                throw new EOFException("encrypted message ended unexpectedly");
+            }
+            n += read;
+        }
     }
 }
@@ -2,28 +2,84 @@ package net.sharkfw.kep;
 
 import java.io.IOException;
 import java.io.OutputStream;
+import java.security.GeneralSecurityException;
 import java.security.Key;
+import java.security.SecureRandom;
+import java.util.Arrays;
 import javax.crypto.Cipher;
+import javax.crypto.spec.GCMParameterSpec;
 import net.sharkfw.system.L;
 
 /**
+ * Encrypts a KEP message with the AES session key. Two framings exist:
  *
+ * <ul>
+ * <li>BLOCKS: each AES block is encrypted on its own and sent with
+ * a single length byte. Understood by all peers.</li>
+ * <li>CHUNKS: data are encrypted in chunks of up to 16 KB with AES/GCM.
+ * A random nonce prefix is sent first. Each frame is prefixed with
+ * its length as int, the highest bit marks the last frame of the message.
+ * Understood by peers announcing KEP 1.2 or later.</li>
+ * </ul>
+ *
+ * @see DecryptingInputStream
+ * @see KEPMessage#chunkedEncryptionSupported(java.lang.String)
  * @author thsc
  */
 public class EncryptingOutputStream extends OutputStream {
+    /** framing of KEP 1.1 */
+    public static final int BLOCKS = 0;
+    /** framing of KEP 1.2 */
+    public static final int CHUNKS = 1;
+
+    static final int CHUNK_SIZE = 16 * 1024;
+    static final int NONCE_PREFIX_LENGTH = 8;
+    static final int NONCE_LENGTH = 12;
+    static final int TAG_BITS = 128;
+    static final int FRAME_HEADER_LENGTH = 4;
+    static final int LAST_FRAME = 0x80000000;
+
     private final OutputStream os;
     private Cipher cipher;
     private final Key key;
-    private int blocksize; 
+    private final int framing;
+    private int blocksize;
     private byte[] block;
-    
+
+    // CHUNKS only
+    private byte[] frame;
+    private byte[] nonce;
+    private int frameNumber = 0;
+
     public EncryptingOutputStream(OutputStream os, Key key) {
+        this(os, key, BLOCKS);
+    }
+
+    /**
+     * @param os stream encrypted data are written to
+     * @param key AES session key
+     * @param framing BLOCKS or CHUNKS
+     */
+    public EncryptingOutputStream(OutputStream os, Key key, int framing) {
         this.os = os;
         this.key = key;
+        this.framing = framing;
         try {
-            this.cipher = Cipher.getInstance("AES");
-//            this.cipher.init(Cipher.ENCRYPT_MODE, key);
-            this.blocksize = cipher.getBlockSize();
+            if(framing == CHUNKS) {
+                this.cipher = Cipher.getInstance("AES/GCM/NoPadding");
+                this.blocksize = CHUNK_SIZE;
+                this.frame = new byte[FRAME_HEADER_LENGTH + CHUNK_SIZE + TAG_BITS / 8];
+
+                this.nonce = new byte[NONCE_LENGTH];
+                byte[] prefix = new byte[NONCE_PREFIX_LENGTH];
+                new SecureRandom().nextBytes(prefix);
+                System.arraycopy(prefix, 0, this.nonce, 0, NONCE_PREFIX_LENGTH);
+            } else {
+                this.cipher = Cipher.getInstance("AES");
+                // ECB: doFinal resets cipher - init once
+                this.cipher.init(Cipher.ENCRYPT_MODE, key);
+                this.blocksize = cipher.getBlockSize();
+            }
             this.block = new byte[this.blocksize];
         } catch (Exception ex) {
             L.d(ex.getMessage(), this);
@@ -31,67 +87,97 @@ public class EncryptingOutputStream extends OutputStream {
     }
 
     private int counter = 0;
-    
+
     @Override
     public void write(int i) throws IOException {
-//        System.out.print("w(" + this.counter + ")" + i + ",");
-//        if(this.counter == 15) {
-//            System.out.print("\n");
-//        };
-        
-//        if(i == -1) {
-//            // final
-//            this.flush();
-//        }
-        
-        if(counter < this.blocksize) {
-            this.block[counter++] = (byte)i;
-        } else {
-            this.finishAndSendBlock();
-            this.write(i);
+        // a full block is sent when more data arrive - last one with doFinal
+        if(counter == this.blocksize) {
+            this.finishAndSendBlock(false);
+        }
+
+        this.block[counter++] = (byte)i;
+    }
+
+    @Override
+    public void write(byte[] b, int off, int len) throws IOException {
+        while(len > 0) {
+            if(counter == this.blocksize) {
+                this.finishAndSendBlock(false);
+            }
+
+            int copy = Math.min(len, this.blocksize - this.counter);
+            System.arraycopy(b, off, this.block, this.counter, copy);
+            this.counter += copy;
+            off += copy;
+            len -= copy;
         }
     }
-    
-    private void finishAndSendBlock() {
-//        System.out.print("send block");
+
+    private void finishAndSendBlock(boolean last) throws IOException {
+        if(this.framing == CHUNKS) {
+            this.sendFrame(last);
+            return;
+        }
 
         try {
-            // encrypt
-//            System.out.println(">>>>>>>>>>>>>>>>>>>>>>>>>>>>> going to encrypt following block with size: " + block.length);
-//                for(int i = 0; i < block.length; i++) {
-//                    System.out.print("e[" + i + "]" + block[i] + ",");
-//                }
-//                System.out.print("\n");
-            this.cipher.init(Cipher.ENCRYPT_MODE, key);
             byte[] encryptedBlock = this.cipher.doFinal(this.block);
-            
-//            System.err.println(">>>>>>>>>>>>>>>>>>>>>>>>>>>> going to send encrypted block with size: " + encryptedBlock.length);
+
             // send block length
             this.os.write(encryptedBlock.length);
             this.os.write(encryptedBlock);
-//            System.out.println(">>>>>>>>>>>>>>>>>>>>>>>>>>>>> sent encrypted block with size: " + encryptedBlock.length);
-//                for(int i = 0; i < encryptedBlock.length; i++) {
-//                    System.out.print("ee[" + i + "]" + encryptedBlock[i] + ",");
-//                }
-//                System.out.print("\n");
-            
-//            L.printByte(encryptedBlock, "encrypted Block");
-
         } catch (Exception ex) {
             L.d(ex.getMessage(), this);
         }
 
-        this.block = new byte[this.blocksize];
+        // padding of last block
+        Arrays.fill(this.block, (byte)0);
         this.counter = 0;
     }
-    
+
+    private void sendFrame(boolean last) throws IOException {
+        if(this.frameNumber == 0) {
+            this.os.write(this.nonce, 0, NONCE_PREFIX_LENGTH);
+        }
+
+        try {
+            EncryptingOutputStream.setFrameNumber(this.nonce, this.frameNumber++);
+            this.cipher.init(Cipher.ENCRYPT_MODE, this.key,
+                    new GCMParameterSpec(TAG_BITS, this.nonce));
+
+            // last frame flag is authenticated - messages cannot be truncated
+            this.cipher.updateAAD(new byte[] {(byte) (last ? 1 : 0)});
+
+            int length = this.cipher.doFinal(this.block, 0, this.counter,
+                    this.frame, FRAME_HEADER_LENGTH);
+
+            int header = last ? length | LAST_FRAME : length;
+            this.frame[0] = (byte) (header >>> 24);
+            this.frame[1] = (byte) (header >>> 16);
+            this.frame[2] = (byte) (header >>> 8);
+            this.frame[3] = (byte) header;
+
+            this.os.write(this.frame, 0, FRAME_HEADER_LENGTH + length);
+        } catch (GeneralSecurityException ex) {
+            throw new IOException("cannot encrypt: " + ex.getMessage());
+        }
+
+        this.counter = 0;
+    }
+
+    static void setFrameNumber(byte[] nonce, int frameNumber) {
+        nonce[NONCE_PREFIX_LENGTH] = (byte) (frameNumber >>> 24);
+        nonce[NONCE_PREFIX_LENGTH + 1] = (byte) (frameNumber >>> 16);
+        nonce[NONCE_PREFIX_LENGTH + 2] = (byte) (frameNumber >>> 8);
+        nonce[NONCE_PREFIX_LENGTH + 3] = (byte) frameNumber;
+    }
+
     @Override
     public void flush() throws IOException {
         this.os.flush();
     }
 
     void doFinal() throws IOException {
-        this.finishAndSendBlock();
+        this.finishAndSendBlock(true);
         this.flush();
     }
 }
@@ -1,5 +1,6 @@
 package net.sharkfw.kep;
 
+import java.io.IOException;
 import java.util.Enumeration;
 import net.sharkfw.knowledgeBase.PeerSemanticTag;
 import net.sharkfw.protocols.StreamConnection;
@@ -52,6 +53,26 @@ public interface KEPConnectionPool {
    */
   public StreamConnection getConnectionByAddress(String address);
 
+  /**
+   * Connections taken from the pool are leased by the caller. They are
+   * handed out again after being released.
+   *
+   * @param con The <code>StreamConnection</code> which isn't used by caller any longer.
+   */
+  public void releaseConnection(StreamConnection con);
+
+  /**
+   * Leases a connection which is already known to the caller, e.g. the
+   * connection a reply is written into. Waits while another sender
+   * leases it.
+   *
+   * @param con The <code>StreamConnection</code> to write into.
+   * @return true if connection is pooled and now leased by caller - it must
+   * be released after sending. false if connection isn't pooled.
+   * @throws IOException if connection isn't released in time
+   */
+  public boolean leaseConnection(StreamConnection con) throws IOException;
+
   /**
    * Remove a certain <code>StreamConnection</code> from the pool.
    * This method is called by <code>KEPSession</code> when it closes down
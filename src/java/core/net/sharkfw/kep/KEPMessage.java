@@ -1,5 +1,6 @@
 package net.sharkfw.kep;
 
+import net.sharkfw.kep.format.BinarySerializer;
 import net.sharkfw.kep.format.XMLSerializer;
 import net.sharkfw.system.SharkNotSupportedException;
 
@@ -48,9 +49,11 @@ public abstract class KEPMessage {
     public static final int MAXMSGLEN = 5000;
     //public static final int VERSIONLEN = 20;
     /**
-     * The current KEP version.
+     * The current KEP version. Peers sending version 1.1 or later understand
+     * the binary knowledge format. Peers sending version 1.2 or later 
+     * understand chunked encryption.
      */
-    public static final String THISVERSION = "KEP 1.0 ";
+    public static final String THISVERSION = "KEP 1.2 ";
     /**
      * RDF based format
      */
@@ -59,15 +62,68 @@ public abstract class KEPMessage {
      * Generic XML-based format
      */
     public static final int XML = 2;
+    /**
+     * Compact binary format. Only sent to peers which announced KEP 1.1 or later.
+     * 
+     * @see net.sharkfw.kep.format.BinarySerializer
+     */
+    public static final int BINARY = 3;
     /**
      * The maximum number of supported protocols
      */
-    public static final int MAXNUMBER = 2;
+    public static final int MAXNUMBER = 3;
+    /**
+     * Prefix of session key length in header of messages encrypted with 
+     * chunked framing. Only sent to peers which announced KEP 1.2 or later.
+     */
+    public static final String CHUNKED_ENCRYPTION_MARKER = "c";
     /**
      * Encoding charset
      */
     public static final String ENCODING = "UTF-8";
     private static KnowledgeSerializer xmlSerializer = null;
+    private static KnowledgeSerializer binarySerializer = null;
+
+    /**
+     * Returns whether or not a peer sending this KEP version can parse
+     * the binary format. Older peers ignore the version but would fail
+     * on an unknown format.
+     *
+     * @param version version string as found in a message header
+     * @return <code>true</code> if version is 1.1 or later
+     */
+    public static boolean binaryFormatSupported(String version) {
+        return KEPMessage.versionAtLeast(version, 1, 1);
+    }
+
+    /**
+     * Returns whether or not a peer sending this KEP version can decrypt
+     * messages with chunked (AES/GCM) framing.
+     *
+     * @see EncryptingOutputStream#CHUNKS
+     * @param version version string as found in a message header
+     * @return <code>true</code> if version is 1.2 or later
+     */
+    public static boolean chunkedEncryptionSupported(String version) {
+        return KEPMessage.versionAtLeast(version, 1, 2);
+    }
+
+    private static boolean versionAtLeast(String version, int minMajor, int minMinor) {
+        if(version == null || !version.startsWith("KEP ")) {
+            return false;
+        }
+
+        String[] numbers = version.substring(4).trim().split("\\.");
+        try {
+            int major = Integer.parseInt(numbers[0]);
+            int minor = numbers.length > 1 ? Integer.parseInt(numbers[1]) : 0;
+
+            return major > minMajor || (major == minMajor && minor >= minMinor);
+        }
+        catch(NumberFormatException e) {
+            return false;
+        }
+    }
 
     /**
      * Returns an instance of <code>KnowledgeSerializer</code>. If the instance has been called for before it
@@ -84,11 +140,30 @@ public abstract class KEPMessage {
                 KEPMessage.xmlSerializer = new XMLSerializer();
             }
             return xmlSerializer;
+        } else if (format == KEPMessage.BINARY) {
+            if (KEPMessage.binarySerializer == null) {
+                KEPMessage.binarySerializer = new BinarySerializer();
+            }
+            return binarySerializer;
         } else {
             throw new SharkNotSupportedException("unsupported KEP format: " + format);
         }
     }
 
+    /**
+     * Returns the format constant of a serializer. Serializers other than
+     * the binary one are taken as XML.
+     *
+     * @param ks serializer
+     * @return <code>BINARY</code> or <code>XML</code>
+     */
+    public static int getKnowledgeFormat(KnowledgeSerializer ks) {
+        if (ks instanceof BinarySerializer) {
+            return KEPMessage.BINARY;
+        }
+        return KEPMessage.XML;
+    }
+
     /**
      * Returns an instance of the <code>CompactFormatSerializer</code>
      * @return an instance of the <code>CompactFormatSerializer</code>
@@ -19,6 +19,14 @@ public interface KEPMessageAccounting {
    */
   public void setSilentPeriod(int millis);
 
+  /**
+   * Set the number of sent messages remembered for silence checks.
+   * Oldest are forgotten first when the table is full.
+   *
+   * @param maxEntries The number of interests or knowledge objects remembered
+   */
+  public void setSilenceTableSize(int maxEntries);
+
   /**
    * Notify the accounting system of a sent interest.
    *
@@ -14,6 +14,7 @@ import net.sharkfw.protocols.SharkOutputStream;
 import net.sharkfw.protocols.StreamConnection;
 import net.sharkfw.protocols.UTF8SharkOutputStream;
 import net.sharkfw.system.L;
+import net.sharkfw.system.SharkNotSupportedException;
 import net.sharkfw.system.Utils;
 
 /**
@@ -40,6 +41,7 @@ public class KEPOutMessage extends KEPMessage implements KEPEngine {
     private StreamConnection con = null;
 
     private KnowledgeSerializer ks = null;
+    private int kFormat;
 
     private String recipientAddress;
 
@@ -57,6 +59,7 @@ public class KEPOutMessage extends KEPMessage implements KEPEngine {
         this.se = se;
         this.outStub = outStub;
         this.ks = ks;
+        this.kFormat = KEPMessage.getKnowledgeFormat(ks);
         this.recipientAddress = address;
         this.baos = new ByteArrayOutputStream();
         this.os = new UTF8SharkOutputStream(baos);
@@ -75,9 +78,28 @@ public class KEPOutMessage extends KEPMessage implements KEPEngine {
         this.os = this.con.getOutputStream();
 //        L.d("Success.", this);
         this.ks = ks;        
+        this.kFormat = KEPMessage.getKnowledgeFormat(ks);
         this.recipientAddress = con.getReceiverAddressString();
     }
 
+    /**
+     * Set the knowledge format of this message. Serializer is changed
+     * accordingly. Must be called before anything is written.
+     *
+     * @see net.sharkfw.kep.KEPMessage
+     * 
+     * @param format An integer value representing the format to use
+     * @throws SharkNotSupportedException
+     */
+    public void setKnowledgeFormat(int format) throws SharkNotSupportedException {
+        this.ks = KEPMessage.getKnowledgeSerializer(format);
+        this.kFormat = format;
+    }
+
+    public int getKnowledgeFormat() {
+        return this.kFormat;
+    }
+
     private byte[] versionByte = null;
 
     /**
@@ -99,7 +121,9 @@ public class KEPOutMessage extends KEPMessage implements KEPEngine {
                 // append signature
                 byte[] signature = sos.getSignature();
 
-                L.d(L.byteArrayToString(signature, "signature to be sent"), this);
+                if(L.isDebugEnabled()) {
+                    L.d(L.byteArrayToString(signature, "signature to be sent"), this);
+                }
                 
                 // done with signing - hang out digest stream
                 this.os.set(this.underDigestStream);
@@ -210,41 +234,36 @@ public class KEPOutMessage extends KEPMessage implements KEPEngine {
         }
 
         // do we want to encrypt ?
+        byte[] sessionKeyBytes = null;
         if(this.encrypt()) {
-            L.d("create session key", this);
+            L.d("get session key", this);
             // encryption needed - setup session key
             try {
-                // create AES session key
-                KeyGenerator gen = KeyGenerator.getInstance("AES");
+                // chunks: cached per recipient - RSA wrap only if there is no valid key
+                // blocks (ECB) would repeat cipher blocks across messages - fresh key
+                SessionKeyCache.SessionKey sk = this.chunkedEncryption ?
+                        this.getSessionKeyCache().getSendingKey(this.publicKeyRecipient) :
+                        SessionKeyCache.createSendingKey(this.publicKeyRecipient);
                 
-                this.sessionKey = gen.generateKey();
-            } catch (NoSuchAlgorithmException ex) {
-                L.d(ex.getMessage(), this);
+                this.sessionKey = sk.getKey();
+                sessionKeyBytes = sk.getWrappedKey();
+            } catch (GeneralSecurityException ex) {
+                L.e(ex.getMessage(), this);
             }
         } else { // make sure not to encrypt
             this.sessionKey = null;
         }
         
-        String encryptedSessionKey = null;
         // do we encrypt that stuff?
-        if(this.sessionKey != null) {
+        if(sessionKeyBytes != null) {
             try {
-                // encrypt that thing
-                L.d("wrap session key", this);
-                Cipher cipher = Cipher.getInstance("RSA");
-                cipher.init(Cipher.WRAP_MODE, this.publicKeyRecipient);
-                byte[] sessionKeyBytes = cipher.wrap(this.sessionKey);
-                
-//                System.out.println("\n session key bytes len (sent): " + sessionKeyBytes.length);
-                L.printByte(sessionKeyBytes, "wrapped session key bytes (sent)");
-                
-                this.os.write(String.valueOf(sessionKeyBytes.length));
+                String sessionKeyLen = String.valueOf(sessionKeyBytes.length);
+                if(this.chunkedEncryption) {
+                    sessionKeyLen = KEPMessage.CHUNKED_ENCRYPTION_MARKER + sessionKeyLen;
+                }
+                this.os.write(sessionKeyLen);
                 this.os.getOutputStream().write(sessionKeyBytes);
                 
-            } catch (GeneralSecurityException ex) {
-                
-                L.e(ex.getMessage(), this);
-                this.os.write("0");
             } catch(IOException ioe) {
                 // I don't know
             } 
@@ -258,7 +277,9 @@ public class KEPOutMessage extends KEPMessage implements KEPEngine {
         // add encryption stream if necessary
         if (this.encrypt()) {
             L.d("put encryption stream on top of output stream", this);
-            this.encryptingStream = new EncryptingOutputStream(this.os.getOutputStream(), this.sessionKey);
+            this.encryptingStream = new EncryptingOutputStream(this.os.getOutputStream(), 
+                    this.sessionKey, this.chunkedEncryption ? 
+                        EncryptingOutputStream.CHUNKS : EncryptingOutputStream.BLOCKS);
             this.os.set(this.encryptingStream);
         }
 
@@ -279,6 +300,13 @@ public class KEPOutMessage extends KEPMessage implements KEPEngine {
     private DigestOutputStream digestStream = null;
     private OutputStream underDigestStream = null;
         
+    private SessionKeyCache getSessionKeyCache() {
+        KEPStub kepStub = this.se != null ? this.se.getKepStub() : null;
+        
+        // no stub - no caching
+        return kepStub != null ? kepStub.getSessionKeyCache() : new SessionKeyCache();
+    }
+    
     private boolean encrypt() {
         return (this.publicKeyRecipient != null && this.sendingPeerSIString != null);
     }
@@ -302,6 +330,28 @@ public class KEPOutMessage extends KEPMessage implements KEPEngine {
         return this.responseSent;
     }
 
+    /**
+     * @return stream connection this message is written to - null if
+     * message is sent with a message stub
+     */
+    public StreamConnection getStreamConnection() {
+        return this.con;
+    }
+
+    private boolean reusedConnection = false;
+
+    /**
+     * @param reused true if stream connection was taken from connection 
+     * pool - remote peer could have closed it meanwhile.
+     */
+    public void setReusedConnection(boolean reused) {
+        this.reusedConnection = reused;
+    }
+
+    public boolean isReusedConnection() {
+        return this.reusedConnection;
+    }
+
     /**
      * Create an insert command containing the <code>Knowledge</code> passed.
      *
@@ -331,7 +381,9 @@ public class KEPOutMessage extends KEPMessage implements KEPEngine {
           address = this.recipientAddress;
       }
 
-//      k = this.se.removeSentInformation(k, address);
+      if(this.se.getSuppressSentInformation()) {
+          k = this.se.removeSentInformation(k, address);
+      }
       
       if(k == null) {
         // All information have already been sent to the given recipient. Nothing to do.
@@ -351,7 +403,7 @@ public class KEPOutMessage extends KEPMessage implements KEPEngine {
       L.d(">>>>>>>>>>>> send insert", this);        
 //      try {
         // write header
-        this.writeHeader(KEPMessage.KEP_INSERT, this.se.getKnowledgeFormat());
+        this.writeHeader(KEPMessage.KEP_INSERT, this.kFormat);
 //          L.d("Wrote header.", this);
         try {
             this.ks.write(k, os);
@@ -363,10 +415,14 @@ public class KEPOutMessage extends KEPMessage implements KEPEngine {
       // notify we are done with that message
         this.sent();
         L.d(">>>>>>>>>>> insert sent", this);
-        L.d(L.knowledge2String(k.contextPoints()), this);
+        if(L.isDebugEnabled()) {
+            L.d(L.knowledge2String(k.contextPoints()), this);
+        }
 
         // Remember that this knowledge has been sent
-        this.se.setSentInformation(k, address); 
+        if(this.se.getSuppressSentInformation()) {
+            this.se.setSentInformation(k, address);
+        }
 
         // notify message accounting
         this.se.getKepStub().sentKnowledge(k);
@@ -398,7 +454,7 @@ public class KEPOutMessage extends KEPMessage implements KEPEngine {
 //      try {
         // write header
 //        L.d("Writing header ... ", this);
-        this.writeHeader(KEPMessage.KEP_EXPOSE, this.se.getKnowledgeFormat());
+        this.writeHeader(KEPMessage.KEP_EXPOSE, this.kFormat);
 //        L.d("Wrote header", this);
         try {
             this.ks.write(interest, os);
@@ -424,6 +480,18 @@ public class KEPOutMessage extends KEPMessage implements KEPEngine {
       this.responseSent = true;
     }
 
+    private boolean chunkedEncryption = false;
+
+    /**
+     * Encrypt with chunked framing. Must only be set if recipient 
+     * announced KEP 1.2 or later. Must be called before anything is written.
+     * 
+     * @see KEPMessage#chunkedEncryptionSupported(java.lang.String)
+     */
+    public void setChunkedEncryption(boolean chunked) {
+        this.chunkedEncryption = chunked;
+    }
+
     /**
      * @param privateKey must be set if signing or encryption is wanted
      * @param publicKeyRemotePeer if set - message will be encrypted.
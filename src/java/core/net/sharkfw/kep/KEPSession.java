@@ -10,6 +10,7 @@ import net.sharkfw.peer.SharkEngine;
 import net.sharkfw.peer.SharkEngine.SecurityLevel;
 import net.sharkfw.peer.SharkEngine.SecurityReplyPolicy;
 import net.sharkfw.pki.SharkPublicKeyStorage;
+import net.sharkfw.protocols.SelectableConnection;
 import net.sharkfw.protocols.StreamConnection;
 import net.sharkfw.system.L;
 import net.sharkfw.system.SharkNotSupportedException;
@@ -18,8 +19,12 @@ import net.sharkfw.system.Streamer;
 
 /**
  * This class handles communications over an established <code>StreamConnection</code>.
+ * Sessions are run by the <code>KEPSessionPool</code> of the stub.
  * Its job is to listen for incoming requests on that connection. If an error occurrs
  * the session will wait and try again. If no more data is sent or more errors occurr the session closes down.
+ * 
+ * A selectable connection isn't watched by the session. It is set idle when
+ * no more data are buffered - its selector hands it over again with next data.
  *
  * @see net.sharkfw.protocols.StreamConnection
  * @see net.sharkfw.kep.KEPStub
@@ -28,7 +33,9 @@ import net.sharkfw.system.Streamer;
  * @author thsc
  * @author mfi
  */
-public class KEPSession extends Thread {
+public class KEPSession implements Runnable {
+    private static final long POLL_INTERVAL = 20;
+
     private KEPStub kepStub;
     private StreamConnection con;
     private SharkEngine se;
@@ -51,6 +58,8 @@ public class KEPSession extends Thread {
     	boolean handled = false;
 
     	do {
+            boolean broken = false;
+
     		L.d("Next run starts.", this);
     		try { 
     			L.d("Creating KEPRequest from connection replyaddress: " + this.con.getReplyAddressString(), this);
@@ -68,15 +77,18 @@ public class KEPSession extends Thread {
     		} catch (IOException ioe) {
     			// connection closed - bye
     			handled = false;
+                broken = true;
     			L.d("IOException while handling KEP Request - go ahead", this);
     		} catch (SharkSecurityException ioe) {
     			// connection closed - bye
     			handled = false;
+                broken = true;
     			L.d("Security Exception", this);
     		}
             catch (SharkKBException ioe) {
             	// connection closed - bye
             	handled = false;
+                broken = true;
             	L.d("SharkKB Exception", this);
             }
             catch(RuntimeException re) {
@@ -84,6 +96,12 @@ public class KEPSession extends Thread {
             }
 
     		L.d("Handled = " + handled, this);
+            if(!broken && this.con instanceof SelectableConnection) {
+                // don't wait for next message - selector hands it over
+                ((SelectableConnection) this.con).idle();
+                return;
+            }
+
     		if(!handled) {
     			L.d("Checking for more KEP-Commands", this);
                 // no listener handled that request
@@ -95,9 +113,13 @@ public class KEPSession extends Thread {
                     } else {
                         // maybe remote peer wasn't fast enough - give it some time
                         L.d("Waiting for remotepeer for: " + se.getConnectionTimeOut(), this);
-                        Thread.sleep(se.getConnectionTimeOut());
-                        if(this.con.getInputStream().available() > 0) {
-                        	handled = true;
+                        // poll - a pooled connection can be reused any time
+                        long deadline = System.currentTimeMillis() + se.getConnectionTimeOut();
+                        while(!handled && System.currentTimeMillis() < deadline) {
+                            Thread.sleep(KEPSession.POLL_INTERVAL);
+                            if(this.con.getInputStream().available() > 0) {
+                                handled = true;
+                            }
                         }
                     }
                 }
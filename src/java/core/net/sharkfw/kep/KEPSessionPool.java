@@ -0,0 +1,160 @@
+package net.sharkfw.kep;
+
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import net.sharkfw.system.L;
+
+/**
+ * Runs <code>KEPSession</code>s on a bounded number of threads.
+ *
+ * At most maxSessions sessions are handled at the same time. Up to
+ * maxQueuedSessions further sessions wait for a free thread. If the queue
+ * is full as well, the caller (usually the thread accepting connections)
+ * is blocked until a session ends. The session is refused if nothing
+ * gets free within the admission timeout.
+ *
+ * Threads are created on demand and end after being idle for a while.
+ *
+ * @see KEPStub#setSessionPool(net.sharkfw.kep.KEPSessionPool)
+ * @author thsc
+ */
+public class KEPSessionPool {
+    public static final int DEFAULT_MAX_SESSIONS = 64;
+    public static final int DEFAULT_MAX_QUEUED_SESSIONS = 256;
+    public static final long DEFAULT_ADMISSION_TIMEOUT = 5000;
+
+    private static final long IDLE_THREAD_TIMEOUT = 5000;
+
+    private final ThreadPoolExecutor executor;
+    private final Semaphore admission;
+    private final long admissionTimeOut;
+
+    private int activeSessions = 0;
+    private int refusedSessions = 0;
+
+    public KEPSessionPool() {
+        this(DEFAULT_MAX_SESSIONS, DEFAULT_MAX_QUEUED_SESSIONS,
+                DEFAULT_ADMISSION_TIMEOUT);
+    }
+
+    /**
+     * @param maxSessions maximum number of sessions handled concurrently
+     * @param maxQueuedSessions maximum number of sessions waiting for a thread
+     * @param admissionTimeOut milliseconds a caller waits for admission if
+     * pool and queue are full
+     */
+    public KEPSessionPool(int maxSessions, int maxQueuedSessions, long admissionTimeOut) {
+        if(maxSessions < 1 || maxQueuedSessions < 0) {
+            throw new IllegalArgumentException("at least one session must be allowed and queue size must not be negative");
+        }
+
+        this.admission = new Semaphore(maxSessions + maxQueuedSessions);
+        this.admissionTimeOut = admissionTimeOut;
+
+        this.executor = new ThreadPoolExecutor(maxSessions, maxSessions,
+                IDLE_THREAD_TIMEOUT, TimeUnit.MILLISECONDS,
+                new LinkedBlockingQueue<Runnable>(), new SessionThreadFactory());
+
+        this.executor.allowCoreThreadTimeOut(true);
+    }
+
+    /**
+     * Runs a session as soon as a thread is free. Blocks if pool and queue
+     * are full.
+     *
+     * @param session
+     * @return false if session was refused - caller must close its connection
+     */
+    public boolean execute(final Runnable session) {
+        boolean admitted = false;
+        try {
+            admitted = this.admission.tryAcquire(this.admissionTimeOut,
+                    TimeUnit.MILLISECONDS);
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+        }
+
+        if(!admitted) {
+            synchronized(this) {
+                this.refusedSessions++;
+            }
+            L.w("session pool exhausted - session refused", this);
+            return false;
+        }
+
+        try {
+            this.executor.execute(new Runnable() {
+                @Override
+                public void run() {
+                    KEPSessionPool.this.sessionStarted();
+                    try {
+                        session.run();
+                    }
+                    finally {
+                        KEPSessionPool.this.sessionFinished();
+                    }
+                }
+            });
+        }
+        catch(RejectedExecutionException ex) {
+            // pool was shut down
+            this.admission.release();
+            synchronized(this) {
+                this.refusedSessions++;
+            }
+            return false;
+        }
+
+        return true;
+    }
+
+    private synchronized void sessionStarted() {
+        this.activeSessions++;
+    }
+
+    private synchronized void sessionFinished() {
+        this.activeSessions--;
+        this.admission.release();
+    }
+
+    /**
+     * @return number of sessions currently handled
+     */
+    public synchronized int getActiveSessions() {
+        return this.activeSessions;
+    }
+
+    /**
+     * @return number of sessions waiting for a thread
+     */
+    public int getQueuedSessions() {
+        return this.executor.getQueue().size();
+    }
+
+    /**
+     * @return number of sessions refused since pool was created
+     */
+    public synchronized int getRefusedSessions() {
+        return this.refusedSessions;
+    }
+
+    /**
+     * Running and queued sessions are finished. New sessions are refused.
+     */
+    public void shutdown() {
+        this.executor.shutdown();
+    }
+
+    private static class SessionThreadFactory implements ThreadFactory {
+        private int number = 0;
+
+        @Override
+        public synchronized Thread newThread(Runnable r) {
+            return new Thread(r, "KEPSession-" + this.number++);
+        }
+    }
+}
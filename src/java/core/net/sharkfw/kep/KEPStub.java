@@ -44,6 +44,9 @@ public abstract class KEPStub implements RequestHandler, KEPConnectionPool, KEPM
     protected SecurityLevel encryptionLevel = SharkEngine.SecurityLevel.IF_POSSIBLE;
     protected PrivateKey privateKey;
 
+    private KEPSessionPool sessionPool = new KEPSessionPool();
+    private final SessionKeyCache sessionKeyCache = new SessionKeyCache();
+
     public boolean handleMessage(KEPInMessage msg) {
         return this.callListener(msg);
     }
@@ -74,6 +77,15 @@ public abstract class KEPStub implements RequestHandler, KEPConnectionPool, KEPM
      */
     abstract public void withdrawListener(KnowledgePort listener);
 
+    /**
+     * Topics a listener reacts on have changed. They are taken from
+     * the listener before the next message is dispatched.
+     *
+     * @see KnowledgePort#getRoutingTopics()
+     * @param listener listener with changed topics
+     */
+    abstract public void refreshRouting(KnowledgePort listener);
+
     /**
      * Call all listeners to handle the message.
      *
@@ -85,6 +97,35 @@ public abstract class KEPStub implements RequestHandler, KEPConnectionPool, KEPM
      */
     abstract protected boolean callListener(KEPInMessage inMsg);
 
+    /**
+     * @return cache of AES session keys - sent and received ones
+     */
+    public SessionKeyCache getSessionKeyCache() {
+        return this.sessionKeyCache;
+    }
+
+    /**
+     * @return pool which runs sessions on incoming stream connections
+     */
+    public KEPSessionPool getSessionPool() {
+        return this.sessionPool;
+    }
+    
+    /**
+     * Replaces session pool. Sessions of previous pool are finished but
+     * no new sessions are accepted by it.
+     * 
+     * @param sessionPool 
+     */
+    public void setSessionPool(KEPSessionPool sessionPool) {
+        KEPSessionPool oldPool = this.sessionPool;
+        this.sessionPool = sessionPool;
+        
+        if(oldPool != null && oldPool != sessionPool) {
+            oldPool.shutdown();
+        }
+    }
+
     public void initSecurity(PrivateKey privateKey, SharkPublicKeyStorage publicKeyStorage, 
             SecurityLevel encryptionLevel, SecurityLevel signatureLevel, 
             SecurityReplyPolicy replyPolicy, boolean refuseUnverifiably) {
@@ -101,11 +142,40 @@ public abstract class KEPStub implements RequestHandler, KEPConnectionPool, KEPM
 
     public abstract void resetNotHandledRequestKP();
     
-    private InterestStore sentInterests = new InterestStore();
-    private KnowledgeStore sentKnowledge = new KnowledgeStore();
+    public static final int DEFAULT_HISTORY_SIZE = 1000;
     
-    private InterestStore unhandledInterests = new InterestStore();
-    private KnowledgeStore unhandledKnowledge = new KnowledgeStore();
+    private int historySize = DEFAULT_HISTORY_SIZE;
+    
+    private InterestStore sentInterests = this.createInterestHistory();
+    private KnowledgeStore sentKnowledge = this.createKnowledgeHistory();
+    
+    private InterestStore unhandledInterests = this.createInterestHistory();
+    private KnowledgeStore unhandledKnowledge = this.createKnowledgeHistory();
+    
+    private InterestStore createInterestHistory() {
+        InterestStore store = new InterestStore();
+        store.setMaxMessages(this.historySize);
+        return store;
+    }
+    
+    private KnowledgeStore createKnowledgeHistory() {
+        KnowledgeStore store = new KnowledgeStore();
+        store.setMaxMessages(this.historySize);
+        return store;
+    }
+    
+    /**
+     * @param maxMessages each history of sent and unhandled messages keeps
+     * at most that number of messages - oldest are dropped first
+     */
+    public void setHistorySize(int maxMessages) {
+        this.historySize = maxMessages;
+        
+        this.sentInterests.setMaxMessages(maxMessages);
+        this.sentKnowledge.setMaxMessages(maxMessages);
+        this.unhandledInterests.setMaxMessages(maxMessages);
+        this.unhandledKnowledge.setMaxMessages(maxMessages);
+    }
     
     /**
      * Remember that this interest was send now
@@ -167,11 +237,11 @@ public abstract class KEPStub implements RequestHandler, KEPConnectionPool, KEPM
     }
     
     public void removeSentHistory() {
-        this.sentInterests = new InterestStore();
-        this.sentKnowledge = new KnowledgeStore();
+        this.sentInterests = this.createInterestHistory();
+        this.sentKnowledge = this.createKnowledgeHistory();
 
-        this.unhandledInterests = new InterestStore();
-        this.unhandledKnowledge = new KnowledgeStore();
+        this.unhandledInterests = this.createInterestHistory();
+        this.unhandledKnowledge = this.createKnowledgeHistory();
     }
     
     public void setSilentPeriod(int milliseconds) {
@@ -0,0 +1,119 @@
+package net.sharkfw.kep;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import net.sharkfw.knowledgeBase.*;
+
+/**
+ * Pull style reader of serialized knowledge. Knowledge is not read as
+ * a whole but event by event - similar to StAX:
+ *
+ * <pre>
+ * BACKGROUND (CONTEXT_POINT INFORMATION*)* END
+ * </pre>
+ *
+ * Information content is not buffered by the reader. It can be streamed
+ * into any output stream - e.g. of an information in a knowledge base -
+ * as long as the reader stays at that information. It is skipped
+ * otherwise.
+ *
+ * Context points and information returned by the reader only carry
+ * coordinates, properties and content type. They are replaced with each
+ * event.
+ *
+ * @see KnowledgeSerializer#createKnowledgeReader(net.sharkfw.protocols.SharkInputStream)
+ * @author thsc
+ */
+public interface KnowledgeReader {
+    /**
+     * Background vocabulary was read. It is always the first event.
+     */
+    public static final int BACKGROUND = 1;
+
+    /**
+     * Coordinates and properties of next context point were read.
+     */
+    public static final int CONTEXT_POINT = 2;
+
+    /**
+     * Properties and content type of next information of current context
+     * point were read. Content can be streamed now.
+     */
+    public static final int INFORMATION = 3;
+
+    /**
+     * Knowledge is read completely.
+     */
+    public static final int END = 4;
+
+    /**
+     * @return false if END was already returned
+     */
+    public boolean hasNext();
+
+    /**
+     * Reads next part of knowledge. Content of current information is
+     * skipped if it wasn't streamed.
+     *
+     * @return event type
+     * @throws IOException
+     * @throws SharkKBException malformed knowledge
+     */
+    public int next() throws IOException, SharkKBException;
+
+    /**
+     * @return background vocabulary, can be null
+     */
+    public SharkCS getBackground();
+
+    /**
+     * @return current context point - without information
+     */
+    public ContextPoint getContextPoint();
+
+    /**
+     * @return current information - without content
+     */
+    public Information getInformation();
+
+    /**
+     * @return content length of current information
+     */
+    public long getContentLength();
+
+    /**
+     * Streams content of current information. Can only be called once
+     * per information.
+     *
+     * @param os target stream - not closed by this method
+     * @throws IOException
+     */
+    public void streamContent(OutputStream os) throws IOException;
+
+    /**
+     * Sets content of current information as content of target. Can only
+     * be called once per information.
+     *
+     * @param target
+     * @throws IOException
+     */
+    public void streamContent(Information target) throws IOException;
+
+    /**
+     * Reads the rest of the knowledge into memory. Context points which
+     * were already read are not part of the result. The background always is.
+     *
+     * @return knowledge
+     * @throws IOException
+     * @throws SharkKBException
+     */
+    public Knowledge readKnowledge() throws IOException, SharkKBException;
+
+    /**
+     * Reads and drops the rest of the knowledge.
+     *
+     * @throws IOException
+     * @throws SharkKBException
+     */
+    public void skip() throws IOException, SharkKBException;
+}
@@ -45,6 +45,16 @@ public interface KnowledgeSerializer {
      */
     Knowledge parseKnowledge(SharkInputStream is) throws IOException, SharkKBException;
 
+    /**
+     * Create a reader which parses knowledge from an InputStream part by part.
+     * Nothing is read before the first call of next().
+     *
+     * @param is The InputStream to read from
+     * @return reader positioned before background
+     * @see KnowledgeReader
+     */
+    KnowledgeReader createKnowledgeReader(SharkInputStream is) throws IOException, SharkKBException;
+
     /**
      * Deserialize an interest from a given InputStream.
      *
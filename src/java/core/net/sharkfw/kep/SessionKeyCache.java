@@ -0,0 +1,190 @@
+package net.sharkfw.kep;
+
+import java.nio.ByteBuffer;
+import java.security.GeneralSecurityException;
+import java.security.PrivateKey;
+import java.security.PublicKey;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import javax.crypto.Cipher;
+import javax.crypto.KeyGenerator;
+import javax.crypto.SecretKey;
+
+/**
+ * Caches AES session keys to avoid RSA operations with each message.
+ *
+ * Sending side: A session key is created and wrapped with the public key
+ * of a recipient once. Following messages to that recipient reuse key and
+ * wrapped key until the key has expired or was used too often.
+ *
+ * Receiving side: Unwrapped keys are remembered by their wrapped bytes. Thus,
+ * a wrapped key which was seen before is not unwrapped again.
+ *
+ * Wrapped keys are still sent with each message - peers without that cache
+ * just unwrap each time.
+ *
+ * Only use sending keys of this cache with chunked encryption (AES/GCM with
+ * a fresh nonce per chunk). Block encryption (ECB) needs a fresh key per
+ * message - see createSendingKey().
+ *
+ * @author thsc
+ */
+public class SessionKeyCache {
+    public static final long DEFAULT_TTL = 10 * 60 * 1000;
+    public static final int DEFAULT_MAX_USES = 10000;
+    private static final int MAX_ENTRIES = 1000;
+
+    private long ttl = DEFAULT_TTL;
+    private int maxUses = DEFAULT_MAX_USES;
+
+    /**
+     * Session key and its wrapped form.
+     */
+    public static class SessionKey {
+        private final SecretKey key;
+        private final byte[] wrappedKey;
+        private final long created = System.currentTimeMillis();
+        private int uses = 0;
+
+        SessionKey(SecretKey key, byte[] wrappedKey) {
+            this.key = key;
+            this.wrappedKey = wrappedKey;
+        }
+
+        public SecretKey getKey() {
+            return this.key;
+        }
+
+        public byte[] getWrappedKey() {
+            return this.wrappedKey;
+        }
+    }
+
+    // both guarded by this
+    private final LinkedHashMap<PublicKey, SessionKey> sendingKeys = new LRUMap<PublicKey, SessionKey>();
+    private final LinkedHashMap<ByteBuffer, SessionKey> receivedKeys = new LRUMap<ByteBuffer, SessionKey>();
+
+    private static class LRUMap<K, V> extends LinkedHashMap<K, V> {
+        private static final long serialVersionUID = 1L;
+
+        LRUMap() {
+            super(16, 0.75f, true);
+        }
+
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<K, V> eldest) {
+            return this.size() > MAX_ENTRIES;
+        }
+    }
+
+    /**
+     * @param millis keys are replaced after that period. 0 switches
+     * caching off.
+     */
+    public synchronized void setTTL(long millis) {
+        this.ttl = millis;
+    }
+
+    public synchronized long getTTL() {
+        return this.ttl;
+    }
+
+    /**
+     * @param maxUses number of messages sent with a key before it
+     * is replaced
+     */
+    public synchronized void setMaxUses(int maxUses) {
+        this.maxUses = maxUses;
+    }
+
+    /**
+     * Returns session key for messages to the owner of that public key. A
+     * new key is created and wrapped if there is no valid one.
+     *
+     * @param recipientKey public key of recipient
+     * @return session key
+     * @throws GeneralSecurityException
+     */
+    public SessionKey getSendingKey(PublicKey recipientKey) throws GeneralSecurityException {
+        synchronized(this) {
+            SessionKey sk = this.sendingKeys.get(recipientKey);
+            if(sk != null && this.isValid(sk) && sk.uses < this.maxUses) {
+                sk.uses++;
+                return sk;
+            }
+        }
+
+        // RSA outside of lock
+        SessionKey sk = SessionKeyCache.createSendingKey(recipientKey);
+        sk.uses = 1;
+
+        synchronized(this) {
+            if(this.ttl > 0) {
+                this.sendingKeys.put(recipientKey, sk);
+            }
+        }
+
+        return sk;
+    }
+
+    /**
+     * Creates a new session key and wraps it - nothing is cached.
+     *
+     * @param recipientKey public key of recipient
+     * @return session key
+     * @throws GeneralSecurityException
+     */
+    public static SessionKey createSendingKey(PublicKey recipientKey) throws GeneralSecurityException {
+        KeyGenerator gen = KeyGenerator.getInstance("AES");
+        SecretKey key = gen.generateKey();
+
+        Cipher cipher = Cipher.getInstance("RSA");
+        cipher.init(Cipher.WRAP_MODE, recipientKey);
+
+        return new SessionKey(key, cipher.wrap(key));
+    }
+
+    /**
+     * Returns session key of a received message. Key is only unwrapped if
+     * it wasn't received before.
+     *
+     * @param wrappedKey wrapped key as received
+     * @param privateKey own private key
+     * @return session key
+     * @throws GeneralSecurityException
+     */
+    public SecretKey getReceivedKey(byte[] wrappedKey, PrivateKey privateKey) throws GeneralSecurityException {
+        ByteBuffer id = ByteBuffer.wrap(wrappedKey.clone());
+
+        synchronized(this) {
+            SessionKey sk = this.receivedKeys.get(id);
+            if(sk != null && this.isValid(sk)) {
+                return sk.key;
+            }
+        }
+
+        Cipher cipher = Cipher.getInstance("RSA");
+        cipher.init(Cipher.UNWRAP_MODE, privateKey);
+        SecretKey key = (SecretKey) cipher.unwrap(wrappedKey, "AES", Cipher.SECRET_KEY);
+
+        synchronized(this) {
+            if(this.ttl > 0) {
+                this.receivedKeys.put(id, new SessionKey(key, id.array()));
+            }
+        }
+
+        return key;
+    }
+
+    private boolean isValid(SessionKey sk) {
+        return System.currentTimeMillis() - sk.created < this.ttl;
+    }
+
+    /**
+     * Forget all keys - next messages will use new session keys.
+     */
+    public synchronized void clear() {
+        this.sendingKeys.clear();
+        this.receivedKeys.clear();
+    }
+}
@@ -0,0 +1,232 @@
+package net.sharkfw.kep;
+
+import java.io.UnsupportedEncodingException;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import net.sharkfw.knowledgeBase.PeerSemanticTag;
+import net.sharkfw.knowledgeBase.STSet;
+import net.sharkfw.knowledgeBase.SemanticTag;
+import net.sharkfw.knowledgeBase.SharkCS;
+import net.sharkfw.knowledgeBase.SharkCSAlgebra;
+import net.sharkfw.knowledgeBase.SharkKBException;
+import net.sharkfw.knowledgeBase.SpatialSemanticTag;
+import net.sharkfw.knowledgeBase.TimeSemanticTag;
+import net.sharkfw.knowledgeBase.geom.SharkGeometry;
+
+/**
+ * Remembers context spaces which were sent within the silent period.
+ * Context spaces are identified by a 128 bit fingerprint of their subject
+ * identifiers. Order of tags and sis doesn't matter, neither does case of sis.
+ * Time and location tags are taken by their values.
+ *
+ * Table is bounded. Oldest entries are dropped if it's full - entries
+ * older than the silent period are dropped anyway.
+ *
+ * @author thsc
+ */
+public class SilenceTable {
+    public static final int DEFAULT_MAX_ENTRIES = 10000;
+
+    private int maxEntries = DEFAULT_MAX_ENTRIES;
+
+    // fingerprint -> time sent, oldest first
+    private final LinkedHashMap<Fingerprint, Long> table = new LinkedHashMap<Fingerprint, Long>();
+
+    /**
+     * 128 bit fingerprint of a context space.
+     */
+    public static class Fingerprint {
+        private final long high;
+        private final long low;
+
+        Fingerprint(byte[] digest) {
+            long h = 0, l = 0;
+            for(int i = 0; i < 8; i++) {
+                h = (h << 8) | (digest[i] & 0xff);
+                l = (l << 8) | (digest[i + 8] & 0xff);
+            }
+            this.high = h;
+            this.low = l;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if(!(o instanceof Fingerprint)) {
+                return false;
+            }
+
+            Fingerprint other = (Fingerprint) o;
+            return this.high == other.high && this.low == other.low;
+        }
+
+        @Override
+        public int hashCode() {
+            return (int) (this.low ^ (this.low >>> 32));
+        }
+
+        @Override
+        public String toString() {
+            return Long.toHexString(this.high) + Long.toHexString(this.low);
+        }
+    }
+
+    /**
+     * @param maxEntries number of remembered context spaces
+     */
+    public synchronized void setMaxEntries(int maxEntries) {
+        this.maxEntries = maxEntries;
+        this.removeOldEntries(Long.MAX_VALUE);
+    }
+
+    public synchronized int size() {
+        return this.table.size();
+    }
+
+    /**
+     * Remember context space was sent now.
+     * @param cs
+     * @param silentPeriod
+     * @throws SharkKBException
+     */
+    public void sent(SharkCS cs, long silentPeriod) throws SharkKBException {
+        Fingerprint fp = SilenceTable.fingerprint(cs);
+        long now = System.currentTimeMillis();
+
+        synchronized(this) {
+            // move to the end
+            this.table.remove(fp);
+            this.table.put(fp, now);
+
+            this.removeOldEntries(silentPeriod);
+        }
+    }
+
+    /**
+     * @param cs
+     * @param silentPeriod
+     * @return true if context space wasn't sent within silent period
+     * @throws SharkKBException
+     */
+    public boolean allowed(SharkCS cs, long silentPeriod) throws SharkKBException {
+        Fingerprint fp = SilenceTable.fingerprint(cs);
+
+        synchronized(this) {
+            this.removeOldEntries(silentPeriod);
+
+            return !this.table.containsKey(fp);
+        }
+    }
+
+    // guarded by this
+    private void removeOldEntries(long silentPeriod) {
+        long now = System.currentTimeMillis();
+
+        Iterator<Map.Entry<Fingerprint, Long>> entryIter = this.table.entrySet().iterator();
+        while(entryIter.hasNext()) {
+            Map.Entry<Fingerprint, Long> entry = entryIter.next();
+            if(this.table.size() <= this.maxEntries && now - entry.getValue() <= silentPeriod) {
+                return;
+            }
+            entryIter.remove();
+        }
+    }
+
+    /**
+     * Calculates fingerprint of a context space. Two context spaces have
+     * the same fingerprint if they have the same direction and the same tags
+     * in each dimension - regardless of order.
+     *
+     * @param cs
+     * @return fingerprint
+     * @throws SharkKBException
+     */
+    public static Fingerprint fingerprint(SharkCS cs) throws SharkKBException {
+        MessageDigest md;
+        try {
+            md = MessageDigest.getInstance("MD5");
+        } catch (NoSuchAlgorithmException ex) {
+            throw new SharkKBException("cannot create fingerprint: " + ex.getMessage());
+        }
+
+        StringBuilder sb = new StringBuilder();
+        sb.append(cs.getDirection()).append('|');
+
+        PeerSemanticTag originator = cs.getOriginator();
+        if(originator != null) {
+            sb.append(SilenceTable.canonicalTag(originator));
+        }
+        sb.append('|');
+
+        SilenceTable.appendTags(sb, cs.getTopics());
+        SilenceTable.appendTags(sb, cs.getPeers());
+        SilenceTable.appendTags(sb, cs.getRemotePeers());
+        SilenceTable.appendTags(sb, cs.getTimes());
+        SilenceTable.appendTags(sb, cs.getLocations());
+
+        try {
+            return new Fingerprint(md.digest(sb.toString().getBytes("UTF-8")));
+        } catch (UnsupportedEncodingException ex) {
+            throw new SharkKBException("cannot create fingerprint: " + ex.getMessage());
+        }
+    }
+
+    private static void appendTags(StringBuilder sb, STSet tags) throws SharkKBException {
+        if(tags != null) {
+            ArrayList<String> canonicalTags = new ArrayList<String>();
+
+            Iterator<SemanticTag> tagIter = tags.stTags();
+            while(tagIter.hasNext()) {
+                canonicalTags.add(SilenceTable.canonicalTag(tagIter.next()));
+            }
+
+            Collections.sort(canonicalTags);
+            for(int i = 0; i < canonicalTags.size(); i++) {
+                sb.append(canonicalTags.get(i));
+            }
+        }
+
+        sb.append('|');
+    }
+
+    /**
+     * @return sorted sis, each with its length - no separator can be
+     * confused with a si
+     */
+    private static String canonicalTag(SemanticTag tag) {
+        StringBuilder sb = new StringBuilder();
+
+        if(tag instanceof TimeSemanticTag) {
+            TimeSemanticTag time = (TimeSemanticTag) tag;
+            sb.append('t').append(time.getFrom()).append(':').append(time.getDuration()).append('/');
+        }
+
+        if(tag instanceof SpatialSemanticTag) {
+            SharkGeometry geom = ((SpatialSemanticTag) tag).getGeometry();
+            if(geom != null) {
+                String wkt = geom.getWKT();
+                sb.append('g').append(wkt.length()).append(':').append(wkt);
+            }
+        }
+
+        String[] sis = tag.getSI();
+        if(sis != null) {
+            String[] keys = new String[sis.length];
+            for(int i = 0; i < sis.length; i++) {
+                keys[i] = sis[i] == null ? "" : SharkCSAlgebra.siKey(sis[i]);
+            }
+            Arrays.sort(keys);
+
+            for(int i = 0; i < keys.length; i++) {
+                sb.append(keys[i].length()).append(':').append(keys[i]);
+            }
+        }
+
+        return sb.append(';').toString();
+    }
+}
@@ -0,0 +1,397 @@
+package net.sharkfw.kep;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.ArrayList;
+import java.util.Enumeration;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedList;
+import java.util.Vector;
+import net.sharkfw.knowledgeBase.PeerSemanticTag;
+import net.sharkfw.peer.SharkEngine;
+import net.sharkfw.protocols.ConnectionStatusListener;
+import net.sharkfw.protocols.StreamConnection;
+import net.sharkfw.system.L;
+import net.sharkfw.system.Util;
+
+/**
+ * Pool of outgoing stream connections. Connections are kept per peer
+ * address - host names are resolved, thus different names of the same
+ * peer share connections.
+ *
+ * A pooled connection is either leased (a message is written into it) or
+ * idle. Idle connections are handed out again instead of establishing a
+ * new connection. Connections idle longer than the idle timeout are
+ * closed. Remote peers close connections after a while. Thus, the idle
+ * timeout is derived from the connection timeout of the engine unless it
+ * is set explicitly.
+ *
+ * Closed connections leave the pool automatically.
+ *
+ * Replies are written into connections which were received from the
+ * remote peer. Such a connection is leased before writing the reply -
+ * it can be pooled and written by a sender in parallel.
+ *
+ * @see net.sharkfw.peer.SharkEngine#getConnectionTimeOut()
+ * @author thsc
+ */
+public class SimpleKEPConnectionPool implements KEPConnectionPool {
+    public static final long DEFAULT_IDLE_TIMEOUT = 2000;
+    public static final int DEFAULT_MAX_CONNECTIONS_PER_PEER = 4;
+    public static final long DEFAULT_LEASE_TIMEOUT = 5000;
+
+    // idle timeout in percent of connection timeout of the engine
+    public static final int IDLE_TIMEOUT_PERCENT = 66;
+
+    private final SharkEngine se;
+
+    // not set - derived from engine
+    private long idleTimeout = -1;
+    private int maxConnectionsPerPeer = DEFAULT_MAX_CONNECTIONS_PER_PEER;
+
+    // guarded by this
+    private final HashMap<String, LinkedList<PooledConnection>> peers =
+            new HashMap<String, LinkedList<PooledConnection>>();
+    private final HashMap<StreamConnection, PooledConnection> connections =
+            new HashMap<StreamConnection, PooledConnection>();
+
+    private class PooledConnection implements ConnectionStatusListener {
+        private final String key;
+        private final StreamConnection con;
+        private boolean leased = true;
+        private long lastUsed = System.currentTimeMillis();
+
+        PooledConnection(String key, StreamConnection con) {
+            this.key = key;
+            this.con = con;
+        }
+
+        @Override
+        public void connectionClosed() {
+            // listener set of connection is iterated - don't remove listener
+            SimpleKEPConnectionPool.this.remove(this.con);
+        }
+    }
+
+    /**
+     * Pool with a fixed idle timeout - see DEFAULT_IDLE_TIMEOUT.
+     */
+    public SimpleKEPConnectionPool() {
+        this(null);
+    }
+
+    /**
+     * @param se idle timeout is derived from connection timeout of that
+     * engine - it is read whenever idle connections are checked.
+     */
+    public SimpleKEPConnectionPool(SharkEngine se) {
+        this.se = se;
+    }
+
+    /**
+     * Addresses are compared after resolving host names.
+     *
+     * @param address gcf address, e.g. tcp://localhost:7070
+     * @return e.g. tcp://127.0.0.1:7070
+     */
+    static String getPoolKey(String address) {
+        int i = address.indexOf("://");
+        String scheme = i < 0 ? "" : address.substring(0, i);
+
+        // socket://ip:port
+        String resolved = Util.resolveDNtoIPinGCFString(address);
+
+        return scheme + resolved.substring("socket".length());
+    }
+
+    /**
+     * @param millis idle connections are closed after that period - a 
+     * negative value derives it from engine again
+     */
+    public synchronized void setIdleTimeout(long millis) {
+        this.idleTimeout = millis;
+    }
+
+    public synchronized long getIdleTimeout() {
+        if(this.idleTimeout >= 0) {
+            return this.idleTimeout;
+        }
+
+        if(this.se != null) {
+            return this.se.getConnectionTimeOut() * IDLE_TIMEOUT_PERCENT / 100;
+        }
+
+        return DEFAULT_IDLE_TIMEOUT;
+    }
+
+    /**
+     * @param max maximum number of pooled connections to a single peer.
+     * Further connections aren't pooled.
+     */
+    public synchronized void setMaxConnectionsPerPeer(int max) {
+        this.maxConnectionsPerPeer = max;
+    }
+
+    public synchronized int getMaxConnectionsPerPeer() {
+        return this.maxConnectionsPerPeer;
+    }
+
+    @Override
+    public void clear() {
+        L.d("Clearing connection pool.", this);
+        ArrayList<PooledConnection> all;
+        synchronized(this) {
+            all = new ArrayList<PooledConnection>(this.connections.values());
+            this.connections.clear();
+            this.peers.clear();
+            this.notifyAll();
+        }
+
+        for(PooledConnection pc : all) {
+            pc.con.removeConnectionListener(pc);
+        }
+    }
+
+    /**
+     * Adds a newly established connection. It is leased by the caller
+     * and must be released after sending.
+     */
+    @Override
+    public void addConnection(String address, StreamConnection connection) {
+        if(address == null || connection == null) {
+            return;
+        }
+
+        String key = SimpleKEPConnectionPool.getPoolKey(address);
+        PooledConnection pc = new PooledConnection(key, connection);
+
+        ArrayList<PooledConnection> expired;
+        boolean pooled = false;
+        synchronized(this) {
+            expired = this.removeExpired(System.currentTimeMillis());
+
+            if(this.connections.containsKey(connection)) {
+                return;
+            }
+
+            LinkedList<PooledConnection> peerCons = this.peers.get(key);
+            if(peerCons == null) {
+                peerCons = new LinkedList<PooledConnection>();
+                this.peers.put(key, peerCons);
+            }
+
+            if(peerCons.size() >= this.maxConnectionsPerPeer) {
+                L.d("too many connections to " + key + " - not pooled", this);
+            } else {
+                peerCons.add(pc);
+                this.connections.put(connection, pc);
+                pooled = true;
+                L.d("Adding connection with address: " + key + " to pool.", this);
+            }
+        }
+
+        if(pooled) {
+            connection.addConnectionListener(pc);
+        }
+
+        this.close(expired);
+    }
+
+    /**
+     * Returns an idle connection to that address and leases it. Caller
+     * must release it after sending.
+     *
+     * @return idle connection or null
+     */
+    @Override
+    public StreamConnection getConnectionByAddress(String address) {
+        if(address == null) {
+            return null;
+        }
+
+        String key = SimpleKEPConnectionPool.getPoolKey(address);
+
+        ArrayList<PooledConnection> expired;
+        PooledConnection found = null;
+        synchronized(this) {
+            expired = this.removeExpired(System.currentTimeMillis());
+
+            LinkedList<PooledConnection> peerCons = this.peers.get(key);
+            if(peerCons != null) {
+                for(PooledConnection pc : peerCons) {
+                    if(!pc.leased) {
+                        pc.leased = true;
+                        found = pc;
+                        break;
+                    }
+                }
+            }
+        }
+
+        this.close(expired);
+
+        return found == null ? null : found.con;
+    }
+
+    /**
+     * Return a leased <code>StreamConnection</code> to any address of that peer.
+     *
+     * @param tag A Tag representing a communication partner
+     * @return A <code>StreamConnection</code> to that peer.
+     */
+    @Override
+    public StreamConnection getConnectionByTag(PeerSemanticTag tag) {
+        String[] addresses = tag.getAddresses();
+        if(addresses != null) {
+            for(int i = 0; i < addresses.length; i++) {
+                StreamConnection con = this.getConnectionByAddress(addresses[i]);
+                if(con != null) {
+                    return con;
+                }
+            }
+        }
+        return null;
+    }
+
+    @Override
+    public synchronized void releaseConnection(StreamConnection con) {
+        PooledConnection pc = this.connections.get(con);
+        if(pc != null) {
+            pc.leased = false;
+            pc.lastUsed = System.currentTimeMillis();
+            this.notifyAll();
+        }
+    }
+
+    /**
+     * Waits until the connection is released - at most the connection
+     * timeout of the engine.
+     */
+    @Override
+    public synchronized boolean leaseConnection(StreamConnection con) throws IOException {
+        long timeout = this.se != null ? this.se.getConnectionTimeOut() : DEFAULT_LEASE_TIMEOUT;
+        long deadline = System.currentTimeMillis() + timeout;
+
+        PooledConnection pc = this.connections.get(con);
+        while(pc != null && pc.leased) {
+            long wait = deadline - System.currentTimeMillis();
+            if(wait <= 0) {
+                throw new IOException("connection still leased by another sender");
+            }
+
+            try {
+                this.wait(wait);
+            }
+            catch(InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("interrupted while waiting for connection");
+            }
+
+            // could have been removed meanwhile
+            pc = this.connections.get(con);
+        }
+
+        if(pc == null) {
+            return false;
+        }
+
+        pc.leased = true;
+        return true;
+    }
+
+    @Override
+    public void removeStreamConnection(StreamConnection con) {
+        PooledConnection pc = this.remove(con);
+        if(pc != null) {
+            con.removeConnectionListener(pc);
+        }
+    }
+
+    private synchronized PooledConnection remove(StreamConnection con) {
+        PooledConnection pc = this.connections.remove(con);
+        if(pc == null) {
+            return null;
+        }
+
+        // waiting lessees write unpooled
+        this.notifyAll();
+
+        LinkedList<PooledConnection> peerCons = this.peers.get(pc.key);
+        if(peerCons != null) {
+            peerCons.remove(pc);
+            if(peerCons.isEmpty()) {
+                this.peers.remove(pc.key);
+            }
+        }
+
+        return pc;
+    }
+
+    @Override
+    public synchronized Enumeration<String> getConnectedAddresses() {
+        return new Vector<String>(this.peers.keySet()).elements();
+    }
+
+    /**
+     * @return number of pooled connections - leased or idle
+     */
+    public synchronized int size() {
+        return this.connections.size();
+    }
+
+    /**
+     * Closes connections which were idle longer than the idle timeout.
+     * Called with each lookup. Thus, no extra thread is needed.
+     */
+    public void closeIdleConnections() {
+        ArrayList<PooledConnection> expired;
+        synchronized(this) {
+            expired = this.removeExpired(System.currentTimeMillis());
+        }
+
+        this.close(expired);
+    }
+
+    private ArrayList<PooledConnection> removeExpired(long now) {
+        ArrayList<PooledConnection> expired = null;
+        long timeout = this.getIdleTimeout();
+
+        Iterator<LinkedList<PooledConnection>> peerIter = this.peers.values().iterator();
+        while(peerIter.hasNext()) {
+            LinkedList<PooledConnection> peerCons = peerIter.next();
+
+            Iterator<PooledConnection> conIter = peerCons.iterator();
+            while(conIter.hasNext()) {
+                PooledConnection pc = conIter.next();
+                if(!pc.leased && now - pc.lastUsed > timeout) {
+                    conIter.remove();
+                    this.connections.remove(pc.con);
+                    if(expired == null) {
+                        expired = new ArrayList<PooledConnection>();
+                    }
+                    expired.add(pc);
+                }
+            }
+
+            if(peerCons.isEmpty()) {
+                peerIter.remove();
+            }
+        }
+
+        return expired;
+    }
+
+    // outside of lock - close calls back connection listener
+    private void close(ArrayList<PooledConnection> expired) {
+        if(expired == null) {
+            return;
+        }
+
+        for(PooledConnection pc : expired) {
+            L.d("closing idle connection to " + pc.key, this);
+            pc.con.removeConnectionListener(pc);
+            pc.con.close();
+        }
+    }
+}
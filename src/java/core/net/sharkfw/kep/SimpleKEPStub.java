@@ -3,13 +3,18 @@ package net.sharkfw.kep;
 import java.io.IOException;
 import java.util.ArrayList;
 import java.util.Enumeration;
-import java.util.Hashtable;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.Iterator;
+import java.util.Map;
 import java.util.Vector;
 import net.sharkfw.knowledgeBase.SharkVocabulary;
 import net.sharkfw.knowledgeBase.Knowledge;
 import net.sharkfw.knowledgeBase.PeerSemanticTag;
+import net.sharkfw.knowledgeBase.STSet;
+import net.sharkfw.knowledgeBase.SemanticTag;
 import net.sharkfw.knowledgeBase.SharkCS;
+import net.sharkfw.knowledgeBase.SharkCSAlgebra;
 import net.sharkfw.knowledgeBase.SharkKB;
 import net.sharkfw.knowledgeBase.SharkKBException;
 import net.sharkfw.peer.KEPInMessage;
@@ -20,7 +25,6 @@ import net.sharkfw.protocols.StreamConnection;
 import net.sharkfw.system.L;
 import net.sharkfw.system.SharkNotSupportedException;
 import net.sharkfw.system.SharkSecurityException;
-import net.sharkfw.system.Util;
 
 /**
  * Simple implementation of KEP-Protocol engine.
@@ -35,7 +39,21 @@ public class SimpleKEPStub extends KEPStub {
    */
 	private Vector<KnowledgePort> listener;
         
-        private KnowledgePort notHandledRequestsHandler;
+        private volatile KnowledgePort notHandledRequestsHandler;
+
+  /**
+   * Routing of expose messages: topic si -> KPs reacting on that topic.
+   * KPs without routing topics are offered each message. KPs which 
+   * topics have changed are offered each message until their topics 
+   * are indexed again. All guarded by topicIndex.
+   * 
+   * @see KnowledgePort#getRoutingTopics() 
+   */
+  private final HashMap<String, HashSet<KnowledgePort>> topicIndex = new HashMap<>();
+  private final HashMap<KnowledgePort, String[]> routedKPs = new HashMap<>();
+  private final HashSet<KnowledgePort> unroutedKPs = new HashSet<>();
+  private final HashMap<KnowledgePort, Long> changedKPs = new HashMap<>();
+  private long routingChanges = 0;
 
   /**
    * The instance of the <code>SharkEngine</code> of this peer.
@@ -43,20 +61,19 @@ public class SimpleKEPStub extends KEPStub {
 	private SharkEngine se;
 
   /**
-   * A table containing the connection pool of this <code>KEPStub</code>
+   * The connection pool of this <code>KEPStub</code>
    */
-  private Hashtable<String, StreamConnection> table;
+  private final SimpleKEPConnectionPool connectionPool;
 
   /**
-   * The table that stores all messages' contextspaces in their serialized form plus the timestamp when they've been sent.
+   * Fingerprints of all sent interests plus the timestamp when they've been sent.
    */
-  private Hashtable<String, Long> messages = new Hashtable<String, Long>();
-
+  private final SilenceTable sentInterestsTable = new SilenceTable();
 
   /**
-   * This table stores all knowledges' contextspaces in their serialized form plus the timestamp when they've been sent.
+   * Fingerprints of all sent knowledges' contextspaces plus the timestamp when they've been sent.
    */
-  private Hashtable<String, Long> knowledges = new Hashtable<String, Long>();
+  private final SilenceTable sentKnowledgeTable = new SilenceTable();
   /**
    * Create a new <code>SimpleKEPStub</code> for the <code>SharkEngine</code> se.
    *
@@ -65,7 +82,7 @@ public class SimpleKEPStub extends KEPStub {
 	public SimpleKEPStub(SharkEngine se) {
 		this.listener = new Vector<KnowledgePort>();
 		this.se = se;
-                this.table = new Hashtable<String, StreamConnection>();
+		this.connectionPool = new SimpleKEPConnectionPool(se);
 	}
 
 	/**
@@ -80,8 +97,12 @@ public class SimpleKEPStub extends KEPStub {
                 session.initSecurity(this.privateKey, this.publicKeyStorage,
                                 this.encryptionLevel, this.signatureLevel,
                                 this.replyPolicy, this.refuseUnverifiably);
-                session.start();
                 
+                if(!this.getSessionPool().execute(session)) {
+                    // too many sessions - refuse connection
+                    this.removeStreamConnection(con);
+                    con.close();
+                }
 	}
 
     /**
@@ -129,20 +150,35 @@ public class SimpleKEPStub extends KEPStub {
    * Central method in which all listeners are called
    * This should be the only method in this class which
    * communicates with the listener and the Shark Engine
+   * 
+   * It is called concurrently by all sessions. KPs decide themselves 
+   * whether they handle messages one after another.
    *
+   * @see KnowledgePort#isThreadSafe()
    * @param msg The <code>KEPRequest</code> to handle.
    * @return True if at least one listener was able to handle the message. False otherwise.
   */
     @Override
-    final synchronized protected boolean callListener(KEPInMessage msg) {
-        Enumeration<KnowledgePort> lenum = listener.elements();
+    final protected boolean callListener(KEPInMessage msg) {
         /* make a copy of listener - kp can be added or withdrawn during message handling
          * which can cause strange side effects.
          */
+        ArrayList<KnowledgePort> skipped = new ArrayList<KnowledgePort>();
+        ArrayList<KnowledgePort> kpList = this.getCandidates(msg, skipped);
         
-        ArrayList<KnowledgePort> kpList = new ArrayList<KnowledgePort>();
-        while(lenum.hasMoreElements()) {
-            kpList.add(lenum.nextElement());
+        KnowledgePort notHandledHandler = this.notHandledRequestsHandler;
+        
+        /* knowledge can only be streamed if a single kp reads it -
+         * it's gone afterwards
+         */
+        msg.setKnowledgeStreaming(kpList.size() == 1 
+                && kpList.get(0).isKnowledgeStreaming()
+                && notHandledHandler == null);
+        
+        // not offered - they just remember the interest
+        Iterator<KnowledgePort> skippedIter = skipped.iterator();
+        while(skippedIter.hasNext()) {
+            skippedIter.next().skipMessage(msg);
         }
         
         // iterate kp now
@@ -158,8 +194,8 @@ public class SimpleKEPStub extends KEPStub {
         
         // do we have a final handler for not handled messages ?
         if(!handled) {
-            if(this.notHandledRequestsHandler != null) {
-                handled = this.notHandledRequestsHandler.handleMessage(msg);
+            if(notHandledHandler != null) {
+                handled = notHandledHandler.handleMessage(msg);
             }
             else {
                 // remember unhandled message
@@ -190,6 +226,144 @@ public class SimpleKEPStub extends KEPStub {
         return handled;
     }
     
+    /**
+     * Expose messages are only offered to KPs which can react on 
+     * at least one of its topics. All other messages go to all KPs.
+     * 
+     * @param skipped listeners the message isn't offered to are added 
+     * @return listeners in order of registration
+     */
+    private ArrayList<KnowledgePort> getCandidates(KEPInMessage msg, 
+            ArrayList<KnowledgePort> skipped) {
+        ArrayList<KnowledgePort> kpList = new ArrayList<KnowledgePort>(this.listener);
+        
+        if(msg.getCmd() != KEPMessage.KEP_EXPOSE || msg.getInterest() == null) {
+            return kpList;
+        }
+        
+        this.indexChangedKPs();
+        
+        HashSet<KnowledgePort> candidates;
+        try {
+            STSet topics = msg.getInterest().getTopics();
+            if(SharkCSAlgebra.isAny(topics)) {
+                return kpList;
+            }
+            
+            synchronized(this.topicIndex) {
+                candidates = new HashSet<KnowledgePort>(this.unroutedKPs);
+                candidates.addAll(this.changedKPs.keySet());
+
+                Iterator<SemanticTag> tagIter = topics.stTags();
+                while(tagIter.hasNext()) {
+                    SemanticTag tag = tagIter.next();
+                    if(SharkCSAlgebra.isAny(tag)) {
+                        return kpList;
+                    }
+
+                    String[] sis = tag.getSI();
+                    for(int i = 0; i < sis.length; i++) {
+                        HashSet<KnowledgePort> kps = this.topicIndex.get(SharkCSAlgebra.siKey(sis[i]));
+                        if(kps != null) {
+                            candidates.addAll(kps);
+                        }
+                    }
+                }
+            }
+        } catch (SharkKBException ex) {
+            return kpList;
+        }
+        
+        Iterator<KnowledgePort> kpIter = kpList.iterator();
+        while(kpIter.hasNext()) {
+            KnowledgePort kp = kpIter.next();
+            if(!candidates.contains(kp)) {
+                kpIter.remove();
+                skipped.add(kp);
+            }
+        }
+        
+        return kpList;
+    }
+    
+    /**
+     * Ask KPs with changed topics for their routing topics. That's done
+     * outside the lock - it can take a while and a KP can change again 
+     * in the meantime.
+     */
+    private void indexChangedKPs() {
+        HashMap<KnowledgePort, Long> changed;
+        synchronized(this.topicIndex) {
+            if(this.changedKPs.isEmpty()) {
+                return;
+            }
+            
+            changed = new HashMap<KnowledgePort, Long>(this.changedKPs);
+        }
+        
+        Iterator<Map.Entry<KnowledgePort, Long>> entryIter = changed.entrySet().iterator();
+        while(entryIter.hasNext()) {
+            Map.Entry<KnowledgePort, Long> entry = entryIter.next();
+            KnowledgePort kp = entry.getKey();
+            String[] sis = kp.getRoutingTopics();
+            
+            synchronized(this.topicIndex) {
+                // withdrawn or changed again?
+                if(!entry.getValue().equals(this.changedKPs.get(kp))) {
+                    continue;
+                }
+                
+                this.changedKPs.remove(kp);
+                this.unindex(kp);
+                
+                if(sis == null) {
+                    this.unroutedKPs.add(kp);
+                } else {
+                    this.routedKPs.put(kp, sis);
+                    for(int i = 0; i < sis.length; i++) {
+                        String key = SharkCSAlgebra.siKey(sis[i]);
+                        HashSet<KnowledgePort> kps = this.topicIndex.get(key);
+                        if(kps == null) {
+                            kps = new HashSet<KnowledgePort>();
+                            this.topicIndex.put(key, kps);
+                        }
+                        kps.add(kp);
+                    }
+                }
+            }
+        }
+    }
+    
+    // guarded by topicIndex
+    private void unindex(KnowledgePort kp) {
+        this.unroutedKPs.remove(kp);
+        
+        String[] sis = this.routedKPs.remove(kp);
+        if(sis == null) {
+            return;
+        }
+        
+        for(int i = 0; i < sis.length; i++) {
+            String key = SharkCSAlgebra.siKey(sis[i]);
+            HashSet<KnowledgePort> kps = this.topicIndex.get(key);
+            if(kps != null) {
+                kps.remove(kp);
+                if(kps.isEmpty()) {
+                    this.topicIndex.remove(key);
+                }
+            }
+        }
+    }
+    
+    @Override
+    public final void refreshRouting(KnowledgePort kp) {
+        synchronized(this.topicIndex) {
+            if(this.listener.contains(kp)) {
+                this.changedKPs.put(kp, ++this.routingChanges);
+            }
+        }
+    }
+    
     public final void setNotHandledRequestKP(KnowledgePort kp) {
         this.notHandledRequestsHandler = kp;
     }
@@ -206,6 +380,10 @@ public class SimpleKEPStub extends KEPStub {
                             return;
             }
         }
+        // index before it can be called
+        synchronized(this.topicIndex) {
+            this.changedKPs.put(newListener, ++this.routingChanges);
+        }
         this.listener.add(newListener);
 
 
@@ -218,85 +396,67 @@ public class SimpleKEPStub extends KEPStub {
 //        L.d("Listener withdrawn.", this);
 //        L.d("Having " + this.listener.size() + " listeners.", this);
         this.listener.removeElement(listener);
+        
+        synchronized(this.topicIndex) {
+            this.changedKPs.remove(listener);
+            this.unindex(listener);
+        }
     };
 
 
   /*
-   * Prototypical implementation of connection pool for StreamConnections.
-   * Does not work as expected yet.
+   * Connection pool for StreamConnections - delegates to SimpleKEPConnectionPool.
    */
+
+  /**
+   * @return connection pool e.g. to change idle timeout or maximum
+   * number of connections per peer
+   */
+  public SimpleKEPConnectionPool getConnectionPool() {
+    return this.connectionPool;
+  }
   
   /**
    * Reset the connection pool
    */
     @Override
   public void clear() {
-    L.d("Clearing connection pool.", this);
-    this.table.clear();
+    this.connectionPool.clear();
   }
 
     @Override
   public StreamConnection getConnectionByAddress(String address) {
-    /*
-     * Todo: maybe update the Timestamp of this connection
-     */
-    return (StreamConnection) this.table.get(address);
+    return this.connectionPool.getConnectionByAddress(address);
   }
 
     @Override
   public void addConnection(String address, StreamConnection connection) {
-    address = Util.resolveDNtoIPinGCFString(address);
-    this.table.put(address, connection);
-    L.d("Adding connection with address: " + address + " to accounting.", this);
+    this.connectionPool.addConnection(address, connection);
   }
 
-  /**
-   * Return a <code>StreamConnection</code> that has been stored to beong to a certain address.
-   * 
-   * @param tag A Tag representing a communication partner
-   * @return A <code>StreamConnection</code> to that peer.
-   */
     @Override
   public StreamConnection getConnectionByTag(PeerSemanticTag tag) {
-    L.d("Trying to find connection to: " + tag.getName(), this);
-    String[] addresses = tag.getAddresses();
-    if(addresses != null) {
-      for(int i = 0; i < addresses.length; i++) {
-        StreamConnection con = this.getConnectionByAddress(addresses[i]);
-        if(con != null) {
-          return con;
-        }
-      }
-    }
-    return null;
+    return this.connectionPool.getConnectionByTag(tag);
+  }
+
+    @Override
+  public void releaseConnection(StreamConnection con) {
+    this.connectionPool.releaseConnection(con);
+  }
+
+    @Override
+  public boolean leaseConnection(StreamConnection con) throws IOException {
+    return this.connectionPool.leaseConnection(con);
   }
 
     @Override
   public void removeStreamConnection(StreamConnection con) {
-    if(this.table != null) {
-      // Check if the connection is in the table at all
-      Enumeration<String> keys = this.table.keys();
-      // check each key's value
-      while(keys != null && keys.hasMoreElements()) {
-        String key = (String) keys.nextElement();
-        //ROPeerSemanticTag key = (ROPeerSemanticTag) keys.nextElement();
-        StreamConnection storedCon = (StreamConnection) this.table.get(key);
-        if(con.equals(storedCon)) {
-          this.table.remove(key);
-        }
-      }
-    }
+    this.connectionPool.removeStreamConnection(con);
   }
 
     @Override
   public Enumeration<String> getConnectedAddresses() {
-    if(this.table != null) {
-      return table.keys();
-
-    } else {
-      Vector<String> v = new Vector<String>();
-      return v.elements();
-    }
+    return this.connectionPool.getConnectedAddresses();
   }
 
     @Override
@@ -307,6 +467,12 @@ public class SimpleKEPStub extends KEPStub {
   /*
    * Implementing KEPMessageAccounting interface
    */
+    @Override
+  public void setSilenceTableSize(int maxEntries) {
+    this.sentInterestsTable.setMaxEntries(maxEntries);
+    this.sentKnowledgeTable.setMaxEntries(maxEntries);
+  }
+
     @Override
   public void sentInterest(SharkCS interest) {
         /* there are two list of interest for two different purposes.
@@ -320,21 +486,9 @@ public class SimpleKEPStub extends KEPStub {
     }
 
     try {
-      // Create a string representation to be used as a key
-      KnowledgeSerializer ks = KEPMessage.getKnowledgeSerializer(KEPMessage.XML);
-      String key = ks.serializeSharkCS(interest);
-      // Generate timestamp
-      Long timestamp = System.currentTimeMillis();
-
-      // Save key along with timestamp
-      this.messages.put(key, timestamp);
-
+      this.sentInterestsTable.sent(interest, this.silentPeriod);
     } catch (SharkKBException ex) {
-      L.e("Exception while serializing context space:", this);
-      ex.printStackTrace();
-    } catch (SharkNotSupportedException ex) {
-      L.e("Exception while serializing context space:", this);
-      ex.printStackTrace();
+      L.e("Exception while calculating fingerprint of context space: " + ex.getMessage(), this);
     }
   }
 
@@ -351,28 +505,14 @@ public class SimpleKEPStub extends KEPStub {
     }
 
     try {
-      // Create a string representation to be used as a key
-      KnowledgeSerializer ks = KEPMessage.getKnowledgeSerializer(KEPMessage.XML);
-      
       SharkVocabulary context = knowledge.getVocabulary();
       if(context == null) {
           return;
       }
       
-      SharkCS cs = context.asSharkCS();
-      String key = ks.serializeSharkCS(cs);
-      // Generate timestamp
-      Long timestamp = System.currentTimeMillis();
-
-      // Save key along with timestamp
-      this.knowledges.put(key, timestamp);
-
+      this.sentKnowledgeTable.sent(context.asSharkCS(), this.silentPeriod);
     } catch (SharkKBException ex) {
-      L.e("Exception while serializing context space:", this);
-      ex.printStackTrace();
-    } catch (SharkNotSupportedException ex) {
-      L.e("Exception while serializing context space:", this);
-      ex.printStackTrace();
+      L.e("Exception while calculating fingerprint of context space: " + ex.getMessage(), this);
     }
   }
 
@@ -384,39 +524,15 @@ public class SimpleKEPStub extends KEPStub {
     }
 
     try {
-      // Generate a serialized representation to be used as a key in the table.
-      KnowledgeSerializer ks = KEPMessage.getKnowledgeSerializer(KEPMessage.XML);
-      String key = ks.serializeSharkCS(interest);
-
-      // Find out when the interest has been sent last
-      Long timestamp = null;
-      timestamp = this.messages.get(key);
-
-      if(timestamp == null) {
-        // Interest is not inside the silence table. Allowed.
-        return true;
-      }
-
-      Long currentTime = System.currentTimeMillis();
-      Long delta = currentTime - timestamp;
-      // Check if it is still inside the silence period. Return true.
-      if(delta > this.silentPeriod) {
-        // It's not. Remove it from the table.
-        this.messages.remove(key);
-        L.d("Interest is allowed. Silence period is over.", this);
+      if(this.sentInterestsTable.allowed(interest, this.silentPeriod)) {
         return true;
       } else {
         // It is INSIDE the silence period. Return false.
         L.l("Interest is inside silence period. Interest won't be sent.", this);
         return false;
-//        L.d("Silence feature was switched OFF, though", this);
-//        return true;
       }
-
     } catch (SharkKBException ex) {
       L.e("Exceptionin KB while checking message for allowance in message accountine", this);
-    } catch (SharkNotSupportedException ex) {
-      L.e("Exception while checking message for allowance in message accounting", this);
     }
 
     // If we can't find out if the message is allowed for some reasons we send it.
@@ -430,45 +546,21 @@ public class SimpleKEPStub extends KEPStub {
     }
 
     try {
-      // Generate a serialized representation to be used as a key in the table.
-      KnowledgeSerializer ks = KEPMessage.getKnowledgeSerializer(KEPMessage.XML);
-      
       SharkVocabulary context = knowledge.getVocabulary();
       if(context == null) {
           return true; // TODO 
       } 
       
-      SharkCS cs = context.asSharkCS(); // using the context map
-      
-      String key = ks.serializeSharkCS(cs);
-
-      // Find out when the knowledge has been sent last
-      Long timestamp = null;
-      timestamp = this.knowledges.get(key);
-
-      if(timestamp == null) {
-        L.d("Knowledge is not inside the silence table. Allowed.", this);
-        return true;
-      }
-
-      Long currentTime = System.currentTimeMillis();
-      Long delta = currentTime - timestamp;
-      // Check if it is still inside the silence period. Return true.
-      if(delta > this.silentPeriod) {
-        // It's not. Remove it from the table.
-        this.knowledges.remove(key);
-        L.d("Knowledge is allowed. Silence period is over.", this);
+      // using the context map
+      if(this.sentKnowledgeTable.allowed(context.asSharkCS(), this.silentPeriod)) {
         return true;
       } else {
         // It is INSIDE the silence period. Return false.
         L.d("Knowledge is inside silence period. Won't be sent.", this);
         return false;
       }
-
     } catch (SharkKBException ex) {
       L.e("Exceptionin KB while checking message for allowance in message accountine", this);
-    } catch (SharkNotSupportedException ex) {
-      L.e("Exception while checking message for allowance in message accounting", this);
     }
 
     // If we can't find out if the message is allowed for some reasons we send it.
@@ -0,0 +1,201 @@
+package net.sharkfw.kep.format;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import net.sharkfw.kep.KnowledgeReader;
+import net.sharkfw.knowledgeBase.*;
+import net.sharkfw.knowledgeBase.inmemory.InMemoSharkKB;
+import net.sharkfw.protocols.UTF8SharkOutputStream;
+import net.sharkfw.system.Streamer;
+import net.sharkfw.system.Util;
+
+/**
+ * Event handling of knowledge readers. Serializers only parse the parts
+ * of the knowledge - in the order they are written.
+ *
+ * @author thsc
+ */
+abstract class AbstractKnowledgeReader implements KnowledgeReader {
+    private static final int START = 0;
+
+    private int event = START;
+
+    private SharkCS background = null;
+    private ContextPoint cp = null;
+    private Information info = null;
+
+    private int cpsLeft = 0;
+    private int infosLeft = 0;
+    private long contentLeft = 0;
+
+    /**
+     * @return background vocabulary or null
+     */
+    protected abstract SharkCS readBackground() throws IOException, SharkKBException;
+
+    protected abstract int readNumberOfContextPoints() throws IOException, SharkKBException;
+
+    /**
+     * @return context point with coordinates and properties
+     */
+    protected abstract ContextPoint readContextPoint() throws IOException, SharkKBException;
+
+    protected abstract int readNumberOfInformation() throws IOException, SharkKBException;
+
+    /**
+     * Reads properties and content type into info.
+     *
+     * @return content length
+     */
+    protected abstract long readInformation(Information info) throws IOException, SharkKBException;
+
+    /**
+     * @return stream positioned at content of current information
+     */
+    protected abstract InputStream getContentStream();
+
+    @Override
+    public boolean hasNext() {
+        return this.event != END;
+    }
+
+    @Override
+    public int next() throws IOException, SharkKBException {
+        if(this.contentLeft > 0) {
+            // content wasn't taken - drop it
+            this.streamContent(new DroppingOutputStream());
+        }
+
+        switch(this.event) {
+            case START:
+                this.background = this.readBackground();
+                this.cpsLeft = this.readNumberOfContextPoints();
+                this.event = BACKGROUND;
+                return this.event;
+
+            case END:
+                throw new SharkKBException("knowledge already read");
+        }
+
+        if(this.infosLeft > 0) {
+            this.infosLeft--;
+            this.info = InMemoSharkKB.createInMemoInformation();
+            this.contentLeft = this.readInformation(this.info);
+            this.event = INFORMATION;
+            return this.event;
+        }
+
+        this.info = null;
+
+        if(this.cpsLeft > 0) {
+            this.cpsLeft--;
+            this.cp = this.readContextPoint();
+            this.infosLeft = this.readNumberOfInformation();
+            this.event = CONTEXT_POINT;
+            return this.event;
+        }
+
+        this.cp = null;
+        this.event = END;
+        return this.event;
+    }
+
+    @Override
+    public SharkCS getBackground() {
+        return this.background;
+    }
+
+    @Override
+    public ContextPoint getContextPoint() {
+        return this.cp;
+    }
+
+    @Override
+    public Information getInformation() {
+        return this.info;
+    }
+
+    @Override
+    public long getContentLength() {
+        return this.event == INFORMATION ? this.contentLeft : 0;
+    }
+
+    @Override
+    public void streamContent(OutputStream os) throws IOException {
+        if(this.contentLeft <= 0) {
+            return;
+        }
+
+        long len = this.contentLeft;
+        this.contentLeft = 0;
+        Streamer.stream(this.getContentStream(), os,
+                UTF8SharkOutputStream.STREAM_BUFFER_SIZE, len);
+    }
+
+    @Override
+    public void streamContent(Information target) throws IOException {
+        long len = this.contentLeft;
+        this.contentLeft = 0;
+        target.setContent(this.getContentStream(), Math.max(len, 0));
+    }
+
+    @Override
+    public Knowledge readKnowledge() throws IOException, SharkKBException {
+        if(this.event == START) {
+            this.next();
+        }
+
+        InMemoSharkKB target = new InMemoSharkKB();
+        if(this.background != null) {
+            Util.merge(target, this.background);
+        }
+
+        Knowledge k = target.createKnowledge();
+
+        ContextPoint targetCP = null;
+        while(this.hasNext()) {
+            switch(this.next()) {
+                case CONTEXT_POINT:
+                    ContextCoordinates co = this.cp.getContextCoordinates();
+                    co = target.createContextCoordinates(co.getTopic(),
+                            co.getOriginator(), co.getPeer(), co.getRemotePeer(),
+                            co.getTime(), co.getLocation(), co.getDirection());
+
+                    targetCP = InMemoSharkKB.createInMemoContextPoint(co);
+                    Util.copyPropertiesFromPropertyHolderToPropertyHolder(this.cp, targetCP);
+                    k.addContextPoint(targetCP);
+                    break;
+
+                case INFORMATION:
+                    Information targetInfo = targetCP.addInformation();
+                    Util.copyPropertiesFromPropertyHolderToPropertyHolder(this.info, targetInfo);
+
+                    String type = this.info.getContentType();
+                    if(type != null) {
+                        targetInfo.setContentType(type);
+                    }
+
+                    this.streamContent(targetInfo);
+                    break;
+            }
+        }
+
+        return k;
+    }
+
+    @Override
+    public void skip() throws IOException, SharkKBException {
+        while(this.hasNext()) {
+            this.next();
+        }
+    }
+
+    private static class DroppingOutputStream extends OutputStream {
+        @Override
+        public void write(int b) { }
+
+        @Override
+        public void write(byte[] b, int off, int len) { }
+    }
+}
@@ -0,0 +1,900 @@
+package net.sharkfw.kep.format;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UnsupportedEncodingException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Enumeration;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+
+import net.sharkfw.kep.KEPMessage;
+import net.sharkfw.kep.KnowledgeReader;
+import net.sharkfw.kep.KnowledgeSerializer;
+import net.sharkfw.knowledgeBase.*;
+import net.sharkfw.knowledgeBase.inmemory.*;
+import net.sharkfw.protocols.SharkInputStream;
+import net.sharkfw.protocols.SharkOutputStream;
+
+/**
+ * Compact binary alternative to XMLSerializer. Knowledge and context spaces
+ * are written with the same structure as in XML but without any markup:
+ *
+ * <ul>
+ * <li>numbers and lengths are written as varints</li>
+ * <li>each string (names, SIs, addresses, property names and values) is
+ * written once per message. Later occurrences refer to the first one by
+ * its ordinal.</li>
+ * <li>each tag is written once per message. Coordinates and sets refer to
+ * already written tags by ordinal.</li>
+ * </ul>
+ *
+ * Structural data are buffered and written in segments (varint length +
+ * bytes). A segment ends where information content is streamed or the
+ * message ends. Thus, the reader fetches a whole segment with a single read
+ * and never consumes bytes beyond the serialized knowledge.
+ *
+ * String based methods (serializeSharkCS etc.) are used to store context
+ * spaces and still produce XML.
+ *
+ * @see KEPMessage#BINARY
+ * @author thsc
+ */
+public class BinarySerializer implements KnowledgeSerializer {
+
+    /** version of the binary format, first byte of each message */
+    private static final int FORMAT_VERSION = 1;
+
+    // tag kinds - each has its own ordinal table
+    private static final int PLAIN = 0;
+    private static final int PEER = 1;
+    private static final int TIME = 2;
+    private static final int SPATIAL = 3;
+    private static final int KINDS = 4;
+
+    // tag and string references
+    private static final int REF_NULL = 0;
+    private static final int REF_NEW = 1;
+    private static final int REF_OFFSET = 2;
+
+    /* structural data of a message must not exceed that size - lengths
+     * are sent by peers and are not trusted beyond it */
+    static final int MAX_SEGMENT_LENGTH = 64 * 1024 * 1024;
+    private static final int SEGMENT_CHUNK = 64 * 1024;
+
+    private final XMLSerializer xmlSerializer = new XMLSerializer();
+
+    @Override
+    public void write(SharkCS interest, SharkOutputStream os)
+            throws IOException, SharkKBException {
+
+        BinaryOut out = new BinaryOut(os.getOutputStream());
+        out.writeVarInt(FORMAT_VERSION);
+        this.writeSharkCS(out, interest);
+        out.flush();
+    }
+
+    @Override
+    public SharkCS parseSharkCS(SharkKB target, SharkInputStream is)
+            throws IOException, SharkKBException {
+
+        BinaryIn in = new BinaryIn(is.getInputStream());
+        this.readVersion(in);
+        return this.readSharkCS(in);
+    }
+
+    @Override
+    public SharkCS parseSharkCS(SharkInputStream is) throws IOException, SharkKBException {
+        return this.parseSharkCS(null, is);
+    }
+
+    @Override
+    public void write(Knowledge k, SharkOutputStream os) throws IOException, SharkKBException {
+        if(k == null || os == null) {
+            throw new SharkKBException("knowledge or outputstream not set - fatal");
+        }
+
+        OutputStream target = os.getOutputStream();
+        BinaryOut out = new BinaryOut(target);
+        out.writeVarInt(FORMAT_VERSION);
+
+        SharkVocabulary context = k.getVocabulary();
+        if(context == null) {
+            context = new InMemoSharkKB();
+        }
+
+        this.writeSharkCS(out, context.asSharkCS());
+
+        int number = k.getNumberOfContextPoints();
+        out.writeVarInt(number);
+
+        for (int i = 0; i < number; i++) {
+            ContextPoint cp = k.getCP(i);
+            this.writeCoordinates(out, cp.getContextCoordinates());
+            this.writeProperties(out, cp);
+
+            out.writeVarInt(cp.getNumberInformation());
+
+            Enumeration<Information> infoEnum = cp.enumInformation();
+            if(infoEnum == null) {
+                continue;
+            }
+
+            while (infoEnum.hasMoreElements()) {
+                Information info = infoEnum.nextElement();
+                this.writeProperties(out, info);
+
+                long len = info.getContentLength();
+                out.writeVarLong(len);
+                out.writeString(info.getContentType());
+
+                if (len > 0) {
+                    // structure first - content follows directly on stream
+                    out.flush();
+                    info.streamContent(target);
+                }
+            }
+        }
+
+        out.flush();
+    }
+
+    @Override
+    public Knowledge parseKnowledge(SharkInputStream is) throws IOException, SharkKBException {
+        return this.createKnowledgeReader(is).readKnowledge();
+    }
+
+    @Override
+    public KnowledgeReader createKnowledgeReader(SharkInputStream is) {
+        return new BinaryKnowledgeReader(new BinaryIn(is.getInputStream()));
+    }
+
+    /**
+     * Reads knowledge part by part as written by write(Knowledge, SharkOutputStream)
+     */
+    private class BinaryKnowledgeReader extends AbstractKnowledgeReader {
+        private final BinaryIn in;
+
+        BinaryKnowledgeReader(BinaryIn in) {
+            this.in = in;
+        }
+
+        @Override
+        protected SharkCS readBackground() throws IOException, SharkKBException {
+            BinarySerializer.this.readVersion(this.in);
+            return BinarySerializer.this.readSharkCS(this.in);
+        }
+
+        @Override
+        protected int readNumberOfContextPoints() throws IOException {
+            return this.in.readNumber();
+        }
+
+        @Override
+        protected ContextPoint readContextPoint() throws IOException, SharkKBException {
+            ContextCoordinates co = BinarySerializer.this.readCoordinates(this.in);
+            ContextPoint cp = InMemoSharkKB.createInMemoContextPoint(co);
+            BinarySerializer.this.readProperties(this.in, cp);
+
+            return cp;
+        }
+
+        @Override
+        protected int readNumberOfInformation() throws IOException {
+            return this.in.readNumber();
+        }
+
+        @Override
+        protected long readInformation(Information info) throws IOException, SharkKBException {
+            BinarySerializer.this.readProperties(this.in, info);
+
+            long len = this.in.readVarLong();
+            if(len < 0) {
+                throw new IOException("malformed binary knowledge: content length " + len);
+            }
+
+            String type = this.in.readString();
+            if(type != null) {
+                info.setContentType(type);
+            }
+
+            return len;
+        }
+
+        @Override
+        protected InputStream getContentStream() {
+            return this.in.getInputStream();
+        }
+    }
+
+    private void readVersion(BinaryIn in) throws IOException, SharkKBException {
+        int version = in.readVarInt();
+        if(version != FORMAT_VERSION) {
+            throw new SharkKBException("unsupported binary format version: " + version);
+        }
+    }
+
+    ////////////////////////////////////////////////////////////////////////
+    //                          context space                             //
+    ////////////////////////////////////////////////////////////////////////
+
+    private void writeSharkCS(BinaryOut out, SharkCS cs) throws IOException, SharkKBException {
+        if(cs == null) {
+            out.writeVarInt(0);
+            return;
+        }
+
+        out.writeVarInt(1);
+        this.writeSTSet(out, cs.getTopics(), PLAIN);
+        this.writeTag(out, cs.getOriginator(), PEER);
+        this.writeSTSet(out, cs.getPeers(), PEER);
+        this.writeSTSet(out, cs.getRemotePeers(), PEER);
+        this.writeSTSet(out, cs.getLocations(), SPATIAL);
+        this.writeSTSet(out, cs.getTimes(), TIME);
+        out.writeVarInt(cs.getDirection());
+    }
+
+    private SharkCS readSharkCS(BinaryIn in) throws IOException, SharkKBException {
+        if(in.readVarInt() == 0) {
+            return null;
+        }
+
+        InMemoSemanticNet topics = new InMemoSemanticNet();
+        if(!this.readSTSet(in, topics, PLAIN)) {
+            topics = null;
+        }
+
+        PeerSemanticTag originator = (PeerSemanticTag) this.readTag(in, PEER);
+
+        PeerSemanticNet peers = InMemoSharkKB.createInMemoPeerSemanticNet();
+        if(!this.readSTSet(in, peers, PEER)) {
+            peers = null;
+        }
+
+        PeerSemanticNet remotePeers = InMemoSharkKB.createInMemoPeerSemanticNet();
+        if(!this.readSTSet(in, remotePeers, PEER)) {
+            remotePeers = null;
+        }
+
+        SpatialSTSet locations = InMemoSharkKB.createInMemoSpatialSTSet();
+        if(!this.readSTSet(in, locations, SPATIAL)) {
+            locations = null;
+        }
+
+        TimeSTSet times = InMemoSharkKB.createInMemoTimeSTSet();
+        if(!this.readSTSet(in, times, TIME)) {
+            times = null;
+        }
+
+        int direction = in.readVarInt();
+        if(direction != SharkCS.DIRECTION_IN &&
+                direction != SharkCS.DIRECTION_INOUT &&
+                direction != SharkCS.DIRECTION_OUT &&
+                direction != SharkCS.DIRECTION_NOTHING) {
+            direction = SharkCS.DIRECTION_NOTHING;
+        }
+
+        PeerSTSet peersSet = null, remotePeersSet = null;
+        if(peers != null) { peersSet = peers.asPeerSTSet(); }
+        if(remotePeers != null) { remotePeersSet = remotePeers.asPeerSTSet(); }
+
+        return InMemoSharkKB.createInMemoInterest(topics, originator,
+            peersSet, remotePeersSet, times, locations, direction);
+    }
+
+    private void writeCoordinates(BinaryOut out, ContextCoordinates co)
+            throws IOException, SharkKBException {
+
+        this.writeTag(out, co.getTopic(), PLAIN);
+        this.writeTag(out, co.getOriginator(), PEER);
+        this.writeTag(out, co.getPeer(), PEER);
+        this.writeTag(out, co.getRemotePeer(), PEER);
+        this.writeTag(out, co.getTime(), TIME);
+        this.writeTag(out, co.getLocation(), SPATIAL);
+        out.writeVarInt(co.getDirection());
+    }
+
+    private ContextCoordinates readCoordinates(BinaryIn in)
+            throws IOException, SharkKBException {
+
+        SemanticTag topic = this.readTag(in, PLAIN);
+        PeerSemanticTag originator = (PeerSemanticTag) this.readTag(in, PEER);
+        PeerSemanticTag peer = (PeerSemanticTag) this.readTag(in, PEER);
+        PeerSemanticTag remotePeer = (PeerSemanticTag) this.readTag(in, PEER);
+        TimeSemanticTag time = (TimeSemanticTag) this.readTag(in, TIME);
+        SpatialSemanticTag location = (SpatialSemanticTag) this.readTag(in, SPATIAL);
+        int direction = in.readVarInt();
+
+        return InMemoSharkKB.createInMemoContextCoordinates(topic, originator, 
+                peer, remotePeer, time, location, direction);
+    }
+
+    ////////////////////////////////////////////////////////////////////////
+    //                             st sets                                //
+    ////////////////////////////////////////////////////////////////////////
+
+    /**
+     * Writes number of tags, the tags and relations (semantic net or
+     * taxonomy). Empty sets are written as zero tags.
+     */
+    private void writeSTSet(BinaryOut out, STSet stset, int kind)
+            throws IOException, SharkKBException {
+
+        Enumeration<SemanticTag> tagEnum = null;
+        if(stset != null && !stset.isEmpty()) {
+            tagEnum = stset.tags();
+        }
+
+        if(tagEnum == null) {
+            out.writeVarInt(0);
+            return;
+        }
+
+        ArrayList<SemanticTag> tags = new ArrayList<SemanticTag>();
+        while(tagEnum.hasMoreElements()) {
+            tags.add(tagEnum.nextElement());
+        }
+
+        out.writeVarInt(tags.size());
+        if(tags.isEmpty()) {
+            return;
+        }
+
+        for(int i = 0; i < tags.size(); i++) {
+            this.writeTag(out, tags.get(i), kind);
+        }
+
+        // relations: predicate name (null means super tag), source si, target si
+        ArrayList<String> relations = new ArrayList<String>();
+        if(stset instanceof SemanticNet || stset instanceof Taxonomy) {
+            for(int i = 0; i < tags.size(); i++) {
+                BinarySerializer.collectRelations(tags.get(i), relations);
+            }
+        }
+
+        out.writeVarInt(relations.size() / 3);
+        for(int i = 0; i < relations.size(); i++) {
+            out.writeString(relations.get(i));
+        }
+    }
+
+    private static void collectRelations(SemanticTag tag, ArrayList<String> relations) {
+        String[] sSIs = tag.getSI();
+        if(sSIs == null || sSIs.length == 0) {
+            return;
+        }
+
+        if(tag instanceof SNSemanticTag) {
+            SNSemanticTag snTag = (SNSemanticTag) tag;
+            Enumeration<String> pNameEnum = snTag.predicateNames();
+            if(pNameEnum == null) {
+                return;
+            }
+
+            while(pNameEnum.hasMoreElements()) {
+                String predicateName = pNameEnum.nextElement();
+                Enumeration<SNSemanticTag> targetEnum = snTag.targetTags(predicateName);
+                if(targetEnum == null) {
+                    continue;
+                }
+
+                while(targetEnum.hasMoreElements()) {
+                    String[] tSIs = targetEnum.nextElement().getSI();
+                    if(tSIs == null || tSIs.length == 0) {
+                        continue;
+                    }
+
+                    relations.add(predicateName);
+                    relations.add(sSIs[0]);
+                    relations.add(tSIs[0]);
+                }
+            }
+        } else if(tag instanceof TXSemanticTag) {
+            TXSemanticTag superTag = ((TXSemanticTag) tag).getSuperTag();
+            if(superTag == null) {
+                return;
+            }
+
+            String[] tSIs = superTag.getSI();
+            if(tSIs == null || tSIs.length == 0) {
+                return;
+            }
+
+            relations.add(null);
+            relations.add(sSIs[0]);
+            relations.add(tSIs[0]);
+        }
+    }
+
+    /**
+     * @return false if set was empty
+     */
+    private boolean readSTSet(BinaryIn in, STSet target, int kind)
+            throws IOException, SharkKBException {
+
+        int number = in.readCount();
+        if(number == 0) {
+            return false;
+        }
+
+        for(int i = 0; i < number; i++) {
+            this.readTag(in, kind, target);
+        }
+
+        int numberRelations = in.readCount();
+        for(int i = 0; i < numberRelations; i++) {
+            String predicateName = in.readString();
+            String sourceSI = in.readString();
+            String targetSI = in.readString();
+
+            SemanticTag source = target.getSemanticTag(sourceSI);
+            SemanticTag targetTag = target.getSemanticTag(targetSI);
+            if(source == null || targetTag == null) {
+                continue;
+            }
+
+            if(predicateName != null) {
+                if(source instanceof SNSemanticTag && targetTag instanceof SNSemanticTag) {
+                    ((SNSemanticTag) source).setPredicate(predicateName, (SNSemanticTag) targetTag);
+                }
+            } else {
+                if(source instanceof TXSemanticTag && targetTag instanceof TXSemanticTag) {
+                    ((TXSemanticTag) source).move((TXSemanticTag) targetTag);
+                }
+            }
+        }
+
+        return true;
+    }
+
+    ////////////////////////////////////////////////////////////////////////
+    //                               tags                                 //
+    ////////////////////////////////////////////////////////////////////////
+
+    /**
+     * Writes a reference to a tag which was already written or the
+     * tag itself. Null (any) is a reference as well.
+     */
+    private void writeTag(BinaryOut out, SemanticTag tag, int kind)
+            throws IOException, SharkKBException {
+
+        if(tag == null) {
+            out.writeVarInt(REF_NULL);
+            return;
+        }
+
+        Integer ordinal = out.tags.get(kind).get(tag);
+        if(ordinal != null) {
+            out.writeVarInt(REF_OFFSET + ordinal.intValue());
+            return;
+        }
+
+        out.tags.get(kind).put(tag, out.tags.get(kind).size());
+        out.writeVarInt(REF_NEW);
+
+        out.writeString(tag.getName());
+        out.writeStrings(tag.getSI());
+
+        if(kind == PEER) {
+            String[] addresses = null;
+            if(tag instanceof PeerSemanticTag) {
+                addresses = ((PeerSemanticTag) tag).getAddresses();
+            }
+            out.writeStrings(addresses);
+        }
+
+        if(kind == TIME) {
+            long from = TimeSemanticTag.FIRST_MILLISECOND_EVER;
+            long duration = TimeSemanticTag.FOREVER;
+            if(tag instanceof TimeSemanticTag) {
+                from = ((TimeSemanticTag) tag).getFrom();
+                duration = ((TimeSemanticTag) tag).getDuration();
+            }
+            out.writeVarLong(from);
+            out.writeVarLong(duration);
+        }
+
+        this.writeProperties(out, tag);
+    }
+
+    private SemanticTag readTag(BinaryIn in, int kind) throws IOException, SharkKBException {
+        return this.readTag(in, kind, null);
+    }
+
+    /**
+     * Reads a tag reference or definition.
+     *
+     * @param targetSet new tags are created inside this set and referenced
+     * tags are merged into it. Tags are created stand alone if null.
+     */
+    private SemanticTag readTag(BinaryIn in, int kind, STSet targetSet)
+            throws IOException, SharkKBException {
+
+        int ref = in.readVarInt();
+        if(ref == REF_NULL) {
+            return null;
+        }
+
+        if(ref >= REF_OFFSET) {
+            int ordinal = ref - REF_OFFSET;
+            if(ordinal >= in.tags.get(kind).size()) {
+                throw new SharkKBException("malformed binary knowledge: unknown tag reference " + ordinal);
+            }
+
+            SemanticTag tag = in.tags.get(kind).get(ordinal);
+            if(targetSet != null) {
+                targetSet.merge(tag);
+            }
+
+            return tag;
+        }
+
+        String name = in.readString();
+        String[] sis = in.readStrings();
+
+        SemanticTag tag;
+        switch(kind) {
+            case PEER:
+                String[] addresses = in.readStrings();
+                if(targetSet != null) {
+                    tag = ((PeerSemanticNet) targetSet).createSemanticTag(name, sis, addresses);
+                } else {
+                    tag = InMemoSharkKB.createInMemoPeerSemanticTag(name, sis, addresses);
+                }
+                break;
+
+            case TIME:
+                long from = in.readVarLong();
+                long duration = in.readVarLong();
+                if(targetSet != null) {
+                    tag = ((TimeSTSet) targetSet).createTimeSemanticTag(from, duration);
+                } else {
+                    tag = InMemoSharkKB.createInMemoTimeSemanticTag(from, duration);
+                }
+                break;
+
+            case SPATIAL:
+                // geometry is restored from properties
+                if(targetSet != null) {
+                    tag = ((SpatialSTSet) targetSet).createSpatialSemanticTag(name, sis, null);
+                } else {
+                    tag = InMemoSharkKB.createInMemoSpatialSemanticTag(name, sis, null);
+                }
+                break;
+
+            default:
+                if(targetSet != null) {
+                    tag = targetSet.createSemanticTag(name, sis);
+                } else {
+                    tag = InMemoSharkKB.createInMemoSemanticTag(name, sis);
+                }
+        }
+
+        this.readProperties(in, tag);
+        in.tags.get(kind).add(tag);
+
+        return tag;
+    }
+
+    ////////////////////////////////////////////////////////////////////////
+    //                            properties                              //
+    ////////////////////////////////////////////////////////////////////////
+
+    private void writeProperties(BinaryOut out, SystemPropertyHolder target)
+            throws IOException, SharkKBException {
+
+        Enumeration<String> propNamesEnum = null;
+        if(target != null) {
+            propNamesEnum = target.propertyNames(false);
+        }
+
+        if(propNamesEnum == null || !propNamesEnum.hasMoreElements()) {
+            out.writeVarInt(0);
+            return;
+        }
+
+        ArrayList<String> names = new ArrayList<String>();
+        while(propNamesEnum.hasMoreElements()) {
+            names.add(propNamesEnum.nextElement());
+        }
+
+        out.writeVarInt(names.size());
+        for(int i = 0; i < names.size(); i++) {
+            String name = names.get(i);
+            out.writeString(name);
+            out.writeString(target.getProperty(name));
+        }
+    }
+
+    private void readProperties(BinaryIn in, SystemPropertyHolder target)
+            throws IOException, SharkKBException {
+
+        int number = in.readCount();
+        for(int i = 0; i < number; i++) {
+            String name = in.readString();
+            String value = in.readString();
+            if(name != null && target != null) {
+                target.setProperty(name, value);
+            }
+        }
+    }
+
+    ////////////////////////////////////////////////////////////////////////
+    //                   string based - kept in XML                       //
+    ////////////////////////////////////////////////////////////////////////
+
+    @Override
+    public String serializeSTSet(STSet stset) throws SharkKBException {
+        return this.xmlSerializer.serializeSTSet(stset);
+    }
+
+    @Override
+    public boolean deserializeSTSet(STSet target, String serializedSTSet) throws SharkKBException {
+        return this.xmlSerializer.deserializeSTSet(target, serializedSTSet);
+    }
+
+    @Override
+    public String serializeSharkCS(SharkCS sharkCS) throws SharkKBException {
+        return this.xmlSerializer.serializeSharkCS(sharkCS);
+    }
+
+    @Override
+    public SharkCS deserializeSharkCS(String serializedSharkCS) throws SharkKBException {
+        return this.xmlSerializer.deserializeSharkCS(serializedSharkCS);
+    }
+
+    ////////////////////////////////////////////////////////////////////////
+    //                         stream helper                              //
+    ////////////////////////////////////////////////////////////////////////
+
+    /**
+     * Buffers structural data and writes them as segments. Keeps strings
+     * and tags which are already written in this message.
+     */
+    private static class BinaryOut {
+        private final OutputStream os;
+        private final ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+
+        private final HashMap<String, Integer> strings = new HashMap<String, Integer>();
+
+        private final ArrayList<IdentityHashMap<SemanticTag, Integer>> tags =
+                new ArrayList<IdentityHashMap<SemanticTag, Integer>>(KINDS);
+
+        BinaryOut(OutputStream os) {
+            this.os = os;
+            for(int i = 0; i < KINDS; i++) {
+                this.tags.add(new IdentityHashMap<SemanticTag, Integer>());
+            }
+        }
+
+        void writeVarInt(int value) {
+            this.writeVarLong(value & 0xFFFFFFFFL);
+        }
+
+        /** unsigned varint - negative values take ten bytes */
+        void writeVarLong(long value) {
+            BinarySerializer.writeVarLong(this.buffer, value);
+        }
+
+        void writeString(String s) throws UnsupportedEncodingException {
+            if(s == null) {
+                this.writeVarInt(REF_NULL);
+                return;
+            }
+
+            Integer ordinal = this.strings.get(s);
+            if(ordinal != null) {
+                this.writeVarInt(REF_OFFSET + ordinal.intValue());
+                return;
+            }
+
+            this.strings.put(s, this.strings.size());
+            this.writeVarInt(REF_NEW);
+
+            byte[] bytes = s.getBytes(KEPMessage.ENCODING);
+            this.writeVarInt(bytes.length);
+            this.buffer.write(bytes, 0, bytes.length);
+        }
+
+        void writeStrings(String[] s) throws UnsupportedEncodingException {
+            if(s == null) {
+                this.writeVarInt(0);
+                return;
+            }
+
+            this.writeVarInt(s.length);
+            for(int i = 0; i < s.length; i++) {
+                this.writeString(s[i]);
+            }
+        }
+
+        /**
+         * Writes buffered data as segment. Nothing is written if the
+         * buffer is empty.
+         */
+        void flush() throws IOException {
+            if(this.buffer.size() == 0) {
+                return;
+            }
+
+            if(this.buffer.size() > MAX_SEGMENT_LENGTH) {
+                throw new IOException("binary segment exceeds " + MAX_SEGMENT_LENGTH
+                        + " bytes - knowledge too large for binary format");
+            }
+
+            ByteArrayOutputStream len = new ByteArrayOutputStream(5);
+            BinarySerializer.writeVarLong(len, this.buffer.size());
+            len.writeTo(this.os);
+            this.buffer.writeTo(this.os);
+            this.buffer.reset();
+        }
+    }
+
+    /**
+     * Reads segments written by BinaryOut. A new segment is read from
+     * stream when the current one is consumed.
+     */
+    private static class BinaryIn {
+        private final InputStream is;
+        private byte[] segment = new byte[0];
+        private int pos = 0;
+
+        private final ArrayList<String> strings = new ArrayList<String>();
+
+        private final ArrayList<ArrayList<SemanticTag>> tags =
+                new ArrayList<ArrayList<SemanticTag>>(KINDS);
+
+        BinaryIn(InputStream is) {
+            this.is = is;
+            for(int i = 0; i < KINDS; i++) {
+                this.tags.add(new ArrayList<SemanticTag>());
+            }
+        }
+
+        InputStream getInputStream() {
+            return this.is;
+        }
+
+        private int readByte() throws IOException {
+            if(this.pos == this.segment.length) {
+                this.nextSegment();
+            }
+
+            return this.segment[this.pos++] & 0xFF;
+        }
+
+        private void nextSegment() throws IOException {
+            // segment length is read directly from stream
+            long len = 0;
+            int shift = 0;
+            int b;
+            do {
+                b = this.is.read();
+                if(b < 0) {
+                    throw new IOException("Stream ended.");
+                }
+                len |= (long) (b & 0x7F) << shift;
+                shift += 7;
+            } while((b & 0x80) != 0);
+
+            if(len <= 0 || len > MAX_SEGMENT_LENGTH) {
+                throw new IOException("malformed binary segment length: " + len);
+            }
+
+            /* length is sent by peer - buffer grows with data actually 
+             * received instead of trusting it */
+            byte[] buffer = new byte[(int) Math.min(len, SEGMENT_CHUNK)];
+            int read = 0;
+            while(read < len) {
+                if(read == buffer.length) {
+                    buffer = Arrays.copyOf(buffer, (int) Math.min(len, 2L * buffer.length));
+                }
+
+                int r = this.is.read(buffer, read, buffer.length - read);
+                if(r < 0) {
+                    throw new IOException("Stream ended.");
+                }
+                read += r;
+            }
+
+            this.segment = buffer;
+            this.pos = 0;
+        }
+
+        int readVarInt() throws IOException {
+            return (int) this.readVarLong();
+        }
+
+        long readVarLong() throws IOException {
+            long value = 0;
+            int shift = 0;
+            int b;
+            do {
+                if(shift > 63) {
+                    throw new IOException("malformed varint");
+                }
+                b = this.readByte();
+                value |= (long) (b & 0x7F) << shift;
+                shift += 7;
+            } while((b & 0x80) != 0);
+
+            return value;
+        }
+
+        String readString() throws IOException {
+            int ref = this.readVarInt();
+            if(ref == REF_NULL) {
+                return null;
+            }
+
+            if(ref >= REF_OFFSET) {
+                int ordinal = ref - REF_OFFSET;
+                if(ordinal >= this.strings.size()) {
+                    throw new IOException("malformed binary knowledge: unknown string reference " + ordinal);
+                }
+                return this.strings.get(ordinal);
+            }
+
+            int len = this.readVarInt();
+            if(len < 0 || len > this.segment.length - this.pos) {
+                throw new IOException("malformed binary knowledge: string length " + len);
+            }
+
+            String s = new String(this.segment, this.pos, len, KEPMessage.ENCODING);
+            this.pos += len;
+            this.strings.add(s);
+
+            return s;
+        }
+
+        /**
+         * Reads number of elements which follow in this segment. Each
+         * takes at least a byte - larger numbers are malformed.
+         */
+        int readCount() throws IOException {
+            int number = this.readVarInt();
+            if(number < 0 || number > this.segment.length - this.pos) {
+                throw new IOException("malformed binary knowledge: number of elements " + number);
+            }
+
+            return number;
+        }
+
+        /**
+         * Reads number of elements which can span segments.
+         */
+        int readNumber() throws IOException {
+            int number = this.readVarInt();
+            if(number < 0) {
+                throw new IOException("malformed binary knowledge: negative number " + number);
+            }
+
+            return number;
+        }
+
+        String[] readStrings() throws IOException {
+            int number = this.readCount();
+            if(number == 0) {
+                return null;
+            }
+
+            String[] s = new String[number];
+            for(int i = 0; i < number; i++) {
+                s[i] = this.readString();
+            }
+
+            return s;
+        }
+    }
+
+    private static void writeVarLong(ByteArrayOutputStream target, long value) {
+        while((value & ~0x7FL) != 0) {
+            target.write((int) ((value & 0x7F) | 0x80));
+            value >>>= 7;
+        }
+        target.write((int) value);
+    }
+}
@@ -0,0 +1,158 @@
+package net.sharkfw.kep.format;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Enumeration;
+import net.sharkfw.kep.KnowledgeReader;
+import net.sharkfw.knowledgeBase.*;
+import net.sharkfw.knowledgeBase.inmemory.InMemoKnowledge;
+
+/**
+ * Knowledge reader on already parsed knowledge. It allows handling
+ * knowledge objects and streamed knowledge alike.
+ *
+ * @author thsc
+ */
+public class KnowledgeObjectReader implements KnowledgeReader {
+    private final Knowledge k;
+
+    private Enumeration<ContextPoint> cpEnum = null;
+    private Enumeration<Information> infoEnum = null;
+
+    private int event = 0;
+    private SharkCS background = null;
+    private ContextPoint cp = null;
+    private Information info = null;
+    private boolean contentStreamed = false;
+
+    public KnowledgeObjectReader(Knowledge k) {
+        this.k = k;
+    }
+
+    @Override
+    public boolean hasNext() {
+        return this.event != END;
+    }
+
+    @Override
+    public int next() throws IOException, SharkKBException {
+        if(this.event == END) {
+            throw new SharkKBException("knowledge already read");
+        }
+
+        this.contentStreamed = false;
+
+        if(this.event == 0) {
+            SharkVocabulary vocabulary = this.k.getVocabulary();
+            if(vocabulary != null) {
+                this.background = vocabulary.asSharkCS();
+            }
+
+            this.cpEnum = this.k.contextPoints();
+            this.event = BACKGROUND;
+            return this.event;
+        }
+
+        if(this.infoEnum != null && this.infoEnum.hasMoreElements()) {
+            this.info = this.infoEnum.nextElement();
+            this.event = INFORMATION;
+            return this.event;
+        }
+
+        this.info = null;
+
+        if(this.cpEnum != null && this.cpEnum.hasMoreElements()) {
+            this.cp = this.cpEnum.nextElement();
+            this.infoEnum = this.cp.enumInformation();
+            this.event = CONTEXT_POINT;
+            return this.event;
+        }
+
+        this.cp = null;
+        this.infoEnum = null;
+        this.event = END;
+        return this.event;
+    }
+
+    @Override
+    public SharkCS getBackground() {
+        return this.background;
+    }
+
+    @Override
+    public ContextPoint getContextPoint() {
+        return this.cp;
+    }
+
+    @Override
+    public Information getInformation() {
+        return this.info;
+    }
+
+    @Override
+    public long getContentLength() {
+        if(this.info == null || this.contentStreamed) {
+            return 0;
+        }
+
+        return this.info.getContentLength();
+    }
+
+    @Override
+    public void streamContent(OutputStream os) throws IOException {
+        if(this.info == null || this.contentStreamed) {
+            return;
+        }
+
+        this.contentStreamed = true;
+        this.info.streamContent(os);
+    }
+
+    @Override
+    public void streamContent(Information target) throws IOException {
+        if(this.info == null || this.contentStreamed) {
+            return;
+        }
+
+        this.contentStreamed = true;
+        try {
+            InputStream is = this.info.getInputStream();
+            try {
+                target.setContent(is, this.info.getContentLength());
+            }
+            finally {
+                is.close();
+            }
+        }
+        catch(SharkKBException e) {
+            throw new IOException(e.getMessage());
+        }
+    }
+
+    @Override
+    public Knowledge readKnowledge() throws IOException, SharkKBException {
+        if(this.event == 0) {
+            this.next();
+            return this.k;
+        }
+
+        Knowledge rest = new InMemoKnowledge(this.k.getVocabulary());
+
+        // information of current context point are already gone
+        while(this.hasNext()) {
+            if(this.next() == CONTEXT_POINT) {
+                rest.addContextPoint(this.cp);
+            }
+        }
+
+        return rest;
+    }
+
+    @Override
+    public void skip() throws IOException, SharkKBException {
+        while(this.hasNext()) {
+            this.next();
+        }
+    }
+}
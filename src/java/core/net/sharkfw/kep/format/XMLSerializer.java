@@ -1,22 +1,20 @@
 package net.sharkfw.kep.format;
 
 import java.io.IOException;
-import java.io.OutputStream;
+import java.io.InputStream;
 import java.util.ArrayList;
 import java.util.Enumeration;
 import java.util.Iterator;
 import java.util.List;
 
 import net.sharkfw.system.TimeLong;
+import net.sharkfw.kep.KnowledgeReader;
 import net.sharkfw.kep.KnowledgeSerializer;
 import net.sharkfw.knowledgeBase.*;
 import net.sharkfw.knowledgeBase.inmemory.*;
 import net.sharkfw.protocols.SharkInputStream;
 import net.sharkfw.protocols.SharkOutputStream;
-import net.sharkfw.protocols.UTF8SharkOutputStream;
 import net.sharkfw.system.L;
-import net.sharkfw.system.Streamer;
-import net.sharkfw.system.Util;
 
 
 /**
@@ -1016,7 +1014,9 @@ public class XMLSerializer implements KnowledgeSerializer {
         SharkCS background = context.asSharkCS();
         String serialBackground = this.serializeSharkCS(background);
 
-        L.d("send serialBackground: " + serialBackground, this);
+        if(L.isDebugEnabled()) {
+            L.d("send serialBackground: " + serialBackground, this);
+        }
         os.write(serialBackground);
         int number = k.getNumberOfContextPoints();
         // pruefe ob cps vorhanden moeglich
@@ -1028,13 +1028,17 @@ public class XMLSerializer implements KnowledgeSerializer {
             ContextPoint cp = k.getCP(i);
             ContextCoordinates co = cp.getContextCoordinates();
             String serialCoordinates = this.serializeSharkCS(co);
-            L.d("send serialCoordinates: " + serialCoordinates, this);
+            if(L.isDebugEnabled()) {
+                L.d("send serialCoordinates: " + serialCoordinates, this);
+            }
 
             os.write(serialCoordinates);
 
             // serialize cp properties
             String cpProperties = this.serializeProperties(cp);
-            L.d("send cpProperties: " + cpProperties, this);
+            if(L.isDebugEnabled()) {
+                L.d("send cpProperties: " + cpProperties, this);
+            }
             if(cpProperties != null) {
                 os.write(cpProperties);
             }
@@ -1048,7 +1052,9 @@ public class XMLSerializer implements KnowledgeSerializer {
                 while (infoEnum.hasMoreElements()) {
                     Information info = infoEnum.nextElement();
                     String properties = this.serializeProperties(info);
-                    L.d("send properties: " + properties, this);
+                    if(L.isDebugEnabled()) {
+                        L.d("send properties: " + properties, this);
+                    }
                     if(properties != null) {
                         os.write(properties);
                     }
@@ -1079,73 +1085,108 @@ public class XMLSerializer implements KnowledgeSerializer {
             throws IOException, SharkKBException {
         L.d("XMLSerializer starts parsing knowledge with stream ", is);
         
-        InMemoSharkKB target = new InMemoSharkKB();
-        String serialBg = is.readUTF8();
-        L.d("read background knowledge: " + serialBg, this);
-        
-        SharkCS background = this.deserializeSharkCS(serialBg);
-        L.d("serialized background", this);
-        
-        // background can be null
-        if(background != null) {
-            Util.merge(target, background);
+        return this.createKnowledgeReader(is).readKnowledge();
+    }
+
+    @Override
+    public KnowledgeReader createKnowledgeReader(SharkInputStream is) {
+        return new XMLKnowledgeReader(is);
+    }
+
+    /**
+     * Reads knowledge part by part as written by write(Knowledge, SharkOutputStream)
+     */
+    private class XMLKnowledgeReader extends AbstractKnowledgeReader {
+        private final SharkInputStream is;
+
+        XMLKnowledgeReader(SharkInputStream is) {
+            this.is = is;
         }
-        
-        Knowledge k = target.createKnowledge();
 
-        String numberCpString = is.readUTF8();
-        L.d("read numberCpString: " + numberCpString, this);
-        
-        int numberCp = Integer.parseInt(numberCpString);
-        if (numberCp > 0) {
-            for (int cpCount = 0; cpCount < numberCp; cpCount++) {
-                String serialCo = is.readUTF8();
+        @Override
+        protected SharkCS readBackground() throws IOException, SharkKBException {
+            String serialBg = this.is.readUTF8();
+            if(L.isDebugEnabled()) {
+                L.d("read background knowledge: " + serialBg, this);
+            }
+
+            return XMLSerializer.this.deserializeSharkCS(serialBg);
+        }
+
+        @Override
+        protected int readNumberOfContextPoints() throws IOException, SharkKBException {
+            String numberCpString = this.is.readUTF8();
+            L.d("read numberCpString: " + numberCpString, this);
+
+            return this.parseNumber(numberCpString);
+        }
+
+        @Override
+        protected ContextPoint readContextPoint() throws IOException, SharkKBException {
+            String serialCo = this.is.readUTF8();
+            if(L.isDebugEnabled()) {
                 L.d("read serialCo: " + serialCo, this);
-                ContextCoordinates co = this.deserializeContextCoordinates(target, serialCo);
-                
-                // Neuer ContextPoint aus geparsten Koordinaten
-//                ContextPoint cp = target.createContextPoint(co);
-                ContextPoint cp = InMemoSharkKB.createInMemoContextPoint(co);
+            }
+
+            ContextCoordinates co = XMLSerializer.this.deserializeContextCoordinates(serialCo);
+            if(co == null) {
+                throw new SharkKBException("cannot parse context coordinates: " + serialCo);
+            }
+
+            ContextPoint cp = InMemoSharkKB.createInMemoContextPoint(co);
 
-                // read properties
-                String serializedCPProperties = is.readUTF8();
+            // read properties
+            String serializedCPProperties = this.is.readUTF8();
+            if(L.isDebugEnabled()) {
                 L.d("read serializedCPProperties: " + serializedCPProperties, this);
-                
-                this.deserializeProperties(cp, serializedCPProperties);
+            }
 
-                String numberInfoString = is.readUTF8();
-                L.d("read numberInfoString: " + numberInfoString, this);
-                int numberInfo = Integer.parseInt(numberInfoString);
+            XMLSerializer.this.deserializeProperties(cp, serializedCPProperties);
 
-                if (numberInfo > 0) {
-                    for (int infoCount = 0; infoCount < numberInfo; infoCount++) {
-                        String infoPropertyString = is.readUTF8();
-                        L.d("read infoPropertyString: " + infoPropertyString, this);
-                        Information info = cp.addInformation();
+            return cp;
+        }
 
-                        this.deserializeProperties(info, infoPropertyString);
+        @Override
+        protected int readNumberOfInformation() throws IOException, SharkKBException {
+            String numberInfoString = this.is.readUTF8();
+            L.d("read numberInfoString: " + numberInfoString, this);
 
-                        String lenString = is.readUTF8();
-                        L.d("read lenString: " + lenString, this);
-                        long len = TimeLong.parse(lenString);
+            return this.parseNumber(numberInfoString);
+        }
 
-                        String type = is.readUTF8();
-                        L.d("read type: " + type, this);
-                        info.setContentType(type);
+        @Override
+        protected long readInformation(Information info) throws IOException, SharkKBException {
+            String infoPropertyString = this.is.readUTF8();
+            if(L.isDebugEnabled()) {
+                L.d("read infoPropertyString: " + infoPropertyString, this);
+            }
 
-                        OutputStream os = info.getOutputStream();
-                        Streamer.stream(is.getInputStream(), os, 
-                                UTF8SharkOutputStream.STREAM_BUFFER_SIZE, len);
-                    }
-                    
-                    // there was at least a single information - add cp
-                    // k.addContextPoint(cp);
-                }
-                // add cp even if there is no attached information
-                k.addContextPoint(cp);
+            XMLSerializer.this.deserializeProperties(info, infoPropertyString);
+
+            String lenString = this.is.readUTF8();
+            L.d("read lenString: " + lenString, this);
+            long len = TimeLong.parse(lenString);
+
+            String type = this.is.readUTF8();
+            L.d("read type: " + type, this);
+            info.setContentType(type);
+
+            return len;
+        }
+
+        @Override
+        protected InputStream getContentStream() {
+            return this.is.getInputStream();
+        }
+
+        private int parseNumber(String s) throws SharkKBException {
+            try {
+                return Integer.parseInt(s);
+            }
+            catch(NumberFormatException e) {
+                throw new SharkKBException("malformed knowledge - number expected: " + s);
             }
         }
-        return k;
     }
 
     public ContextCoordinates deserializeContextCoordinates(String serialCo) throws SharkKBException{
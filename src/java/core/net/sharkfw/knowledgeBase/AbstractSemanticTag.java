@@ -1,5 +1,7 @@
 package net.sharkfw.knowledgeBase;
 
+import java.util.concurrent.atomic.AtomicLong;
+
 /**
  * This class unites offers a place to extends all SemanticTags with additional functionality.
  * It serves as a superclass for all SemanticTags in the Shark framework.
@@ -128,7 +130,22 @@ public abstract class AbstractSemanticTag extends PropertyHolderDelegate
         this.listener = listener;
     }
 
+    // incremented whenever si of any tag changes
+    private static final AtomicLong siGeneration = new AtomicLong();
+
+    /**
+     * Allows indices over sis to find out whether any si has changed
+     * since they were built.
+     * 
+     * @return number of si changes since start
+     */
+    public static long getSIGeneration() {
+        return siGeneration.get();
+    }
+
     public void sisChanged() {
+        siGeneration.incrementAndGet();
+        
         if(this.listener != null) {
             this.listener.siChanged(this);
         }
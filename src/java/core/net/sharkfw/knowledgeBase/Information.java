@@ -105,8 +105,10 @@ public interface Information extends SystemPropertyHolder {
    * output stream
    *
    * @param os
+   * @throws IOException if content couldn't be written completely - 
+   * anything written into os so far must not be taken as content
    */
-  public void streamContent(OutputStream os);
+  public void streamContent(OutputStream os) throws IOException;
 
   /**
    * Returns the length of the content
@@ -115,6 +117,14 @@ public interface Information extends SystemPropertyHolder {
    */
   public long getContentLength();
 
+  /**
+   * Returns a digest of the content. Information with same content have the
+   * same digest. The digest is calculated once and kept until content changes.
+   *
+   * @return SHA-256 digest of the content
+   */
+  public byte[] getContentDigest();
+
     /**
      * Return an OutputStream containing the content of this Information.
      * @return An OutputStream containing the content of this Information.
@@ -1,12 +1,18 @@
 package net.sharkfw.knowledgeBase;
 
+import java.io.IOException;
+import java.io.InputStream;
 import java.net.URL;
+import java.util.ArrayDeque;
 import java.util.ArrayList;
 import java.util.Enumeration;
+import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Iterator;
+import java.util.List;
 import java.util.Vector;
 
+import net.sharkfw.kep.KnowledgeReader;
 import net.sharkfw.knowledgeBase.inmemory.InMemoSharkKB;
 import net.sharkfw.system.Iterator2Enumeration;
 import net.sharkfw.system.L;
@@ -130,6 +136,22 @@ public abstract class SharkCSAlgebra {
         return siA.equalsIgnoreCase(siB);
     }
     
+    /**
+     * Key for hash based lookup of subject identifiers. Keys of two sis
+     * are equal exactly if both sis are identical.
+     * 
+     * @param si
+     * @return 
+     */
+    public static String siKey(String si) {
+        char[] chars = si.toCharArray();
+        for(int i = 0; i < chars.length; i++) {
+            chars[i] = Character.toLowerCase(Character.toUpperCase(chars[i]));
+        }
+        
+        return new String(chars);
+    }
+    
 
     /**
      * Merge two semantic tags. It's pretty simple:
@@ -224,7 +246,114 @@ public abstract class SharkCSAlgebra {
  *************************************************************************/    
 
     /**
+     * Filter on predicate types. It is allowed to follow a predicate if 
+     * it is allowed AND not forbidden.
+     * 
+     * Interpretations:
+     * allowedPredicates empty - everthing allowed
+     * forbiddenPredicates empty - nothing forbidden
      * 
+     * There are theses cases:
+     * 
+     *         allowed | forbidden | result
+     * 1.      null    | null      | any
+     * 2.      null    | x         | any except x
+     * 3.      x       | null      | x
+     * 4.      x       | y         | if in(x) and !in(y)
+     */
+    private static class PredicateFilter {
+        private HashSet<String> allowedTypes = null;
+        private HashSet<String> forbiddenTypes = null;
+        
+        PredicateFilter(Enumeration<String> allowedPredicates, 
+                Enumeration<String> forbiddenPredicates) {
+            
+            // store allowed types
+            if(allowedPredicates != null) {
+                this.allowedTypes = new HashSet<>();
+                while(allowedPredicates.hasMoreElements()) {
+                    this.allowedTypes.add(allowedPredicates.nextElement());
+                }
+            }
+
+            if(forbiddenPredicates != null) {
+                this.forbiddenTypes = new HashSet<>();
+                while(forbiddenPredicates.hasMoreElements()) {
+                    String forbiddenTypeString = forbiddenPredicates.nextElement();
+
+                    // forbidden types rule out allowed types
+                    if(this.allowedTypes != null) {
+                        this.allowedTypes.remove(forbiddenTypeString);
+                    }
+
+                    this.forbiddenTypes.add(forbiddenTypeString);
+                }
+            }
+            
+            // have we got anything? no - drop it - easier in follow()
+            if(this.allowedTypes != null && this.allowedTypes.isEmpty()) {
+                this.allowedTypes = null;
+            }
+            
+            if(this.forbiddenTypes != null && this.forbiddenTypes.isEmpty()) {
+                this.forbiddenTypes = null;
+            }
+        }
+        
+        boolean follow(String predicate) {
+            if(this.allowedTypes != null && !this.allowedTypes.contains(predicate)) {
+                return false;
+            }
+            
+            return this.forbiddenTypes == null || !this.forbiddenTypes.contains(predicate);
+        }
+    }
+    
+    /**
+     * Tag reached during fragmentation: the tag in source, its copy in 
+     * fragment and its distance to the nearest anchor.
+     */
+    private static class FragmentNode {
+        final SNSemanticTag sourceTag;
+        final SNSemanticTag fragmentTag;
+        final int distance;
+        
+        FragmentNode(SNSemanticTag sourceTag, SNSemanticTag fragmentTag, int distance) {
+            this.sourceTag = sourceTag;
+            this.fragmentTag = fragmentTag;
+            this.distance = distance;
+        }
+    }
+    
+    /**
+     * Tags visited during fragmentation. Tags are identical if they share 
+     * a subject identifier - each tag is visited once.
+     */
+    private static class VisitedTags {
+        private final HashMap<String, FragmentNode> nodes = new HashMap<>();
+        
+        FragmentNode get(SemanticTag tag) {
+            String[] sis = tag.getSI();
+            if(sis == null) return null;
+            
+            for(String si : sis) {
+                FragmentNode node = this.nodes.get(si);
+                if(node != null) {
+                    return node;
+                }
+            }
+            
+            return null;
+        }
+        
+        void put(FragmentNode node) {
+            for(String si : node.sourceTag.getSI()) {
+                this.nodes.put(si, node);
+            }
+        }
+    }
+    
+    /**
      * Implementation of ST set fragmentation. This implementation
      * is independent from actual implementing classes. Advantage: Any
      * ST set implementation can use it. Disadvantage: It's probably the
@@ -234,14 +363,12 @@ public abstract class SharkCSAlgebra {
      * The fragment will be produced into this fresh semantic net.
      * This implementation doesn't care neither of implementing class (how 
      * could it?) nor its status. It should be an empty semantic net.
-     * @param anchorEnum Enumeration of anchor
+     * @param anchor anchor
      * @param allowedPredicates Enumeration of allowed predicate types
      * @param forbiddenPredicates Enumeration of forbidden predicate types. Note: 
      * Forbidden types rule out allowed types. Meaning: If type X is allowed and
      * forbidden as well -> X is forbidden.
      * @param depth range (depth) to search in the network
-     * parameter allows to define whether hidden properties should be copied into
-     * the fragment or not.
      * @return The fragment is returned. Actually, it is the object that was
      * provided by methode callee as fragment parameter.
      * @throws SharkKBException 
@@ -252,92 +379,12 @@ public abstract class SharkCSAlgebra {
             Enumeration<String> forbiddenPredicates, int depth) 
                                             throws SharkKBException 
     {
-        if (depth < 0) {
-            depth = 0;
-        }
-
-        // read Enumerations and keep it
-        HashSet<String> allowedTypes = null, forbiddenTypes = null;
-        
-        // store allowed types
-        if(allowedPredicates != null) {
-            allowedTypes = new HashSet<String>();
-            while(allowedPredicates.hasMoreElements()) {
-                allowedTypes.add(allowedPredicates.nextElement());
-            }
-            
-            // have we got anything?
-            if(allowedTypes.isEmpty()) {
-                // no - drop it - easier in following if - statements
-                allowedTypes = null;
-            }
-        }
-        
-        if(forbiddenPredicates != null) {
-            forbiddenTypes = new HashSet<String>();
-            while(forbiddenPredicates.hasMoreElements()) {
-                String forbiddenTypeString = forbiddenPredicates.nextElement();
-                
-                // check whether it is also allowed and remove it in this case
-                if(allowedTypes != null) {
-                    allowedTypes.remove(forbiddenTypeString);
-                }
-                
-                forbiddenTypes.add(forbiddenTypeString);
-            }
-            
-            // have we got anything?
-            if(forbiddenTypes.isEmpty()) {
-                // no - drop it - easier in following if - statements
-                forbiddenTypes = null;
-            }
-            
-            // allowed types can have become empty - check again
-            if(allowedTypes != null && allowedTypes.isEmpty()) {
-                allowedTypes = null;
-            }
-        }
-
-        /* find that anchor in source to get a hand on the actual tag 
-         * and not a copy or something als
-         */
-        SNSemanticTag anchorSource = source.getSemanticTag(anchor.getSI());
-        if(anchorSource == null) {
-            // not here? We are done
-            return fragment;
-        }
-        
-        // it is there - lets go
-        SharkCSAlgebra.fragment(fragment, anchorSource, source, 
-                allowedTypes, forbiddenTypes, depth, true);
-        
-        /* we have now a kind of star with anchor in the centre.
-         * Each predicate starting from anchor contains any 
-         * predicates. This isn't the case for all other tags and
-         * their relations. Now, all allowed relations between all
-         * tags in the fragment has to be copied. 
-         */
-        
-        // iterate concepts in fragment
-        Enumeration<SemanticTag> fTagEnum = fragment.tags();
-        while(fTagEnum.hasMoreElements()) {
-            SemanticTag st = fTagEnum.nextElement();
-            
-            // anchor predicates are already copied
-            if(SharkCSAlgebra.identical(anchor, st)) continue;
-            
-            // it must be there - it was extracted several milliseconds before
-            SNSemanticTag sourceTag = source.getSemanticTag(st.getSI());
-
-            // just add the references, perform no merge - its already done.
-            SharkCSAlgebra.fragment(fragment, sourceTag, source, 
-                    allowedTypes, forbiddenTypes, 
-                    1, /* just predicates from this tag to others */
-                    false /* dont merge. It already done */
-                    );
-        }
+        Vector<SemanticTag> anchors = new Vector<>();
+        anchors.add(anchor);
         
-        return fragment;
+        return SharkCSAlgebra.fragment(fragment, anchors.elements(), source, 
+                new PredicateFilter(allowedPredicates, forbiddenPredicates), 
+                depth);
     }
     
     public static SemanticNet fragment(SemanticNet fragment, 
@@ -390,8 +437,10 @@ public abstract class SharkCSAlgebra {
             SNSemanticTag sourceTag,
             int depth) throws SharkKBException {
         
-        return (SharkCSAlgebra.fragment(fragment, sourceTag, source,
-                (HashSet<String>)null, (HashSet<String>)null, depth, true) != null);
+        SharkCSAlgebra.fragment(fragment, sourceTag, source,
+                (Enumeration<String>) null, (Enumeration<String>) null, depth);
+        
+        return true;
     }
     
     public static SemanticNet fragment(
@@ -402,121 +451,152 @@ public abstract class SharkCSAlgebra {
         SemanticNet fragment = InMemoSharkKB.createInMemoSemanticNet();
         
         return SharkCSAlgebra.fragment(fragment, sourceTag, source,
-                (HashSet<String>)null, (HashSet<String>)null, depth, true);
+                (Enumeration<String>) null, (Enumeration<String>) null, depth);
     }
     
+    /**
+     * Fragmentation engine. Semantic net is traversed breadth first - 
+     * starting with all anchors at once. Each tag is visited once on its 
+     * shortest path from an anchor and copied once into the fragment. 
+     * Cycles and dense nets cost no more than tags and relations within
+     * range.
+     * 
+     * Any allowed relation between tags of the fragment is copied as well.
+     * 
+     * @return fragment
+     */
     private static SemanticNet fragment(SemanticNet fragment, 
-            SNSemanticTag sourceTag,
+            Enumeration<SemanticTag> anchors,
             SemanticNet source,
-            HashSet<String> allowedTypes, 
-            HashSet<String> forbiddenTypes, 
-            int depth,
-            boolean merge) throws SharkKBException 
+            PredicateFilter filter,
+            int depth) throws SharkKBException 
     {
+        if (depth < 0) {
+            depth = 0;
+        }
+
+        VisitedTags visited = new VisitedTags();
+        ArrayDeque<FragmentNode> queue = new ArrayDeque<>();
         
-        SNSemanticTag fragmentTag = null;
+        // tags in max distance - not expanded
+        List<FragmentNode> border = new ArrayList<>();
         
-        if(merge) {
-            // first of all - copy the source anchor to fragment        
-            fragmentTag = fragment.merge(sourceTag);
-        } 
-        // go into the network if allowed...
+        while(anchors.hasMoreElements()) {
+            SemanticTag anchor = anchors.nextElement();
+            if(anchor == null) continue;
+            
+            /* find that anchor in source to get a hand on the actual tag 
+             * and not a copy or something als
+             */
+            SNSemanticTag anchorSource = source.getSemanticTag(anchor.getSI());
+            if(anchorSource == null || visited.get(anchorSource) != null) {
+                // not here or already reached
+                continue;
+            }
+            
+            SharkCSAlgebra.visit(fragment, visited, anchorSource, 0, depth, 
+                    queue, border);
+        }
         
-        if(depth < 1) return fragment;
+        // expand tags in order of distance
+        while(!queue.isEmpty()) {
+            FragmentNode node = queue.poll();
+            SharkCSAlgebra.copyPredicates(fragment, visited, node, filter, 
+                    depth, queue, border);
+        }
         
-        if(!merge && sourceTag != null) { // must already be there
-            fragmentTag = fragment.getSemanticTag(sourceTag.getSI());
+        // relations between border tags and other fragment tags
+        for(FragmentNode node : border) {
+            SharkCSAlgebra.copyPredicates(fragment, visited, node, filter, 
+                    depth, null, null);
         }
         
-        if(fragmentTag == null) return fragment;
+        return fragment;
+    }
+    
+    /**
+     * Copies tag into fragment and marks it visited.
+     * 
+     * @return node or null if tag cannot be identified
+     */
+    private static FragmentNode visit(SemanticNet fragment, VisitedTags visited, 
+            SNSemanticTag sourceTag, int distance, int depth, 
+            ArrayDeque<FragmentNode> queue, List<FragmentNode> border) 
+            throws SharkKBException {
         
-        /* 
-         * It is allowed to follow a predicate if 
-         * it is allowed AND not forbidden 
-         * 
-         * Interpretations:
-         * allowedPredicates empty - everthing allowed
-         * forbiddenPredicates empty - nothing forbidden
-         * 
-         * There are theses cases:
-         * 
-         *         allowed | forbidden | result
-         * 1.      null    | null      | any
-         * 2.      null    | x         | any except x
-         * 3.      x       | null      | x
-         * 4.      x       | y         | if in(x) and !in(y)
-         * 
-         */
+        String[] sis = sourceTag.getSI();
+        if(sis == null || sis.length == 0) {
+            return null;
+        }
+        
+        SNSemanticTag fragmentTag = fragment.merge(sourceTag);
+        if(fragmentTag == null) {
+            return null;
+        }
+
+        // fresh copies don't keep hidden flag - each tag is merged once
+        fragmentTag.setHidden(sourceTag.hidden());
+
+        FragmentNode node = new FragmentNode(sourceTag, fragmentTag, distance);
+
+        visited.put(node);
+        
+        if(distance < depth) {
+            queue.add(node);
+        } else {
+            border.add(node);
+        }
+        
+        return node;
+    }
+    
+    /**
+     * Copies allowed predicates of a tag into fragment. Targets which are 
+     * not yet visited are added to fragment if queue is set - they are 
+     * ignored otherwise.
+     */
+    private static void copyPredicates(SemanticNet fragment, VisitedTags visited, 
+            FragmentNode node, PredicateFilter filter, int depth, 
+            ArrayDeque<FragmentNode> queue, List<FragmentNode> border) 
+            throws SharkKBException {
         
         // find predicates in source
-        Enumeration<String> predicateEnum = sourceTag.predicateNames();
+        Enumeration<String> predicateEnum = node.sourceTag.predicateNames();
         if(predicateEnum == null) {
             // ready - not related tags
-            return fragment;
+            return;
         }
         
         while(predicateEnum.hasMoreElements()) {
             String predicateString = predicateEnum.nextElement();
             
-            // allowed ?
-            boolean follow = false;
-            
-            // case 1
-            if(allowedTypes == null && forbiddenTypes == null) {
-                follow = true;
-            } 
+            if(!filter.follow(predicateString)) continue;
             
-            // case 2
-            else if(allowedTypes == null && forbiddenTypes != null) {
-                if(!forbiddenTypes.contains(predicateString)) {
-                    follow = true;
-                }
-            }
+            Enumeration<SNSemanticTag> tagEnum = 
+                    node.sourceTag.targetTags(predicateString);
+
+            if(tagEnum == null) continue;
             
-            // case 3
-            else if(allowedTypes != null && forbiddenTypes == null) {
-                if(allowedTypes.contains(predicateString)) {
-                    follow = true;
+            while(tagEnum.hasMoreElements()) {
+                SNSemanticTag referencedTag = tagEnum.nextElement();
+                if(referencedTag == null) {
+                    continue;
                 }
-            }
-            
-            // case 4
-            else {
-                if(allowedTypes.contains(predicateString) 
-                        && !forbiddenTypes.contains(predicateString)) {
-                    follow = true;
+
+                FragmentNode referencedNode = visited.get(referencedTag);
+                if(referencedNode == null && queue != null) {
+                    referencedNode = SharkCSAlgebra.visit(fragment, visited, 
+                            referencedTag, node.distance + 1, depth, 
+                            queue, border);
                 }
-            }
-            
-            if(follow) {
-                Enumeration<SNSemanticTag> tagEnum = 
-                        sourceTag.targetTags(predicateString);
-                
-                if(tagEnum != null) {
-                    while(tagEnum.hasMoreElements()) {
-                        SNSemanticTag referencedTag = tagEnum.nextElement();
-                        if(referencedTag == null) {
-                            continue;
-                        }
-                        
-                        SharkCSAlgebra.fragment(fragment, referencedTag, source, 
-                                allowedTypes, forbiddenTypes, depth-1, merge);
-                        
-                        // find copy of referenceTag
-                        SNSemanticTag copyReferencedTag = 
-                                fragment.getSemanticTag(referencedTag.getSI());
-                        
-                        // can be null if referenced tag is not part of the fragment
-                        if(copyReferencedTag != null) {
-                            // it was now copied - set predicates also in fragment
-                            fragmentTag.setPredicate(predicateString, copyReferencedTag);
-                        }
-                    }
+
+                // can be null if referenced tag is not part of the fragment
+                if(referencedNode != null) {
+                    node.fragmentTag.setPredicate(predicateString, 
+                            referencedNode.fragmentTag);
                 }
             }
         }
-        
-        return fragment;
     }
     
     public static SemanticNet contextualize(SemanticNet fragment, 
@@ -547,33 +627,10 @@ public abstract class SharkCSAlgebra {
             return fragment;
         }
 
-        /*
-        We need list of allowed and forbidden predicates more than one.
-        We have got an enumeration - we must keep it.
-        */
-        
-        Vector<String> allowed = new Vector();
-        if(allowedPredicates != null) {
-            while(allowedPredicates.hasMoreElements()) {
-                allowed.add(allowedPredicates.nextElement());
-            }
-        }
-        
-        Vector<String> forbidden = new Vector();
-        if(forbiddenPredicates != null) {
-            while(forbiddenPredicates.hasMoreElements()) {
-                forbidden.add(forbiddenPredicates.nextElement());
-            }
-        }
-        
-        while(contextTagEnum.hasMoreElements()) {
-            SemanticTag anchor = contextTagEnum.nextElement();
-            
-            SharkCSAlgebra.fragment(fragment, anchor, source, allowed.elements(), 
-                    forbidden.elements(), depth);
-        }
-        
-        return fragment;
+        // all anchors in a single traversal
+        return SharkCSAlgebra.fragment(fragment, contextTagEnum, source, 
+                new PredicateFilter(allowedPredicates, forbiddenPredicates), 
+                depth);
     }
     
     public static SemanticNet contextualize(SemanticNet fragment, 
@@ -1330,7 +1387,9 @@ public abstract class SharkCSAlgebra {
         Interest effectiveBackground = SharkCSAlgebra.contextualize(
                 knowledge.getVocabulary().asSharkCS(), interest, backgroundFP);
         
-        L.d("Effective background for assimilation\n" + L.contextSpace2String(effectiveBackground), target);
+        if(L.isDebugEnabled()) {
+            L.d("Effective background for assimilation\n" + L.contextSpace2String(effectiveBackground), target);
+        }
         
         if(effectiveBackground == null) {
             L.d("no effective background - no assimilation", null);
@@ -1361,7 +1420,9 @@ public abstract class SharkCSAlgebra {
                     SharkCS.DIRECTION_IN
                     );
             
-            L.d("Algebra: #1225: check, whether this cp fits:\n" + L.contextSpace2String(cc), target);
+            if(L.isDebugEnabled()) {
+                L.d("Algebra: #1225: check, whether this cp fits:\n" + L.contextSpace2String(cc), target);
+            }
             // check if this cp fits to effective background
             
             if(SharkCSAlgebra.isIn(effectiveBackground, cc)) {
@@ -1407,6 +1468,191 @@ public abstract class SharkCSAlgebra {
         return assimilated;
     }
     
+    /**
+     * Assimilates knowledge while it is read. Context points are checked
+     * against the effective background one by one. Content of fitting
+     * context points is streamed directly into information of target. 
+     * Content of other context points is skipped. 
+     * 
+     * Thus, received knowledge is never held in memory as a whole. 
+     * Context points which don't fit are not kept either.
+     * 
+     * @param target
+     * @param interest
+     * @param backgroundFP
+     * @param reader reader which has already returned background
+     * @param learnTags
+     * @return coordinates of assimilated context points
+     * @throws SharkKBException
+     * @throws IOException
+     * @see #assimilate(net.sharkfw.knowledgeBase.SharkKB, net.sharkfw.knowledgeBase.SharkCS, net.sharkfw.knowledgeBase.FragmentationParameter[], net.sharkfw.knowledgeBase.Knowledge, boolean, boolean) 
+     */
+    public static ArrayList<ContextCoordinates> assimilate(SharkKB target, 
+            SharkCS interest, FragmentationParameter backgroundFP[], 
+            KnowledgeReader reader, boolean learnTags) 
+                throws SharkKBException, IOException {
+        
+        return SharkCSAlgebra.assimilate(target, interest, backgroundFP, 
+                reader, learnTags, null, true);
+    }
+    
+    /**
+     * Assimilates knowledge while it is read - see above. Read context 
+     * points are also added to received. That knowledge contains what
+     * assimilate(.. Knowledge ..) would have left in received knowledge: 
+     * Context points which don't fit (including content) and - if 
+     * deleteAssimilated is false - assimilated context points.
+     * 
+     * @param target
+     * @param interest
+     * @param backgroundFP
+     * @param reader reader which has already returned background
+     * @param learnTags
+     * @param received read context points are added to it - no context 
+     * points are kept if null
+     * @param deleteAssimilated if true - assimilated context points are not
+     * added to received
+     * @return coordinates of assimilated context points
+     * @throws SharkKBException
+     * @throws IOException 
+     */
+    public static ArrayList<ContextCoordinates> assimilate(SharkKB target, 
+            SharkCS interest, FragmentationParameter backgroundFP[], 
+            KnowledgeReader reader, boolean learnTags, Knowledge received,
+            boolean deleteAssimilated) 
+                throws SharkKBException, IOException {
+        
+        ArrayList<ContextCoordinates> assimilated = new ArrayList<ContextCoordinates>();
+        
+        Interest effectiveBackground = null;
+        boolean backgroundChecked = false;
+        
+        // cp in target which takes information of current cp - null if it doesn't fit
+        ContextPoint mCP = null;
+        
+        // cp in received knowledge - null if cp isn't kept
+        ContextPoint rCP = null;
+        
+        while(reader.hasNext()) {
+            switch(reader.next()) {
+                case KnowledgeReader.CONTEXT_POINT:
+                    mCP = null;
+                    rCP = null;
+                    
+                    // create effective background with first cp
+                    if(!backgroundChecked) {
+                        backgroundChecked = true;
+                        
+                        SharkCS background = reader.getBackground();
+                        if(background == null) {
+                            background = new InMemoSharkKB().asSharkCS();
+                        }
+                        
+                        effectiveBackground = SharkCSAlgebra.contextualize(
+                                background, interest, backgroundFP);
+                        
+                        if(effectiveBackground == null) {
+                            L.d("no effective background - no assimilation", null);
+                            if(received == null) {
+                                reader.skip();
+                                return assimilated;
+                            }
+                        }
+                    }
+                    
+                    ContextPoint remoteCP = reader.getContextPoint();
+                    ContextCoordinates cpCC = remoteCP.getContextCoordinates();
+                    
+                    // switch peer and remote peer and force direction IN - see above
+                    ContextCoordinates cc = InMemoSharkKB.createInMemoContextCoordinates(
+                            cpCC.getTopic(), cpCC.getOriginator(), cpCC.getRemotePeer(), 
+                            cpCC.getPeer(), cpCC.getTime(), cpCC.getLocation(), 
+                            SharkCS.DIRECTION_IN
+                            );
+                    
+                    if(effectiveBackground != null 
+                            && SharkCSAlgebra.isIn(effectiveBackground, cc)) {
+                        
+                        L.d("CP fits", target);
+                        
+                        mCP = SharkCSAlgebra.mergeCoordinates(target, 
+                                effectiveBackground, cc, learnTags);
+                        
+                        Util.copyPropertiesFromPropertyHolderToPropertyHolder(remoteCP, mCP);
+                        
+                        assimilated.add(cc);
+                        
+                        if(received != null && !deleteAssimilated) {
+                            rCP = InMemoSharkKB.createInMemoContextPoint(cc);
+                        }
+                    } else {
+                        L.d("CP does not fit\n", target);
+                        
+                        if(received != null) {
+                            rCP = InMemoSharkKB.createInMemoContextPoint(cpCC);
+                        }
+                    }
+                    
+                    if(rCP != null) {
+                        Util.copyPropertiesFromPropertyHolderToPropertyHolder(remoteCP, rCP);
+                        received.addContextPoint(rCP);
+                    }
+                    break;
+                    
+                case KnowledgeReader.INFORMATION:
+                    if(mCP == null && rCP == null) {
+                        // content is skipped by reader
+                        break;
+                    }
+                    
+                    Information remoteInfo = reader.getInformation();
+                    
+                    Information info = null;
+                    if(mCP != null) {
+                        info = SharkCSAlgebra.addInformation(mCP, remoteInfo);
+                        reader.streamContent(info);
+                    }
+                    
+                    if(rCP != null) {
+                        Information rInfo = SharkCSAlgebra.addInformation(rCP, remoteInfo);
+                        if(info == null) {
+                            reader.streamContent(rInfo);
+                        } else {
+                            // content has already been read - copy it
+                            InputStream is = info.getInputStream();
+                            try {
+                                rInfo.setContent(is, info.getContentLength());
+                            }
+                            finally {
+                                is.close();
+                            }
+                        }
+                    }
+                    break;
+            }
+        }
+        
+        return assimilated;
+    }
+    
+    /**
+     * Adds information to cp - properties and content type are copied 
+     * from remoteInfo, content is not.
+     */
+    private static Information addInformation(ContextPoint cp, 
+            Information remoteInfo) throws SharkKBException {
+        
+        Information info = cp.addInformation();
+        Util.copyPropertiesFromPropertyHolderToPropertyHolder(remoteInfo, info);
+        
+        String contentType = remoteInfo.getContentType();
+        if(contentType != null) {
+            info.setContentType(contentType);
+        }
+        
+        return info;
+    }
+    
     /**
      * Check if given coordinates are within the given (sub) space.
      * @param space
@@ -1577,7 +1823,32 @@ public abstract class SharkCSAlgebra {
             ContextPoint cp, boolean learnSTs) throws SharkKBException 
     {
         
-        ContextCoordinates cc = cp.getContextCoordinates();
+        ContextPoint mCP = SharkCSAlgebra.mergeCoordinates(target, bg, 
+                cp.getContextCoordinates(), learnSTs);
+        
+        Enumeration<Information> infoEnum = cp.enumInformation();
+        if(infoEnum != null) {
+            while(infoEnum.hasMoreElements()) {
+                mCP.addInformation(infoEnum.nextElement());
+            }
+        }
+        
+        // copy properties
+        Util.copyPropertiesFromPropertyHolderToPropertyHolder(cp, mCP);
+        
+//        System.out.println("Algebra #1340: target after assimilation:\n");
+//        System.out.println(L.kbSpace2String(target));
+    }
+    
+    /**
+     * Finds or creates context point in target kb with given coordinates - 
+     * learns semantic tag, if flag is set. Information aren't touched.
+     * 
+     * @return context point in target
+     */
+    private static ContextPoint mergeCoordinates(SharkKB target, SharkCS bg, 
+            ContextCoordinates cc, boolean learnSTs) throws SharkKBException 
+    {
         
         PeerSemanticTag mOriginator, mPeer, mRemotePeer;
         SemanticTag mTopic;
@@ -1719,20 +1990,7 @@ public abstract class SharkCSAlgebra {
                 mOriginator, mPeer, mRemotePeer, 
                 mTime, mLocation, mDirection);
         
-        ContextPoint mCP = target.createContextPoint(mCC);
-        
-        Enumeration<Information> infoEnum = cp.enumInformation();
-        if(infoEnum != null) {
-            while(infoEnum.hasMoreElements()) {
-                mCP.addInformation(infoEnum.nextElement());
-            }
-        }
-        
-        // copy properties
-        Util.copyPropertiesFromPropertyHolderToPropertyHolder(cp, mCP);
-        
-//        System.out.println("Algebra #1340: target after assimilation:\n");
-//        System.out.println(L.kbSpace2String(target));
+        return target.createContextPoint(mCC);
     }
     
     private static SemanticTag assimilate(SemanticTag tag, STSet target, 
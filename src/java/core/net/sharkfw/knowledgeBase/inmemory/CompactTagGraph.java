@@ -0,0 +1,456 @@
+package net.sharkfw.knowledgeBase.inmemory;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+
+/**
+ * Topology of a semantic net kept in primitive arrays. Tags are nodes
+ * with dense int ids, predicate names are interned to small ints.
+ *
+ * Edges of each predicate are stored twice - forward (source to target)
+ * and reverse (target to source) - in compressed sparse rows. Changes are
+ * written into a small overlay which is folded into new rows if it
+ * becomes too large.
+ *
+ * Removed node ids are reused. This class isn't thread safe - like any
+ * other in memory tag set.
+ *
+ * @author thsc
+ * @param <N> node type
+ */
+class CompactTagGraph<N> {
+    static final int[] NO_IDS = new int[0];
+
+    // overlay is never compacted below that size
+    private static final int MIN_OVERLAY = 1024;
+
+    private final ArrayList<N> nodes = new ArrayList<>();
+
+    // stack of reusable ids
+    private int[] freeIds = NO_IDS;
+    private int freeCount = 0;
+
+    private final HashMap<String, Integer> predicateIds = new HashMap<>();
+    private final ArrayList<String> predicateNames = new ArrayList<>();
+    private final ArrayList<Adjacency> forward = new ArrayList<>();
+    private final ArrayList<Adjacency> reverse = new ArrayList<>();
+
+    int addNode(N node) {
+        if(this.freeCount > 0) {
+            int id = this.freeIds[--this.freeCount];
+            this.nodes.set(id, node);
+            return id;
+        }
+
+        this.nodes.add(node);
+        return this.nodes.size() - 1;
+    }
+
+    N getNode(int id) {
+        if(id < 0 || id >= this.nodes.size()) {
+            return null;
+        }
+
+        return this.nodes.get(id);
+    }
+
+    /**
+     * Removes node and any edge in which it is source or target.
+     * @param id
+     */
+    void removeNode(int id) {
+        if(this.getNode(id) == null) {
+            return;
+        }
+
+        for(int p = 0; p < this.predicateNames.size(); p++) {
+            Adjacency out = this.forward.get(p);
+            Adjacency in = this.reverse.get(p);
+
+            int[] targets = out.removeRow(id);
+            for(int i = 0; i < targets.length; i++) {
+                in.remove(targets[i], id);
+            }
+
+            int[] sources = in.removeRow(id);
+            for(int i = 0; i < sources.length; i++) {
+                out.remove(sources[i], id);
+            }
+
+            this.checkCompaction(p);
+        }
+
+        this.nodes.set(id, null);
+
+        if(this.freeCount == this.freeIds.length) {
+            this.freeIds = Arrays.copyOf(this.freeIds, Math.max(16, this.freeCount * 2));
+        }
+        this.freeIds[this.freeCount++] = id;
+    }
+
+    int numberOfNodes() {
+        return this.nodes.size() - this.freeCount;
+    }
+
+    int numberOfEdges() {
+        int number = 0;
+        for(Adjacency out : this.forward) {
+            number += out.size;
+        }
+
+        return number;
+    }
+
+    ////////////////////////////////////////////////////////////////////////
+    //                            predicates                              //
+    ////////////////////////////////////////////////////////////////////////
+
+    /**
+     * @param name
+     * @return predicate id or -1 if that predicate was never used
+     */
+    int predicateId(String name) {
+        Integer id = this.predicateIds.get(name);
+
+        return id == null ? -1 : id;
+    }
+
+    private int internPredicate(String name) {
+        int id = this.predicateId(name);
+        if(id >= 0) {
+            return id;
+        }
+
+        id = this.predicateNames.size();
+        this.predicateIds.put(name, id);
+        this.predicateNames.add(name);
+        this.forward.add(new Adjacency());
+        this.reverse.add(new Adjacency());
+
+        return id;
+    }
+
+    String predicateName(int predicate) {
+        return this.predicateNames.get(predicate);
+    }
+
+    boolean setEdge(String predicate, int source, int target) {
+        int p = this.internPredicate(predicate);
+
+        if(!this.forward.get(p).add(source, target)) {
+            return false;
+        }
+
+        this.reverse.get(p).add(target, source);
+        this.checkCompaction(p);
+
+        return true;
+    }
+
+    boolean removeEdge(String predicate, int source, int target) {
+        int p = this.predicateId(predicate);
+        if(p < 0) {
+            return false;
+        }
+
+        if(!this.forward.get(p).remove(source, target)) {
+            return false;
+        }
+
+        this.reverse.get(p).remove(target, source);
+        this.checkCompaction(p);
+
+        return true;
+    }
+
+    /**
+     * Removes any edge of that predicate starting at source
+     * @return ids of former targets
+     */
+    int[] removeEdges(String predicate, int source) {
+        int p = this.predicateId(predicate);
+        if(p < 0) {
+            return NO_IDS;
+        }
+
+        int[] targets = this.forward.get(p).removeRow(source);
+        Adjacency in = this.reverse.get(p);
+        for(int i = 0; i < targets.length; i++) {
+            in.remove(targets[i], source);
+        }
+
+        this.checkCompaction(p);
+
+        return targets;
+    }
+
+    int[] targets(int predicate, int source) {
+        return this.forward.get(predicate).row(source);
+    }
+
+    int[] sources(int predicate, int target) {
+        return this.reverse.get(predicate).row(target);
+    }
+
+    /**
+     * @return ids of predicates in which node is source
+     */
+    int[] predicatesOf(int source) {
+        return this.nonEmptyRows(this.forward, source);
+    }
+
+    /**
+     * @return ids of predicates in which node is target
+     */
+    int[] reversePredicatesOf(int target) {
+        return this.nonEmptyRows(this.reverse, target);
+    }
+
+    private int[] nonEmptyRows(ArrayList<Adjacency> adjacencies, int id) {
+        int[] result = NO_IDS;
+        int number = 0;
+
+        for(int p = 0; p < adjacencies.size(); p++) {
+            if(adjacencies.get(p).degree(id) > 0) {
+                if(number == result.length) {
+                    result = Arrays.copyOf(result, Math.max(4, number * 2));
+                }
+                result[number++] = p;
+            }
+        }
+
+        return number == result.length ? result : Arrays.copyOf(result, number);
+    }
+
+    ////////////////////////////////////////////////////////////////////////
+    //                            compaction                              //
+    ////////////////////////////////////////////////////////////////////////
+
+    private void checkCompaction(int predicate) {
+        Adjacency out = this.forward.get(predicate);
+        if(out.overlay() > Math.max(MIN_OVERLAY, out.size >> 2)) {
+            out.compact(this.nodes.size());
+        }
+
+        Adjacency in = this.reverse.get(predicate);
+        if(in.overlay() > Math.max(MIN_OVERLAY, in.size >> 2)) {
+            in.compact(this.nodes.size());
+        }
+    }
+
+    /**
+     * Folds any overlay into row arrays.
+     */
+    void compact() {
+        for(int p = 0; p < this.predicateNames.size(); p++) {
+            this.forward.get(p).compact(this.nodes.size());
+            this.reverse.get(p).compact(this.nodes.size());
+        }
+    }
+
+    /**
+     * Edges of a single predicate in a single direction. Row i lists its
+     * neighbours sorted in edges[offsets[i] .. offsets[i+1]).
+     *
+     * Overlay: edges of compacted rows are removed by setting a bit.
+     * Added edges are appended to a small per row list (first element is
+     * its length).
+     */
+    private static class Adjacency {
+        private int[] offsets = new int[] {0};
+        private int[] edges = NO_IDS;
+        private long[] removed = new long[0];
+        private int removedCount = 0;
+
+        private int[][] added = new int[0][];
+        private int addedCount = 0;
+
+        // number of edges
+        int size = 0;
+
+        int overlay() {
+            return this.addedCount + this.removedCount;
+        }
+
+        private int rows() {
+            return this.offsets.length - 1;
+        }
+
+        private int basePosition(int from, int to) {
+            if(from >= this.rows()) {
+                return -1;
+            }
+
+            int pos = Arrays.binarySearch(this.edges, this.offsets[from],
+                    this.offsets[from+1], to);
+
+            return pos < 0 ? -1 : pos;
+        }
+
+        private boolean isRemoved(int pos) {
+            return (this.removed[pos >>> 6] & (1L << pos)) != 0;
+        }
+
+        private int addedPosition(int from, int to) {
+            if(from >= this.added.length || this.added[from] == null) {
+                return -1;
+            }
+
+            int[] list = this.added[from];
+            for(int i = 1; i <= list[0]; i++) {
+                if(list[i] == to) {
+                    return i;
+                }
+            }
+
+            return -1;
+        }
+
+        boolean add(int from, int to) {
+            int pos = this.basePosition(from, to);
+            if(pos >= 0) {
+                if(!this.isRemoved(pos)) {
+                    return false;
+                }
+
+                // revive
+                this.removed[pos >>> 6] &= ~(1L << pos);
+                this.removedCount--;
+                this.size++;
+                return true;
+            }
+
+            if(this.addedPosition(from, to) >= 0) {
+                return false;
+            }
+
+            if(from >= this.added.length) {
+                this.added = Arrays.copyOf(this.added,
+                        Math.max(from + 1, this.added.length * 2));
+            }
+
+            int[] list = this.added[from];
+            if(list == null) {
+                list = new int[4];
+            } else if(list[0] + 1 == list.length) {
+                list = Arrays.copyOf(list, list.length * 2);
+            }
+
+            list[++list[0]] = to;
+            this.added[from] = list;
+            this.addedCount++;
+            this.size++;
+
+            return true;
+        }
+
+        boolean remove(int from, int to) {
+            int pos = this.basePosition(from, to);
+            if(pos >= 0 && !this.isRemoved(pos)) {
+                this.removed[pos >>> 6] |= 1L << pos;
+                this.removedCount++;
+                this.size--;
+                return true;
+            }
+
+            int addedPos = this.addedPosition(from, to);
+            if(addedPos >= 0) {
+                int[] list = this.added[from];
+                list[addedPos] = list[list[0]];
+                list[0]--;
+                if(list[0] == 0) {
+                    this.added[from] = null;
+                }
+
+                this.addedCount--;
+                this.size--;
+                return true;
+            }
+
+            return false;
+        }
+
+        int degree(int from) {
+            int degree = 0;
+
+            if(from < this.rows()) {
+                for(int pos = this.offsets[from]; pos < this.offsets[from+1]; pos++) {
+                    if(!this.isRemoved(pos)) {
+                        degree++;
+                    }
+                }
+            }
+
+            if(from < this.added.length && this.added[from] != null) {
+                degree += this.added[from][0];
+            }
+
+            return degree;
+        }
+
+        /**
+         * @return copy of a row - empty array if there are no edges.
+         */
+        int[] row(int from) {
+            int degree = this.degree(from);
+            if(degree == 0) {
+                return NO_IDS;
+            }
+
+            int[] result = new int[degree];
+            int i = 0;
+
+            if(from < this.rows()) {
+                for(int pos = this.offsets[from]; pos < this.offsets[from+1]; pos++) {
+                    if(!this.isRemoved(pos)) {
+                        result[i++] = this.edges[pos];
+                    }
+                }
+            }
+
+            if(from < this.added.length && this.added[from] != null) {
+                int[] list = this.added[from];
+                System.arraycopy(list, 1, result, i, list[0]);
+            }
+
+            return result;
+        }
+
+        int[] removeRow(int from) {
+            int[] row = this.row(from);
+
+            for(int i = 0; i < row.length; i++) {
+                this.remove(from, row[i]);
+            }
+
+            return row;
+        }
+
+        void compact(int numberOfRows) {
+            numberOfRows = Math.max(numberOfRows,
+                    Math.max(this.rows(), this.added.length));
+
+            int[] newOffsets = new int[numberOfRows + 1];
+            int[] newEdges = new int[this.size];
+
+            int pos = 0;
+            for(int from = 0; from < numberOfRows; from++) {
+                newOffsets[from] = pos;
+
+                int[] row = this.row(from);
+                System.arraycopy(row, 0, newEdges, pos, row.length);
+                Arrays.sort(newEdges, pos, pos + row.length);
+                pos += row.length;
+            }
+            newOffsets[numberOfRows] = pos;
+
+            this.offsets = newOffsets;
+            this.edges = newEdges;
+            this.removed = new long[(newEdges.length + 63) >>> 6];
+            this.removedCount = 0;
+            this.added = new int[0][];
+            this.addedCount = 0;
+        }
+    }
+}
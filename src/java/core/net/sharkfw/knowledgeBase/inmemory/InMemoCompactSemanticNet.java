@@ -0,0 +1,265 @@
+package net.sharkfw.knowledgeBase.inmemory;
+
+import java.util.Enumeration;
+import net.sharkfw.knowledgeBase.*;
+import net.sharkfw.system.Util;
+
+/**
+ * In memory semantic net for large ontologies. Tags get dense int ids,
+ * predicates are kept in primitive arrays (see CompactTagGraph) instead of
+ * hash sets inside each tag. Use InMemoTaxonomy to use it as taxonomy.
+ *
+ * Predicates aren't written into system properties of the tags.
+ *
+ * @author thsc
+ */
+public class InMemoCompactSemanticNet extends InMemoSTSet implements SemanticNet {
+
+    private final CompactTagGraph<InMemoCompactSemanticTag> graph =
+            new CompactTagGraph<>();
+
+    public InMemoCompactSemanticNet() {
+        super();
+    }
+
+    CompactTagGraph<InMemoCompactSemanticTag> getGraph() {
+        return this.graph;
+    }
+
+    /**
+     * @return tag of this net which is identical to tag or null
+     */
+    InMemoCompactSemanticTag find(SemanticTag tag) {
+        if(tag == null) return null;
+
+        if(tag instanceof InMemoCompactSemanticTag) {
+            InMemoCompactSemanticTag cTag = (InMemoCompactSemanticTag) tag;
+            if(cTag.getNet() == this && cTag.getId() >= 0) {
+                return cTag;
+            }
+        }
+
+        try {
+            SemanticTag st = this.getSemanticTag(tag.getSI());
+            if(st instanceof InMemoCompactSemanticTag) {
+                return (InMemoCompactSemanticTag) st;
+            }
+        }
+        catch(SharkKBException e) {
+            // no sis - no tag
+        }
+
+        return null;
+    }
+
+    /**
+     * @return tag of this net which is identical to tag - it is merged if
+     * required.
+     */
+    InMemoCompactSemanticTag resolve(SemanticTag tag) throws SharkKBException {
+        InMemoCompactSemanticTag cTag = this.find(tag);
+        if(cTag != null) {
+            return cTag;
+        }
+
+        return (InMemoCompactSemanticTag) this.merge(tag);
+    }
+
+    @Override
+    public SNSemanticTag createSemanticTag(String name, String[] si)
+            throws SharkKBException {
+
+        SNSemanticTag st = this.getSemanticTag(si);
+        if(st != null) {
+            return st;
+        }
+
+        st = new InMemoCompactSemanticTag(name, si, this);
+        this.add(st);
+
+        return st;
+    }
+
+    @Override
+    public SNSemanticTag createSemanticTag(String name, String si)
+            throws SharkKBException {
+
+        return this.createSemanticTag(name, new String[] {si});
+    }
+
+    @Override
+    public SNSemanticTag getSemanticTag(String[] sis) throws SharkKBException {
+      return (SNSemanticTag) super.getSemanticTag(sis);
+    }
+
+    @Override
+    public SNSemanticTag getSemanticTag(String si) throws SharkKBException {
+      return (SNSemanticTag) super.getSemanticTag(si);
+    }
+
+    /**
+     * Tags of other sets are merged - this set only contains its own tags.
+     * @param tag
+     * @throws SharkKBException
+     */
+    @Override
+    public void add(SemanticTag tag) throws SharkKBException {
+        if(tag instanceof InMemoCompactSemanticTag
+                && ((InMemoCompactSemanticTag) tag).getNet() == this) {
+
+            InMemoCompactSemanticTag cTag = (InMemoCompactSemanticTag) tag;
+            if(cTag.getId() >= 0 || this.getSemanticTag(tag.getSI()) != null) {
+                // already there
+                return;
+            }
+
+            cTag.setId(this.graph.addNode(cTag));
+            super.add(cTag);
+        } else {
+            this.merge(tag);
+        }
+    }
+
+    /**
+     * This methods just copies the tag as it is. No relations are copied
+     * or even related tags. Use merging of tag set for that task.
+     * @param tag
+     * @return
+     * @throws SharkKBException
+     */
+    @Override
+    public SNSemanticTag merge(SemanticTag tag) throws SharkKBException {
+        if(tag == null) return null;
+
+        SNSemanticTag st = this.getSemanticTag(tag.getSI());
+        if(st != null) {
+            if(st != tag) {
+                SharkCSAlgebra.merge(st, tag);
+            }
+            return st;
+        }
+
+        InMemoCompactSemanticTag copy =
+                new InMemoCompactSemanticTag(tag.getName(), tag.getSI(), this);
+
+        Util.copyPropertiesFromPropertyHolderToPropertyHolder(tag, copy);
+        this.add(copy);
+
+        return copy;
+    }
+
+    @Override
+    public void removeSemanticTag(SemanticTag tag) {
+        InMemoCompactSemanticTag cTag = this.find(tag);
+        if(cTag == null) return;
+
+        // drops any predicate in which tag is source or target
+        this.graph.removeNode(cTag.getId());
+        cTag.setId(-1);
+
+        super.removeSemanticTag(cTag);
+    }
+
+    @Override
+    public void removeSemanticTag(SNSemanticTag tag) {
+        this.removeSemanticTag((SemanticTag) tag);
+    }
+
+    @Override
+    public void setPredicate(SNSemanticTag source, SNSemanticTag target,
+    String type) {
+
+        source.setPredicate(type, target);
+    }
+
+    @Override
+    public void removePredicate(SNSemanticTag source, SNSemanticTag target,
+            String type) throws SharkKBException {
+
+        source.removePredicate(type, target);
+    }
+
+    /**
+     * Changes are kept in a small overlay which is merged from time to
+     * time. This method merges it immediately - e.g. after loading an
+     * ontology.
+     */
+    public void compact() {
+        this.graph.compact();
+    }
+
+    /**
+     * @return number of predicates between tags of this net
+     */
+    public int numberOfPredicates() {
+        return this.graph.numberOfEdges();
+    }
+
+    @Override
+    public SemanticNet fragment(SemanticTag anchor,
+        FragmentationParameter fp) throws SharkKBException {
+
+        SemanticNet fragment = new InMemoCompactSemanticNet();
+        return SharkCSAlgebra.fragment(fragment, anchor, this,
+                fp.getAllowedPredicates(),
+                fp.getForbiddenPredicates(), fp.getDepth());
+    }
+
+    @Override
+    public SemanticNet fragment(SemanticTag anchor) throws SharkKBException {
+        return this.fragment(anchor, this.getDefaultFP());
+    }
+
+    @Override
+    public SemanticNet contextualize(Enumeration<SemanticTag> anchorSet,
+        FragmentationParameter fp) throws SharkKBException {
+
+            SemanticNet fragment = new InMemoCompactSemanticNet();
+
+            if(fp != null) {
+                SharkCSAlgebra.contextualize(fragment, anchorSet, this,
+                        fp.getAllowedPredicates(), fp.getForbiddenPredicates(),
+                        fp.getDepth());
+            } else {
+                SharkCSAlgebra.contextualize(fragment, this, anchorSet);
+            }
+
+            return fragment;
+    }
+
+    @Override
+    public SemanticNet contextualize(Enumeration<SemanticTag> anchorSet)
+            throws SharkKBException {
+
+        return this.contextualize(anchorSet, this.getDefaultFP());
+    }
+
+    @Override
+    public SemanticNet contextualize(STSet context, FragmentationParameter fp)
+            throws SharkKBException {
+
+        if(context == null) return null;
+
+        if(fp == null) {
+            return this.contextualize(context.tags(), fp);
+        }
+
+        // any context tag is anchor of a single traversal
+        return SharkCSAlgebra.contextualize(new InMemoCompactSemanticNet(), this, context, fp);
+    }
+
+    @Override
+    public SemanticNet contextualize(STSet context) throws SharkKBException {
+        return this.contextualize(context, this.getDefaultFP());
+    }
+
+    @Override
+    public void merge(SemanticNet remoteSemanticNet) throws SharkKBException {
+        SharkCSAlgebra.merge(this, remoteSemanticNet);
+    }
+
+    @Override
+    public STSet asSTSet() {
+        return this;
+    }
+}
@@ -0,0 +1,269 @@
+package net.sharkfw.knowledgeBase.inmemory;
+
+import java.util.Enumeration;
+import java.util.NoSuchElementException;
+import java.util.Vector;
+import net.sharkfw.knowledgeBase.*;
+import net.sharkfw.system.L;
+
+/**
+ * Semantic tag of an InMemoCompactSemanticNet. It keeps no references
+ * to other tags but just its id in the topology of its semantic net.
+ *
+ * Predicates can only be set between tags of the same net. Other tags
+ * are merged into this net first.
+ *
+ * @author thsc
+ */
+@SuppressWarnings({"unchecked", "rawtypes"})
+public class InMemoCompactSemanticTag extends InMemoSemanticTag
+                                implements SNSemanticTag, TXSemanticTag {
+
+    private final InMemoCompactSemanticNet net;
+
+    // -1: not (or no longer) part of net
+    private int id = -1;
+
+    InMemoCompactSemanticTag(String name, String[] si, InMemoCompactSemanticNet net) {
+        super(name, si);
+        this.net = net;
+    }
+
+    InMemoCompactSemanticNet getNet() {
+        return this.net;
+    }
+
+    int getId() {
+        return this.id;
+    }
+
+    void setId(int id) {
+        this.id = id;
+    }
+
+    private CompactTagGraph<InMemoCompactSemanticTag> graph() {
+        return this.net.getGraph();
+    }
+
+    private Enumeration<String> names(int[] predicates) {
+        if(predicates.length == 0) return null;
+
+        Vector<String> names = new Vector<>(predicates.length);
+        for(int i = 0; i < predicates.length; i++) {
+            names.add(this.graph().predicateName(predicates[i]));
+        }
+
+        return names.elements();
+    }
+
+    private Enumeration tags(int[] ids) {
+        if(ids.length == 0) return null;
+
+        return new TagEnumeration(this.graph(), ids);
+    }
+
+    /**
+     * @return names of predicates in which this tag is source or null
+     */
+    @Override
+    public Enumeration<String> predicateNames() {
+        if(this.id < 0) return null;
+
+        return this.names(this.graph().predicatesOf(this.id));
+    }
+
+    /**
+     * @return names of predicates in which this tag is target or null
+     */
+    @Override
+    public Enumeration<String> targetPredicateNames() {
+        if(this.id < 0) return null;
+
+        return this.names(this.graph().reversePredicatesOf(this.id));
+    }
+
+    @Override
+    public Enumeration<SNSemanticTag> targetTags(String predicateName) {
+        int p = this.graph().predicateId(predicateName);
+        if(this.id < 0 || p < 0) return null;
+
+        return this.tags(this.graph().targets(p, this.id));
+    }
+
+    @Override
+    public Enumeration<SNSemanticTag> sourceTags(String predicateName) {
+        int p = this.graph().predicateId(predicateName);
+        if(this.id < 0 || p < 0) return null;
+
+        return this.tags(this.graph().sources(p, this.id));
+    }
+
+    /**
+     * Target is merged into semantic net of this tag if it isn't
+     * already part of it.
+     *
+     * @param type
+     * @param target if null - all predicates of this type are removed
+     */
+    @Override
+    public void setPredicate(String type, SNSemanticTag target) {
+        if(this.id < 0) return;
+
+        if(target == null) {
+            this.removePredicate(type);
+            return;
+        }
+
+        try {
+            InMemoCompactSemanticTag t = this.net.resolve(target);
+            this.graph().setEdge(type, this.id, t.getId());
+        }
+        catch(SharkKBException e) {
+            L.w("cannot set predicate: " + e.getMessage(), this);
+        }
+    }
+
+    /**
+     * Removes all predicates of this type - handle with care!
+     * @param type
+     */
+    public void removePredicate(String type) {
+        if(this.id < 0) return;
+
+        this.graph().removeEdges(type, this.id);
+    }
+
+    @Override
+    public void removePredicate(String type, SNSemanticTag target) {
+        if(this.id < 0) return;
+
+        InMemoCompactSemanticTag t = this.net.find(target);
+        if(t != null) {
+            this.graph().removeEdge(type, this.id, t.getId());
+        }
+    }
+
+    @Override
+    public void merge(SNSemanticTag toMerge) {
+        this.localMerge(toMerge);
+    }
+
+    private void localMerge(SemanticTag toMerge) {
+        // merge tags only
+        super.merge(toMerge);
+
+        if(!(toMerge instanceof SNSemanticTag)) {
+            return;
+        }
+
+        SNSemanticTag snToMerge = (SNSemanticTag) toMerge;
+
+        // predicates in which toMerge is source
+        Enumeration<String> typeNames = snToMerge.predicateNames();
+        if(typeNames != null) {
+            while(typeNames.hasMoreElements()) {
+                String type = typeNames.nextElement();
+
+                Enumeration<SNSemanticTag> tagEnum = snToMerge.targetTags(type);
+                while(tagEnum != null && tagEnum.hasMoreElements()) {
+                    this.setPredicate(type, tagEnum.nextElement());
+                }
+            }
+        }
+
+        // predicates in which toMerge is target
+        typeNames = snToMerge.targetPredicateNames();
+        if(typeNames != null) {
+            while(typeNames.hasMoreElements()) {
+                String type = typeNames.nextElement();
+
+                Enumeration<SNSemanticTag> tagEnum = snToMerge.sourceTags(type);
+                while(tagEnum != null && tagEnum.hasMoreElements()) {
+                    try {
+                        this.net.resolve(tagEnum.nextElement()).setPredicate(type, this);
+                    }
+                    catch(SharkKBException e) {
+                        L.w("cannot merge source tag: " + e.getMessage(), this);
+                    }
+                }
+            }
+        }
+    }
+
+/****************************************************************************
+ *                        TXSemanticTag methods                             *
+ ****************************************************************************/
+
+    @Override
+    public Enumeration<SemanticTag> subTags() {
+        return (Enumeration) this.sourceTags(SemanticNet.SUPERTAG);
+    }
+
+    @Override
+    public TXSemanticTag getSuperTag() {
+        Enumeration<SNSemanticTag> e = this.targetTags(SemanticNet.SUPERTAG);
+
+        if(e == null || !e.hasMoreElements()) return null;
+
+        return (TXSemanticTag) e.nextElement();
+    }
+
+    @Override
+    public Enumeration<TXSemanticTag> getSubTags() {
+        return (Enumeration) this.sourceTags(SemanticNet.SUPERTAG);
+    }
+
+    @Override
+    public void move(TXSemanticTag supertag) {
+        // is there already another super tag? if so - remove it.
+        TXSemanticTag oldSuperTag = this.getSuperTag();
+        this.removePredicate(SemanticNet.SUPERTAG);
+        if(oldSuperTag instanceof InMemoCompactSemanticTag) {
+            ((InMemoCompactSemanticTag) oldSuperTag).removePredicate(SemanticNet.SUBTAG, this);
+        }
+
+        if(supertag == null) return;
+
+        // supertag is my new super tag. Remember by means of predicate.
+        this.setPredicate(SemanticNet.SUPERTAG, (SNSemanticTag) supertag);
+
+        TXSemanticTag newSuperTag = this.getSuperTag();
+        if(newSuperTag instanceof InMemoCompactSemanticTag) {
+            ((InMemoCompactSemanticTag) newSuperTag).setPredicate(SemanticNet.SUBTAG, this);
+        }
+    }
+
+    @Override
+    public void merge(TXSemanticTag toMerge) {
+        this.localMerge(toMerge);
+    }
+
+    /**
+     * Resolves ids lazily. Ids are a copy - net can be changed while
+     * iterating.
+     */
+    private static class TagEnumeration implements Enumeration<SNSemanticTag> {
+        private final CompactTagGraph<InMemoCompactSemanticTag> graph;
+        private final int[] ids;
+        private int index = 0;
+
+        TagEnumeration(CompactTagGraph<InMemoCompactSemanticTag> graph, int[] ids) {
+            this.graph = graph;
+            this.ids = ids;
+        }
+
+        @Override
+        public boolean hasMoreElements() {
+            return this.index < this.ids.length;
+        }
+
+        @Override
+        public SNSemanticTag nextElement() {
+            if(this.index >= this.ids.length) {
+                throw new NoSuchElementException();
+            }
+
+            return this.graph.getNode(this.ids[this.index++]);
+        }
+    }
+}
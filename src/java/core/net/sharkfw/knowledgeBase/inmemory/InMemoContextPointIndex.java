@@ -0,0 +1,377 @@
+package net.sharkfw.knowledgeBase.inmemory;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Set;
+import net.sharkfw.knowledgeBase.*;
+
+/**
+ * Index over context points of an in memory knowledge. Each tag dimension
+ * (topic, originator, peer, remote peer, time, location) maps the subject
+ * identifiers of a coordinate to the context points using it. Context
+ * points with an any tag on a dimension are kept in a separate list.
+ *
+ * Lookups choose the most selective dimension and check only those
+ * candidates against the full coordinates. Direction is rarely selective
+ * and is therefore only checked on candidates.
+ *
+ * Tags can get or lose SIs while their context points are part of a
+ * knowledge, e.g. when tags are merged. Any SI change is counted (see
+ * AbstractSemanticTag.getSIGeneration()). The index compares keys of all
+ * context points with their current SIs before it is used after such a
+ * change and re-indexes those which differ.
+ *
+ * @author thsc
+ */
+class InMemoContextPointIndex {
+    private static final int[] DIMENSIONS = new int[] {
+        SharkCS.DIM_TOPIC,
+        SharkCS.DIM_ORIGINATOR,
+        SharkCS.DIM_PEER,
+        SharkCS.DIM_REMOTEPEER,
+        SharkCS.DIM_TIME,
+        SharkCS.DIM_LOCATION
+    };
+
+    private static final boolean[] ALL_DIMENSIONS = new boolean[SharkCS.MAXDIMENSIONS];
+    static {
+        for(int i = 0; i < DIMENSIONS.length; i++) {
+            ALL_DIMENSIONS[DIMENSIONS[i]] = true;
+        }
+    }
+
+    // si -> context points; one map for each dimension
+    private final ArrayList<HashMap<String, Set<ContextPoint>>> si2cps;
+
+    // context points that are any on a dimension
+    private final ArrayList<Set<ContextPoint>> anyCPs;
+
+    // keys each context point is indexed with - null on any dimensions
+    private final IdentityHashMap<ContextPoint, String[][]> allCPs;
+
+    // si changes the index is aware of
+    private long siGeneration;
+
+    InMemoContextPointIndex() {
+        this.si2cps = new ArrayList<>(DIMENSIONS.length);
+        this.anyCPs = new ArrayList<>(DIMENSIONS.length);
+
+        for(int i = 0; i < DIMENSIONS.length; i++) {
+            this.si2cps.add(new HashMap<String, Set<ContextPoint>>());
+            this.anyCPs.add(InMemoContextPointIndex.createCPSet());
+        }
+
+        this.allCPs = new IdentityHashMap<>();
+        this.siGeneration = AbstractSemanticTag.getSIGeneration();
+    }
+
+    /**
+     * Context points define equals() by SharkCSAlgebra.identical which
+     * isn't an equivalence relation. Sets are based on object identity.
+     */
+    private static Set<ContextPoint> createCPSet() {
+        return Collections.newSetFromMap(new IdentityHashMap<ContextPoint, Boolean>());
+    }
+
+    private static SemanticTag getTag(ContextCoordinates cc, int dim) {
+        if(cc == null) return null;
+
+        switch(dim) {
+            case SharkCS.DIM_TOPIC: return cc.getTopic();
+            case SharkCS.DIM_ORIGINATOR: return cc.getOriginator();
+            case SharkCS.DIM_PEER: return cc.getPeer();
+            case SharkCS.DIM_REMOTEPEER: return cc.getRemotePeer();
+            case SharkCS.DIM_TIME: return cc.getTime();
+            case SharkCS.DIM_LOCATION: return cc.getLocation();
+        }
+
+        return null;
+    }
+
+    int size() {
+        return this.allCPs.size();
+    }
+
+    /**
+     * @return keys of coordinates for each dimension, null for any tags
+     */
+    private static String[][] keys(ContextPoint cp) {
+        String[][] keys = new String[DIMENSIONS.length][];
+
+        ContextCoordinates cc = cp.getContextCoordinates();
+        for(int i = 0; i < DIMENSIONS.length; i++) {
+            SemanticTag tag = InMemoContextPointIndex.getTag(cc, DIMENSIONS[i]);
+            if(SharkCSAlgebra.isAny(tag)) {
+                continue;
+            }
+
+            String[] sis = tag.getSI();
+            keys[i] = new String[sis.length];
+            for(int s = 0; s < sis.length; s++) {
+                keys[i][s] = SharkCSAlgebra.siKey(sis[s]);
+            }
+        }
+
+        return keys;
+    }
+
+    void add(ContextPoint cp) {
+        if(cp == null) return;
+
+        this.checkSIs();
+        this.index(cp, InMemoContextPointIndex.keys(cp));
+    }
+
+    private void index(ContextPoint cp, String[][] keys) {
+        this.allCPs.put(cp, keys);
+
+        for(int i = 0; i < DIMENSIONS.length; i++) {
+            if(keys[i] == null) {
+                this.anyCPs.get(i).add(cp);
+                continue;
+            }
+
+            for(int s = 0; s < keys[i].length; s++) {
+                Set<ContextPoint> cps = this.si2cps.get(i).get(keys[i][s]);
+                if(cps == null) {
+                    cps = InMemoContextPointIndex.createCPSet();
+                    this.si2cps.get(i).put(keys[i][s], cps);
+                }
+                cps.add(cp);
+            }
+        }
+    }
+
+    void remove(ContextPoint cp) {
+        if(cp == null) return;
+
+        // keys it was indexed with - sis might have changed meanwhile
+        String[][] keys = this.allCPs.remove(cp);
+        if(keys == null) return;
+
+        this.unindex(cp, keys);
+    }
+
+    private void unindex(ContextPoint cp, String[][] keys) {
+        for(int i = 0; i < DIMENSIONS.length; i++) {
+            if(keys[i] == null) {
+                this.anyCPs.get(i).remove(cp);
+                continue;
+            }
+
+            for(int s = 0; s < keys[i].length; s++) {
+                Set<ContextPoint> cps = this.si2cps.get(i).get(keys[i][s]);
+                if(cps != null) {
+                    cps.remove(cp);
+                    if(cps.isEmpty()) {
+                        this.si2cps.get(i).remove(keys[i][s]);
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Re-indexes context points whose coordinates have got other sis
+     * since they were indexed. Nothing is done if no si changed at all.
+     */
+    private void checkSIs() {
+        long generation = AbstractSemanticTag.getSIGeneration();
+        if(generation == this.siGeneration) return;
+
+        // changes during check are found next time
+        this.siGeneration = generation;
+
+        ArrayList<ContextPoint> changed = new ArrayList<>();
+        ArrayList<String[][]> newKeys = new ArrayList<>();
+
+        Iterator<Map.Entry<ContextPoint, String[][]>> entryIter =
+                this.allCPs.entrySet().iterator();
+
+        while(entryIter.hasNext()) {
+            Map.Entry<ContextPoint, String[][]> entry = entryIter.next();
+            String[][] keys = InMemoContextPointIndex.keys(entry.getKey());
+            if(!Arrays.deepEquals(keys, entry.getValue())) {
+                changed.add(entry.getKey());
+                newKeys.add(keys);
+            }
+        }
+
+        for(int i = 0; i < changed.size(); i++) {
+            ContextPoint cp = changed.get(i);
+            this.unindex(cp, this.allCPs.get(cp));
+            this.index(cp, newKeys.get(i));
+        }
+    }
+
+    /**
+     * Finds the context point with exactly the same coordinates.
+     *
+     * @see InMemoSharkKB#exactMatch(ContextCoordinates, ContextCoordinates)
+     * @return context point or null
+     */
+    ContextPoint getContextPoint(ContextCoordinates cc) {
+        this.checkSIs();
+
+        SemanticTag[] tags = InMemoContextPointIndex.getTags(cc);
+        ArrayList<Set<ContextPoint>> candidates = this.candidates(tags, ALL_DIMENSIONS, false);
+
+        Iterator<Set<ContextPoint>> setIter = candidates.iterator();
+        while(setIter.hasNext()) {
+            Iterator<ContextPoint> cpIter = setIter.next().iterator();
+            while(cpIter.hasNext()) {
+                ContextPoint cp = cpIter.next();
+                if(InMemoSharkKB.exactMatch(cp.getContextCoordinates(), cc)) {
+                    return cp;
+                }
+            }
+        }
+
+        return null;
+    }
+
+    /**
+     * Adds all context points to result whose coordinates are identical
+     * to cc. Any tags match anything.
+     *
+     * @see SharkCSAlgebra#identical(ContextCoordinates, ContextCoordinates)
+     */
+    void addMatchingContextPoints(ContextCoordinates cc, Set<ContextPoint> result) {
+        this.checkSIs();
+
+        SemanticTag[] tags = InMemoContextPointIndex.getTags(cc);
+        ArrayList<Set<ContextPoint>> candidates = this.candidates(tags, ALL_DIMENSIONS, true);
+
+        Iterator<Set<ContextPoint>> setIter = candidates.iterator();
+        while(setIter.hasNext()) {
+            Iterator<ContextPoint> cpIter = setIter.next().iterator();
+            while(cpIter.hasNext()) {
+                ContextPoint cp = cpIter.next();
+                if(SharkCSAlgebra.identical(cp.getContextCoordinates(), cc)) {
+                    result.add(cp);
+                }
+            }
+        }
+    }
+
+    /**
+     * Checks whether there is at least one context point matching
+     * partially defined coordinates. Direction is not checked.
+     *
+     * @param tags tags indexed by dimension (SharkCS.DIM_TOPIC etc.)
+     * @param restricted dimensions that are already defined, indexed the same way.
+     * Other dimensions are ignored.
+     * @param matchAny if false, a tag must match exactly, any tags included
+     */
+    boolean hasCandidate(SemanticTag[] tags, boolean[] restricted, boolean matchAny) {
+        this.checkSIs();
+
+        ArrayList<Set<ContextPoint>> candidates = this.candidates(tags, restricted, matchAny);
+
+        Iterator<Set<ContextPoint>> setIter = candidates.iterator();
+        while(setIter.hasNext()) {
+            Iterator<ContextPoint> cpIter = setIter.next().iterator();
+            while(cpIter.hasNext()) {
+                ContextCoordinates cc = cpIter.next().getContextCoordinates();
+                if(InMemoContextPointIndex.matches(cc, tags, restricted, matchAny)) {
+                    return true;
+                }
+            }
+        }
+
+        return false;
+    }
+
+    private static boolean matches(ContextCoordinates cc, SemanticTag[] tags,
+            boolean[] restricted, boolean matchAny) {
+
+        for(int i = 0; i < DIMENSIONS.length; i++) {
+            int dim = DIMENSIONS[i];
+            if(!restricted[dim]) continue;
+
+            SemanticTag cpTag = InMemoContextPointIndex.getTag(cc, dim);
+            if(matchAny) {
+                if(!SharkCSAlgebra.identical(cpTag, tags[dim])) return false;
+            } else {
+                if(!InMemoSharkKB.exactMatch(cpTag, tags[dim])) return false;
+            }
+        }
+
+        return true;
+    }
+
+    private static SemanticTag[] getTags(ContextCoordinates cc) {
+        SemanticTag[] tags = new SemanticTag[SharkCS.MAXDIMENSIONS];
+        for(int i = 0; i < DIMENSIONS.length; i++) {
+            tags[DIMENSIONS[i]] = InMemoContextPointIndex.getTag(cc, DIMENSIONS[i]);
+        }
+
+        return tags;
+    }
+
+    /**
+     * Returns the candidate sets of the most selective dimension. Candidate
+     * sets can overlap (a cp is listed under each of its SIs), callers
+     * have to cope with duplicates.
+     *
+     * @param matchAny if true, any tags in the index match each query tag
+     * and any tags in the query don't restrict the result at all.
+     */
+    private ArrayList<Set<ContextPoint>> candidates(SemanticTag[] tags,
+            boolean[] restricted, boolean matchAny) {
+
+        ArrayList<Set<ContextPoint>> best = null;
+        int bestSize = Integer.MAX_VALUE;
+
+        for(int i = 0; i < DIMENSIONS.length && bestSize > 0; i++) {
+            if(!restricted[DIMENSIONS[i]]) continue;
+
+            SemanticTag tag = tags[DIMENSIONS[i]];
+
+            ArrayList<Set<ContextPoint>> sets = new ArrayList<Set<ContextPoint>>();
+            int size = 0;
+
+            if(SharkCSAlgebra.isAny(tag)) {
+                if(matchAny) {
+                    // no restriction on this dimension
+                    continue;
+                }
+
+                sets.add(this.anyCPs.get(i));
+                size = this.anyCPs.get(i).size();
+            } else {
+                String[] sis = tag.getSI();
+                for(int s = 0; s < sis.length; s++) {
+                    Set<ContextPoint> cps = this.si2cps.get(i).get(SharkCSAlgebra.siKey(sis[s]));
+                    if(cps != null) {
+                        sets.add(cps);
+                        size += cps.size();
+                    }
+                }
+
+                if(matchAny) {
+                    sets.add(this.anyCPs.get(i));
+                    size += this.anyCPs.get(i).size();
+                }
+            }
+
+            if(size < bestSize) {
+                best = sets;
+                bestSize = size;
+            }
+        }
+
+        if(best == null) {
+            // no dimension restricts anything
+            best = new ArrayList<Set<ContextPoint>>();
+            best.add(this.allCPs.keySet());
+        }
+
+        return best;
+    }
+}
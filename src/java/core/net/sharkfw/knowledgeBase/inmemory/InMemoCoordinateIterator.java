@@ -0,0 +1,187 @@
+package net.sharkfw.knowledgeBase.inmemory;
+
+import java.util.ArrayList;
+import java.util.Enumeration;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import net.sharkfw.knowledgeBase.*;
+
+/**
+ * Enumerates all coordinates that can be combined from a context space -
+ * one tag from each dimension. Coordinates are produced one after another
+ * while iterating. The tags are only held once per dimension - memory
+ * doesn't grow with the number of combinations.
+ *
+ * If a context point index is given, coordinates are built dimension by
+ * dimension. A branch is left as soon as no context point matches the
+ * tags chosen so far. Coordinates that cannot hit any context point are
+ * never created.
+ *
+ * @author thsc
+ */
+class InMemoCoordinateIterator implements Iterator<ContextCoordinates> {
+    // dimension order of combination - direction first
+    private static final int[] LEVELS = new int[] {
+        SharkCS.DIM_DIRECTION,
+        SharkCS.DIM_TOPIC,
+        SharkCS.DIM_PEER,
+        SharkCS.DIM_REMOTEPEER,
+        SharkCS.DIM_TIME,
+        SharkCS.DIM_LOCATION
+    };
+
+    private final int[] directions;
+
+    // candidate tags of each level, null element means any
+    private final SemanticTag[][] choices;
+
+    private final InMemoContextPointIndex index;
+    private final boolean matchAny;
+
+    // current combination
+    private final int[] position;
+    private final SemanticTag[] tags;
+    private final boolean[] restricted;
+    private int level = 0;
+
+    private ContextCoordinates next = null;
+
+    /**
+     * @param cs context space to be enumerated - must not be null
+     * @param index prunes coordinates without matching context points, can
+     * be null
+     * @param matchAny how pruning compares tags - see
+     * SharkKB.contextPoints(SharkCS, boolean)
+     */
+    InMemoCoordinateIterator(SharkCS cs, InMemoContextPointIndex index,
+            boolean matchAny) throws SharkKBException {
+
+        this.index = index;
+        this.matchAny = matchAny;
+
+        if (cs.getDirection() == SharkCS.DIRECTION_INOUT) {
+            this.directions = new int[] {SharkCS.DIRECTION_IN,
+                SharkCS.DIRECTION_OUT, SharkCS.DIRECTION_INOUT};
+        } else {
+            this.directions = new int[] {cs.getDirection()};
+        }
+
+        this.choices = new SemanticTag[LEVELS.length][];
+        this.choices[1] = InMemoCoordinateIterator.choices(cs.getTopics());
+        this.choices[2] = InMemoCoordinateIterator.choices(cs.getPeers());
+        this.choices[3] = InMemoCoordinateIterator.choices(cs.getRemotePeers());
+        this.choices[4] = InMemoCoordinateIterator.choices(cs.getTimes());
+        this.choices[5] = InMemoCoordinateIterator.choices(cs.getLocations());
+
+        this.position = new int[LEVELS.length];
+        for(int i = 0; i < this.position.length; i++) {
+            this.position[i] = -1;
+        }
+
+        this.tags = new SemanticTag[SharkCS.MAXDIMENSIONS];
+        this.restricted = new boolean[SharkCS.MAXDIMENSIONS];
+
+        this.tags[SharkCS.DIM_ORIGINATOR] = cs.getOriginator();
+        this.restricted[SharkCS.DIM_ORIGINATOR] = true;
+
+        if(this.index != null
+                && !this.index.hasCandidate(this.tags, this.restricted, this.matchAny)) {
+            // even originator doesn't fit
+            this.level = -1;
+        }
+    }
+
+    private static SemanticTag[] choices(STSet set) throws SharkKBException {
+        if (SharkCSAlgebra.isAny(set)) {
+            return new SemanticTag[] {null};
+        }
+
+        set.setEnumerateHiddenTags(true);
+        Enumeration<SemanticTag> tagEnum = set.tags();
+        if (tagEnum == null || !tagEnum.hasMoreElements()) {
+            return new SemanticTag[] {null};
+        }
+
+        ArrayList<SemanticTag> tagList = new ArrayList<SemanticTag>();
+        while (tagEnum.hasMoreElements()) {
+            tagList.add(tagEnum.nextElement());
+        }
+
+        return tagList.toArray(new SemanticTag[tagList.size()]);
+    }
+
+    /**
+     * Moves to the next combination which wasn't pruned.
+     */
+    private void findNext() {
+        int lastLevel = LEVELS.length - 1;
+
+        while(this.level >= 0) {
+            int pos = ++this.position[this.level];
+            int dim = LEVELS[this.level];
+
+            int number = (dim == SharkCS.DIM_DIRECTION) ?
+                    this.directions.length : this.choices[this.level].length;
+
+            if(pos >= number) {
+                // this level is done - step back
+                this.position[this.level] = -1;
+                this.restricted[dim] = false;
+                this.tags[dim] = null;
+                this.level--;
+                continue;
+            }
+
+            if(dim != SharkCS.DIM_DIRECTION) {
+                this.tags[dim] = this.choices[this.level][pos];
+                this.restricted[dim] = true;
+
+                if(this.index != null
+                    && !this.index.hasCandidate(this.tags, this.restricted, this.matchAny)) {
+                    // no context point down here
+                    continue;
+                }
+            }
+
+            if(this.level == lastLevel) {
+                this.next = new InMemoContextCoordinates(
+                    this.tags[SharkCS.DIM_TOPIC],
+                    (PeerSemanticTag) this.tags[SharkCS.DIM_ORIGINATOR],
+                    (PeerSemanticTag) this.tags[SharkCS.DIM_PEER],
+                    (PeerSemanticTag) this.tags[SharkCS.DIM_REMOTEPEER],
+                    (TimeSemanticTag) this.tags[SharkCS.DIM_TIME],
+                    (SpatialSemanticTag) this.tags[SharkCS.DIM_LOCATION],
+                    this.directions[this.position[0]]);
+
+                return;
+            }
+
+            this.level++;
+        }
+    }
+
+    @Override
+    public boolean hasNext() {
+        if(this.next == null) {
+            this.findNext();
+        }
+
+        return this.next != null;
+    }
+
+    @Override
+    public ContextCoordinates next() {
+        if(!this.hasNext()) {
+            throw new NoSuchElementException();
+        }
+
+        ContextCoordinates cc = this.next;
+        this.next = null;
+        return cc;
+    }
+
+    @Override
+    public void remove() {
+        throw new UnsupportedOperationException("coordinates are calculated - nothing to remove");
+    }
+}
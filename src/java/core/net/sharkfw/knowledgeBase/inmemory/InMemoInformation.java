@@ -1,6 +1,8 @@
 package net.sharkfw.knowledgeBase.inmemory;
 
 import java.io.*;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
@@ -13,12 +15,12 @@ import net.sharkfw.knowledgeBase.SharkKBException;
 import net.sharkfw.knowledgeBase.SystemPropertyHolder;
 import net.sharkfw.protocols.UTF8SharkOutputStream;
 import net.sharkfw.system.L;
-import net.sharkfw.system.Streamer;
 
 /**
  * An in memory implementation of the <code>Information</code> interface.
  *
- * This implementation stores its content in a <code>ByteArrayInputStream</code> to allow easy stream based access to it.
+ * This implementation stores small content on the heap. Content exceeding
+ * a threshold is spilled into a temporary file, see setContentThreshold().
  *
  * It also keeps a <code>Hashtable</code> to manage its properties.
  *
@@ -35,8 +37,32 @@ public class InMemoInformation extends PropertyHolderDelegate implements Informa
     public static final String INFO_ORIGINATOR = "info_originator";
     public static final String INFO_ID_PROPERTY_NAME = "SharkNet_InfoID";
     
-// Save the content. Manages internal byte array automatically.
-    private ByteArrayOutputStream content = new ByteArrayOutputStream();
+    public static final String CONTENT_DIGEST_ALGORITHM = "SHA-256";
+    
+// Save the content. Manages internal byte array or temporary file automatically.
+    private InformationContent content = new InformationContent();
+
+    // digest of content, null if content changed
+    private byte[] contentDigest = null;
+    private long digestedLength = -1;
+
+    /**
+     * Content exceeding that size is kept in temporary files instead of
+     * the heap. Applies to content written afterwards.
+     * 
+     * @param bytes threshold, default is 1 MByte
+     */
+    public static void setContentThreshold(int bytes) {
+        InformationContent.setThreshold(bytes);
+    }
+    
+    /**
+     * @param directory directory for temporary content files, null means
+     * system default
+     */
+    public static void setContentDirectory(File directory) {
+        InformationContent.setTempDirectory(directory);
+    }
 
     /**
      * Create a new InMemoInformation from an existing bytearray.
@@ -127,24 +153,14 @@ public class InMemoInformation extends PropertyHolderDelegate implements Informa
     }
 
     /**
-     * Writes the content of the internal ByteArrayInputStream to the given <code>OutputStream</code>.
-     *
-     * Behaves like:      <code>
-   * os.write(content.getByteArray());
-     * </code>
+     * Writes the content to the given <code>OutputStream</code>. Content
+     * isn't copied into a byte array.
      *
      * @param os The <code>OutputStream</code> to write to.
      */
     @Override
-    public void streamContent(OutputStream os) {
-        try {
-            // vllt mit Streamer.stream arbeiten?
-            //os.write(content.toByteArray());
-            ByteArrayInputStream bais = new ByteArrayInputStream(content.toByteArray());
-            Streamer.stream(bais, os, UTF8SharkOutputStream.STREAM_BUFFER_SIZE, content.size());
-        } catch (IOException ex) {
-            L.e(ex.getMessage(), this);
-        }
+    public void streamContent(OutputStream os) throws IOException {
+        this.content.writeTo(os);
     }
 
     /**
@@ -157,23 +173,37 @@ public class InMemoInformation extends PropertyHolderDelegate implements Informa
     public void setContent(InputStream is, long len) {
         this.setTimes();
 
-        // Problems when casting long to int? Maybe use Streamer?
-        byte[] contentIs = new byte[(int) len];
+        // Remove old content. This is not a must! One could also append.
+        InformationContent newContent = this.replaceContent();
         try {
-
-            is.read(contentIs);
-            // Remove old content. This is not a must! One could also append.
-            this.content = new ByteArrayOutputStream();
-            this.content.write(contentIs);
+            byte[] buffer = new byte[(int) Math.min(len, UTF8SharkOutputStream.STREAM_BUFFER_SIZE)];
+            while (len > 0) {
+                int read = is.read(buffer, 0, (int) Math.min(len, buffer.length));
+                if (read == -1) {
+                    break;
+                }
+                newContent.write(buffer, 0, read);
+                len -= read;
+            }
+            newContent.close();
         } catch (IOException ex) {
             throw new RuntimeException(ex.getMessage());
         }
     }
+    
+    private InformationContent replaceContent() {
+        InformationContent oldContent = this.content;
+        this.content = new InformationContent();
+        oldContent.dispose();
+        
+        return this.content;
+    }
 
     /**
-     * Returns a reference to the internal <code>ByteArrayOutputStream</code>
+     * Returns a reference to the internal content stream. Written bytes are
+     * appended to the content.
      *
-     * @return A <code>ByteArrayOutputStream</code> holding the content of this information.
+     * @return An <code>OutputStream</code> holding the content of this information.
      */
     @Override
     public OutputStream getOutputStream() throws SharkKBException {
@@ -181,9 +211,9 @@ public class InMemoInformation extends PropertyHolderDelegate implements Informa
     }
 
     /**
-     * Returning the content of this information as a byte array. Behaves like calling:      <code>
-   * return content.toByteArray();
-     * </code>
+     * Returning the content of this information as a byte array. Handle with
+     * care - content is copied into a new array, even if it was kept in
+     * a temporary file.
      *
      * @return
      */
@@ -201,8 +231,7 @@ public class InMemoInformation extends PropertyHolderDelegate implements Informa
     @Override
     public long getContentLength() {
 		if (this.content != null) {
-			int sz = this.content.size();
-			return sz;
+			return this.content.size();
 		}
 		return 0;
     }
@@ -227,67 +256,80 @@ public class InMemoInformation extends PropertyHolderDelegate implements Informa
     }
 
     /**
-     * Overridden hashcode method. This method implements a simple algorithm for determining the hashcode of an Information object taking the content of the object into account as well.
-     *
-     * It takes the size of the content into account when computing the value to prevent a too-high CPU load:
-     *
-     * <ul>
-     * <li> Below 100 bytes, every byte of the content becomes part of the hashcode </li>
-     * <li> Between 100 bytes and 1MB, the first 100 byte are becoming part of the hascode, plus, every 100th bytes becomes part of the hashcode. </li>
-     * <li> Bigger than 1MB, the first 500 bytes will become part of the hashcode, plus, every 1000th bytes becomes part of the hascode </li>
-     * </ul>
+     * Hashcode is taken from content digest. Content is read once to
+     * calculate the digest - any further call is cheap until content changes.
      *
      * @return A hashcode for this Information object, taking the content of the Information into account.
      */
     @Override
     public int hashCode() {
-        int result = 0; //hashCode;
-        if (result == 0) {
-			byte[] contentArray = content.toByteArray();
-            long size = contentArray.length;
-
-            result = 17;
-            if (size > 100 && size < 1024 * 1024) {
-        // Medium sized, between 100 byte and 1MB
-
-                int cur = 100;
-                // compute hash of first 100 byte
-                for (int i = 0; i < cur; i++) {
-                    result = 31 * result + (int) contentArray[i];
-                }
+        byte[] digest = this.getContentDigest();
+        
+        int result = 17;
+        for (int i = 0; i < 4 && i < digest.length; i++) {
+            result = (result << 8) | (digest[i] & 0xff);
+        }
+        
+        return result;
+    }
 
-                while (cur < size) {
-                    result = 31 * result + (int) contentArray[cur];
-                    cur = cur + 100;
+    /**
+     * Digest is calculated when first asked for and kept until content is
+     * set or removed. Content written by the output stream changes its
+     * length which is checked as well.
+     *
+     * @return digest of the content
+     */
+    @Override
+    public byte[] getContentDigest() {
+        long length = this.getContentLength();
+        
+        synchronized(this) {
+            if (this.contentDigest == null || this.digestedLength != length) {
+                MessageDigest md;
+                try {
+                    md = MessageDigest.getInstance(InMemoInformation.CONTENT_DIGEST_ALGORITHM);
+                } catch (NoSuchAlgorithmException ex) {
+                    // each java platform must support SHA-256
+                    throw new RuntimeException(ex.getMessage());
                 }
 
-            } else if (size > 1024 * 1024) {
-                // Bigger than 1MB
-                int cur = 500;
-                // compute hash of first 500 byte
-                for (int i = 0; i < cur; i++) {
-                    result = 31 * result + (int) contentArray[i];
-                }
+                this.digestContent(md);
+                this.contentDigest = md.digest();
+                this.digestedLength = length;
+            }
+            
+            return this.contentDigest.clone();
+        }
+    }
 
-                while (cur < size) {
-                    result = 31 * result + (int) contentArray[cur];
-                    cur = cur + 1000;
+    /**
+     * Feeds content into the digest without copying it.
+     * 
+     * @param md 
+     */
+    protected void digestContent(final MessageDigest md) {
+        try {
+            this.content.writeTo(new OutputStream() {
+                @Override
+                public void write(int b) {
+                    md.update((byte) b);
                 }
 
-            } else {
-        // Small sized
-                // Arrays.hashcode is not available in JavaME
-                for (int i = 0; i < contentArray.length; i++) {
-                    result = 31 * result + (int) contentArray[i];
+                @Override
+                public void write(byte[] b, int off, int len) {
+                    md.update(b, off, len);
                 }
-            }
+            });
+        } catch (IOException ex) {
+            // cannot happen - nothing is written to a device
+            L.e(ex.getMessage(), this);
         }
-        return result;
     }
 
   // API rev. methods
     /**
-     * Set the given byte[] to be the content for this Information object. Internally, the content will be written into a newly created ByteArrayOutputStream. Calling this method will erase previously
+     * Set the given byte[] to be the content for this Information object. Internally, the content will be written into a newly created content store. Calling this method will erase previously
      * set content on this object.
      *
      * @param content The content to be set.
@@ -295,17 +337,25 @@ public class InMemoInformation extends PropertyHolderDelegate implements Informa
     @Override
     public void setContent(byte[] content) {
         this.setTimes();
-        this.content = new ByteArrayOutputStream();
+        InformationContent newContent = this.replaceContent();
 
         try {
-            this.content.write(content);
+            newContent.write(content);
+            newContent.close();
         } catch (IOException ex) {
             L.e(ex.getMessage(), this);
         }
     }
 
     
+    /**
+     * Called whenever content was set or removed.
+     */
     protected void setTimes() {
+        synchronized(this) {
+            this.contentDigest = null;
+        }
+        
         try {
             String nowString = Long.toString(System.currentTimeMillis());
             
@@ -317,7 +367,7 @@ public class InMemoInformation extends PropertyHolderDelegate implements Informa
     }
 
     /**
-     * This method will set the content-string to be the content of this Information object. Internally, the content will be written into a newly created ByteArrayOutputStream. Calling this method
+     * This method will set the content-string to be the content of this Information object. Internally, the content will be written into a newly created content store. Calling this method
      * will erase previously set content on this object. The content-string will be read as UTF8.
      *
      * @param content The content to be set.
@@ -333,12 +383,12 @@ public class InMemoInformation extends PropertyHolderDelegate implements Informa
     }
 
     /**
-     * Create a new ByteArrayOutputStream and set it as the content of this object.
+     * Drop content - an empty content store is used afterwards.
      */
     @Override
     public void removeContent() {
         this.setTimes();
-        this.content = new ByteArrayOutputStream();
+        this.replaceContent();
     }
 
     /**
@@ -424,10 +474,12 @@ public class InMemoInformation extends PropertyHolderDelegate implements Informa
      * @throws SharkKBException 
      */
     public InputStream getInputStream() throws SharkKBException {
-		byte[] ba = content.toByteArray();
-		ByteArrayInputStream is = new ByteArrayInputStream(ba);
-		return is;
+        try {
+            return this.content.getInputStream();
+        } catch (IOException ex) {
+            throw new SharkKBException("cannot read content: " + ex.getMessage());
         }
+    }
 
 	/* size() was a duplicate to getContentLength() */
 
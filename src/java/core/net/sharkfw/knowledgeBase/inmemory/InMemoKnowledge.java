@@ -3,6 +3,7 @@ package net.sharkfw.knowledgeBase.inmemory;
 import java.util.ArrayList;
 import java.util.Enumeration;
 import java.util.Iterator;
+import java.util.Set;
 import net.sharkfw.knowledgeBase.*;
 import net.sharkfw.system.Iterator2Enumeration;
 
@@ -11,11 +12,13 @@ import net.sharkfw.system.Iterator2Enumeration;
  *
  * InMemoKnowledge uses a <code>Vector</code> to manage its <code>ContextPoint</code>s and
  * a reference to to a <code>ContextSpace</code> for the contextmap.
+ * Context points are additionally indexed by the SIs of their coordinates.
  * 
  * @author thsc
  */
 public class InMemoKnowledge implements Knowledge {
     private ArrayList<ContextPoint> cps;
+    private InMemoContextPointIndex index;
     private SharkVocabulary cm;
 
     /** 
@@ -24,6 +27,7 @@ public class InMemoKnowledge implements Knowledge {
     public InMemoKnowledge() {
         // create empty context point list
         cps = new ArrayList<>();
+        index = new InMemoContextPointIndex();
     }
 
     public InMemoKnowledge(SharkVocabulary background) {
@@ -36,11 +40,39 @@ public class InMemoKnowledge implements Knowledge {
     InMemoKnowledge(SharkVocabulary cm, InMemoKnowledge k) {
         this.cm = cm;
         this.cps = k.getCPS();
+        this.index = k.getIndex();
     }
     
     private ArrayList<ContextPoint> getCPS() {
         return this.cps;
     }
+    
+    InMemoContextPointIndex getIndex() {
+        return this.index;
+    }
+    
+    /**
+     * Returns the context point with exactly these coordinates.
+     * 
+     * @see InMemoSharkKB#exactMatch(ContextCoordinates, ContextCoordinates)
+     * @param coordinates
+     * @return context point or null
+     */
+    ContextPoint getContextPoint(ContextCoordinates coordinates) {
+        return this.index.getContextPoint(coordinates);
+    }
+    
+    /**
+     * Adds each context point to result whose coordinates are identical
+     * with coordinates. Any tags match anything.
+     * 
+     * @see SharkCSAlgebra#identical(ContextCoordinates, ContextCoordinates)
+     * @param coordinates
+     * @param result 
+     */
+    void addMatchingContextPoints(ContextCoordinates coordinates, Set<ContextPoint> result) {
+        this.index.addMatchingContextPoints(coordinates, result);
+    }
 
     /**
      * Returns the number of elements in the local <code>Vector</code> which stores the <code>ContextPoint</code>s.
@@ -96,6 +128,7 @@ public class InMemoKnowledge implements Knowledge {
     @Override
     public final void addContextPoint(ContextPoint cp) {
         this.cps.add(cp);
+        this.index.add(cp);
         // notity
         Iterator<KnowledgeListener> listenerIter = this.listeners.iterator();
         while(listenerIter.hasNext()) {
@@ -106,7 +139,11 @@ public class InMemoKnowledge implements Knowledge {
 
     @Override
     public void removeContextPoint(ContextPoint cp) {
-        this.cps.remove(cp);
+        // equals() is based on identical() - remove what the list would remove
+        int i = this.cps.indexOf(cp);
+        if(i > -1) {
+            this.index.remove(this.cps.remove(i));
+        }
         // notity
         Iterator<KnowledgeListener> listenerIter = this.listeners.iterator();
         while(listenerIter.hasNext()) {
@@ -196,8 +196,13 @@ public class InMemoSemanticNet extends InMemoSTSet implements SemanticNet {
             throws SharkKBException {
         
         if(context == null) return null;
-        
-        return this.contextualize(context.tags(), fp);
+
+        if(fp == null) {
+            return this.contextualize(context.tags(), fp);
+        }
+
+        // any context tag is anchor of a single traversal
+        return SharkCSAlgebra.contextualize(new InMemoSemanticNet(), this, context, fp);
     }
     
     @Override
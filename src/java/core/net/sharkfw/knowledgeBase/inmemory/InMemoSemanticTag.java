@@ -115,8 +115,8 @@ public class InMemoSemanticTag extends AbstractSemanticTag {
         this.si = Util.removeSI(this.si, deleteSI);
         if(this.storage != null) {
             this.storage.siRemoved(deleteSI, this);
-            super.sisChanged();
         }
+        super.sisChanged();
     }
     
 //    private void syncStorage() {
@@ -139,8 +139,8 @@ public class InMemoSemanticTag extends AbstractSemanticTag {
         this.si = Util.addString(this.si, addSI);
         if(this.storage != null) {
             this.storage.siAdded(addSI, this);
-            super.sisChanged();
         }
+        super.sisChanged();
     }
 
     @Override
@@ -335,6 +335,24 @@ public class InMemoSharkKB extends AbstractSharkKB implements SharkKB, SystemPro
         return new InMemoTaxonomy();
     }
     
+    /**
+     * Creates a semantic net which keeps predicates in int arrays - 
+     * for large ontologies. It isn't part of any knowledge base. It can be
+     * used as topic dimension of a new InMemoSharkKB, though.
+     * @return 
+     */
+    public static SemanticNet createInMemoCompactSemanticNet() {
+        return new InMemoCompactSemanticNet();
+    }
+    
+    /**
+     * Creates a taxonomy based on a compact semantic net.
+     * @return 
+     */
+    public static Taxonomy createInMemoCompactTaxonomy() {
+        return new InMemoTaxonomy(new InMemoCompactSemanticNet());
+    }
+    
     /**
      * Creates an in memory semantic tag set. This set is not part of any knowledge
      * base. It can be merged into an exiting kb, though.
@@ -537,7 +555,17 @@ public class InMemoSharkKB extends AbstractSharkKB implements SharkKB, SystemPro
      * It is advised to use the SharkEngine to create a new in-memory SharkKB though.
      */
     public InMemoSharkKB() {
-        super(new InMemoSemanticNet(),
+        this(new InMemoSemanticNet());
+    }
+
+    /**
+     * Create an empty SharkKB with given topic dimension, e.g. an
+     * InMemoCompactSemanticNet.
+     * 
+     * @param topics 
+     */
+    public InMemoSharkKB(SemanticNet topics) {
+        super(topics,
             new InMemoPeerTaxonomy(),
             new InMemoSpatialSTSet(),
             new InMemoTimeSTSet());
@@ -741,9 +769,10 @@ public class InMemoSharkKB extends AbstractSharkKB implements SharkKB, SystemPro
     }
 
     /**
-     * Iterats context points. If a perfect match is made - this cp ist returned.
-     * This methode should be reimplemented in deriving classes. This implementation
-     * has a horrible performance.
+     * Returns the context point with exactly these coordinates. In memory
+     * knowledge is indexed by coordinate SIs and answers that query directly.
+     * Any other knowledge implementation is iterated, which has a horrible
+     * performance.
      *
      * @param coordinates
      * @return
@@ -751,6 +780,10 @@ public class InMemoSharkKB extends AbstractSharkKB implements SharkKB, SystemPro
      */
     @Override
     public ContextPoint getContextPoint(ContextCoordinates coordinates) throws SharkKBException {
+        if(this.knowledge instanceof InMemoKnowledge) {
+            return ((InMemoKnowledge) this.knowledge).getContextPoint(coordinates);
+        }
+        
         Enumeration<ContextPoint> cpEnum = this.knowledge.contextPoints();
         while (cpEnum.hasMoreElements()) {
             ContextPoint cp = cpEnum.nextElement();
@@ -781,11 +814,7 @@ public class InMemoSharkKB extends AbstractSharkKB implements SharkKB, SystemPro
             return null;
         }
         HashSet<ContextPoint> result = new HashSet<ContextPoint>();
-        HashSet<ContextCoordinates> coo = this.possibleCoordinates(cs);
-        if (coo == null) {
-            return null;
-        }
-        Iterator<ContextCoordinates> cooIter = coo.iterator();
+        Iterator<ContextCoordinates> cooIter = this.coordinates(cs, matchAny);
         while (cooIter.hasNext()) {
             // next possible coordinate
             ContextCoordinates co = cooIter.next();
@@ -796,6 +825,9 @@ public class InMemoSharkKB extends AbstractSharkKB implements SharkKB, SystemPro
                     // copy cp
                     result.add(cp);
                 }
+            } else if(this.knowledge instanceof InMemoKnowledge) {
+                // matchAny - ask index for all matching cps.
+                ((InMemoKnowledge) this.knowledge).addMatchingContextPoints(co, result);
             } else {
                 // matchAny - find all matching cps.
                 Enumeration<ContextPoint> cpEnum = this.knowledge.contextPoints();
@@ -830,72 +862,75 @@ public class InMemoSharkKB extends AbstractSharkKB implements SharkKB, SystemPro
         return this.getContextPoints(cc);
     }
 
+    /**
+     * Enumerates coordinates that can be combined from context space, see
+     * possibleCoordinates(). Coordinates are calculated while iterating.
+     * In memory knowledge is asked dimension by dimension whether there are
+     * context points at all - combinations without any are skipped.
+     * 
+     * All tags of cs are merged into this kb.
+     * 
+     * @param cs
+     * @param matchAny how tags are compared when pruning, see contextPoints()
+     * @return
+     * @throws SharkKBException 
+     */
+    protected Iterator<ContextCoordinates> coordinates(SharkCS cs, boolean matchAny) throws SharkKBException {
+        this.mergeCoordinateTags(cs);
+        
+        InMemoContextPointIndex index = null;
+        if(this.knowledge instanceof InMemoKnowledge) {
+            index = ((InMemoKnowledge) this.knowledge).getIndex();
+        }
+        
+        return new InMemoCoordinateIterator(cs, index, matchAny);
+    }
+    
+    /**
+     * Produces each combination of tags from each dimension of cs. That
+     * can be a lot. Use coordinates() to enumerate them lazily.
+     * 
+     * @param cs
+     * @return
+     * @throws SharkKBException 
+     */
     public HashSet possibleCoordinates(SharkCS cs) throws SharkKBException {
         if (cs == null) {
             return null;
         }
-        HashSet<ContextCoordinates> protoCoo = new HashSet<ContextCoordinates>();
-        // create first prototype with direction and owner
-        if (cs.getDirection() == SharkCS.DIRECTION_INOUT) {
-            // two additional coordinates
-            protoCoo.add(this.createContextCoordinates(null, cs.getOriginator(), null, null, null, null, SharkCS.DIRECTION_IN));
-            protoCoo.add(this.createContextCoordinates(null, cs.getOriginator(), null, null, null, null, SharkCS.DIRECTION_OUT));
+        this.mergeCoordinateTags(cs);
+        HashSet<ContextCoordinates> coo = new HashSet<ContextCoordinates>();
+        Iterator<ContextCoordinates> cooIter = new InMemoCoordinateIterator(cs, null, false);
+        while(cooIter.hasNext()) {
+            coo.add(cooIter.next());
         }
-        protoCoo.add(this.createContextCoordinates(null, cs.getOriginator(), null, null, null, null, cs.getDirection()));
-        // no combine with other dimensions
-        protoCoo = this.coordCombination(protoCoo, cs.getTopics(), SharkCS.DIM_TOPIC);
-        protoCoo = this.coordCombination(protoCoo, cs.getPeers(), SharkCS.DIM_PEER);
-        protoCoo = this.coordCombination(protoCoo, cs.getRemotePeers(), SharkCS.DIM_REMOTEPEER);
-        protoCoo = this.coordCombination(protoCoo, cs.getTimes(), SharkCS.DIM_TIME);
-        protoCoo = this.coordCombination(protoCoo, cs.getLocations(), SharkCS.DIM_LOCATION);
-        return protoCoo;
+        return coo;
     }
 
-    protected HashSet coordCombination(HashSet<ContextCoordinates> protoCoo, STSet set, int dim) throws SharkKBException {
+    /**
+     * Coordinates are created with createContextCoordinates() which merges
+     * tags into this kb. That happens once for each tag of the context space.
+     */
+    private void mergeCoordinateTags(SharkCS cs) throws SharkKBException {
+        PeerSTSet peers = this.getPeerSTSet();
+        peers.merge(cs.getOriginator());
+        
+        this.mergeCoordinateTags(this.getTopicSTSet(), cs.getTopics());
+        this.mergeCoordinateTags(peers, cs.getPeers());
+        this.mergeCoordinateTags(peers, cs.getRemotePeers());
+        this.mergeCoordinateTags(this.getTimeSTSet(), cs.getTimes());
+        this.mergeCoordinateTags(this.getSpatialSTSet(), cs.getLocations());
+    }
+    
+    private void mergeCoordinateTags(STSet target, STSet set) throws SharkKBException {
         if (SharkCSAlgebra.isAny(set)) {
-            return protoCoo;
+            return;
         }
         set.setEnumerateHiddenTags(true);
         Enumeration<SemanticTag> tagEnum = set.tags();
-        if (tagEnum == null || !tagEnum.hasMoreElements()) {
-            return protoCoo;
-        }
-        HashSet<ContextCoordinates> result = new HashSet<ContextCoordinates>();
-        while (tagEnum.hasMoreElements()) {
-            SemanticTag tag = tagEnum.nextElement();
-            // combine with existing
-            Iterator<ContextCoordinates> cooIter = protoCoo.iterator();
-            while (cooIter.hasNext()) {
-                ContextCoordinates oldCC = cooIter.next();
-                SemanticTag topic = oldCC.getTopic();
-                PeerSemanticTag originator = oldCC.getOriginator();
-                PeerSemanticTag peer = oldCC.getPeer();
-                PeerSemanticTag remotePeer = oldCC.getRemotePeer();
-                TimeSemanticTag time = oldCC.getTime();
-                SpatialSemanticTag location = oldCC.getLocation();
-                int direction = oldCC.getDirection();
-                switch (dim) {
-                    case SharkCS.DIM_TOPIC:
-                        topic = tag;
-                        break;
-                    case SharkCS.DIM_PEER:
-                        peer = (PeerSemanticTag) tag;
-                        break;
-                    case SharkCS.DIM_REMOTEPEER:
-                        remotePeer = (PeerSemanticTag) tag;
-                        break;
-                    case SharkCS.DIM_TIME:
-                        time = (TimeSemanticTag) tag;
-                        break;
-                    case SharkCS.DIM_LOCATION:
-                        location = (SpatialSemanticTag) tag;
-                        break;
-                }
-                ContextCoordinates newCC = this.createContextCoordinates(topic, originator, peer, remotePeer, time, location, direction);
-                result.add(newCC);
-            }
+        while (tagEnum != null && tagEnum.hasMoreElements()) {
+            target.merge(tagEnum.nextElement());
         }
-        return result;
     }
 
     public Iterator getTags() throws SharkKBException {
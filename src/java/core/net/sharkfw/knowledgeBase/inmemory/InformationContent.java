@@ -0,0 +1,336 @@
+package net.sharkfw.knowledgeBase.inmemory;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.lang.ref.PhantomReference;
+import java.lang.ref.Reference;
+import java.lang.ref.ReferenceQueue;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Set;
+import net.sharkfw.system.L;
+
+/**
+ * Content of an in memory information. Content is written like into
+ * a ByteArrayOutputStream. Small content stays on the heap. Content exceeding
+ * a threshold is spilled into a temporary file which is memory mapped
+ * for reading. Thus, large knowledge can be received without filling the heap.
+ *
+ * Content can be streamed, read and measured without copying it into
+ * a byte array.
+ *
+ * Call dispose() if content isn't used any longer. Temporary files of
+ * contents which were dropped without dispose() are removed when the next
+ * content is spilled or disposed after garbage collection.
+ *
+ * @author thsc
+ */
+class InformationContent extends OutputStream {
+    public static final int DEFAULT_THRESHOLD = 1024 * 1024; // 1 MByte
+
+    private static final int BUFFER_LEN = 1024 * 8;
+
+    private static int threshold = DEFAULT_THRESHOLD;
+    private static File tempDirectory = null;
+
+    // null if content is spilled into file
+    private HeapContent memory = new HeapContent();
+
+    private File file = null;
+    // removes file if this content is collected
+    private TempFile tempFile = null;
+    // null if file isn't written right now
+    private OutputStream fileOut = null;
+    // null if not mapped after last write
+    private MappedByteBuffer mapped = null;
+
+    private long size = 0;
+
+    // temporary files of collected contents
+    private static final ReferenceQueue<InformationContent> collected =
+            new ReferenceQueue<InformationContent>();
+
+    // keeps references of not yet removed files reachable
+    private static final Set<TempFile> tempFiles =
+            Collections.synchronizedSet(new HashSet<TempFile>());
+
+    /**
+     * Temporary file of a content. It is enqueued when that content
+     * becomes unreachable.
+     */
+    private static class TempFile extends PhantomReference<InformationContent> {
+        private final File file;
+
+        TempFile(InformationContent content, File file) {
+            super(content, InformationContent.collected);
+            this.file = file;
+            InformationContent.tempFiles.add(this);
+        }
+
+        void delete() {
+            InformationContent.tempFiles.remove(this);
+            this.clear();
+            this.file.delete();
+        }
+    }
+
+    /**
+     * Removes temporary files of collected contents.
+     */
+    private static void expunge() {
+        Reference<? extends InformationContent> ref = InformationContent.collected.poll();
+        while(ref != null) {
+            ((TempFile) ref).delete();
+            ref = InformationContent.collected.poll();
+        }
+    }
+
+    static synchronized void setThreshold(int bytes) {
+        InformationContent.threshold = bytes;
+    }
+
+    static synchronized int getThreshold() {
+        return InformationContent.threshold;
+    }
+
+    /**
+     * @param directory directory for temporary files, null means system default
+     */
+    static synchronized void setTempDirectory(File directory) {
+        InformationContent.tempDirectory = directory;
+    }
+
+    private static synchronized File getTempDirectory() {
+        return InformationContent.tempDirectory;
+    }
+
+    /**
+     * @return true if content was spilled into a file
+     */
+    synchronized boolean isSpilled() {
+        return this.memory == null;
+    }
+
+    synchronized long size() {
+        return this.size;
+    }
+
+    @Override
+    public void write(int b) throws IOException {
+        this.write(new byte[] {(byte) b}, 0, 1);
+    }
+
+    @Override
+    public synchronized void write(byte[] b, int off, int len) throws IOException {
+        if(this.memory != null && this.size + len > InformationContent.getThreshold()) {
+            this.spill();
+        }
+
+        if(this.memory != null) {
+            this.memory.write(b, off, len);
+        } else {
+            if(this.fileOut == null) {
+                this.fileOut = new BufferedOutputStream(
+                        new FileOutputStream(this.file, true), BUFFER_LEN);
+            }
+            this.fileOut.write(b, off, len);
+            this.mapped = null;
+        }
+
+        this.size += len;
+    }
+
+    private void spill() throws IOException {
+        InformationContent.expunge();
+
+        this.file = File.createTempFile("sharkInfo", ".content",
+                InformationContent.getTempDirectory());
+        this.tempFile = new TempFile(this, this.file);
+
+        this.fileOut = new BufferedOutputStream(new FileOutputStream(this.file), BUFFER_LEN);
+        this.memory.writeTo(this.fileOut);
+        this.memory = null;
+    }
+
+    @Override
+    public synchronized void flush() throws IOException {
+        if(this.fileOut != null) {
+            this.fileOut.flush();
+        }
+    }
+
+    /**
+     * Closes the temporary file - content can be written later on nevertheless.
+     */
+    @Override
+    public synchronized void close() throws IOException {
+        this.closeFile();
+    }
+
+    private void closeFile() throws IOException {
+        if(this.fileOut != null) {
+            this.fileOut.close();
+            this.fileOut = null;
+        }
+    }
+
+    /**
+     * @return content file mapped into memory, null if it is too large
+     */
+    private ByteBuffer getMappedContent() throws IOException {
+        this.closeFile();
+
+        if(this.mapped == null && this.size <= Integer.MAX_VALUE) {
+            RandomAccessFile raf = new RandomAccessFile(this.file, "r");
+            try {
+                this.mapped = raf.getChannel().map(FileChannel.MapMode.READ_ONLY, 0, this.size);
+            } finally {
+                // mapping stays valid
+                raf.close();
+            }
+        }
+
+        return this.mapped == null ? null : this.mapped.duplicate();
+    }
+
+    /**
+     * Writes whole content to stream.
+     *
+     * @param os
+     * @throws IOException
+     */
+    synchronized void writeTo(OutputStream os) throws IOException {
+        if(this.memory != null) {
+            this.memory.writeTo(os);
+            return;
+        }
+
+        InputStream is = this.getInputStream();
+        try {
+            byte[] buffer = new byte[BUFFER_LEN];
+            int read = is.read(buffer);
+            while(read != -1) {
+                os.write(buffer, 0, read);
+                read = is.read(buffer);
+            }
+        } finally {
+            is.close();
+        }
+    }
+
+    /**
+     * @return stream reading current content - content isn't copied
+     * @throws IOException
+     */
+    synchronized InputStream getInputStream() throws IOException {
+        if(this.memory != null) {
+            return this.memory.getInputStream();
+        }
+
+        ByteBuffer buffer = this.getMappedContent();
+        if(buffer != null) {
+            return new ByteBufferInputStream(buffer);
+        }
+
+        return new FileInputStream(this.file);
+    }
+
+    /**
+     * Handle with care - copies whole content into a new array.
+     * @return content
+     */
+    synchronized byte[] toByteArray() {
+        if(this.memory != null) {
+            return this.memory.toByteArray();
+        }
+
+        ByteArrayOutputStream baos = new ByteArrayOutputStream((int) this.size);
+        try {
+            this.writeTo(baos);
+        } catch (IOException ex) {
+            L.e("cannot read information content: " + ex.getMessage(), this);
+        }
+
+        return baos.toByteArray();
+    }
+
+    /**
+     * Content isn't used any longer. Temporary file is removed.
+     */
+    synchronized void dispose() {
+        if(this.file != null) {
+            try {
+                this.closeFile();
+            } catch (IOException ex) {
+                // ignore - file is removed anyway
+            }
+
+            this.mapped = null;
+            this.tempFile.delete();
+        }
+
+        InformationContent.expunge();
+    }
+
+    /**
+     * Allows reading the heap buffer without copying it.
+     */
+    private static class HeapContent extends ByteArrayOutputStream {
+        InputStream getInputStream() {
+            return new ByteArrayInputStream(this.buf, 0, this.count);
+        }
+    }
+
+    private static class ByteBufferInputStream extends InputStream {
+        private final ByteBuffer buffer;
+
+        ByteBufferInputStream(ByteBuffer buffer) {
+            this.buffer = buffer;
+        }
+
+        @Override
+        public int read() {
+            if(!this.buffer.hasRemaining()) {
+                return -1;
+            }
+            return this.buffer.get() & 0xff;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) {
+            if(len == 0) {
+                return 0;
+            }
+            if(!this.buffer.hasRemaining()) {
+                return -1;
+            }
+
+            len = Math.min(len, this.buffer.remaining());
+            this.buffer.get(b, off, len);
+            return len;
+        }
+
+        @Override
+        public int available() {
+            return this.buffer.remaining();
+        }
+
+        @Override
+        public long skip(long n) {
+            int skipped = (int) Math.min(Math.max(n, 0), this.buffer.remaining());
+            this.buffer.position(this.buffer.position() + skipped);
+            return skipped;
+        }
+    }
+}
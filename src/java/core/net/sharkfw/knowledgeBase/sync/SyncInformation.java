@@ -1,5 +1,6 @@
 package net.sharkfw.knowledgeBase.sync;
 
+import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
 import java.util.ArrayList;
@@ -131,7 +132,7 @@ public class SyncInformation implements Information{
 	}
 
 	@Override
-	public void streamContent(OutputStream os) {
+	public void streamContent(OutputStream os) throws IOException {
 		_localInformation.streamContent(os);
 	}
 
@@ -140,6 +141,11 @@ public class SyncInformation implements Information{
 		return _localInformation.getContentLength();
 	}
 
+	@Override
+	public byte[] getContentDigest() {
+		return _localInformation.getContentDigest();
+	}
+
 	@Override
 	public OutputStream getOutputStream() throws SharkKBException {
 		return _localInformation.getOutputStream();
@@ -0,0 +1,178 @@
+package net.sharkfw.peer;
+
+import java.util.BitSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import net.sharkfw.knowledgeBase.Information;
+import net.sharkfw.knowledgeBase.SharkCSAlgebra;
+
+/**
+ * Remembers which information were delivered to which peer. Information
+ * are identified by their content digest - same content isn't delivered
+ * twice, even if it is kept in different information objects.
+ *
+ * Deliveries to each peer are kept in a bloom filter of fixed size. Thus,
+ * an information can be taken as delivered though it wasn't - that's rare.
+ * Each filter has two generations: A full generation replaces the older
+ * one, oldest deliveries are forgotten first. Number of peers is bounded
+ * as well - least recently used peers are forgotten.
+ *
+ * @author thsc
+ */
+public class DeliveryLedger {
+    /** deliveries per filter generation */
+    public static final int DEFAULT_CAPACITY = 1024;
+    public static final int DEFAULT_MAX_PEERS = 1000;
+
+    // about 0.05 percent false positives in a full generation
+    private static final int BITS_PER_DELIVERY = 16;
+    private static final int NUMBER_HASHES = 8;
+
+    private final int capacity;
+    private final int bits;
+    private int maxPeers;
+
+    // address -> filter, least recently used first
+    private final LinkedHashMap<String, PeerFilter> peers =
+            new LinkedHashMap<String, PeerFilter>(16, 0.75f, true);
+
+    public DeliveryLedger() {
+        this(DEFAULT_CAPACITY, DEFAULT_MAX_PEERS);
+    }
+
+    /**
+     * @param capacity deliveries per peer which are surely remembered
+     * @param maxPeers number of remembered peers
+     */
+    public DeliveryLedger(int capacity, int maxPeers) {
+        this.capacity = capacity;
+        this.bits = capacity * BITS_PER_DELIVERY;
+        this.maxPeers = maxPeers;
+    }
+
+    public synchronized void setMaxPeers(int maxPeers) {
+        this.maxPeers = maxPeers;
+        this.removeOldPeers();
+    }
+
+    public synchronized int numberOfPeers() {
+        return this.peers.size();
+    }
+
+    /**
+     * Remember that information was delivered to that address.
+     *
+     * @param info
+     * @param address recipient address - case is ignored
+     */
+    public void delivered(Information info, String address) {
+        if(address == null) {
+            return;
+        }
+
+        int[] positions = this.positions(info);
+        String key = SharkCSAlgebra.siKey(address);
+
+        synchronized(this) {
+            PeerFilter filter = this.peers.get(key);
+            if(filter == null) {
+                filter = new PeerFilter(this.bits);
+                this.peers.put(key, filter);
+                this.removeOldPeers();
+            }
+
+            filter.add(positions, this.capacity);
+        }
+    }
+
+    /**
+     * @param info
+     * @param address recipient address - case is ignored
+     * @return true if information was (most probably) delivered to that address
+     */
+    public boolean isDelivered(Information info, String address) {
+        if(address == null) {
+            return false;
+        }
+
+        int[] positions = this.positions(info);
+        String key = SharkCSAlgebra.siKey(address);
+
+        synchronized(this) {
+            PeerFilter filter = this.peers.get(key);
+            return filter != null && filter.contains(positions);
+        }
+    }
+
+    // guarded by this
+    private void removeOldPeers() {
+        Iterator<Map.Entry<String, PeerFilter>> peerIter = this.peers.entrySet().iterator();
+        while(this.peers.size() > this.maxPeers && peerIter.hasNext()) {
+            peerIter.next();
+            peerIter.remove();
+        }
+    }
+
+    /**
+     * Bit positions of that information. Digest is a secure hash - two
+     * values taken from it are combined to get the positions.
+     */
+    private int[] positions(Information info) {
+        byte[] digest = info.getContentDigest();
+
+        int h1 = 0, h2 = 0;
+        for(int i = 0; i < 4; i++) {
+            h1 = (h1 << 8) | (digest[i] & 0xff);
+            h2 = (h2 << 8) | (digest[i + 4] & 0xff);
+        }
+
+        int[] positions = new int[NUMBER_HASHES];
+        for(int i = 0; i < NUMBER_HASHES; i++) {
+            positions[i] = ((h1 + i * h2) & 0x7fffffff) % this.bits;
+        }
+
+        return positions;
+    }
+
+    private static class PeerFilter {
+        private BitSet current;
+        private BitSet previous;
+        private int added = 0;
+
+        PeerFilter(int bits) {
+            this.current = new BitSet(bits);
+            this.previous = new BitSet(bits);
+        }
+
+        void add(int[] positions, int capacity) {
+            if(this.added >= capacity) {
+                // forget oldest generation
+                BitSet recycled = this.previous;
+                recycled.clear();
+                this.previous = this.current;
+                this.current = recycled;
+                this.added = 0;
+            }
+
+            for(int i = 0; i < positions.length; i++) {
+                this.current.set(positions[i]);
+            }
+            this.added++;
+        }
+
+        boolean contains(int[] positions) {
+            return PeerFilter.contains(this.current, positions)
+                    || PeerFilter.contains(this.previous, positions);
+        }
+
+        private static boolean contains(BitSet filter, int[] positions) {
+            for(int i = 0; i < positions.length; i++) {
+                if(!filter.get(positions[i])) {
+                    return false;
+                }
+            }
+            return true;
+        }
+    }
+}
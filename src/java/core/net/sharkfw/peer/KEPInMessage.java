@@ -3,6 +3,7 @@ package net.sharkfw.peer;
 import java.io.ByteArrayInputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.OutputStream;
 import java.security.DigestInputStream;
 import java.security.PrivateKey;
 import java.security.PublicKey;
@@ -13,6 +14,7 @@ import java.util.Map.Entry;
 import javax.crypto.Cipher;
 import javax.crypto.SecretKey;
 import net.sharkfw.kep.*;
+import net.sharkfw.kep.format.KnowledgeObjectReader;
 import net.sharkfw.knowledgeBase.*;
 import net.sharkfw.knowledgeBase.inmemory.InMemoSharkKB;
 import net.sharkfw.peer.SharkEngine.SecurityLevel;
@@ -58,6 +60,8 @@ public class KEPInMessage extends KEPMessage implements KEPConnection {
     // information directly parsed from message
     private SharkCS receivedInterest = null;
     private Knowledge knowledge = null;
+    private SenderKnowledgeReader knowledgeReader = null;
+    private boolean knowledgeStreaming = false;
 
     // derived information
     private String version = null;
@@ -299,6 +303,12 @@ public class KEPInMessage extends KEPMessage implements KEPConnection {
       String sessionKeyLenString = this.is.readUTF8();
       L.d("\n session key len: " + sessionKeyLenString, this);
       
+      if(sessionKeyLenString.startsWith(KEPMessage.CHUNKED_ENCRYPTION_MARKER)) {
+          this.encryptionFraming = EncryptingOutputStream.CHUNKS;
+          sessionKeyLenString = sessionKeyLenString.substring(
+                  KEPMessage.CHUNKED_ENCRYPTION_MARKER.length());
+      }
+      
       int sessionKeyLen = Integer.parseInt(sessionKeyLenString);
       if(sessionKeyLen > 0) {
           
@@ -307,12 +317,12 @@ public class KEPInMessage extends KEPMessage implements KEPConnection {
             byte[] sessionKeyBytes = new byte[sessionKeyLen];
             this.is.getInputStream().read(sessionKeyBytes);
 
-            L.printByte(sessionKeyBytes, "session key bytes (received)");
-
-            // encrypt
-            Cipher cipher = Cipher.getInstance("RSA");
-            cipher.init(Cipher.UNWRAP_MODE, this.privateKey);
-            this.sessionKey = (SecretKey) cipher.unwrap(sessionKeyBytes, "AES", Cipher.SECRET_KEY);
+            // decrypt - RSA unwrap only if key wasn't received before
+            KEPStub stub = this.se.getKepStub();
+            SessionKeyCache keyCache = stub != null ? 
+                    stub.getSessionKeyCache() : new SessionKeyCache();
+            
+            this.sessionKey = keyCache.getReceivedKey(sessionKeyBytes, this.privateKey);
             this.encrypted = true;
             
 //            System.out.println(">>>>>>>>>>>>>>>> session key encrypted <<<<<<<<<<<<<<<<");
@@ -330,6 +340,7 @@ public class KEPInMessage extends KEPMessage implements KEPConnection {
 }
 
     private SecretKey sessionKey;
+    private int encryptionFraming = EncryptingOutputStream.BLOCKS;
     private DigestInputStream digestStream = null;
     private VerifyingInputStream sin = null;
     
@@ -338,7 +349,8 @@ public class KEPInMessage extends KEPMessage implements KEPConnection {
                 && this.sessionKey != null) {
             
             InputStream decryptingIS = new DecryptingInputStream(
-                    this.is.getInputStream(), this.sessionKey);
+                    this.is.getInputStream(), this.sessionKey, 
+                    this.encryptionFraming);
             
             this.is.set(decryptingIS);
         }
@@ -402,7 +414,8 @@ public class KEPInMessage extends KEPMessage implements KEPConnection {
                 }
                 
                 InputStream decryptingIS = new DecryptingInputStream(
-                        this.is.getInputStream(), this.sessionKey);
+                        this.is.getInputStream(), this.sessionKey, 
+                        this.encryptionFraming);
 
                 this.is.set(decryptingIS);
             } else {
@@ -512,7 +525,9 @@ public class KEPInMessage extends KEPMessage implements KEPConnection {
                 byte[] signature = new byte[sigLen];
                 this.is.getInputStream().read(signature);
                 
-                L.d(L.byteArrayToString(signature, "received signature"), this);
+                if(L.isDebugEnabled()) {
+                    L.d(L.byteArrayToString(signature, "received signature"), this);
+                }
                 
                 // verify
                 if(this.sin != null) {
@@ -531,6 +546,14 @@ public class KEPInMessage extends KEPMessage implements KEPConnection {
             L.l("wrong signature in KEP message; throw security exception", this);
             throw new SharkSecurityException("wrong signature in KEP message");
         }
+        
+        /* remember version for later replies - but not from a header which
+         * is signed but couldn't be verified: it could be spoofed. Unsigned 
+         * messages reach this point only if policy accepts them.
+         */
+        if(!this.signed || this.sin != null) {
+            this.se.setPeerKEPVersion(this.remotePeerSI, this.version);
+        }
     }
     
     private boolean signatureOK = true;
@@ -697,7 +720,12 @@ public class KEPInMessage extends KEPMessage implements KEPConnection {
      */
     public Knowledge getKnowledge() throws IOException, SharkKBException {
         if(this.knowledge == null) {
-            this.knowledge = this.ks.parseKnowledge(is);
+            if(this.knowledgeReader != null) {
+                // knowledge is streamed - take what is left
+                this.knowledge = this.knowledgeReader.readKnowledge();
+            } else {
+                this.knowledge = this.ks.parseKnowledge(is);
+            }
         }
 
         // set sender as property
@@ -726,6 +754,174 @@ public class KEPInMessage extends KEPMessage implements KEPConnection {
         return this.knowledge;
     }
 
+    /**
+     * Allows knowledge to be read part by part by a single knowledge port.
+     * Must be set before the message is handled.
+     * 
+     * @param streaming 
+     * @see #getKnowledgeReader() 
+     */
+    public void setKnowledgeStreaming(boolean streaming) {
+        this.knowledgeStreaming = streaming;
+    }
+
+    /**
+     * Returns a reader on received knowledge. Knowledge is streamed from
+     * the connection if streaming is allowed and knowledge wasn't parsed 
+     * before. It is read from the knowledge object otherwise.
+     * 
+     * Context points and information get the same properties as with
+     * getKnowledge().
+     * 
+     * @return reader - always the same one if streamed
+     * @throws IOException
+     * @throws SharkKBException 
+     * @see #setKnowledgeStreaming(boolean) 
+     */
+    public KnowledgeReader getKnowledgeReader() throws IOException, SharkKBException {
+        if(this.knowledgeReader != null) {
+            if(this.knowledge == null) {
+                return this.knowledgeReader;
+            }
+        }
+        else if(this.knowledge == null && this.knowledgeStreaming) {
+            this.knowledgeReader = new SenderKnowledgeReader(
+                    this.ks.createKnowledgeReader(this.is));
+            
+            return this.knowledgeReader;
+        }
+        
+        return new KnowledgeObjectReader(this.getKnowledge());
+    }
+    
+    /**
+     * Sets sender and sending properties while knowledge is read - 
+     * see getKnowledge(). Background can be read in advance to find
+     * sender.
+     */
+    private class SenderKnowledgeReader implements KnowledgeReader {
+        private final KnowledgeReader reader;
+        
+        private boolean backgroundRead = false;
+        private boolean backgroundReturned = false;
+        
+        private String senderSIString = null;
+        private HashMap<String, String> sendingProperties = null;
+
+        SenderKnowledgeReader(KnowledgeReader reader) {
+            this.reader = reader;
+        }
+        
+        SharkCS readBackground() throws IOException, SharkKBException {
+            if(!this.backgroundRead) {
+                this.reader.next();
+                this.backgroundRead = true;
+                
+                SharkCS background = this.reader.getBackground();
+                
+                // sender is in background - see getSender()
+                PeerSemanticTag senderPeer = KEPInMessage.this.getSender();
+                if(senderPeer != null) {
+                    this.senderSIString = Util.array2string(senderPeer.getSI());
+                }
+                
+                if(!KEPInMessage.this.sendingPropertiesSet) {
+                    KEPInMessage.this.sendingPropertiesSet = true;
+                    this.sendingProperties = KEPInMessage.this.getSendingProperties();
+                    KEPInMessage.setPropertiesToEachElement(background, 
+                            this.sendingProperties);
+                }
+            }
+            
+            return this.reader.getBackground();
+        }
+
+        @Override
+        public boolean hasNext() {
+            return !this.backgroundReturned || this.reader.hasNext();
+        }
+
+        @Override
+        public int next() throws IOException, SharkKBException {
+            if(!this.backgroundReturned) {
+                this.readBackground();
+                this.backgroundReturned = true;
+                return BACKGROUND;
+            }
+            
+            int event = this.reader.next();
+            switch(event) {
+                case CONTEXT_POINT:
+                    ContextPoint cp = this.reader.getContextPoint();
+                    if(this.senderSIString != null) {
+                        cp.setProperty(KEPInMessage.SENDER_SI_STRING_PROPERTY, 
+                                this.senderSIString, false);
+                    }
+                    KEPInMessage.setHiddenProperties(cp, this.sendingProperties);
+                    break;
+                    
+                case INFORMATION:
+                    KEPInMessage.setHiddenProperties(this.reader.getInformation(), 
+                            this.sendingProperties);
+                    break;
+            }
+            
+            return event;
+        }
+
+        @Override
+        public SharkCS getBackground() {
+            return this.reader.getBackground();
+        }
+
+        @Override
+        public ContextPoint getContextPoint() {
+            return this.reader.getContextPoint();
+        }
+
+        @Override
+        public Information getInformation() {
+            return this.reader.getInformation();
+        }
+
+        @Override
+        public long getContentLength() {
+            return this.reader.getContentLength();
+        }
+
+        @Override
+        public void streamContent(OutputStream os) throws IOException {
+            this.reader.streamContent(os);
+        }
+
+        @Override
+        public void streamContent(Information target) throws IOException {
+            this.reader.streamContent(target);
+        }
+
+        @Override
+        public Knowledge readKnowledge() throws IOException, SharkKBException {
+            this.readBackground();
+            this.backgroundReturned = true;
+            
+            // sender property is set by getKnowledge()
+            Knowledge k = this.reader.readKnowledge();
+            if(this.sendingProperties != null) {
+                KEPInMessage.setPropertiesToEachElement(k, this.sendingProperties);
+            }
+            
+            return k;
+        }
+
+        @Override
+        public void skip() throws IOException, SharkKBException {
+            this.readBackground();
+            this.backgroundReturned = true;
+            
+            this.reader.skip();
+        }
+    }
+
     /**
      * Return the KEP-Command.
      *
@@ -743,6 +939,15 @@ public class KEPInMessage extends KEPMessage implements KEPConnection {
      * this request. If it is, the stream gets passed to the KEPStub.
      */
     public void finished() {
+        if(this.knowledgeReader != null && this.knowledge == null) {
+            // read rest of streamed knowledge - next message follows
+            try {
+                this.knowledgeReader.skip();
+            } catch (Exception ex) {
+                L.w("cannot skip rest of knowledge: " + ex.getMessage(), this);
+            }
+        }
+        
         if(this.kepStub != null && this.con != null) {
             this.kepStub.handleStream(this.con);
         }
@@ -820,7 +1025,7 @@ public class KEPInMessage extends KEPMessage implements KEPConnection {
    * @throws SharkException If no communication channel for the <code>KEPResponse</code> can be created.
    */
   private KEPOutMessage createResponse(String[] receiveraddress) throws SharkException {
-      return this.se.createKEPOutResponse(this.con, receiveraddress, publicKeyRemotePeer, remotePeerSI, encrypted, signed);
+      return this.se.createKEPOutResponse(this.con, receiveraddress, publicKeyRemotePeer, remotePeerSI, encrypted, signed, this.version);
       
 //      
 //    /**
@@ -1057,6 +1262,17 @@ public class KEPInMessage extends KEPMessage implements KEPConnection {
       } catch (SharkKBException ex) {
         ex.printStackTrace();
       }
+    } else if (this.cmd == KEPMessage.KEP_INSERT && this.knowledgeStreaming) {
+      // knowledge is streamed - sender is in background
+      try {
+        this.getKnowledgeReader();
+        SharkCS background = this.knowledgeReader.readBackground();
+        if(background != null) {
+          peer = background.getPeers();
+        }
+      } catch (IOException ex) {
+        throw new SharkKBException(ex.getMessage());
+      }
     }
 //    try {
       if(peer != null){
@@ -1091,6 +1307,9 @@ public class KEPInMessage extends KEPMessage implements KEPConnection {
             catch(IOException e) {
                 throw new SharkKBException(e.getMessage());
             }
+            finally {
+                this.se.releaseKEPOutResponse(newResponse);
+            }
         }
     }
 
@@ -1109,6 +1328,9 @@ public class KEPInMessage extends KEPMessage implements KEPConnection {
             catch(IOException e) {
                 throw new SharkKBException(e.getMessage());
             }
+            finally {
+                this.se.releaseKEPOutResponse(newResponse);
+            }
         }
     }
 
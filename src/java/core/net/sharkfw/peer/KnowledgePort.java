@@ -5,6 +5,7 @@ import java.security.PrivateKey;
 import java.util.Enumeration;
 import java.util.Vector;
 import net.sharkfw.kep.KEPStub;
+import net.sharkfw.kep.KnowledgeReader;
 import net.sharkfw.knowledgeBase.*;
 import net.sharkfw.knowledgeBase.inmemory.InMemoSharkKB;
 import net.sharkfw.kp.KPListener;
@@ -49,6 +50,7 @@ abstract public class KnowledgePort {
     @SuppressWarnings("unused")
     private PrivateKey privateKey;
     private AccessListManager accessList;
+    private boolean knowledgeStreaming = false;
 
     /**
      * Section 5.1 requires this constructor
@@ -95,6 +97,21 @@ abstract public class KnowledgePort {
         return this.accessList;
     }
 
+    /**
+     * Received knowledge is handed to doInsert(KnowledgeReader, KEPConnection)
+     * while it is read from the connection. This only takes place if this
+     * port is the only one that handles the message. Default is false.
+     * 
+     * @param streaming 
+     */
+    public void setKnowledgeStreaming(boolean streaming) {
+        this.knowledgeStreaming = streaming;
+    }
+    
+    public boolean isKnowledgeStreaming() {
+        return this.knowledgeStreaming;
+    }
+
     /**
      * Set the <code>KEPStub</code> that is used as a protocol engine.
      *
@@ -161,6 +178,32 @@ abstract public class KnowledgePort {
         } catch (SharkKBException ex) {
             this.interest = interest;
         }
+        
+        this.routingChanged();
+    }
+    
+    /**
+     * KEP stub offers an expose message only to KPs which could react on it.
+     * If a KP returns subject identifiers here, it is only called if at
+     * least one topic of a received interest has one of them. 
+     * 
+     * Subclasses must call routingChanged() whenever the result changes.
+     * 
+     * @return topic sis, or null if any interest can be of relevance (default)
+     */
+    public String[] getRoutingTopics() {
+        return null;
+    }
+    
+    /**
+     * Tell KEP stub to ask for routing topics again.
+     * @see #getRoutingTopics() 
+     */
+    protected final void routingChanged() {
+        KEPStub stub = this.kepStub;
+        if(stub != null) {
+            stub.refreshRouting(this);
+        }
     }
 
     /** 
@@ -199,41 +242,58 @@ abstract public class KnowledgePort {
      * @see #doExpose(net.sharkfw.peer.KEPRequest)
      * @see #doInsert(net.sharkfw.peer.KEPRequest)
      *
+     * Messages are handled concurrently if this KP is thread safe. 
+     * Otherwise, KPs working on the same knowledge base handle one message 
+     * after another. Messages arriving concurrently can be handled in any 
+     * order. KPs on different knowledge bases don't block each other.
+     * 
+     * @see #isThreadSafe() 
      * @param msg Request retrieved by a KEP Stub
      */
-    public synchronized final boolean handleMessage(KEPInMessage msg) {
-        L.d("KP.handleMessage()", this);
-        
-        // check black-/white list
-        PeerSemanticTag sender = null;
-        try {
-            sender = msg.getSender();
-        } catch (SharkKBException ex) {
-            //
+    public final boolean handleMessage(KEPInMessage msg) {
+        if(this.isThreadSafe()) {
+            return this.handle(msg);
         }
+
+        SharkKB lockedKB = this.kb;
+        synchronized(lockedKB != null ? lockedKB : this) {
+            return this.handle(msg);
+        }
+    }
+
+    /**
+     * KPs which can handle several messages at the same time return true.
+     * Their doInsert and doExpose methods are called concurrently and must 
+     * synchronize access to their state and knowledge base themselves.
+     * 
+     * @return false by default: messages are handled one after another
+     */
+    public boolean isThreadSafe() {
+        return false;
+    }
+
+    /**
+     * Called by KEP stub instead of handleMessage if an expose message 
+     * isn't offered to this KP due to its routing topics. Received interest
+     * is remembered anyway.
+     * 
+     * @see #getRoutingTopics() 
+     * @param msg 
+     */
+    public final void skipMessage(KEPInMessage msg) {
+        SharkCS msgInterest = msg.getInterest();
         
-        // check access list management
-        
-        // has got this k its own access manager
-        WhiteAndBlackListManager accessManager = this.getAccessListManager();
-        if(accessManager == null) {
-            // no - take engine
-            accessManager = this.se;
+        if(msgInterest != null && this.accepted(msg)) {
+            this.receivedInterest = msgInterest;
         }
+    }
+
+    private boolean handle(KEPInMessage msg) {
+        L.d("KP.handleMessage()", this);
         
-        if(!accessManager.isAccepted(sender)) {
-            // not allowed to access this kp or engine in general
-            
-            // create log message
-            String senderSI = "sender not transmitted";
-            if(sender != null) {
-                senderSI = sender.getSI()[0];
-            }
-            
-            L.l("stop handling request because sender is not welcome due to black/white list: " + senderSI, this);
+        if(!this.accepted(msg)) {
             return false;
         }
-        // end access list management
 
         // Let the request know which handler is holding it
         msg.setKEPHandler(this);
@@ -254,7 +314,11 @@ abstract public class KnowledgePort {
         switch (cmd) {
             case KEPInMessage.KEP_INSERT:
                 try {
-                    this.doInsert(msg.getKnowledge(), msg);
+                    if(this.knowledgeStreaming) {
+                        this.doInsert(msg.getKnowledgeReader(), msg);
+                    } else {
+                        this.doInsert(msg.getKnowledge(), msg);
+                    }
                 } catch (Exception ex) {
                     L.e("Error while handling insert request:\n" + ex.getMessage(), this);
                 }
@@ -274,6 +338,44 @@ abstract public class KnowledgePort {
         return responded;
     }
 
+    /**
+     * @return false if sender isn't accepted by black-/white list
+     */
+    private boolean accepted(KEPInMessage msg) {
+        // check black-/white list
+        PeerSemanticTag sender = null;
+        try {
+            sender = msg.getSender();
+        } catch (SharkKBException ex) {
+            //
+        }
+        
+        // check access list management
+        
+        // has got this k its own access manager
+        WhiteAndBlackListManager accessManager = this.getAccessListManager();
+        if(accessManager == null) {
+            // no - take engine
+            accessManager = this.se;
+        }
+        
+        if(!accessManager.isAccepted(sender)) {
+            // not allowed to access this kp or engine in general
+            
+            // create log message
+            String senderSI = "sender not transmitted";
+            if(sender != null) {
+                senderSI = sender.getSI()[0];
+            }
+            
+            L.l("stop handling request because sender is not welcome due to black/white list: " + senderSI, this);
+            return false;
+        }
+        // end access list management
+        
+        return true;
+    }
+
     /**
      * Place logic for handling an insert command in this method.
      *
@@ -284,6 +386,26 @@ abstract public class KnowledgePort {
      */
     protected abstract void doInsert(Knowledge knowledge, KEPConnection kepConnection);
 
+    /**
+     * Called instead of doInsert(Knowledge, KEPConnection) if knowledge
+     * streaming is set. Knowledge is read completely and handed to
+     * doInsert(Knowledge, KEPConnection) by default. 
+     * 
+     * Overwrite this method to process context points and content while
+     * they are read.
+     *
+     * @param reader reader positioned before background
+     * @param kepConnection
+     * @throws IOException
+     * @throws SharkKBException
+     * @see #setKnowledgeStreaming(boolean) 
+     */
+    protected void doInsert(KnowledgeReader reader, KEPConnection kepConnection) 
+            throws IOException, SharkKBException {
+        
+        this.doInsert(reader.readKnowledge(), kepConnection);
+    }
+
     /**
      * Place logic for handling an expose command in this method.
      *
@@ -7,7 +7,10 @@ import java.security.PublicKey;
 import java.util.ArrayList;
 import java.util.Enumeration;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
 import java.util.Vector;
 import net.sharkfw.kep.*;
 import net.sharkfw.kep.format.XMLSerializer;
@@ -272,6 +275,14 @@ abstract public class SharkEngine implements WhiteAndBlackListManager {
         throw new SharkProtocolNotSupportedException("device does not support tcp");
     }
     
+    /**
+     * @param port
+     * @param nio true if a non-blocking implementation is to be used
+     */
+    public void startTCP(int port, boolean nio) throws SharkProtocolNotSupportedException, IOException {
+        throw new SharkProtocolNotSupportedException("device does not support tcp");
+    }
+    
     public void startMail() throws SharkProtocolNotSupportedException, IOException {
         throw new SharkProtocolNotSupportedException("device does not support e-mail");
     }
@@ -659,14 +670,17 @@ abstract public class SharkEngine implements WhiteAndBlackListManager {
     }
 
     /**
-     * Set the serialization format for knowledge
+     * Set the serialization format for knowledge. 
+     * 
+     * <code>KEPMessage.BINARY</code> is only used with peers which
+     * announced to understand it. XML is sent to any other peer.
      *
      * @see net.sharkfw.kep.KEPMessage
      * 
      * @param format An integer value representing the format to use
      * @throws SharkNotSupportedException
      */
-    void setKnowledgeFormat(int format) throws SharkNotSupportedException {
+    public void setKnowledgeFormat(int format) throws SharkNotSupportedException {
         if (format > KEPMessage.MAXNUMBER || format < 0) {
             throw new SharkNotSupportedException("unknwon format: " + format);
         }
@@ -674,6 +688,81 @@ abstract public class SharkEngine implements WhiteAndBlackListManager {
         this.kFormat = format;
     }
 
+    // KEP versions announced by peers - key is SI in lower case
+    private static final int MAX_KNOWN_PEER_VERSIONS = 10000;
+    private final LinkedHashMap<String, String> peerKEPVersions = 
+            new LinkedHashMap<String, String>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, String> eldest) {
+            // least recently used peer is forgotten - it gets XML again
+            return this.size() > MAX_KNOWN_PEER_VERSIONS;
+        }
+    };
+
+    /**
+     * Remembers KEP version of a peer. It defines e.g. if the peer is able
+     * to parse binary format.
+     * 
+     * @param peerSIs SIs of a peer which sent a message
+     * @param version KEP version found in that message
+     */
+    void setPeerKEPVersion(String[] peerSIs, String version) {
+        if(peerSIs == null || version == null) return;
+
+        synchronized(this.peerKEPVersions) {
+            for(int i = 0; i < peerSIs.length; i++) {
+                this.peerKEPVersions.put(SharkCSAlgebra.siKey(peerSIs[i]), version);
+            }
+        }
+    }
+
+    /**
+     * @return KEP version last announced by that peer - null if unknown
+     */
+    private String getPeerKEPVersion(String[] peerSIs) {
+        if(peerSIs == null) return null;
+
+        synchronized(this.peerKEPVersions) {
+            for(int i = 0; i < peerSIs.length; i++) {
+                String version = this.peerKEPVersions.get(SharkCSAlgebra.siKey(peerSIs[i]));
+                if(version != null) {
+                    return version;
+                }
+            }
+        }
+
+        return null;
+    }
+
+    /**
+     * Returns format for a message to a peer. The format of this engine is 
+     * used. XML is used instead of binary format if the peer isn't known
+     * to understand it.
+     * 
+     * @param peerSIs SIs of recipient - can be null
+     * @param binaryAccepted true if recipient is known to parse binary format
+     * e.g. because it is the sender of the message we reply on
+     */
+    int getKnowledgeFormat(String[] peerSIs, boolean binaryAccepted) {
+        if(this.kFormat != KEPMessage.BINARY || binaryAccepted) {
+            return this.kFormat;
+        }
+
+        if(KEPMessage.binaryFormatSupported(this.getPeerKEPVersion(peerSIs))) {
+            return KEPMessage.BINARY;
+        }
+
+        return KEPMessage.XML;
+    }
+
+    /**
+     * @param peerSIs SIs of recipient - can be null
+     * @return true if recipient is known to decrypt chunked framing
+     */
+    boolean chunkedEncryptionAccepted(String[] peerSIs) {
+        return KEPMessage.chunkedEncryptionSupported(this.getPeerKEPVersion(peerSIs));
+    }
+
     /**
      * Returns an instance of <code>KnowledgeSerializer</code> for a given serialization type.
      *
@@ -730,6 +819,32 @@ abstract public class SharkEngine implements WhiteAndBlackListManager {
         this.kepSessionTimeOut = millis;
     }
 
+    /**
+     * Limits the number of KEPSessions handled concurrently. Connections
+     * wait if all sessions are busy and are refused if too many are 
+     * waiting.
+     * 
+     * @param maxSessions number of sessions handled concurrently
+     * @param maxQueuedSessions number of sessions waiting for a free session
+     * @see KEPSessionPool
+     */
+    public void setMaxSessions(int maxSessions, int maxQueuedSessions) {
+        this.kepStub.setSessionPool(new KEPSessionPool(maxSessions, 
+                maxQueuedSessions, KEPSessionPool.DEFAULT_ADMISSION_TIMEOUT));
+    }
+
+    /**
+     * Encrypted messages to a peer share a session key for that period.
+     * Only the first message pays for wrapping the key with the public 
+     * key of the recipient.
+     * 
+     * @param millis 0: new session key with each message
+     * @see SessionKeyCache
+     */
+    public void setSessionKeyTTL(long millis) {
+        this.kepStub.getSessionKeyCache().setTTL(millis);
+    }
+
     /**
      * Return whether or not the SharkEngine has any open communication stubs.
      * @return <code>true</code> if this SharkEngine has at least one open communication stub, <code>false</code> otherwise.
@@ -804,25 +919,30 @@ abstract public class SharkEngine implements WhiteAndBlackListManager {
             return;
         }
 
-        KEPOutMessage response = this.createKEPOutMessage(addresses, recipient);
+        KEPOutMessage response = this.createKEPOutMessage(addresses, recipient, true);
 
         if (response != null) {
             // Response could be created
-
             try {
-                // send interest
-                if(interest != null) {
-                    response.expose(interest);
+                this.send(response, interest, k);
+            }
+            catch(IOException e) {
+                if(!response.isReusedConnection()) {
+                    throw new SharkKBException(e.getMessage());
                 }
 
-                // send knowledge
-                if(k != null) {
-                    response.insert(k);
+                // remote peer closed pooled connection meanwhile - try once more
+                L.d("pooled connection broken - retry with new connection: " + e.getMessage(), this);
+                response = this.createKEPOutMessage(addresses, recipient, false);
+                if(response != null) {
+                    try {
+                        this.send(response, interest, k);
+                    }
+                    catch(IOException ee) {
+                        throw new SharkKBException(ee.getMessage());
+                    }
                 }
             }
-            catch(IOException e) {
-                throw new SharkKBException(e.getMessage());
-            }
         }
 
         if(response != null) {
@@ -833,6 +953,41 @@ abstract public class SharkEngine implements WhiteAndBlackListManager {
         L.d("<<<<<<<<<<<<<<<<<< End sending knowledge or interest to recipient", this);
     }
     
+    /**
+     * Writes interest and knowledge into that message. A broken stream
+     * connection is removed from the pool and closed - otherwise it is 
+     * released for the next message to that peer.
+     */
+    private void send(KEPOutMessage response, SharkCS interest, Knowledge k) throws IOException {
+        StreamConnection con = response.getStreamConnection();
+        try {
+            // send interest
+            if(interest != null) {
+                response.expose(interest);
+            }
+
+            // send knowledge
+            if(k != null) {
+                response.insert(k);
+            }
+        }
+        catch(IOException e) {
+            if(con != null) {
+                // broken - don't use it again
+                this.kepStub.removeStreamConnection(con);
+                con.close();
+                con = null;
+            }
+            throw e;
+        }
+        finally {
+            if(con != null) {
+                // can be reused by next message to that peer
+                this.kepStub.releaseConnection(con);
+            }
+        }
+    }
+    
     /**
      * Bring receiver addresses in an order. Put addresses up which should
      * be tried first. Message are just send once. Thus, the first valid address
@@ -903,10 +1058,19 @@ abstract public class SharkEngine implements WhiteAndBlackListManager {
      * Creates a new KEPOutMessage without security initialization.
      * 
      * @param addresses
+     * @param format knowledge format of this message
      * @return 
      */
+    private KEPOutMessage createKEPOutMessage(String[] addresses, int format) {
+        return this.createKEPOutMessage(addresses, format, true);
+    }
+    
+    /**
+     * @param usePool false if a new stream connection is to be established
+     * even if an idle pooled connection exists
+     */
     @SuppressWarnings("rawtypes")
-    private KEPOutMessage createKEPOutMessage(String[] addresses) {
+    private KEPOutMessage createKEPOutMessage(String[] addresses, int format, boolean usePool) {
         KEPOutMessage response = null;
         MessageStub mStub;
         StreamStub sStub;
@@ -923,7 +1087,7 @@ abstract public class SharkEngine implements WhiteAndBlackListManager {
         while (addrEnum.hasMoreElements()) {            
             String address = (String) addrEnum.nextElement();
             L.d("sendInterest: try address:"+address, this);
-            //boolean fromPool = false;
+            boolean fromPool = false;
             try {
                 /*
                  * Check if stub is available
@@ -937,21 +1101,26 @@ abstract public class SharkEngine implements WhiteAndBlackListManager {
                  */
                 if (protocolStub instanceof StreamStub) {
                     sStub = (StreamStub) protocolStub;
-                    //        sConn = this.kepStub.getConnectionByAddress(address);
-                    //      if(sConn == null) {
-                    try {
-                        sConn = sStub.createStreamConnection(address);
-                    }
-                    catch(RuntimeException re) {
-                        throw new SharkException(re.getMessage());
+                    // open connection to that peer?
+                    sConn = usePool ? this.kepStub.getConnectionByAddress(address) : null;
+                    if(sConn == null) {
+                        try {
+                            sConn = sStub.createStreamConnection(address);
+                        }
+                        catch(RuntimeException re) {
+                            throw new SharkException(re.getMessage());
+                        }
+                        if(sConn != null) {
+                            this.kepStub.addConnection(address, sConn);
+                        }
+                    } else {
+                        fromPool = true;
                     }
-                    //    } else {
-                    //  fromPool = true;
-                    //  }
-                    response = new KEPOutMessage(this, sConn, KEPMessage.getKnowledgeSerializer(this.kFormat));
+                    response = new KEPOutMessage(this, sConn, KEPMessage.getKnowledgeSerializer(format));
+                    response.setReusedConnection(fromPool);
                 } else {
                     mStub = (MessageStub) protocolStub;
-                    response = new KEPOutMessage(this, mStub, KEPMessage.getKnowledgeSerializer(this.kFormat), address);
+                    response = new KEPOutMessage(this, mStub, KEPMessage.getKnowledgeSerializer(format), address);
                 }
             } catch (SharkNotSupportedException ex) {
                 L.e(ex.getMessage(), this);
@@ -970,7 +1139,8 @@ abstract public class SharkEngine implements WhiteAndBlackListManager {
                 continue;
             }
 
-            if (sConn != null /*&& !fromPool*/) {
+            // pooled connections are already read by a session
+            if (sConn != null && !fromPool) {
                 this.kepStub.handleStream(sConn);
             }
             
@@ -987,42 +1157,98 @@ abstract public class SharkEngine implements WhiteAndBlackListManager {
      * Create a KEP message that shall be send to on (!) of those addresses
      * @return 
      */
-    private KEPOutMessage createKEPOutMessage(String[] addresses, PeerSemanticTag recipient) throws SharkSecurityException, SharkKBException {
-        KEPOutMessage response = this.createKEPOutMessage(addresses);
+    private KEPOutMessage createKEPOutMessage(String[] addresses, PeerSemanticTag recipient, boolean usePool) throws SharkSecurityException, SharkKBException {
+        int format = this.getKnowledgeFormat(recipient.getSI(), false);
+        KEPOutMessage response = this.createKEPOutMessage(addresses, format, usePool);
 
         if(response != null) {
-            this.initSecurity(response, recipient);
+            boolean initialized = false;
+            try {
+                this.initSecurity(response, recipient);
+                initialized = true;
+            }
+            finally {
+                if(!initialized) {
+                    this.releaseKEPOutResponse(response);
+                }
+            }
         }
         return response;
     }
     
     /**
-     * Create a message as reply on an already received message
+     * Create a message as reply on an already received message. The
+     * stream connection of the reply is leased - call 
+     * releaseKEPOutResponse after sending.
+     * 
+     * @param remoteKEPVersion KEP version of received message - defines
+     * format and encryption framing of reply
      * @return 
      */
     KEPOutMessage createKEPOutResponse(StreamConnection con, 
             String[] addresses, PublicKey publicKeyRemotePeer, 
-            String[] remotePeerSI, boolean encrypted, boolean signed)
+            String[] remotePeerSI, boolean encrypted, boolean signed,
+            String remoteKEPVersion)
                 throws SharkKBException, SharkSecurityException, SharkException {
         
         L.d("Creating new KEP reply:", this);
                 
         KEPOutMessage response = null;
+        int format = this.getKnowledgeFormat(remotePeerSI, 
+                KEPMessage.binaryFormatSupported(remoteKEPVersion));
 
         // is there already a stub?
         if(con != null) {
-            // we take existing stream connection
+            // we take existing stream connection - it can be pooled 
+            // and written by a sender in parallel
+            try {
+                this.kepStub.leaseConnection(con);
+            }
+            catch(IOException e) {
+                throw new SharkException("cannot reply: " + e.getMessage());
+            }
 
             response = new KEPOutMessage(this, con, 
-                    this.getKnowledgeSerializer());
+                    this.getKnowledgeSerializer(format));
         }
         else { // there is no open connection
-            response = this.createKEPOutMessage(addresses);
+            response = this.createKEPOutMessage(addresses, format);
         }
         
         if(response == null) {
             throw new SharkException("couldn't create KEP reponse message");
         }
+        
+        boolean initialized = false;
+        try {
+            this.initKEPOutResponse(response, publicKeyRemotePeer, 
+                    remotePeerSI, encrypted, signed, remoteKEPVersion);
+            initialized = true;
+        }
+        finally {
+            if(!initialized) {
+                this.releaseKEPOutResponse(response);
+            }
+        }
+  
+        return response;
+    }
+    
+    /**
+     * Releases stream connection of a reply - it can be used by 
+     * other senders again.
+     */
+    void releaseKEPOutResponse(KEPOutMessage response) {
+        StreamConnection con = response.getStreamConnection();
+        if(con != null) {
+            this.kepStub.releaseConnection(con);
+        }
+    }
+    
+    private void initKEPOutResponse(KEPOutMessage response,
+            PublicKey publicKeyRemotePeer, String[] remotePeerSI, 
+            boolean encrypted, boolean signed, String remoteKEPVersion)
+                throws SharkKBException, SharkSecurityException {
             
         ///////////////////////////////////////////////////////////////////
         //                       setting up security                     //
@@ -1122,8 +1348,8 @@ abstract public class SharkEngine implements WhiteAndBlackListManager {
         }
         
         response.initSecurity(useThisPrivateKey, useThisPublicKey, useThisSI, sign);
-  
-        return response;
+        response.setChunkedEncryption(
+                KEPMessage.chunkedEncryptionSupported(remoteKEPVersion));
     }
     
     private void initSecurity(KEPOutMessage msg, PeerSemanticTag recipient) throws SharkSecurityException, SharkKBException {
@@ -1190,6 +1416,7 @@ abstract public class SharkEngine implements WhiteAndBlackListManager {
         
         // init request with both key which can be null if level is IF_POSSIBLE
         msg.initSecurity(useThisPrivateKey, publicKey, sendingPeerSIString, sign);
+        msg.setChunkedEncryption(this.chunkedEncryptionAccepted(recipientSIs));
     }
 
     /**
@@ -1424,21 +1651,42 @@ abstract public class SharkEngine implements WhiteAndBlackListManager {
         return this.allowEmptyContextPoints;
     }
     
-    private final HashMap<Integer,String> deliveredInformation = 
-            new HashMap<>();
+    private final DeliveryLedger deliveryLedger = new DeliveryLedger();
     
     private boolean allowEmptyContextPoints = true;
     
+    private boolean suppressSentInformation = false;
+    
+    /**
+     * Information which were already sent to a recipient are removed from
+     * outgoing knowledge if set. Default is false.
+     * 
+     * Note: Sent information are remembered by a bounded ledger. Some
+     * information might be suppressed though they weren't sent (rarely).
+     * Information sent long ago are sent again.
+     * 
+     * @param suppress 
+     */
+    public void setSuppressSentInformation(boolean suppress) {
+        this.suppressSentInformation = suppress;
+    }
+    
+    public boolean getSuppressSentInformation() {
+        return this.suppressSentInformation;
+    }
+    
     /**
      * This methods checks whether information are already sent to a peer
      * @param k knowledge ought to be sent
      * @param address recipient address
      * @return Knowledge with information that are not already sent or null if 
      * all information have already been transmitted
-     * @deprecated ???
      */
     @SuppressWarnings("rawtypes")
     public Knowledge removeSentInformation(Knowledge k, String address) {
+        if(address == null) {
+            return k;
+        }
         
         // create knowledge to be returned
         Knowledge retK = new InMemoKnowledge(k.getVocabulary());
@@ -1457,18 +1705,7 @@ abstract public class SharkEngine implements WhiteAndBlackListManager {
             while(infoEnum.hasMoreElements()) {
                 Information info = (Information)infoEnum.nextElement();
                 
-                Integer hash = new Integer(info.hashCode());
-                
-                // already in list ?
-                String oldAddress = this.deliveredInformation.get(hash);
-                
-                // already sent?
-                boolean sent = false;
-                if(oldAddress != null && address.equalsIgnoreCase(oldAddress)) {
-                    sent = true;
-                }
-                
-                if(!sent) {
+                if(!this.deliveryLedger.isDelivered(info, address)) {
                     // no yet sent - keep it.
                     newCP.addInformation(info);
                 }
@@ -1509,8 +1746,7 @@ abstract public class SharkEngine implements WhiteAndBlackListManager {
             
             while(infoEnum.hasMoreElements()) {
                 Information info = (Information)infoEnum.nextElement();
-                int hash = info.hashCode();
-                this.deliveredInformation.put(new Integer(hash), address);
+                this.deliveryLedger.delivered(info, address);
             }
         }
     }
@@ -1527,14 +1763,24 @@ abstract public class SharkEngine implements WhiteAndBlackListManager {
         return this.kepStub.getUnhandledInterests(since);
     }
 
-    public Iterator<SharkCS> getUnhandledKnowledge(long since) {
-        return this.getUnhandledKnowledge(since);
+    public Iterator<Knowledge> getUnhandledKnowledge(long since) {
+        return this.kepStub.getUnhandledKnowledge(since);
     }
 
     public void removeSentHistory() {
         this.kepStub.removeSentHistory();
     }
     
+    /**
+     * Sent and unhandled interests and knowledge are remembered. Each of 
+     * those histories keeps at most that number of messages. 
+     * 
+     * @param maxMessages default is KEPStub.DEFAULT_HISTORY_SIZE
+     */
+    public void setHistorySize(int maxMessages) {
+        this.kepStub.setHistorySize(maxMessages);
+    }
+    
     public final static int DEFAULT_SILTENT_PERIOD = 500;
     
     /**
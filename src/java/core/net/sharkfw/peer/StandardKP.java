@@ -1,7 +1,9 @@
 package net.sharkfw.peer;
 
+import java.io.IOException;
 import java.util.ArrayList;
 import java.util.Iterator;
+import net.sharkfw.kep.KnowledgeReader;
 import net.sharkfw.knowledgeBase.*;
 import net.sharkfw.knowledgeBase.inmemory.InMemoSharkKB;
 import net.sharkfw.protocols.PeerAddress;
@@ -79,6 +81,24 @@ public class StandardKP extends KnowledgePort implements KnowledgeBaseListener {
     public void deleteAssimilatedFromKnowledge(boolean delete) {
         this.deleteAssimilated = delete;
     }
+    
+    /**
+     * Whether or not expose messages are routed by topics of effective interest.
+     */
+    private boolean topicRouting = false;
+    
+    /**
+     * Expose messages are only offered if one of their topics is in 
+     * effective interest of this KP. Only switch it on if doExpose isn't 
+     * overridden or reacts on those interests only as well.
+     * 
+     * @param on false by default
+     * @see #getRoutingTopics() 
+     */
+    public void setTopicRouting(boolean on) {
+        this.topicRouting = on;
+        this.routingChanged();
+    }
   
     public StandardKP(SharkEngine se, SharkCS interest, 
             FragmentationParameter[] backgroundFP, 
@@ -160,8 +180,10 @@ public class StandardKP extends KnowledgePort implements KnowledgeBaseListener {
 //        L.d(L.kbSpace2String(k.getBackgroundKnowledge()), this);
         
         try {
-            L.d("doInsert: local interest:\n ", this); 
-            L.d(L.contextSpace2String(this.getInterest()), this);
+            if(L.isDebugEnabled()) {
+                L.d("doInsert: local interest:\n ", this); 
+                L.d(L.contextSpace2String(this.getInterest()), this);
+            }
 
             this.notifyKnowledgeReceived(k);
             
@@ -178,8 +200,10 @@ public class StandardKP extends KnowledgePort implements KnowledgeBaseListener {
                 return;
             }
 
-            L.d("doInsert: effective interest:\n ", this); 
-            L.d(L.contextSpace2String(effectiveInterest), this);
+            if(L.isDebugEnabled()) {
+                L.d("doInsert: effective interest:\n ", this); 
+                L.d(L.contextSpace2String(effectiveInterest), this);
+            }
 
 			/* dead code removed */
             // assimilate this knowledge
@@ -188,27 +212,85 @@ public class StandardKP extends KnowledgePort implements KnowledgeBaseListener {
                                             this.getFP(), k, this.learn, 
                                             this.deleteAssimilated);
             
-            L.d("doInsert: knowledge base after assimilation:\n " + 
-                    L.kb2String(this.getKB()), this); 
-            
-            // notify 
-            if(assimilatedCC != null) {
-                Iterator<ContextCoordinates> ccIter = assimilatedCC.iterator();
-                while(ccIter.hasNext()) {
-                    ContextCoordinates cc = ccIter.next();
-                    ContextPoint cp = this.getKB().getContextPoint(cc);
-                    if(cp != null) {
-                        this.notifyKnowledgeAssimilated(this, cp);
-                    }
-                }
+            if(L.isDebugEnabled()) {
+                L.d("doInsert: knowledge base after assimilation:\n " + 
+                        L.kb2String(this.getKB()), this); 
             }
-
+            
+            this.notifyAssimilated(assimilatedCC);
         }
         catch(SharkKBException e) {
             L.d("assimilation failed: " + e.getMessage(), this);
         }
     }
 
+    /**
+     * Same as doInsert(Knowledge, KEPConnection) but context points are
+     * assimilated while they are read. Content is streamed directly into
+     * the knowledge base. No received knowledge is built - it would hold
+     * the whole message in memory. KPs which need it must not get streamed
+     * knowledge (see KEPInMessage.setKnowledgeStreaming).
+     *
+     * @param reader
+     * @param response
+     * @throws IOException
+     * @throws SharkKBException 
+     */
+    @Override
+    protected void doInsert(KnowledgeReader reader, KEPConnection response) 
+            throws IOException, SharkKBException {
+        
+        L.d("\n******************************************\n\t\tKP doInsert (streamed)\n******************************************\n", this);
+
+        if(!this.isIKP()) { 
+            L.d("insert called but KP has no incomming interest - don't do anything", this);
+            return; 
+        }
+        
+        reader.next(); // background
+        SharkCS background = reader.getBackground();
+        
+        // there must be a context
+        if(background == null) {
+            background = new InMemoSharkKB().asSharkCS();
+        }
+        
+        SharkCS effectiveInterest = SharkCSAlgebra.contextualize(background,
+                this.getInterest(), this.getFP());
+
+        // is there a mutual interest ?
+        if(effectiveInterest == null) {
+            L.d("no mutual interest", this);
+            return;
+        }
+
+        if(L.isDebugEnabled()) {
+            L.d("doInsert: effective interest:\n ", this); 
+            L.d(L.contextSpace2String(effectiveInterest), this);
+        }
+
+        ArrayList<ContextCoordinates> assimilatedCC = 
+                SharkCSAlgebra.assimilate(this.getKB(), effectiveInterest, 
+                                        this.getFP(), reader, this.learn);
+
+        this.notifyAssimilated(assimilatedCC);
+    }
+    
+    private void notifyAssimilated(ArrayList<ContextCoordinates> assimilatedCC) 
+            throws SharkKBException {
+        
+        if(assimilatedCC != null) {
+            Iterator<ContextCoordinates> ccIter = assimilatedCC.iterator();
+            while(ccIter.hasNext()) {
+                ContextCoordinates cc = ccIter.next();
+                ContextPoint cp = this.getKB().getContextPoint(cc);
+                if(cp != null) {
+                    this.notifyKnowledgeAssimilated(this, cp);
+                }
+            }
+        }
+    }
+
     /**
      * <p>Check whether to answer with insert or expose.<br />
      * If answering with insert call extraction to extract {@link Knowledge} from the local KB.
@@ -225,8 +307,10 @@ public class StandardKP extends KnowledgePort implements KnowledgeBaseListener {
 
       try {
           // an interest has been retrieved from remote peer
-          L.d("doExpose: \n receivedInterest interest is:\n"+ L.contextSpace2String(receivedInterest), this);
-          L.d("doExpose: \n my Interest interest is:\n"+ L.contextSpace2String(this.getInterest()), this);
+          if(L.isDebugEnabled()) {
+              L.d("doExpose: \n receivedInterest interest is:\n"+ L.contextSpace2String(receivedInterest), this);
+              L.d("doExpose: \n my Interest interest is:\n"+ L.contextSpace2String(this.getInterest()), this);
+          }
           
           // check if internals would be revealed which isn't allowed.
           if(!this.revealingAndAllowed(receivedInterest, this.getInterest())) {
@@ -262,7 +346,9 @@ public class StandardKP extends KnowledgePort implements KnowledgeBaseListener {
               return;
           }
           
-          L.d("doExpose: \n mutual interest is:\n"+ L.contextSpace2String(mutualInterest), this);
+          if(L.isDebugEnabled()) {
+              L.d("doExpose: \n mutual interest is:\n"+ L.contextSpace2String(mutualInterest), this);
+          }
 
           int effectiveDirection = mutualInterest.getDirection();
 
@@ -303,7 +389,9 @@ public class StandardKP extends KnowledgePort implements KnowledgeBaseListener {
               
               mutualInterest.setDirection(SharkCS.DIRECTION_INOUT);
               
-              L.d("doExpose: \n extraction interest is:\n"+ L.contextSpace2String(mutualInterest), this);
+              if(L.isDebugEnabled()) {
+                  L.d("doExpose: \n extraction interest is:\n"+ L.contextSpace2String(mutualInterest), this);
+              }
               
             // Effective interest = sending interest. Extract knowledge.
             InMemoSharkKB tempKB = new InMemoSharkKB();
@@ -399,7 +487,7 @@ public class StandardKP extends KnowledgePort implements KnowledgeBaseListener {
      */
     public void setOtp(FragmentationParameter otp[]) {
       this.bgfp = otp;
-
+      this.routingChanged();
     }
 
     /**
@@ -409,6 +497,7 @@ public class StandardKP extends KnowledgePort implements KnowledgeBaseListener {
      */
     public void setFP(FragmentationParameter fp[]) {
       this.fp = fp;
+      this.routingChanged();
     }
 
     /**
@@ -429,6 +518,67 @@ public class StandardKP extends KnowledgePort implements KnowledgeBaseListener {
         return this.bgfp;
     }
 
+    /**
+     * doExpose only reacts on interests with topics matching topics of 
+     * the effective interest - as long as topics aren't fragmented. 
+     * Effective interest depends on kb - routing changes with each 
+     * change of the kb.
+     * 
+     * @return sis of effective topics, null if each interest can match
+     * or topic routing is off
+     * @see #setTopicRouting(boolean) 
+     */
+    @Override
+    public String[] getRoutingTopics() {
+        if(!this.topicRouting) {
+            return null;
+        }
+        
+        FragmentationParameter[] fp = this.getFP();
+        if(fp == null || (fp[SharkCS.DIM_TOPIC] != null 
+                && fp[SharkCS.DIM_TOPIC].getDepth() > 0)) {
+            // related topics match as well
+            return null;
+        }
+        
+        SharkCS localInterest = this.getInterest();
+        SharkKB kb = this.getKB();
+        if(localInterest == null || kb == null) {
+            return null;
+        }
+        
+        try {
+            // same as in doExpose - kb is not changed meanwhile
+            SharkCS effectiveInterest;
+            synchronized(kb) {
+                effectiveInterest = kb.contextualize(localInterest, this.getOTP());
+            }
+            STSet topics = effectiveInterest.getTopics();
+            if(SharkCSAlgebra.isAny(topics)) {
+                return null;
+            }
+            
+            ArrayList<String> sis = new ArrayList<String>();
+            Iterator<SemanticTag> tagIter = topics.stTags();
+            while(tagIter.hasNext()) {
+                SemanticTag tag = tagIter.next();
+                if(SharkCSAlgebra.isAny(tag)) {
+                    return null;
+                }
+                
+                String[] tagSIs = tag.getSI();
+                for(int i = 0; i < tagSIs.length; i++) {
+                    sis.add(tagSIs[i]);
+                }
+            }
+            
+            return sis.toArray(new String[sis.size()]);
+        } catch (SharkKBException ex) {
+            L.d("cannot calculate routing topics: " + ex.getMessage(), this);
+            return null;
+        }
+    }
+
     /**
      * <p>When the underlying {@link net.sharkfw.knowledgeBase.SharkKB} has changed it might by advisable to
      * refresh the interests in the Knowledge Ports. By calling this method, the
@@ -566,5 +716,8 @@ public class StandardKP extends KnowledgePort implements KnowledgeBaseListener {
             L.d("couldn't refresh interest: " + ex.getMessage(), this);
         }
     }
+    
+    // effective interest depends on kb
+    this.routingChanged();
   }
 }
@@ -0,0 +1,19 @@
+package net.sharkfw.protocols;
+
+/**
+ * Implemented by stream connections which are watched by a selector,
+ * e.g. NIO based TCP connections. Such a connection is handed to the
+ * request handler again whenever new data arrive. Sessions don't have to
+ * wait for further messages on it - no thread is bound to an idle
+ * connection.
+ *
+ * @author thsc
+ */
+public interface SelectableConnection extends StreamConnection {
+    /**
+     * Caller stops reading from this connection. It is handed to the
+     * request handler again when data arrive - at once if data are already
+     * buffered. A connection closed by the remote peer is closed.
+     */
+    public void idle();
+}
@@ -0,0 +1,27 @@
+package net.sharkfw.protocols;
+
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+
+/**
+ * Implemented by output streams which can take file content directly
+ * from a file channel, e.g. streams writing into a socket channel.
+ * Content isn't copied through a buffer in user space.
+ *
+ * Streams which transform data (encryption, signing) don't implement it -
+ * content is streamed through them as usual.
+ *
+ * @author thsc
+ */
+public interface TransferTarget {
+    /**
+     * Writes a region of that file. Method returns after all bytes are
+     * written.
+     *
+     * @param source
+     * @param position first byte in file
+     * @param count number of bytes
+     * @throws IOException
+     */
+    public void transferFrom(FileChannel source, long position, long count) throws IOException;
+}
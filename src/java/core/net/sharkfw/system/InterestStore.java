@@ -1,22 +1,72 @@
 package net.sharkfw.system;
 
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
 import java.util.Iterator;
+import net.sharkfw.kep.KEPMessage;
+import net.sharkfw.knowledgeBase.STSet;
+import net.sharkfw.knowledgeBase.SemanticTag;
 import net.sharkfw.knowledgeBase.SharkCS;
+import net.sharkfw.knowledgeBase.SharkCSAlgebra;
+import net.sharkfw.knowledgeBase.SharkKBException;
 
 /**
+ * Stores interests. Topics and originator of stored interests are indexed
+ * by subject identifiers. Thus, candidates for a mutual interest can be
+ * found without contextualizing each stored interest.
  *
  * @author thsc
  */
 public class InterestStore extends MessageStore<SharkCS> {
 
+    /**
+     * Indexed interest. The same interest object can be added more than once.
+     */
+    private static class Entry {
+        private final SharkCS interest;
+        private final long number;
+        private int count = 1;
+
+        // null if any
+        private String[] topicSIs;
+        private String[] originatorSIs;
+
+        Entry(SharkCS interest, long number) {
+            this.interest = interest;
+            this.number = number;
+        }
+    }
+
+    private final IdentityHashMap<SharkCS, Entry> entries = new IdentityHashMap<>();
+
+    private final HashMap<String, HashSet<Entry>> topicPostings = new HashMap<>();
+    private final HashSet<Entry> anyTopics = new HashSet<>();
+
+    private final HashMap<String, HashSet<Entry>> originatorPostings = new HashMap<>();
+    private final HashSet<Entry> anyOriginator = new HashSet<>();
+
+    private long entryNumber = 0;
+
+    private static final Comparator<Entry> ARRIVAL_ORDER = new Comparator<Entry>() {
+        @Override
+        public int compare(Entry a, Entry b) {
+            return a.number < b.number ? -1 : (a.number == b.number ? 0 : 1);
+        }
+    };
+
     public InterestStore() {
         super();
     }
-    
+
     public InterestStore(long valid) {
         super(valid);
     }
-    
+
     public Iterator<SharkCS> getInterests(long since) {
         return super.getMessages(since);
     }
@@ -24,23 +74,194 @@ public class InterestStore extends MessageStore<SharkCS> {
     public Iterator<SharkCS> getInterests() {
         return this.getInterests(0);
     }
-    
+
+    /**
+     * Returns stored interests which can have a mutual interest with
+     * the given one. Others are certainly no match when contextualized with
+     * zero depth fragmentation parameters: Their topics or originators
+     * have no subject identifier in common with the given interest.
+     *
+     * Candidates must still be contextualized. Other dimensions aren't
+     * checked.
+     *
+     * @param interest
+     * @return candidates in order of arrival
+     * @throws SharkKBException
+     */
+    public synchronized Iterator<SharkCS> getCandidates(SharkCS interest) throws SharkKBException {
+        this.removeExpiredMessages();
+
+        String[] topicSIs = InterestStore.getSIs(interest.getTopics());
+        String[] originatorSIs = InterestStore.getSIs(interest.getOriginator());
+
+        Collection<Entry> candidates;
+        if(topicSIs != null) {
+            candidates = this.lookup(this.topicPostings, this.anyTopics, topicSIs);
+        } else if(originatorSIs != null) {
+            candidates = this.lookup(this.originatorPostings, this.anyOriginator, originatorSIs);
+            // already matched
+            originatorSIs = null;
+        } else {
+            candidates = this.entries.values();
+        }
+
+        ArrayList<Entry> matches = new ArrayList<Entry>();
+        Iterator<Entry> entryIter = candidates.iterator();
+        while(entryIter.hasNext()) {
+            Entry entry = entryIter.next();
+
+            if(originatorSIs == null || entry.originatorSIs == null
+                    || SharkCSAlgebra.identical(originatorSIs, entry.originatorSIs)) {
+                matches.add(entry);
+            }
+        }
+
+        Collections.sort(matches, ARRIVAL_ORDER);
+
+        ArrayList<SharkCS> interests = new ArrayList<SharkCS>(matches.size());
+        entryIter = matches.iterator();
+        while(entryIter.hasNext()) {
+            Entry entry = entryIter.next();
+            for(int i = 0; i < entry.count; i++) {
+                interests.add(entry.interest);
+            }
+        }
+
+        return interests.iterator();
+    }
+
     public void addInterest(SharkCS interest) {
         super.addMessage(interest);
     }
 
+    @Override
+    protected void messageAdded(SharkCS interest) {
+        Entry entry = this.entries.get(interest);
+        if(entry != null) {
+            entry.count++;
+            return;
+        }
+
+        entry = new Entry(interest, this.entryNumber++);
+        try {
+            entry.topicSIs = InterestStore.getSIs(interest.getTopics());
+            entry.originatorSIs = InterestStore.getSIs(interest.getOriginator());
+        } catch (SharkKBException ex) {
+            // cannot be indexed - always a candidate
+            entry.topicSIs = null;
+            entry.originatorSIs = null;
+        }
+
+        this.entries.put(interest, entry);
+        InterestStore.index(this.topicPostings, this.anyTopics, entry, entry.topicSIs);
+        InterestStore.index(this.originatorPostings, this.anyOriginator, entry, entry.originatorSIs);
+    }
+
+    @Override
+    protected void messageRemoved(SharkCS interest) {
+        Entry entry = this.entries.get(interest);
+        if(entry == null || --entry.count > 0) {
+            return;
+        }
+
+        this.entries.remove(interest);
+        InterestStore.unindex(this.topicPostings, this.anyTopics, entry, entry.topicSIs);
+        InterestStore.unindex(this.originatorPostings, this.anyOriginator, entry, entry.originatorSIs);
+    }
+
+    private Collection<Entry> lookup(HashMap<String, HashSet<Entry>> postings,
+            HashSet<Entry> anyEntries, String[] sis) {
+
+        HashSet<Entry> result = new HashSet<Entry>(anyEntries);
+        for(int i = 0; i < sis.length; i++) {
+            HashSet<Entry> posting = postings.get(SharkCSAlgebra.siKey(sis[i]));
+            if(posting != null) {
+                result.addAll(posting);
+            }
+        }
+
+        return result;
+    }
+
+    private static void index(HashMap<String, HashSet<Entry>> postings,
+            HashSet<Entry> anyEntries, Entry entry, String[] sis) {
+
+        if(sis == null) {
+            anyEntries.add(entry);
+            return;
+        }
+
+        for(int i = 0; i < sis.length; i++) {
+            String key = SharkCSAlgebra.siKey(sis[i]);
+            HashSet<Entry> posting = postings.get(key);
+            if(posting == null) {
+                posting = new HashSet<Entry>();
+                postings.put(key, posting);
+            }
+            posting.add(entry);
+        }
+    }
+
+    private static void unindex(HashMap<String, HashSet<Entry>> postings,
+            HashSet<Entry> anyEntries, Entry entry, String[] sis) {
+
+        if(sis == null) {
+            anyEntries.remove(entry);
+            return;
+        }
+
+        for(int i = 0; i < sis.length; i++) {
+            String key = SharkCSAlgebra.siKey(sis[i]);
+            HashSet<Entry> posting = postings.get(key);
+            if(posting != null) {
+                posting.remove(entry);
+                if(posting.isEmpty()) {
+                    postings.remove(key);
+                }
+            }
+        }
+    }
+
+    /**
+     * @return all sis of that set, null if set or one of its tags is any
+     */
+    private static String[] getSIs(STSet tags) throws SharkKBException {
+        if(SharkCSAlgebra.isAny(tags)) {
+            return null;
+        }
+
+        ArrayList<String> sis = new ArrayList<String>();
+        Iterator<SemanticTag> tagIter = tags.stTags();
+        while(tagIter.hasNext()) {
+            String[] tagSIs = InterestStore.getSIs(tagIter.next());
+            if(tagSIs == null) {
+                return null;
+            }
+
+            Collections.addAll(sis, tagSIs);
+        }
+
+        return sis.toArray(new String[sis.size()]);
+    }
+
     /**
-     * Drops all message and recreates status from string
-     * @param frozenStatus 
+     * @return sis of that tag, null if tag is any
      */
+    private static String[] getSIs(SemanticTag tag) {
+        if(tag == null || tag.isAny() || SharkCSAlgebra.isAny(tag)) {
+            return null;
+        }
+
+        return tag.getSI();
+    }
+
     @Override
-    public void restore(String frozenStatus) {
-        // TODO
+    protected String serializeMessage(SharkCS interest) throws SharkKBException {
+        return KEPMessage.getKnowledgeSerializer().serializeSharkCS(interest);
     }
 
     @Override
-    public String serialize() {
-        // TODO
-        return "noYetImplemented";
+    protected SharkCS deserializeMessage(String serializedInterest) throws SharkKBException {
+        return KEPMessage.getKnowledgeSerializer().deserializeSharkCS(serializedInterest);
     }
 }
@@ -1,8 +1,14 @@
 package net.sharkfw.system;
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
 import java.util.Iterator;
+import net.sharkfw.kep.KEPMessage;
 import net.sharkfw.knowledgeBase.Knowledge;
-import net.sharkfw.knowledgeBase.SharkCS;
+import net.sharkfw.knowledgeBase.SharkKBException;
+import net.sharkfw.protocols.StandardSharkInputStream;
+import net.sharkfw.protocols.UTF8SharkOutputStream;
 
 /**
  *
@@ -29,15 +35,31 @@ public class KnowledgeStore extends MessageStore<Knowledge> {
         super.addMessage(k);
     }
 
+    /**
+     * Knowledge can contain binary information - serialized knowledge is 
+     * base64 encoded.
+     */
     @Override
-    protected void restore(String frozenStatus) {
-        // TODO
+    protected String serializeMessage(Knowledge k) throws SharkKBException {
+        try {
+            ByteArrayOutputStream baos = new ByteArrayOutputStream();
+            KEPMessage.getKnowledgeSerializer().write(k, new UTF8SharkOutputStream(baos));
+            
+            return Base64.encodeBytes(baos.toByteArray());
+        } catch (IOException ex) {
+            throw new SharkKBException("cannot serialize knowledge: " + ex.getMessage());
+        }
     }
 
     @Override
-    protected String serialize() {
-        // TODO
-        return "noYetImplemented";
+    protected Knowledge deserializeMessage(String serializedKnowledge) throws SharkKBException {
+        try {
+            byte[] bytes = Base64.decode(serializedKnowledge);
+            
+            return KEPMessage.getKnowledgeSerializer().parseKnowledge(
+                    new StandardSharkInputStream(new ByteArrayInputStream(bytes)));
+        } catch (IOException ex) {
+            throw new SharkKBException("cannot deserialize knowledge: " + ex.getMessage());
+        }
     }
-    
 }
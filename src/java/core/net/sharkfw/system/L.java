@@ -37,6 +37,30 @@ public class L {
         L.loglevel = level;
     }
     
+    /**
+     * Debug messages are often made of large strings, e.g. a knowledge
+     * base dump. Check this before building them.
+     * 
+     * <pre>
+     * if(L.isDebugEnabled()) {
+     *     L.d(L.kb2String(kb), this);
+     * }
+     * </pre>
+     * 
+     * @return true if debug messages are written
+     */
+    public static boolean isDebugEnabled() {
+        return loglevel == LOGLEVEL_ALL || loglevel == LOGLEVEL_DEBUG;
+    }
+    
+    /**
+     * @return true if log messages are written
+     * @see #isDebugEnabled() 
+     */
+    public static boolean isLogEnabled() {
+        return loglevel == LOGLEVEL_ALL;
+    }
+    
     public static void setLogfile(String filename) {
         File file = new File(filename);
         try {
@@ -81,7 +105,7 @@ public class L {
      * @param o
      */
     public static void l(String msg, Object o) {
-        if(loglevel == LOGLEVEL_ALL) {
+        if(L.isLogEnabled()) {
             L.doLog(o, msg, LOGLEVEL_ALL);
         }
     }
@@ -94,9 +118,7 @@ public class L {
      */
     public static void d(String msg, Object o) {
 
-        if(loglevel == LOGLEVEL_ALL 
-                || loglevel == LOGLEVEL_DEBUG
-                ) {
+        if(L.isDebugEnabled()) {
             L.doLog(o, msg, LOGLEVEL_DEBUG);
         }
     }
@@ -2,84 +2,292 @@ package net.sharkfw.system;
 
 import java.util.ArrayList;
 import java.util.Iterator;
-import net.sharkfw.knowledgeBase.PropertyHolder;
+import net.sharkfw.knowledgeBase.SharkKBException;
 
 /**
+ * Stores messages in order of arrival. Messages expire after a period of
+ * validity. Number of messages and their serialized size can be limited -
+ * oldest messages are removed first.
+ *
+ * Messages are kept sorted by time. Thus, messages since a point in time
+ * are found by binary search and expired messages are removed from the
+ * head only.
+ *
+ * All methods are synchronized - stores are shared by concurrently
+ * running KEP sessions.
  *
  * @author thsc
  */
 public abstract class MessageStore<T> {
-    private ArrayList<MessageSlot> messages;
+    // oldest first, entries before head are already removed
+    private final ArrayList<MessageSlot<T>> messages;
+    private int head = 0;
+
     private final long valid;
-    
+    private int maxMessages = Integer.MAX_VALUE;
+    private long maxBytes = Long.MAX_VALUE;
+    private long bytes = 0;
+    private long lastTime = 0;
+
     public MessageStore() {
         this(Long.MAX_VALUE);
     }
 
     /**
-     * 
-     * @param ph
      * @param valid in milliseconds
      */
     public MessageStore(long valid) {
-        this.messages = new ArrayList();
-        
+        this.messages = new ArrayList<MessageSlot<T>>();
+
         this.valid = valid;
     }
-    
-    protected abstract void restore(String frozenStatus);
-    protected abstract String serialize();
-    
-    protected Iterator<T> getMessages(long since) {
-        ArrayList<T> tempMsgList = new ArrayList();
-        
-        int size = this.messages.size();
-        int index = 0;
+
+    /**
+     * @param message
+     * @return message as string - must be readable by deserializeMessage
+     * @throws SharkKBException
+     */
+    protected abstract String serializeMessage(T message) throws SharkKBException;
+
+    protected abstract T deserializeMessage(String serializedMessage) throws SharkKBException;
+
+    /**
+     * Oldest messages are removed if store holds more messages.
+     * @param maxMessages
+     */
+    public synchronized void setMaxMessages(int maxMessages) {
+        this.maxMessages = maxMessages;
+        this.removeExpiredMessages();
+    }
+
+    /**
+     * Oldest messages are removed if serialized messages are longer. Note:
+     * Each message is serialized once to get its size if a maximum is set.
+     *
+     * @param maxBytes
+     */
+    public synchronized void setMaxBytes(long maxBytes) {
+        if(this.maxBytes == Long.MAX_VALUE && maxBytes != Long.MAX_VALUE) {
+            // sizes weren't calculated so far
+            this.bytes = 0;
+            for(int i = this.head; i < this.messages.size(); i++) {
+                MessageSlot<T> slot = this.messages.get(i);
+                slot.size = this.getSize(slot.getMessage());
+                this.bytes += slot.size;
+            }
+        }
+
+        this.maxBytes = maxBytes;
+        this.removeExpiredMessages();
+    }
+
+    /**
+     * @return number of stored messages
+     */
+    public synchronized int size() {
+        return this.messages.size() - this.head;
+    }
+
+    /**
+     * @param since milliseconds since 1970
+     * @return messages which arrived at or after since - oldest first
+     */
+    protected synchronized Iterator<T> getMessages(long since) {
+        this.removeExpiredMessages();
+
+        int first = this.findFirst(since);
+        ArrayList<T> tempMsgList = new ArrayList<T>(this.messages.size() - first);
+
+        for(int i = first; i < this.messages.size(); i++) {
+            tempMsgList.add(this.messages.get(i).getMessage());
+        }
+
+        return tempMsgList.iterator();
+    }
+
+    /**
+     * @return index of first message that arrived at or after since
+     */
+    private int findFirst(long since) {
+        int low = this.head;
+        int high = this.messages.size();
+
+        while(low < high) {
+            int middle = (low + high) >>> 1;
+            if(this.messages.get(middle).getTime() < since) {
+                low = middle + 1;
+            } else {
+                high = middle;
+            }
+        }
+
+        return low;
+    }
+
+    /**
+     * Removes expired messages and oldest ones if store is too large.
+     * Messages are kept in order of arrival - removing stops with first
+     * valid message.
+     */
+    protected synchronized void removeExpiredMessages() {
         long now = System.currentTimeMillis();
-        
-        while(index < size) {
-            MessageSlot entry = this.messages.get(index);
-            
+
+        while(this.size() > 0) {
+            MessageSlot<T> entry = this.messages.get(this.head);
+
             // entry expire?
-            if(this.valid != Long.MAX_VALUE && entry.getTime()+this.valid < now) {
-                // to old
-                this.messages.remove(index);
-                size--;
-            }
-            else {
-                T message = (T) entry.getMessage();
-                tempMsgList.add(message);
-                index++;
+            boolean expired = this.valid != Long.MAX_VALUE
+                    && entry.getTime() + this.valid < now;
+
+            if(!expired && this.size() <= this.maxMessages && this.bytes <= this.maxBytes) {
+                return;
             }
+
+            this.removeHead();
         }
-        
-        return tempMsgList.iterator();
     }
-    
+
+    private void removeHead() {
+        MessageSlot<T> entry = this.messages.set(this.head++, null);
+        this.bytes -= entry.size;
+
+        // compact now and then - amortized constant time
+        if(this.head > 16 && this.head * 2 > this.messages.size()) {
+            this.messages.subList(0, this.head).clear();
+            this.head = 0;
+        }
+
+        this.messageRemoved(entry.getMessage());
+    }
+
+    /**
+     * Called when a message was added. Does nothing by default.
+     * @param message
+     */
+    protected void messageAdded(T message) {
+    }
+
+    /**
+     * Called when a message has expired or was removed. Does nothing
+     * by default.
+     * @param message
+     */
+    protected void messageRemoved(T message) {
+    }
+
     protected Iterator<T> getMessages() {
         return this.getMessages(0); // get all
     }
-    
-    protected void addMessage(T message) {
+
+    protected synchronized void addMessage(T message) {
+        this.addMessage(message, System.currentTimeMillis());
+    }
+
+    private void addMessage(T message, long time) {
         if(message != null) {
-            MessageSlot entry = new MessageSlot(message);
+            // keep order even if clock is set back
+            this.lastTime = Math.max(this.lastTime, time);
+
+            MessageSlot<T> entry = new MessageSlot<T>(message, this.lastTime);
+            if(this.maxBytes != Long.MAX_VALUE) {
+                entry.size = this.getSize(message);
+                this.bytes += entry.size;
+            }
+
             this.messages.add(entry);
+            this.messageAdded(message);
+
+            this.removeExpiredMessages();
+        }
+    }
+
+    private long getSize(T message) {
+        try {
+            return this.serializeMessage(message).length();
+        } catch (SharkKBException ex) {
+            L.w("cannot serialize message to get its size: " + ex.getMessage(), this);
+            return 0;
+        }
+    }
+
+    /**
+     * Serializes all messages with their arrival time. Messages which
+     * cannot be serialized are left out.
+     *
+     * @return stored messages as string
+     */
+    public synchronized String serialize() {
+        this.removeExpiredMessages();
+
+        StringBuilder sb = new StringBuilder();
+        for(int i = this.head; i < this.messages.size(); i++) {
+            MessageSlot<T> slot = this.messages.get(i);
+
+            String serialized;
+            try {
+                serialized = this.serializeMessage(slot.getMessage());
+            } catch (SharkKBException ex) {
+                L.w("cannot serialize message - left out: " + ex.getMessage(), this);
+                continue;
+            }
+
+            // time length message
+            sb.append(slot.getTime()).append(' ');
+            sb.append(serialized.length()).append(' ');
+            sb.append(serialized);
         }
+
+        return sb.toString();
     }
-    
-    private class MessageSlot<T> {
+
+    /**
+     * Drops all message and recreates status from string. Messages keep
+     * their original arrival time.
+     *
+     * @param frozenStatus created by serialize()
+     * @throws SharkKBException if string is malformed
+     */
+    public synchronized void restore(String frozenStatus) throws SharkKBException {
+        while(this.size() > 0) {
+            this.removeHead();
+        }
+        this.lastTime = 0;
+
+        int index = 0;
+        try {
+            while(index < frozenStatus.length()) {
+                int timeEnd = frozenStatus.indexOf(' ', index);
+                long time = Long.parseLong(frozenStatus.substring(index, timeEnd));
+
+                int lengthEnd = frozenStatus.indexOf(' ', timeEnd + 1);
+                int length = Integer.parseInt(frozenStatus.substring(timeEnd + 1, lengthEnd));
+
+                index = lengthEnd + 1 + length;
+                String serialized = frozenStatus.substring(lengthEnd + 1, index);
+
+                this.addMessage(this.deserializeMessage(serialized), time);
+            }
+        } catch (NumberFormatException ex) {
+            throw new SharkKBException("malformed message store: " + ex.getMessage());
+        } catch (IndexOutOfBoundsException ex) {
+            throw new SharkKBException("malformed message store: " + ex.getMessage());
+        }
+    }
+
+    private static class MessageSlot<T> {
         private final T message;
         private final long time;
-        
-        MessageSlot(T message) {
+        private long size = 0;
+
+        MessageSlot(T message, long time) {
             this.message = message;
-            this.time = System.currentTimeMillis();
+            this.time = time;
         }
-        
+
         T getMessage() {
             return this.message;
         }
-        
+
         long getTime() {
             return this.time;
         }
@@ -1035,7 +1035,12 @@ public class Util {
             Util.copyPropertiesFromPropertyHolderToPropertyHolder(original, copy);
             
             OutputStream os = localInfo.getOutputStream();
-            info.streamContent(os);
+            try {
+                info.streamContent(os);
+            }
+            catch(IOException e) {
+                throw new SharkKBException("cannot copy information content: " + e.getMessage());
+            }
             // Also copy all props from the original information to the newly created information
             Util.copyPropertiesFromPropertyHolderToPropertyHolder(info, localInfo);
             L.d("Creating Information with name:" + info, Util.class);
@@ -25,6 +25,10 @@ public class BrokerKP extends KnowledgePort {
     private FragmentationParameter[] fps;
     private final PropertyHolder ph;
     
+    public final static long DEFAULT_PERSIST_INTERVAL = 1000;
+    private long persistInterval = DEFAULT_PERSIST_INTERVAL;
+    private long lastPersisted = 0;
+    
     public final static String RECEIVING_INTEREST_LIST = "HubKP_ReceivingInterests";
     public final static String SENDING_INTEREST_LIST = "HubKP_SendingInterests";
     
@@ -62,7 +66,8 @@ public class BrokerKP extends KnowledgePort {
             InterestStore storedInterests) throws SharkKBException, 
             SharkException {
         
-        Iterator<SharkCS> interestIter = storedInterests.getInterests();
+        // stored interests without common topics or originator can be skipped
+        Iterator<SharkCS> interestIter = storedInterests.getCandidates(interest);
         
         while(interestIter.hasNext()) {
             SharkCS storedInterest = interestIter.next();
@@ -97,24 +102,17 @@ public class BrokerKP extends KnowledgePort {
                     interest.getDirection() == SharkCS.DIRECTION_INOUT) {
 
                 this.inInterests.addInterest(interest);
-
-                // persist
-                if(this.ph != null) {
-                    String serialized = this.inInterests.serialize();
-                    this.ph.setProperty(RECEIVING_INTEREST_LIST, serialized, false);
-                }
             }
 
             if(interest.getDirection() == SharkCS.DIRECTION_OUT || 
                     interest.getDirection() == SharkCS.DIRECTION_INOUT) {
 
                 this.outInterests.addInterest(interest);
-
-                // persist
-                if(this.ph != null) {
-                    String serialized = this.outInterests.serialize();
-                    this.ph.setProperty(SENDING_INTEREST_LIST, serialized, false);
-                }
+            }
+            
+            // persist
+            if(System.currentTimeMillis() - this.lastPersisted >= this.persistInterval) {
+                this.persist();
             }
         }
         catch(SharkException e) {
@@ -123,6 +121,37 @@ public class BrokerKP extends KnowledgePort {
         
     }
     
+    /**
+     * Each stored interest is serialized when persisting. Thus, stores 
+     * are persisted at most once within that interval and when the
+     * broker stops.
+     * 
+     * @param millis 0 persists with each received interest
+     */
+    public void setPersistInterval(long millis) {
+        this.persistInterval = millis;
+    }
+    
+    @Override
+    public void stop() {
+        super.stop();
+        
+        try {
+            this.persist();
+        } catch (SharkKBException ex) {
+            L.l("failure while persisting interests in HubKP: " + ex.getMessage(), this);
+        }
+    }
+    
+    private void persist() throws SharkKBException {
+        this.lastPersisted = System.currentTimeMillis();
+        
+        if(this.ph != null) {
+            this.ph.setProperty(RECEIVING_INTEREST_LIST, this.inInterests.serialize(), false);
+            this.ph.setProperty(SENDING_INTEREST_LIST, this.outInterests.serialize(), false);
+        }
+    }
+    
     /**
      * @param ph 
      */
@@ -140,8 +169,8 @@ public class BrokerKP extends KnowledgePort {
                 value = this.ph.getProperty(SENDING_INTEREST_LIST);
                 
                 if(value != null) {
-                    if(this.inInterests != null) {
-                        this.inInterests.restore(value);
+                    if(this.outInterests != null) {
+                        this.outInterests.restore(value);
                     }
                 }
             } catch (SharkKBException ex) {
@@ -0,0 +1,338 @@
+package net.sharkfw.knowledgeBase.sql;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.SQLException;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import net.sharkfw.system.L;
+
+/**
+ * Bounded pool of JDBC connections. Connections are created when needed
+ * up to maxConnections. Threads wait for a released connection if all are
+ * borrowed (the pool is saturated) - at most maxWait milliseconds.
+ *
+ * Closed connections are dropped. Connections which were idle for a while
+ * are validated before they are handed out again. Drop listeners are told
+ * before the pool closes a connection.
+ *
+ * Connecting and validation run outside the pool monitor - a slot is
+ * reserved before. Other threads aren't blocked by a slow database.
+ *
+ * @author thsc
+ */
+public class SQLConnectionPool implements SQLConnectionProvider {
+    public static final int DEFAULT_MAX_CONNECTIONS = 4;
+    public static final long DEFAULT_MAX_WAIT = 30000;
+
+    // idle connections are validated after that time (ms)
+    private static final long VALIDATION_INTERVAL = 10000;
+    private static final int VALIDATION_TIMEOUT = 5; // seconds
+
+    private final String connectionString;
+    private final String user;
+    private final String pwd;
+    private final int maxConnections;
+    private long maxWait = DEFAULT_MAX_WAIT;
+
+    /**
+     * Is told when the pool closes a connection, e.g. to close statements
+     * prepared on it.
+     */
+    public interface DropListener {
+        public void connectionDropped(Connection connection);
+    }
+
+    private final List<DropListener> dropListeners = new CopyOnWriteArrayList<>();
+
+    private static class IdleConnection {
+        final Connection connection;
+        final long since;
+
+        IdleConnection(Connection connection) {
+            this.connection = connection;
+            this.since = System.currentTimeMillis();
+        }
+    }
+
+    // most recently released first
+    private final LinkedList<IdleConnection> idle = new LinkedList<>();
+
+    private boolean open = true;
+    private int numberOfConnections = 0; // idle and borrowed
+    private int borrowed = 0;
+
+    // metrics
+    private int peakBorrowed = 0;
+    private long borrowCount = 0;
+    private long waitCount = 0;
+    private long totalWaitTime = 0;
+    private long maxWaitTime = 0;
+    private long timeoutCount = 0;
+
+    public SQLConnectionPool(String connectionString, String user, String pwd) {
+        this(connectionString, user, pwd, DEFAULT_MAX_CONNECTIONS);
+    }
+
+    public SQLConnectionPool(String connectionString, String user, String pwd,
+            int maxConnections) {
+
+        this.connectionString = connectionString;
+        this.user = user;
+        this.pwd = pwd;
+        this.maxConnections = maxConnections;
+    }
+
+    /**
+     * @param maxWait max time in ms a thread waits for a connection
+     */
+    public synchronized void setMaxWait(long maxWait) {
+        this.maxWait = maxWait;
+    }
+
+    public void addDropListener(DropListener listener) {
+        this.dropListeners.add(listener);
+    }
+
+    /**
+     * Creates a new connection - can be overwritten e.g. to use a
+     * data source instead of driver manager.
+     *
+     * @return
+     * @throws SQLException
+     */
+    protected Connection createConnection() throws SQLException {
+        return DriverManager.getConnection(this.connectionString, this.user, this.pwd);
+    }
+
+    private boolean isUsable(IdleConnection idleConnection) {
+        try {
+            if(idleConnection.connection.isClosed()) {
+                return false;
+            }
+
+            if(System.currentTimeMillis() - idleConnection.since > VALIDATION_INTERVAL) {
+                return idleConnection.connection.isValid(VALIDATION_TIMEOUT);
+            }
+
+            return true;
+        }
+        catch(SQLException e) {
+            return false;
+        }
+    }
+
+    private void closeQuietly(Connection connection) {
+        try {
+            connection.close();
+        } catch (SQLException ex) {
+            // ignore
+        }
+    }
+
+    // caller holds monitor
+    private void drop(Connection connection) {
+        this.numberOfConnections--;
+        this.closeDropped(connection);
+    }
+
+    private void closeDropped(Connection connection) {
+        for(DropListener listener : this.dropListeners) {
+            listener.connectionDropped(connection);
+        }
+
+        this.closeQuietly(connection);
+    }
+
+    private synchronized void freeSlot() {
+        this.numberOfConnections--;
+        this.notifyAll();
+    }
+
+    private void countWait(long waitStart) {
+        long waitTime = System.currentTimeMillis() - waitStart;
+        this.waitCount++;
+        this.totalWaitTime += waitTime;
+        this.maxWaitTime = Math.max(this.maxWaitTime, waitTime);
+    }
+
+    private synchronized Connection lend(Connection connection, long waitStart, boolean waited) {
+        this.borrowed++;
+        this.borrowCount++;
+        this.peakBorrowed = Math.max(this.peakBorrowed, this.borrowed);
+
+        if(waited) {
+            this.countWait(waitStart);
+        }
+
+        return connection;
+    }
+
+    @Override
+    public Connection getConnection() throws SQLException {
+        long waitStart = System.currentTimeMillis();
+        boolean waited = false;
+
+        while(true) {
+            IdleConnection idleConnection = null;
+
+            synchronized(this) {
+                if(!this.open) {
+                    throw new SQLException("connection pool is closed");
+                }
+
+                if(!this.idle.isEmpty()) {
+                    // take it - validated outside monitor
+                    idleConnection = this.idle.removeFirst();
+                } else if(this.numberOfConnections < this.maxConnections) {
+                    // reserve a slot - connect outside monitor
+                    this.numberOfConnections++;
+                } else {
+                    // saturated - wait
+                    waited = true;
+                    long remaining = this.maxWait - (System.currentTimeMillis() - waitStart);
+                    if(remaining <= 0) {
+                        this.countWait(waitStart);
+                        this.timeoutCount++;
+                        throw new SQLException("no connection available after " + this.maxWait + " ms");
+                    }
+
+                    try {
+                        this.wait(remaining);
+                    } catch (InterruptedException ex) {
+                        throw new SQLException("interrupted while waiting for connection");
+                    }
+
+                    continue;
+                }
+            }
+
+            // reuse idle connection
+            if(idleConnection != null) {
+                if(this.isUsable(idleConnection)) {
+                    return this.lend(idleConnection.connection, waitStart, waited);
+                }
+
+                // broken - drop it
+                L.d("drop broken connection", this);
+                this.freeSlot();
+                this.closeDropped(idleConnection.connection);
+                continue;
+            }
+
+            // create new one
+            Connection connection = null;
+            try {
+                connection = this.createConnection();
+            }
+            finally {
+                if(connection == null) {
+                    this.freeSlot();
+                }
+            }
+
+            if(connection == null) {
+                throw new SQLException("cannot connect to database: reason unknown");
+            }
+
+            return this.lend(connection, waitStart, waited);
+        }
+    }
+
+    @Override
+    public synchronized void releaseConnection(Connection connection) {
+        this.borrowed--;
+
+        boolean closed;
+        try {
+            closed = connection.isClosed();
+        } catch (SQLException ex) {
+            closed = true;
+        }
+
+        if(!this.open || closed) {
+            this.drop(connection);
+        } else {
+            this.idle.addFirst(new IdleConnection(connection));
+        }
+
+        this.notifyAll();
+    }
+
+    @Override
+    public synchronized void open() {
+        this.open = true;
+    }
+
+    @Override
+    public synchronized void close() {
+        this.open = false;
+
+        for(IdleConnection idleConnection : this.idle) {
+            this.drop(idleConnection.connection);
+        }
+        this.idle.clear();
+
+        // wake up waiting threads
+        this.notifyAll();
+    }
+
+    @Override
+    public synchronized boolean isOpen() {
+        return this.open;
+    }
+
+    ////////////////////////////////////////////////////////////////////////
+    //                             metrics                                //
+    ////////////////////////////////////////////////////////////////////////
+
+    public int getMaxConnections() {
+        return this.maxConnections;
+    }
+
+    public synchronized int getNumberOfConnections() {
+        return this.numberOfConnections;
+    }
+
+    public synchronized int getNumberOfIdleConnections() {
+        return this.idle.size();
+    }
+
+    public synchronized int getNumberOfBorrowedConnections() {
+        return this.borrowed;
+    }
+
+    public synchronized int getPeakBorrowedConnections() {
+        return this.peakBorrowed;
+    }
+
+    public synchronized long getBorrowCount() {
+        return this.borrowCount;
+    }
+
+    /**
+     * @return how often threads had to wait because pool was saturated
+     */
+    public synchronized long getWaitCount() {
+        return this.waitCount;
+    }
+
+    /**
+     * @return sum of time (ms) threads waited for a connection
+     */
+    public synchronized long getTotalWaitTime() {
+        return this.totalWaitTime;
+    }
+
+    public synchronized long getMaxWaitTime() {
+        return this.maxWaitTime;
+    }
+
+    /**
+     * @return how often threads got no connection within max wait time
+     */
+    public synchronized long getTimeoutCount() {
+        return this.timeoutCount;
+    }
+}
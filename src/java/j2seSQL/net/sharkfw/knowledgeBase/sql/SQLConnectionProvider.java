@@ -0,0 +1,38 @@
+package net.sharkfw.knowledgeBase.sql;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+
+/**
+ * Provides connections to a SQL kb. A connection is borrowed for a single
+ * operation and released afterwards. It is used by one thread at a time.
+ *
+ * @see SQLConnectionPool
+ * @author thsc
+ */
+public interface SQLConnectionProvider {
+    /**
+     * @return connection - wait if none is available
+     * @throws SQLException if no connection can be provided
+     */
+    public Connection getConnection() throws SQLException;
+
+    /**
+     * Connection is no longer used by kb. It is in auto commit mode.
+     * @param connection
+     */
+    public void releaseConnection(Connection connection);
+
+    /**
+     * (Re-)opens provider after close.
+     * @throws SQLException
+     */
+    public void open() throws SQLException;
+
+    /**
+     * Closes connections. Borrowed connections are closed when released.
+     */
+    public void close();
+
+    public boolean isOpen();
+}
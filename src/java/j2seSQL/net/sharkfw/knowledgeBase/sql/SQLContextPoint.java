@@ -1,127 +1,444 @@
 package net.sharkfw.knowledgeBase.sql;
 
+import java.io.IOException;
 import java.io.InputStream;
+import java.io.OutputStream;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
 import java.util.Enumeration;
 import java.util.Iterator;
+import java.util.List;
 import net.sharkfw.knowledgeBase.ContextCoordinates;
 import net.sharkfw.knowledgeBase.ContextPoint;
 import net.sharkfw.knowledgeBase.ContextPointListener;
 import net.sharkfw.knowledgeBase.Information;
+import net.sharkfw.knowledgeBase.PeerSemanticTag;
+import net.sharkfw.knowledgeBase.SemanticTag;
+import net.sharkfw.knowledgeBase.SharkKBException;
+import net.sharkfw.knowledgeBase.SpatialSemanticTag;
+import net.sharkfw.knowledgeBase.TimeSemanticTag;
+import net.sharkfw.knowledgeBase.inmemory.InMemoInformation;
+import net.sharkfw.knowledgeBase.inmemory.InMemoSharkKB;
+import net.sharkfw.system.Iterator2Enumeration;
+import net.sharkfw.system.L;
+import net.sharkfw.system.Util;
 
 /**
+ * Context point is a row in cp table. Coordinates are ids of semantic
+ * tags, ANY_ID stands for any. Information are kept in information
+ * table and are read when asked for.
  *
  * @author thsc
  */
-public class SQLContextPoint implements ContextPoint {
+public class SQLContextPoint implements ContextPoint, PropertyOwner {
+    private final SQLSharkKB kb;
+    private final int id;
+    private final SQLPropertyHolder propertyHolder;
+    private ContextPointListener listener = null;
+
+    SQLContextPoint(SQLSharkKB kb, int id) {
+        this.kb = kb;
+        this.id = id;
+        this.propertyHolder = new SQLPropertyHolder(kb, this);
+    }
+
+    @Override
+    public int getID() {
+        return this.id;
+    }
+
+    @Override
+    public int getType() {
+        return SQLSharkKB.CONTEXT_POINT;
+    }
 
     @Override
-    public Information addInformation() {
-        throw new UnsupportedOperationException("Not supported yet."); //To change body of generated methods, choose Tools | Templates.
+    public SQLInformation addInformation() {
+        SQLInformation info = null;
+        try {
+            info = this.kb.createInformation(this.id);
+        } catch (SharkKBException ex) {
+            L.w("couldn't create information: " + ex.getMessage(), this);
+            return null;
+        }
+
+        if(this.listener != null) {
+            this.listener.addedInformation(info, this);
+        }
+
+        return info;
     }
 
+    /**
+     * make a copy in database
+     * @param source
+     */
     @Override
     public void addInformation(Information source) {
-        throw new UnsupportedOperationException("Not supported yet."); //To change body of generated methods, choose Tools | Templates.
+        SQLInformation infoCopy = this.addInformation();
+        if(infoCopy == null) {
+            return;
+        }
+
+        Util.copyPropertiesFromPropertyHolderToPropertyHolder(source, infoCopy);
+
+        try {
+            OutputStream writeAccess = infoCopy.getOutputStream();
+            source.streamContent(writeAccess);
+            writeAccess.close();
+        } catch (SharkKBException ex) {
+            L.w("cannot copy information content: " + ex.getMessage(), this);
+        } catch (IOException ex) {
+            L.w("cannot copy information content: " + ex.getMessage(), this);
+        }
     }
 
     @Override
     public Information addInformation(InputStream is, long len) {
-        throw new UnsupportedOperationException("Not supported yet."); //To change body of generated methods, choose Tools | Templates.
+        Information info = this.addInformation();
+        info.setContent(is, len);
+        return info;
     }
 
     @Override
     public Information addInformation(byte[] content) {
-        throw new UnsupportedOperationException("Not supported yet."); //To change body of generated methods, choose Tools | Templates.
+        Information info = this.addInformation();
+        info.setContent(content);
+        return info;
     }
 
     @Override
     public Information addInformation(String content) {
-        throw new UnsupportedOperationException("Not supported yet."); //To change body of generated methods, choose Tools | Templates.
+        Information info = this.addInformation();
+        info.setContentType("text/plain");
+        info.setContent(content);
+        return info;
+    }
+
+    private List<Information> createInformation(List<Integer> infoIDs) {
+        ArrayList<Information> infos = new ArrayList<>();
+        for(Integer infoID : infoIDs) {
+            infos.add(new SQLInformation(this.kb, infoID));
+        }
+
+        return infos;
+    }
+
+    /**
+     * @return ids of information which are found by that statement. Id
+     * of this context point is first parameter.
+     */
+    private List<Integer> getInformationIDs(PreparedStatement statement)
+            throws SQLException {
+
+        statement.setInt(1, this.id);
+
+        // read ids first - information read from the same statements
+        List<Integer> infoIDs = new ArrayList<>();
+        ResultSet result = statement.executeQuery();
+        while(result.next()) {
+            infoIDs.add(result.getInt(1));
+        }
+
+        return infoIDs;
     }
 
     @Override
     public Enumeration<Information> enumInformation() {
-        throw new UnsupportedOperationException("Not supported yet."); //To change body of generated methods, choose Tools | Templates.
+        return new Iterator2Enumeration(this.getInformation());
     }
 
+    /**
+     * Uses information and property table in a single query.
+     */
     @Override
     public Iterator<Information> getInformation(String name) {
-        throw new UnsupportedOperationException("Not supported yet."); //To change body of generated methods, choose Tools | Templates.
+        List<Integer> infoIDs = new ArrayList<>();
+        try {
+            this.kb.borrowConnection();
+            
+            PreparedStatement statement = this.kb.prepare("SELECT i.id FROM "
+                    + SQLSharkKB.INFORMATION_TABLE + " i, "
+                    + SQLSharkKB.PROPERTY_TABLE + " p WHERE i.cpID = ? "
+                    + "AND p.ownerID = i.id AND p.entity_type = ? "
+                    + "AND p.name = ? AND p.value = ? ORDER BY i.id");
+
+            statement.setInt(2, SQLSharkKB.INFORMATION);
+            statement.setString(3, InMemoInformation.INFO_NAME);
+            statement.setString(4, name);
+
+            infoIDs = this.getInformationIDs(statement);
+        } catch (SQLException ex) {
+            L.w("cannot read information from SQL DB: " + ex.getLocalizedMessage(), this);
+        }
+        finally {
+            this.kb.returnConnection();
+        }
+
+        return this.createInformation(infoIDs).iterator();
     }
 
     @Override
     public Iterator<Information> getInformation() {
-        throw new UnsupportedOperationException("Not supported yet."); //To change body of generated methods, choose Tools | Templates.
+        List<Integer> infoIDs = new ArrayList<>();
+        try {
+            this.kb.borrowConnection();
+            
+            PreparedStatement statement = this.kb.prepare("SELECT id FROM "
+                    + SQLSharkKB.INFORMATION_TABLE + " WHERE cpID = ? ORDER BY id");
+
+            infoIDs = this.getInformationIDs(statement);
+        } catch (SQLException ex) {
+            L.w("cannot read information from SQL DB: " + ex.getLocalizedMessage(), this);
+        }
+        finally {
+            this.kb.returnConnection();
+        }
+
+        return this.createInformation(infoIDs).iterator();
     }
 
     @Override
     public void removeInformation(Information toDelete) {
-        throw new UnsupportedOperationException("Not supported yet."); //To change body of generated methods, choose Tools | Templates.
+        if(!(toDelete instanceof SQLInformation)) {
+            return;
+        }
+
+        try {
+            ((SQLInformation) toDelete).remove();
+        } catch (SharkKBException ex) {
+            L.w("cannot remove information: " + ex.getMessage(), this);
+            return;
+        }
+
+        if(this.listener != null) {
+            this.listener.removedInformation(toDelete, this);
+        }
     }
 
     @Override
-    public ContextCoordinates getContextCoordinates() {
-        throw new UnsupportedOperationException("Not supported yet."); //To change body of generated methods, choose Tools | Templates.
+    public int getNumberInformation() {
+        try {
+            this.kb.borrowConnection();
+            
+            PreparedStatement statement = this.kb.prepare("SELECT count(*) FROM "
+                    + SQLSharkKB.INFORMATION_TABLE + " WHERE cpID = ?");
+
+            statement.setInt(1, this.id);
+
+            ResultSet result = statement.executeQuery();
+            if(result.next()) {
+                return result.getInt(1);
+            }
+        } catch (SQLException ex) {
+            L.w("cannot read information from SQL DB: " + ex.getLocalizedMessage(), this);
+        }
+        finally {
+            this.kb.returnConnection();
+        }
+
+        return 0;
+    }
+
+    /**
+     * Removes context point, its information and properties
+     */
+    void remove() throws SharkKBException {
+        try {
+            this.kb.beginTransaction();
+            
+            Iterator<Information> infoIter = this.getInformation();
+            while(infoIter.hasNext()) {
+                ((SQLInformation) infoIter.next()).remove();
+            }
+
+            this.propertyHolder.removeAllProperties();
+            
+            PreparedStatement statement = this.kb.prepare("DELETE FROM "
+                    + SQLSharkKB.CP_TABLE + " WHERE id = ?");
+
+            statement.setInt(1, this.id);
+            statement.execute();
+            
+            this.kb.commitTransaction();
+        } catch (SQLException ex) {
+            throw new SharkKBException("cannot access SQL DB properly: " + ex.getLocalizedMessage());
+        }
+        finally {
+            this.kb.endTransaction();
+        }
+    }
+
+    ////////////////////////////////////////////////////////////////////////
+    //                          coordinates                               //
+    ////////////////////////////////////////////////////////////////////////
+
+    private SemanticTag getTag(int stID) throws SharkKBException {
+        if(stID == SQLSharkKB.ANY_ID) {
+            return null;
+        }
+
+        SQLSemanticTagStorage sqlST = new SQLSemanticTagStorage(this.kb, stID);
+        return SQLSharkKB.wrapSQLTagStorage(this.kb, sqlST, SQLSharkKB.UNKNOWN_SEMANTIC_TAG_TYPE);
     }
 
     @Override
-    public void setContextCoordinates(ContextCoordinates cc) {
-        throw new UnsupportedOperationException("Not supported yet."); //To change body of generated methods, choose Tools | Templates.
+    public ContextCoordinates getContextCoordinates() {
+        try {
+            this.kb.borrowConnection();
+            
+            int[] ids = new int[6];
+            int direction;
+
+            PreparedStatement statement = this.kb.prepare("SELECT "
+                    + SQLSharkKB.CP_COORDINATE_COLUMNS + ", direction FROM "
+                    + SQLSharkKB.CP_TABLE + " WHERE id = ?");
+
+            statement.setInt(1, this.id);
+
+            // read row first - tags are read with the same statements
+            ResultSet result = statement.executeQuery();
+            if(!result.next()) {
+                L.w("context point removed in database", this);
+                return null;
+            }
+
+            for(int i = 0; i < ids.length; i++) {
+                ids[i] = result.getInt(i+1);
+            }
+            direction = result.getInt(ids.length + 1);
+
+            return InMemoSharkKB.createInMemoContextCoordinates(
+                    this.getTag(ids[0]),
+                    (PeerSemanticTag) this.getTag(ids[1]),
+                    (PeerSemanticTag) this.getTag(ids[2]),
+                    (PeerSemanticTag) this.getTag(ids[3]),
+                    (TimeSemanticTag) this.getTag(ids[5]),
+                    (SpatialSemanticTag) this.getTag(ids[4]),
+                    direction);
+
+        } catch (SQLException ex) {
+            L.w("cannot read context point from SQL DB: " + ex.getLocalizedMessage(), this);
+        } catch (SharkKBException ex) {
+            L.w("cannot read coordinates: " + ex.getMessage(), this);
+        }
+        finally {
+            this.kb.returnConnection();
+        }
+
+        return null;
     }
 
     @Override
-    public int getNumberInformation() {
-        throw new UnsupportedOperationException("Not supported yet."); //To change body of generated methods, choose Tools | Templates.
+    public void setContextCoordinates(ContextCoordinates cc) {
+        try {
+            this.kb.borrowConnection();
+            
+            // tags become part of kb
+            cc = this.kb.createContextCoordinates(cc.getTopic(),
+                    cc.getOriginator(), cc.getPeer(), cc.getRemotePeer(),
+                    cc.getTime(), cc.getLocation(), cc.getDirection());
+
+            PreparedStatement statement = this.kb.prepare("UPDATE "
+                    + SQLSharkKB.CP_TABLE + " SET topicID = ?, originatorID = ?, "
+                    + "peerID = ?, remotePeerID = ?, locationID = ?, timeID = ?, "
+                    + "direction = ? WHERE id = ?");
+
+            statement.setInt(1, this.kb.getTagID(cc.getTopic()));
+            statement.setInt(2, this.kb.getTagID(cc.getOriginator()));
+            statement.setInt(3, this.kb.getTagID(cc.getPeer()));
+            statement.setInt(4, this.kb.getTagID(cc.getRemotePeer()));
+            statement.setInt(5, this.kb.getTagID(cc.getLocation()));
+            statement.setInt(6, this.kb.getTagID(cc.getTime()));
+            statement.setInt(7, cc.getDirection());
+            statement.setInt(8, this.id);
+
+            statement.execute();
+        } catch (SharkKBException ex) {
+            L.w("cannot set coordinates: " + ex.getMessage(), this);
+        } catch (SQLException ex) {
+            L.w("cannot set coordinates: " + ex.getLocalizedMessage(), this);
+        }
+        finally {
+            this.kb.returnConnection();
+        }
     }
 
     @Override
     public void setListener(ContextPointListener cpl) {
-        throw new UnsupportedOperationException("Not supported yet."); //To change body of generated methods, choose Tools | Templates.
+        this.listener = cpl;
     }
 
     @Override
     public void removeListener() {
-        throw new UnsupportedOperationException("Not supported yet."); //To change body of generated methods, choose Tools | Templates.
+        this.listener = null;
     }
 
+    @Override
+    public boolean equals(Object o) {
+        if(o instanceof SQLContextPoint) {
+            SQLContextPoint other = (SQLContextPoint) o;
+            return other.kb == this.kb && other.id == this.id;
+        }
+
+        return false;
+    }
+
+    @Override
+    public int hashCode() {
+        return this.id;
+    }
+
+    ////////////////////////////////////////////////////////////////////////
+    //                          properties                                //
+    ////////////////////////////////////////////////////////////////////////
+
     @Override
     public void setSystemProperty(String name, String value) {
-        throw new UnsupportedOperationException("Not supported yet."); //To change body of generated methods, choose Tools | Templates.
+        // no implemented and used here
     }
 
     @Override
     public String getSystemProperty(String name) {
-        throw new UnsupportedOperationException("Not supported yet."); //To change body of generated methods, choose Tools | Templates.
+        // no implemented and used here
+        return null;
     }
 
     @Override
-    public void setProperty(String name, String value) {
-        throw new UnsupportedOperationException("Not supported yet."); //To change body of generated methods, choose Tools | Templates.
+    public void setProperty(String name, String value) throws SharkKBException {
+        this.propertyHolder.refresh();
+        this.propertyHolder.setProperty(name, value);
     }
 
     @Override
-    public String getProperty(String name) {
-        throw new UnsupportedOperationException("Not supported yet."); //To change body of generated methods, choose Tools | Templates.
+    public String getProperty(String name) throws SharkKBException {
+        this.propertyHolder.refresh();
+        return this.propertyHolder.getProperty(name);
     }
 
     @Override
-    public void setProperty(String name, String value, boolean transfer) {
-        throw new UnsupportedOperationException("Not supported yet."); //To change body of generated methods, choose Tools | Templates.
+    public void setProperty(String name, String value, boolean transfer) throws SharkKBException {
+        this.propertyHolder.refresh();
+        this.propertyHolder.setProperty(name, value, transfer);
     }
 
     @Override
-    public void removeProperty(String name) {
-        throw new UnsupportedOperationException("Not supported yet."); //To change body of generated methods, choose Tools | Templates.
+    public void removeProperty(String name) throws SharkKBException {
+        this.propertyHolder.refresh();
+        this.propertyHolder.removeProperty(name);
     }
 
     @Override
-    public Enumeration<String> propertyNames() {
-        throw new UnsupportedOperationException("Not supported yet."); //To change body of generated methods, choose Tools | Templates.
+    public Enumeration<String> propertyNames() throws SharkKBException {
+        this.propertyHolder.refresh();
+        return this.propertyHolder.propertyNames();
     }
 
     @Override
-    public Enumeration<String> propertyNames(boolean all) {
-        throw new UnsupportedOperationException("Not supported yet."); //To change body of generated methods, choose Tools | Templates.
+    public Enumeration<String> propertyNames(boolean all) throws SharkKBException {
+        this.propertyHolder.refresh();
+        return this.propertyHolder.propertyNames(all);
     }
-    
 }
@@ -1,140 +1,448 @@
 package net.sharkfw.knowledgeBase.sql;
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
+import java.io.UnsupportedEncodingException;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
 import java.util.Enumeration;
+import net.sharkfw.kep.KEPMessage;
 import net.sharkfw.knowledgeBase.Information;
 import net.sharkfw.knowledgeBase.SharkKBException;
+import net.sharkfw.knowledgeBase.inmemory.InMemoInformation;
+import net.sharkfw.system.L;
 
 /**
+ * Information is a row in information table. Content is kept in a bytea
+ * column - this object doesn't cache it. Note: JDBC drivers (e.g. 
+ * PostgreSQL) read and write a bytea value as a whole - content is in
+ * memory while it is set or streamed. Use a file based kb for large 
+ * content. Name, content type and times are properties - property names
+ * are taken from InMemoInformation.
  *
  * @author thsc
  */
-public class SQLInformation implements Information {
+public class SQLInformation implements Information, PropertyOwner {
+    private static final int COPY_BUFFER_LEN = 1024*8;
+
+    private final SQLSharkKB kb;
+    private final int id;
+    private final SQLPropertyHolder propertyHolder;
+
+    SQLInformation(SQLSharkKB kb, int id) {
+        this.kb = kb;
+        this.id = id;
+        this.propertyHolder = new SQLPropertyHolder(kb, this);
+    }
+
+    /**
+     * @param created true if row was just created - unique id and
+     * creation time are set
+     */
+    SQLInformation(SQLSharkKB kb, int id, boolean created) throws SharkKBException {
+        this(kb, id);
+
+        if(created) {
+            this.setProperty(InMemoInformation.INFO_ID_PROPERTY_NAME, java.util.UUID.randomUUID().toString());
+            this.setProperty(InMemoInformation.INFO_CREATION_TIME, Long.toString(System.currentTimeMillis()));
+        }
+    }
+
+    @Override
+    public int getID() {
+        return this.id;
+    }
+
+    @Override
+    public int getType() {
+        return SQLSharkKB.INFORMATION;
+    }
+
+    /**
+     * Removes row and properties
+     */
+    void remove() throws SharkKBException {
+        try {
+            this.kb.beginTransaction();
+            
+            this.propertyHolder.removeAllProperties();
+            
+            PreparedStatement statement = this.kb.prepare("DELETE FROM "
+                    + SQLSharkKB.INFORMATION_TABLE + " WHERE id = ?");
+
+            statement.setInt(1, this.id);
+            statement.execute();
+            
+            this.kb.commitTransaction();
+        } catch (SQLException ex) {
+            throw new SharkKBException("cannot access SQL DB properly: " + ex.getLocalizedMessage());
+        }
+        finally {
+            this.kb.endTransaction();
+        }
+    }
+
+    private long getLongProperty(String name) {
+        String value = null;
+        try {
+            value = this.getProperty(name);
+        } catch (SharkKBException ex) {
+            L.w("cannot read property from SQL DB: " + ex.getMessage(), this);
+        }
+
+        if(value == null) {
+            return 0;
+        }
+
+        try {
+            return Long.parseLong(value);
+        }
+        catch(NumberFormatException e) {
+            return 0;
+        }
+    }
 
     @Override
     public long lastModified() {
-        throw new UnsupportedOperationException("Not supported yet."); //To change body of generated methods, choose Tools | Templates.
+        return this.getLongProperty(InMemoInformation.INFO_LAST_MODIFED);
     }
 
     @Override
     public long creationTime() {
-        throw new UnsupportedOperationException("Not supported yet."); //To change body of generated methods, choose Tools | Templates.
+        return this.getLongProperty(InMemoInformation.INFO_CREATION_TIME);
+    }
+
+    private void setTimes() {
+        try {
+            this.setProperty(InMemoInformation.INFO_LAST_MODIFED,
+                    Long.toString(System.currentTimeMillis()));
+        } catch (SharkKBException ex) {
+            L.w("cannot write property to SQL DB: " + ex.getMessage(), this);
+        }
     }
 
+    ////////////////////////////////////////////////////////////////////
+    //                      content handling                          //
+    ////////////////////////////////////////////////////////////////////
+
     @Override
     public void setContent(InputStream is, long len) {
-        throw new UnsupportedOperationException("Not supported yet."); //To change body of generated methods, choose Tools | Templates.
+        try {
+            this.kb.borrowConnection();
+            
+            PreparedStatement statement = this.kb.prepare("UPDATE "
+                    + SQLSharkKB.INFORMATION_TABLE + " SET content = ? WHERE id = ?");
+
+            // note: driver might read the whole stream into memory
+            statement.setBinaryStream(1, is, (int) len);
+            statement.setInt(2, this.id);
+
+            statement.execute();
+
+            this.setTimes();
+        } catch (SQLException ex) {
+            L.e("setContent(InputStream," + len + "): couldn't write information to SQL DB: " + ex.getLocalizedMessage(), this);
+        }
+        finally {
+            this.kb.returnConnection();
+        }
     }
 
     @Override
     public void setContent(byte[] content) {
-        throw new UnsupportedOperationException("Not supported yet."); //To change body of generated methods, choose Tools | Templates.
+        this.setContent(new ByteArrayInputStream(content), content.length);
     }
 
     @Override
     public void setContent(String content) {
-        throw new UnsupportedOperationException("Not supported yet."); //To change body of generated methods, choose Tools | Templates.
+        try {
+            this.setContent(content.getBytes(KEPMessage.ENCODING));
+        } catch (UnsupportedEncodingException ex) {
+            L.e("setContent(String): " + ex.getMessage(), this);
+        }
     }
 
     @Override
     public void removeContent() {
-        throw new UnsupportedOperationException("Not supported yet."); //To change body of generated methods, choose Tools | Templates.
+        try {
+            this.kb.borrowConnection();
+            
+            PreparedStatement statement = this.kb.prepare("UPDATE "
+                    + SQLSharkKB.INFORMATION_TABLE + " SET content = NULL WHERE id = ?");
+
+            statement.setInt(1, this.id);
+            statement.execute();
+
+            this.setTimes();
+        } catch (SQLException ex) {
+            L.e("removeContent(): couldn't write information to SQL DB: " + ex.getLocalizedMessage(), this);
+        }
+        finally {
+            this.kb.returnConnection();
+        }
     }
 
     @Override
     public void setContentType(String mimetype) {
-        throw new UnsupportedOperationException("Not supported yet."); //To change body of generated methods, choose Tools | Templates.
+        try {
+            this.setProperty(InMemoInformation.INFO_CONTENT_TYPE, mimetype);
+        } catch (SharkKBException ex) {
+            L.w("cannot write property to SQL DB: " + ex.getMessage(), this);
+        }
     }
 
     @Override
     public String getContentType() {
-        throw new UnsupportedOperationException("Not supported yet."); //To change body of generated methods, choose Tools | Templates.
+        String contentType = null;
+        try {
+            contentType = this.getProperty(InMemoInformation.INFO_CONTENT_TYPE);
+        } catch (SharkKBException ex) {
+            L.w("cannot read property from SQL DB: " + ex.getMessage(), this);
+        }
+
+        if(contentType == null) {
+            return InMemoInformation.INFO_DEFAULT_CONTENT_TYPE;
+        }
+
+        return contentType;
     }
 
+    /**
+     * Handle with care - this creates a byte array and copies any byte
+     * into that array. Might be huge.
+     *
+     * @return
+     */
     @Override
     public byte[] getContentAsByte() {
-        throw new UnsupportedOperationException("Not supported yet."); //To change body of generated methods, choose Tools | Templates.
+        ByteArrayOutputStream baos = new ByteArrayOutputStream((int) this.getContentLength());
+        this.streamContent(baos);
+        return baos.toByteArray();
     }
 
+    /**
+     * Content is copied from database through a buffer. Driver might 
+     * have read the whole value into memory, though.
+     *
+     * @param os
+     */
     @Override
     public void streamContent(OutputStream os) {
-        throw new UnsupportedOperationException("Not supported yet."); //To change body of generated methods, choose Tools | Templates.
+        try {
+            this.kb.borrowConnection();
+            
+            PreparedStatement statement = this.kb.prepare("SELECT content FROM "
+                    + SQLSharkKB.INFORMATION_TABLE + " WHERE id = ?");
+
+            statement.setInt(1, this.id);
+
+            ResultSet result = statement.executeQuery();
+            if(!result.next()) {
+                return; // information removed
+            }
+
+            InputStream is = result.getBinaryStream(1);
+            if(is == null) {
+                return; // no content
+            }
+
+            try {
+                byte[] buffer = new byte[COPY_BUFFER_LEN];
+                int read = is.read(buffer);
+                while(read != -1) {
+                    os.write(buffer, 0, read);
+                    read = is.read(buffer);
+                }
+            } finally {
+                is.close();
+            }
+        } catch (SQLException ex) {
+            L.e("streamContent(): couldn't read information from SQL DB: " + ex.getLocalizedMessage(), this);
+        } catch (IOException ex) {
+            L.e("streamContent(): couldn't read information from SQL DB: " + ex.getMessage(), this);
+        }
+        finally {
+            this.kb.returnConnection();
+        }
     }
 
     @Override
     public long getContentLength() {
-        throw new UnsupportedOperationException("Not supported yet."); //To change body of generated methods, choose Tools | Templates.
+        try {
+            this.kb.borrowConnection();
+            
+            PreparedStatement statement = this.kb.prepare("SELECT octet_length(content) FROM "
+                    + SQLSharkKB.INFORMATION_TABLE + " WHERE id = ?");
+
+            statement.setInt(1, this.id);
+
+            ResultSet result = statement.executeQuery();
+            if(result.next()) {
+                return result.getLong(1); // null content is 0
+            }
+        } catch (SQLException ex) {
+            L.w("cannot read information from SQL DB: " + ex.getLocalizedMessage(), this);
+        }
+        finally {
+            this.kb.returnConnection();
+        }
+
+        return 0;
+    }
+
+    @Override
+    public byte[] getContentDigest() {
+        final MessageDigest md;
+        try {
+            md = MessageDigest.getInstance(InMemoInformation.CONTENT_DIGEST_ALGORITHM);
+        } catch (NoSuchAlgorithmException ex) {
+            L.e("cannot create content digest: " + ex.getMessage(), this);
+            return new byte[0];
+        }
+
+        this.streamContent(new OutputStream() {
+            @Override
+            public void write(int b) {
+                md.update((byte) b);
+            }
+
+            @Override
+            public void write(byte[] b, int off, int len) {
+                md.update(b, off, len);
+            }
+        });
+
+        return md.digest();
     }
 
+    /**
+     * Content is written into database when stream is closed.
+     */
     @Override
     public OutputStream getOutputStream() throws SharkKBException {
-        throw new UnsupportedOperationException("Not supported yet."); //To change body of generated methods, choose Tools | Templates.
+        return new ByteArrayOutputStream() {
+            @Override
+            public void close() throws IOException {
+                super.close();
+                SQLInformation.this.setContent(this.toByteArray());
+            }
+        };
     }
 
+    /**
+     * Handle with care - content is copied into memory.
+     */
     @Override
     public InputStream getInputStream() throws SharkKBException {
-        throw new UnsupportedOperationException("Not supported yet."); //To change body of generated methods, choose Tools | Templates.
+        return new ByteArrayInputStream(this.getContentAsByte());
     }
 
     @Override
     public String getName() {
-        throw new UnsupportedOperationException("Not supported yet."); //To change body of generated methods, choose Tools | Templates.
+        try {
+            return this.getProperty(InMemoInformation.INFO_NAME);
+        } catch (SharkKBException ex) {
+            L.w("cannot read property from SQL DB: " + ex.getMessage(), this);
+        }
+
+        return null;
     }
 
     @Override
     public String getContentAsString() throws SharkKBException {
-        throw new UnsupportedOperationException("Not supported yet."); //To change body of generated methods, choose Tools | Templates.
+        return new String(this.getContentAsByte());
     }
 
     @Override
     public void setName(String name) throws SharkKBException {
-        throw new UnsupportedOperationException("Not supported yet."); //To change body of generated methods, choose Tools | Templates.
+        this.setProperty(InMemoInformation.INFO_NAME, name);
     }
 
     @Override
     public String getUniqueID() {
-        throw new UnsupportedOperationException("Not supported yet."); //To change body of generated methods, choose Tools | Templates.
+        String uniqueID = null;
+        try {
+            uniqueID = this.getProperty(InMemoInformation.INFO_ID_PROPERTY_NAME);
+        } catch (SharkKBException ex) {
+            L.w("cannot read property from SQL DB: " + ex.getMessage(), this);
+        }
+
+        if(uniqueID != null) {
+            return uniqueID;
+        }
+
+        return "";
     }
 
+    @Override
+    public boolean equals(Object o) {
+        if(o instanceof SQLInformation) {
+            SQLInformation other = (SQLInformation) o;
+            return other.kb == this.kb && other.id == this.id;
+        }
+
+        return false;
+    }
+
+    @Override
+    public int hashCode() {
+        return this.id;
+    }
+
+    ////////////////////////////////////////////////////////////////////
+    //                          properties                            //
+    ////////////////////////////////////////////////////////////////////
+
     @Override
     public void setSystemProperty(String name, String value) {
-        throw new UnsupportedOperationException("Not supported yet."); //To change body of generated methods, choose Tools | Templates.
+        // no implemented and used here
     }
 
     @Override
     public String getSystemProperty(String name) {
-        throw new UnsupportedOperationException("Not supported yet."); //To change body of generated methods, choose Tools | Templates.
+        // no implemented and used here
+        return null;
     }
 
     @Override
-    public void setProperty(String name, String value) {
-        throw new UnsupportedOperationException("Not supported yet."); //To change body of generated methods, choose Tools | Templates.
+    public void setProperty(String name, String value) throws SharkKBException {
+        this.propertyHolder.refresh();
+        this.propertyHolder.setProperty(name, value);
     }
 
     @Override
-    public String getProperty(String name) {
-        throw new UnsupportedOperationException("Not supported yet."); //To change body of generated methods, choose Tools | Templates.
+    public String getProperty(String name) throws SharkKBException {
+        this.propertyHolder.refresh();
+        return this.propertyHolder.getProperty(name);
     }
 
     @Override
-    public void setProperty(String name, String value, boolean transfer) {
-        throw new UnsupportedOperationException("Not supported yet."); //To change body of generated methods, choose Tools | Templates.
+    public void setProperty(String name, String value, boolean transfer) throws SharkKBException {
+        this.propertyHolder.refresh();
+        this.propertyHolder.setProperty(name, value, transfer);
     }
 
     @Override
-    public void removeProperty(String name) {
-        throw new UnsupportedOperationException("Not supported yet."); //To change body of generated methods, choose Tools | Templates.
+    public void removeProperty(String name) throws SharkKBException {
+        this.propertyHolder.refresh();
+        this.propertyHolder.removeProperty(name);
     }
 
     @Override
-    public Enumeration<String> propertyNames() {
-        throw new UnsupportedOperationException("Not supported yet."); //To change body of generated methods, choose Tools | Templates.
+    public Enumeration<String> propertyNames() throws SharkKBException {
+        this.propertyHolder.refresh();
+        return this.propertyHolder.propertyNames();
     }
 
     @Override
-    public Enumeration<String> propertyNames(boolean all) {
-        throw new UnsupportedOperationException("Not supported yet."); //To change body of generated methods, choose Tools | Templates.
+    public Enumeration<String> propertyNames(boolean all) throws SharkKBException {
+        this.propertyHolder.refresh();
+        return this.propertyHolder.propertyNames(all);
     }
-    
 }
@@ -1,11 +1,13 @@
 package net.sharkfw.knowledgeBase.sql;
 
+import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
-import java.sql.Statement;
+import java.util.ArrayList;
 import java.util.Enumeration;
 import java.util.HashMap;
 import java.util.Iterator;
+import java.util.List;
 import net.sharkfw.knowledgeBase.PropertyHolder;
 import net.sharkfw.knowledgeBase.SharkKBException;
 import net.sharkfw.knowledgeBase.inmemory.InMemoPropertyHolder;
@@ -34,102 +36,75 @@ public class SQLPropertyHolder implements PropertyHolder {
         this.pHolder = new InMemoPropertyHolder();
         
         // re-read from database
-        Statement statement = null;
         try {
-            statement = this.kb.getConnection().createStatement();
+            this.kb.borrowConnection();
             
-            String sqlStatement = "SELECT name, value, hidden FROM " + SQLSharkKB.PROPERTY_TABLE + 
-                    " where ownerid = " 
-                    + this.pOwner.getID() + " AND "
-                    + "entity_type = " + this.pOwner.getType()
-                    + ";";
+            PreparedStatement statement = this.kb.prepare(
+                    "SELECT name, value, hidden FROM " + SQLSharkKB.PROPERTY_TABLE 
+                    + " where ownerid = ? AND entity_type = ?");
             
-            ResultSet result = statement.executeQuery(sqlStatement);
+            statement.setInt(1, this.pOwner.getID());
+            statement.setInt(2, this.pOwner.getType());
+            
+            ResultSet result = statement.executeQuery();
             
             while(result.next()) {
+                // hidden properties aren't transferred
                 this.pHolder.setProperty(
                     result.getString("name"),
                     result.getString("value"),
-                    result.getBoolean("hidden"));
+                    !result.getBoolean("hidden"));
             }
         } catch (SQLException ex) {
             throw new SharkKBException("cannot access SQL DB properly: " + ex.getLocalizedMessage());
         }
         finally {
-            if(statement != null) {
-                try {
-                    statement.close();
-                } catch (SQLException ex) {
-                    // ignore
-                }
-            }
+            this.kb.returnConnection();
         }
         
         this.inSync = true;
     }
     
-    private void save() throws SharkKBException {
-        Statement statement = null;
+    private void addRows(List<Object[]> rows, HashMap<String, String> props, 
+            boolean hidden) {
+        
+        if(props == null) { return; }
         
-        this.removeAllProperties();
+        Iterator<String> iterNames = props.keySet().iterator();
+        while(iterNames.hasNext()) {
+            String name = iterNames.next();
+            rows.add(new Object[] {name, props.get(name), hidden, 
+                this.pOwner.getID(), this.pOwner.getType()});
+        }
+    }
+    
+    /**
+     * All properties are written with a single batch.
+     */
+    private void save() throws SharkKBException {
+        List<Object[]> rows = new ArrayList<>();
+        this.addRows(rows, this.pHolder.getUnhiddenProperties(), false);
+        this.addRows(rows, this.pHolder.getHiddenProperties(), true);
         
-        // write again
         try {
-            statement = this.kb.getConnection().createStatement();
+            // others never see an empty property set
+            this.kb.beginTransaction();
             
-            // not hidden properties
-            HashMap<String, String> props = this.pHolder.getUnhiddenProperties();
-            Iterator<String> iterNames = null;
-            Iterator<String> iterValues = null;
-            if(props != null) {
-                 iterNames = props.keySet().iterator();
-                 while(iterNames.hasNext()) {
-                     String name = iterNames.next();
-                     String value = props.get(name);
-                     
-                     // write unhidden property to db
-                    String sqlStatement = "INSERT INTO " + 
-                            SQLSharkKB.PROPERTY_TABLE
-                            + "(name, value, hidden, ownerid, entity_type) VALUES ('"
-                            + name + "', '"
-                            + value + "', 'false',"
-                            + this.pOwner.getID() + ", "
-                            + this.pOwner.getType()
-                            + ")";
-                    
-                    statement.execute(sqlStatement);
-                 }
-            }
+            this.removeAllProperties();
+
+            // write again
+            PreparedStatement statement = this.kb.prepare("INSERT INTO " 
+                    + SQLSharkKB.PROPERTY_TABLE
+                    + "(name, value, hidden, ownerid, entity_type) VALUES (?, ?, ?, ?, ?)");
             
-            // hidden properties
-            props = this.pHolder.getHiddenProperties();
-            if(props != null) {
-                 iterNames = props.keySet().iterator();
-                 while(iterNames.hasNext()) {
-                     String name = iterNames.next();
-                     String value = props.get(name);
-                     
-                     // write unhidden property to db
-                    String sqlStatement = "INSERT INTO " + 
-                            SQLSharkKB.PROPERTY_TABLE
-                            + "(name, value, hidden) VALUES ('"
-                            + name + "', '"
-                            + value + "', 'true')";
-                    
-                    statement.execute(sqlStatement);
-                 }
-            }
+            this.kb.executeBatch(statement, rows);
+            
+            this.kb.commitTransaction();
         } catch (SQLException ex) {
             throw new SharkKBException("cannot access SQL DB properly: " + ex.getLocalizedMessage());
         }
         finally {
-            if(statement != null) {
-                try {
-                    statement.close();
-                } catch (SQLException ex) {
-                    // ignore
-                }
-            }
+            this.kb.endTransaction();
         }
         
         this.inSync = true;
@@ -175,29 +150,22 @@ public class SQLPropertyHolder implements PropertyHolder {
     }
 
     void removeAllProperties() throws SharkKBException {
-        Statement statement = null;
-
         try {
-            statement = this.kb.getConnection().createStatement();
+            this.kb.borrowConnection();
             
-            // remove all properties first
-            String sqlremove = "DELETE FROM " + SQLSharkKB.PROPERTY_TABLE +
-                    " WHERE ownerid = '" 
-                    + this.pOwner.getID() + "' and entity_type = '"
-                    + this.pOwner.getType() + "';";
+            PreparedStatement statement = this.kb.prepare("DELETE FROM " 
+                    + SQLSharkKB.PROPERTY_TABLE 
+                    + " WHERE ownerid = ? and entity_type = ?");
             
-            statement.execute(sqlremove);
+            statement.setInt(1, this.pOwner.getID());
+            statement.setInt(2, this.pOwner.getType());
+            
+            statement.execute();
         } catch (SQLException ex) {
             throw new SharkKBException("cannot access SQL DB properly: " + ex.getLocalizedMessage());
         }
         finally {
-            if(statement != null) {
-                try {
-                    statement.close();
-                } catch (SQLException ex) {
-                    // ignore
-                }
-            }
+            this.kb.returnConnection();
         }
     }
 }
@@ -1,9 +1,6 @@
 package net.sharkfw.knowledgeBase.sql;
 
-import java.sql.ResultSet;
 import java.sql.SQLException;
-import java.sql.Statement;
-import java.util.ArrayList;
 import java.util.Enumeration;
 import java.util.Iterator;
 import java.util.List;
@@ -74,46 +71,24 @@ public class SQLSTSet extends AbstractSTSet implements STSet {
     
     /**
      * Creates iterator of tags of given type. Note: Semantic Tags cover also
-     * time, spatial and peer semantic tags
+     * time, spatial and peer semantic tags. 
+     * 
+     * Rows, sis and addresses of all tags are read with three 
+     * statements - not tag by tag.
+     * 
      * @param type
      * @return
      * @throws SharkKBException 
      */
     protected Iterator tags(int type) throws SharkKBException {
         List<SemanticTag> tagList;
-        Statement statement = null;
 
         try {
-            statement  = this.kb.getConnection().createStatement();
-            
-            String sqlString = "SELECT id, st_type FROM " + SQLSharkKB.ST_TABLE;
-            
-            // select specific tag type if not of general semantic tag type
-            switch(type) {
-                case SQLSharkKB.PEER_SEMANTIC_TAG_TYPE:
-                case SQLSharkKB.SPATIAL_SEMANTIC_TAG_TYPE:
-                case SQLSharkKB.TIME_SEMANTIC_TAG_TYPE:
-                    sqlString += " WHERE st_type = " + type;
-                    break;
-            }
-            
-            ResultSet result = statement.executeQuery(sqlString);
-            
-            tagList = SQLSharkKB.createSTListBySTTableEntries(this.kb, result);
-            
+            tagList = SQLSharkKB.createSTList(this.kb, this.kb.getTagCache().getByType(type));
         }
         catch(SQLException e) {
             throw new SharkKBException(e.getLocalizedMessage());
         }
-        finally {
-            if(statement != null) {
-                try {
-                    statement.close();
-                } catch (SQLException ex) {
-                    // ignore
-                }
-            }
-        }
         
         return tagList.iterator();
     }
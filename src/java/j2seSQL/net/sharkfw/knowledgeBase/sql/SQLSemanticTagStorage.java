@@ -1,15 +1,17 @@
 package net.sharkfw.knowledgeBase.sql;
 
-import java.sql.ResultSet;
+import java.sql.PreparedStatement;
 import java.sql.SQLException;
-import java.sql.Statement;
 import java.util.ArrayList;
-import java.util.Iterator;
 import java.util.List;
 import net.sharkfw.knowledgeBase.SharkKBException;
 import net.sharkfw.system.L;
 
 /**
+ * Any statement is prepared once by the kb and reused. Subject identifiers
+ * and addresses of new tags are inserted with batches. Rows, sis and
+ * addresses are read through tag cache of the kb - each write invalidates
+ * the cache entry of this tag.
  *
  * @author thsc
  */
@@ -24,33 +26,45 @@ class SQLSemanticTagStorage implements PropertyOwner {
     private int type;
     private String[] sis;
     private String[] addresses;
-    
+
     SQLSemanticTagStorage(SQLSharkKB kb, int id) throws SharkKBException {
         this.kb = kb;
         this.id = id;
-        
+
         this.refreshBasics();
     }
-    
+
+    /**
+     * Storage of an already read tag
+     */
+    SQLSemanticTagStorage(SQLSharkKB kb, SQLTagCache.TagEntry entry) {
+        this.kb = kb;
+        this.id = entry.id;
+
+        this.setBasics(entry);
+        this.sis = entry.sis;
+        this.addresses = entry.addresses;
+    }
+
     SQLSemanticTagStorage(
             SQLSharkKB kb,
-            String name, 
+            String name,
             String ewkt, // if spatial semantic tag
             long startTime, // if time semantic tag
             long durationTime, // if time semantic tag
-            boolean hidden, 
+            boolean hidden,
             int type,
             String[] sis,
             String[] addresses) throws SharkKBException {
-        
-        if(type != SQLSharkKB.SEMANTIC_TAG_TYPE && 
-                type != SQLSharkKB.PEER_SEMANTIC_TAG_TYPE && 
-                type != SQLSharkKB.SPATIAL_SEMANTIC_TAG_TYPE && 
+
+        if(type != SQLSharkKB.SEMANTIC_TAG_TYPE &&
+                type != SQLSharkKB.PEER_SEMANTIC_TAG_TYPE &&
+                type != SQLSharkKB.SPATIAL_SEMANTIC_TAG_TYPE &&
                 type != SQLSharkKB.TIME_SEMANTIC_TAG_TYPE) {
-            
+
             throw new SharkKBException("unknown semantic tag type: " + type);
         }
-        
+
         this.kb = kb;
         this.name = name;
         this.ewkt = ewkt;
@@ -59,210 +73,166 @@ class SQLSemanticTagStorage implements PropertyOwner {
         this.hidden = hidden;
         this.type = type;
         this.sis = sis;
-        
-        Statement statement = null;
+
         try {
-            statement = this.kb.getConnection().createStatement();
-            
-            ResultSet result = statement.executeQuery("select nextval('stid');");
-            if(result.next()) {
-                // there must be a result
-                this.id = result.getInt(1);
-            } else {
-                // TODO: remove semantic tag entry!!
-                throw new SharkKBException("cannot get next semantic tag primary key");
-            }
-            
-            String sqlHead = "INSERT INTO " + SQLSharkKB.ST_TABLE + " (id, ";
-            String sqlValues = "VALUES (" + this.id + ", "; 
-            
-            if(name != null) { 
-                sqlHead += "name, ";
-                sqlValues += "'" + name + "', "; 
-            }
-            
-            if(ewkt != null) { 
-                sqlHead += "ewkt, ";
-                sqlValues += "'" + ewkt + "', "; 
-            }
-            
-            // rest
-            sqlHead += "starttime, durationtime, hidden, st_type) ";
-            sqlValues += startTime + ", "
-                    + durationTime + ", "
-                    + "'" + String.valueOf(hidden) + "', "
-                    + type
-                    + ")";
-            
-            String hiddenString;
-            hiddenString = hidden ? "'true'" : "'false'";
-            
-            String sqlStatement = sqlHead + sqlValues;
-            
-            statement.execute(sqlStatement);
-            
-            // insert subject identifier
-            if(sis != null && sis.length > 0) {
-                for (String si : sis) {
-                    // insert each si into si table - duplicates are not allowed
-                    String sqlString = "INSERT INTO " + SQLSharkKB.SI_TABLE + "(si, stid) VALUES ('" + si + "', '" + this.id + "')";
-                    try {
-                        statement.execute(sqlString);
-                    }
-                    catch(SQLException e) {
-                        // tried to insert si twice
-                        // TODO: can that happen here or do we check on merge etc. in callee?
-                    }
-                }
-            }
+            // row, sis and addresses are written together or not at all
+            this.kb.beginTransaction();
             
+            this.id = this.kb.nextID("stid");
+
+            PreparedStatement statement = this.kb.prepare("INSERT INTO "
+                    + SQLSharkKB.ST_TABLE
+                    + " (id, name, ewkt, starttime, durationtime, hidden, st_type) "
+                    + "VALUES (?, ?, ?, ?, ?, ?, ?)");
+
+            statement.setInt(1, this.id);
+            statement.setString(2, name);
+            statement.setString(3, ewkt);
+            statement.setLong(4, startTime);
+            statement.setLong(5, durationTime);
+            statement.setBoolean(6, hidden);
+            statement.setInt(7, type);
+
+            statement.execute();
+
+            // insert subject identifier - duplicates are not allowed
+            this.insertAll(SQLSharkKB.SI_TABLE, "si", sis);
+
             // insert addresses if any
-            if(addresses != null && addresses.length > 0) {
-                for (String addr : addresses) {
-                    // insert each si into si table - duplicates are not allowed
-                    String sqlString = "INSERT INTO " + SQLSharkKB.ADDRESS_TABLE + "(addr, stid) VALUES ('" + addr + "', '" + this.id + "')";
-                    try {
-                        statement.execute(sqlString);
-                    }
-                    catch(SQLException e) {
-                        // tried to insert si twice
-                        // TODO: can that happen here or do we check on merge etc. in callee?
-                    }
-                }
-            }
+            this.insertAll(SQLSharkKB.ADDRESS_TABLE, "addr", addresses);
+            this.invalidate();
+            
+            this.kb.commitTransaction();
         } catch (SQLException ex) {
             throw new SharkKBException("cannot create semantic tag in SQL DB: " + ex.getLocalizedMessage());
         }
         finally {
-            if(statement != null) {
-                try {
-                    statement.close();
-                } catch (SQLException ex) {
-                    // ignore
-                }
-            }
+            this.kb.endTransaction();
         }
     }
 
     /**
-     * Force to re-read line from st table
+     * Inserts values with a single batch. Duplicates are ignored.
      */
-    private void refreshBasics() throws SharkKBException {
-        Statement statement = null;
+    private void insertAll(String table, String column, String[] values)
+            throws SQLException {
+
+        if(values == null || values.length == 0) {
+            return;
+        }
+
+        List<Object[]> rows = new ArrayList<>();
+        for(String value : values) {
+            rows.add(new Object[] {value, this.id});
+        }
+
         try {
-            statement = this.kb.getConnection().createStatement();
-            
-            String sqlStatement = "SELECT * FROM " + SQLSharkKB.ST_TABLE + 
-                    " where id = " 
-                    + this.id                 
-                    + ";";
-            
-            ResultSet result = statement.executeQuery(sqlStatement);
-            
-            if(!result.next()) {
-                throw new SharkKBException("semantic tag removed in database");
-            } 
-            
-            // else
-            this.name = result.getString("name");
-            this.ewkt = result.getString("ewkt");
-            this.startTime = result.getLong("startTime");
-            this.durationTime = result.getLong("durationTime");
-            this.hidden = result.getBoolean("hidden");
-            this.type = result.getInt("st_type");
+            this.kb.borrowConnection();
             
-        } catch (SQLException ex) {
-            throw new SharkKBException("cannot access SQL DB properly: " + ex.getLocalizedMessage());
+            PreparedStatement statement = this.kb.prepare("INSERT INTO " + table
+                    + " (" + column + ", stid) VALUES (?, ?)");
+
+            this.kb.executeBatch(statement, rows);
         }
         finally {
-            if(statement != null) {
-                try {
-                    statement.close();
-                } catch (SQLException ex) {
-                    // ignore
-                }
-            }
+            this.kb.returnConnection();
         }
     }
-    
+
     /**
-     * Force to re-read from sis table
+     * Executes statement with id of this tag as single parameter
      */
-    private void refreshSIS() throws SharkKBException {
-        Statement statement = null;
+    private void executeWithID(String sqlStatement) throws SQLException {
         try {
-            statement = this.kb.getConnection().createStatement();
-            
-            String sqlStatement = "SELECT si FROM " + SQLSharkKB.SI_TABLE + 
-                    " WHERE stid = " 
-                    + this.id;
-            
-            ResultSet result = statement.executeQuery(sqlStatement);
-            
-            if(!result.next()) {
-                // no si - it's an any tag
-                return;
-            } 
-            
-            // else
-            List<String> siList = new ArrayList<>();
-            
-            do {
-                String si = result.getString(1);
-                siList.add(si);
-            } while(result.next());
-            
-            String[] sisTmp = new String[siList.size()];
-            Iterator<String> siIter = siList.iterator();
+            this.kb.borrowConnection();
             
-            for(int i = 0; i < sisTmp.length; i++) {
-                sisTmp[i] = siIter.next();
+            PreparedStatement statement = this.kb.prepare(sqlStatement);
+            statement.setInt(1, this.id);
+            statement.execute();
+        }
+        finally {
+            this.kb.returnConnection();
+        }
+    }
+
+    /**
+     * Cached entry of this tag is outdated
+     */
+    private void invalidate() {
+        this.kb.tagChanged(this.id);
+    }
+
+    /**
+     * @return entry of this tag - from cache or database
+     */
+    private SQLTagCache.TagEntry getEntry() throws SharkKBException {
+        try {
+            SQLTagCache.TagEntry entry = this.kb.getTagCache().get(this.id);
+
+            if(entry == null) {
+                throw new SharkKBException("semantic tag removed in database");
             }
-            
-            this.sis = sisTmp;
+
+            return entry;
         } catch (SQLException ex) {
             throw new SharkKBException("cannot access SQL DB properly: " + ex.getLocalizedMessage());
         }
-        finally {
-            if(statement != null) {
-                try {
-                    statement.close();
-                } catch (SQLException ex) {
-                    // ignore
-                }
-            }
+    }
+
+    private void setBasics(SQLTagCache.TagEntry entry) {
+        this.name = entry.name;
+        this.ewkt = entry.ewkt;
+        this.startTime = entry.startTime;
+        this.durationTime = entry.durationTime;
+        this.hidden = entry.hidden;
+        this.type = entry.type;
+    }
+
+    /**
+     * Force to re-read line from st table
+     */
+    private void refreshBasics() throws SharkKBException {
+        this.setBasics(this.getEntry());
+    }
+
+    /**
+     * Force to re-read from sis table
+     */
+    private void refreshSIS() throws SharkKBException {
+        String[] sisTmp = this.getEntry().sis;
+
+        if(sisTmp == null) {
+            // no si - it's an any tag
+            return;
         }
+
+        this.sis = sisTmp;
     }
-    
+
     String getName() {
         return this.name;
     }
 
     void setName(String name) throws SharkKBException {
-        Statement statement = null;
         try {
-            statement = this.kb.getConnection().createStatement();
-            
-            String sqlStatement = "UPDATE " + SQLSharkKB.ST_TABLE + 
-                    " SET name = '"
-                    + name + "' WHERE id = "
-                    + this.id;
-            
-            statement.execute(sqlStatement);
+            this.kb.borrowConnection();
             
+            PreparedStatement statement = this.kb.prepare("UPDATE "
+                    + SQLSharkKB.ST_TABLE + " SET name = ? WHERE id = ?");
+
+            statement.setString(1, name);
+            statement.setInt(2, this.id);
+
+            statement.execute();
+            this.invalidate();
+
             this.name = name;
         } catch (SQLException ex) {
             L.d("cannot access SQL DB properly: " + ex.getLocalizedMessage(), this);
             throw new SharkKBException("cannot access SQL DB properly: " + ex.getLocalizedMessage());
         }
         finally {
-            if(statement != null) {
-                try {
-                    statement.close();
-                } catch (SQLException ex) {
-                    // ignore
-                }
-            }
+            this.kb.returnConnection();
         }
     }
 
@@ -275,47 +245,42 @@ class SQLSemanticTagStorage implements PropertyOwner {
     public int getType() {
         return this.type;
     }
-    
+
     String getEWKT() {
         return this.ewkt;
     }
-    
+
     long getStartTime() {
         return this.startTime;
     }
-    
+
     long getDurationTime() {
         return this.durationTime;
     }
-    
+
     boolean isHidden() {
         return this.hidden;
     }
-    
+
     void setHidden(boolean hidden) throws SharkKBException {
-        Statement statement = null;
         try {
-            statement = this.kb.getConnection().createStatement();
-            
-            String sqlStatement = "UPDATE " + SQLSharkKB.ST_TABLE + 
-                    " SET hidden = "
-                    + String.valueOf(hidden) + " WHERE id = "
-                    + this.id;
-            
-            statement.execute(sqlStatement);
+            this.kb.borrowConnection();
             
+            PreparedStatement statement = this.kb.prepare("UPDATE "
+                    + SQLSharkKB.ST_TABLE + " SET hidden = ? WHERE id = ?");
+
+            statement.setBoolean(1, hidden);
+            statement.setInt(2, this.id);
+
+            statement.execute();
+            this.invalidate();
+
             this.hidden = hidden;
         } catch (SQLException ex) {
             throw new SharkKBException("cannot access SQL DB properly: " + ex.getLocalizedMessage());
         }
         finally {
-            if(statement != null) {
-                try {
-                    statement.close();
-                } catch (SQLException ex) {
-                    // ignore
-                }
-            }
+            this.kb.returnConnection();
         }
     }
 
@@ -325,21 +290,22 @@ class SQLSemanticTagStorage implements PropertyOwner {
     }
 
     void removeSI(String si) throws SharkKBException {
-        
+
         if(sis.length == 1) {
             throw new SharkKBException("cannot remove final subject identifier");
         }
-        
-        Statement statement = null;
+
         try {
-            statement = this.kb.getConnection().createStatement();
-            
-            String sqlStatement = "DELETE FROM " + SQLSharkKB.SI_TABLE + 
-                    " WHERE si = '" 
-                    + si + "'";
-            
-            statement.execute(sqlStatement);
+            this.kb.borrowConnection();
             
+            PreparedStatement statement = this.kb.prepare("DELETE FROM "
+                    + SQLSharkKB.SI_TABLE + " WHERE si = ?");
+
+            statement.setString(1, si);
+
+            statement.execute();
+            this.invalidate();
+
             String[] oldSIS = this.sis;
             this.sis = new String[oldSIS.length-1];
             int j = 0;
@@ -354,35 +320,29 @@ class SQLSemanticTagStorage implements PropertyOwner {
             throw new SharkKBException("cannot access SQL DB properly: " + ex.getLocalizedMessage());
         }
         finally {
-            if(statement != null) {
-                try {
-                    statement.close();
-                } catch (SQLException ex) {
-                    // ignore
-                }
-            }
+            this.kb.returnConnection();
         }
     }
 
     void addSI(String si) throws SharkKBException {
-        Statement statement = null;
         try {
-            statement = this.kb.getConnection().createStatement();
-            
-            String sqlStatement = "INSERT INTO " + SQLSharkKB.SI_TABLE + 
-                    " (si, stid) VALUES ('"
-                    + si + "', "
-                    + this.id
-                    + ")";
-            
-            statement.execute(sqlStatement);
+            this.kb.borrowConnection();
             
+            PreparedStatement statement = this.kb.prepare("INSERT INTO "
+                    + SQLSharkKB.SI_TABLE + " (si, stid) VALUES (?, ?)");
+
+            statement.setString(1, si);
+            statement.setInt(2, this.id);
+
+            statement.execute();
+            this.invalidate();
+
             String[] oldSIS = this.sis;
             this.sis = new String[oldSIS.length+1];
-            
+
             // add new sis
             this.sis[0] = si;
-            
+
             for(int i = 1; i < this.sis.length; i++) {
                 this.sis[i] = oldSIS[i-1];
             }
@@ -390,32 +350,27 @@ class SQLSemanticTagStorage implements PropertyOwner {
             throw new SharkKBException("cannot access SQL DB properly: " + ex.getLocalizedMessage());
         }
         finally {
-            if(statement != null) {
-                try {
-                    statement.close();
-                } catch (SQLException ex) {
-                    // ignore
-                }
-            }
+            this.kb.returnConnection();
         }
     }
-    
+
     String[] getAddresses() throws SharkKBException {
         this.refreshAddresses();
         return this.addresses;
     }
 
     void removeAddress(String addr) throws SharkKBException {
-        Statement statement = null;
         try {
-            statement = this.kb.getConnection().createStatement();
-            
-            String sqlStatement = "DELETE FROM " + SQLSharkKB.ADDRESS_TABLE + 
-                    " WHERE addr = '" 
-                    + addr + "'";
-            
-            statement.execute(sqlStatement);
+            this.kb.borrowConnection();
             
+            PreparedStatement statement = this.kb.prepare("DELETE FROM "
+                    + SQLSharkKB.ADDRESS_TABLE + " WHERE addr = ?");
+
+            statement.setString(1, addr);
+
+            statement.execute();
+            this.invalidate();
+
             if(this.addresses.length > 1) {
                 String[] oldAddr = this.addresses;
                 this.addresses = new String[oldAddr.length-1];
@@ -434,171 +389,100 @@ class SQLSemanticTagStorage implements PropertyOwner {
             throw new SharkKBException("cannot access SQL DB properly: " + ex.getLocalizedMessage());
         }
         finally {
-            if(statement != null) {
-                try {
-                    statement.close();
-                } catch (SQLException ex) {
-                    // ignore
-                }
-            }
+            this.kb.returnConnection();
         }
     }
-    
+
     void setAddresses(String[] addresses) throws SharkKBException {
-        this.removeAllAddresses();
-        
-        if(addresses == null || addresses.length == 0) return;
-        
-        Statement statement = null;
         try {
-            statement = this.kb.getConnection().createStatement();
+            this.kb.beginTransaction();
             
-            for(String addr : addresses) {
-                String sqlStatement = "INSERT INTO " + SQLSharkKB.ADDRESS_TABLE + 
-                        " (addr, stid) VALUES ('"
-                        + addr + "', "
-                        + this.id
-                        + ")";
-
-                statement.execute(sqlStatement);
+            this.removeAllAddresses();
+
+            if(addresses != null && addresses.length > 0) {
+                this.insertAll(SQLSharkKB.ADDRESS_TABLE, "addr", addresses);
             }
+            
+            this.kb.commitTransaction();
         } catch (SQLException ex) {
             throw new SharkKBException("cannot access SQL DB properly: " + ex.getLocalizedMessage());
         }
         finally {
-            if(statement != null) {
-                try {
-                    statement.close();
-                } catch (SQLException ex) {
-                    // ignore
-                }
-            }
+            this.kb.endTransaction();
         }
-        
+
+        if(addresses == null || addresses.length == 0) return;
+
         this.addresses = new String[addresses.length];
-        
+
         net.sharkfw.system.Util.copyStringArray(this.addresses, addresses, addresses.length);
     }
-    
+
     /**
      * Force to re-read from sis table
      */
     private void refreshAddresses() throws SharkKBException {
-        Statement statement = null;
-        try {
-            statement = this.kb.getConnection().createStatement();
-            
-            String sqlStatement = "SELECT addr FROM " + SQLSharkKB.ADDRESS_TABLE + 
-                    " WHERE stid = " 
-                    + this.id;
-            
-            ResultSet result = statement.executeQuery(sqlStatement);
-            
-            if(!result.next()) {
-                // no addr
-                return;
-            } 
-            
-            // else
-            List<String> addrList = new ArrayList<>();
-            
-            do {
-                String si = result.getString(1);
-                addrList.add(si);
-            } while(result.next());
-            
-            String[] addrTmp = new String[addrList.size()];
-            Iterator<String> addrIter = addrList.iterator();
-            
-            for(int i = 0; i < addrTmp.length; i++) {
-                addrTmp[i] = addrIter.next();
-            }
-            
-            this.addresses = addrTmp;
-        } catch (SQLException ex) {
-            throw new SharkKBException("cannot access SQL DB properly: " + ex.getLocalizedMessage());
-        }
-        finally {
-            if(statement != null) {
-                try {
-                    statement.close();
-                } catch (SQLException ex) {
-                    // ignore
-                }
-            }
+        String[] addrTmp = this.getEntry().addresses;
+
+        if(addrTmp == null) {
+            // no addr
+            return;
         }
+
+        this.addresses = addrTmp;
     }
-    
+
     void removeAllAddresses() throws SharkKBException {
-        Statement statement = null;
         try {
-            statement = this.kb.getConnection().createStatement();
-            
             // remove Addresses
-            String sqlStatement = "DELETE FROM " + SQLSharkKB.ADDRESS_TABLE
-                    + " WHERE stid = " + this.id;
-            
-            statement.execute(sqlStatement);
-            
-            
+            this.executeWithID("DELETE FROM " + SQLSharkKB.ADDRESS_TABLE
+                    + " WHERE stid = ?");
+            this.invalidate();
         } catch (SQLException ex) {
             throw new SharkKBException("cannot access SQL DB properly: " + ex.getLocalizedMessage());
         }
-        finally {
-            if(statement != null) {
-                try {
-                    statement.close();
-                } catch (SQLException ex) {
-                    // ignore
-                }
-            }
-        }
     }
-    
+
     void removeAllPredicates() throws SharkKBException {
-        Statement statement = null;
         try {
-            statement = this.kb.getConnection().createStatement();
+            this.kb.borrowConnection();
             
-            // remove Addresses
-            String sqlStatement = "DELETE FROM " + SQLSharkKB.PREDICATE_TABLE
-                    + " WHERE sourceid = " + this.id
-                    + " OR targetid = " + this.id;
-            
-            statement.execute(sqlStatement);
+            PreparedStatement statement = this.kb.prepare("DELETE FROM "
+                    + SQLSharkKB.PREDICATE_TABLE
+                    + " WHERE sourceid = ? OR targetid = ?");
+
+            statement.setInt(1, this.id);
+            statement.setInt(2, this.id);
+
+            statement.execute();
+            this.kb.getTagCache().invalidatePredicates();
         } catch (SQLException ex) {
             throw new SharkKBException("cannot access SQL DB properly: " + ex.getLocalizedMessage());
         }
         finally {
-            if(statement != null) {
-                try {
-                    statement.close();
-                } catch (SQLException ex) {
-                    // ignore
-                }
-            }
+            this.kb.returnConnection();
         }
     }
-    
+
     void addAddress(String addr) throws SharkKBException {
-        Statement statement = null;
         try {
-            statement = this.kb.getConnection().createStatement();
-            
-            String sqlStatement = "INSERT INTO " + SQLSharkKB.ADDRESS_TABLE + 
-                    " (addr, stid) VALUES ('"
-                    + addr + "', "
-                    + this.id
-                    + ")";
-            
-            statement.execute(sqlStatement);
+            this.kb.borrowConnection();
             
+            PreparedStatement statement = this.kb.prepare("INSERT INTO "
+                    + SQLSharkKB.ADDRESS_TABLE + " (addr, stid) VALUES (?, ?)");
+
+            statement.setString(1, addr);
+            statement.setInt(2, this.id);
+
+            statement.execute();
+            this.invalidate();
+
             String[] oldAddr = this.addresses;
             this.addresses = new String[oldAddr.length+1];
-            
+
             // add new sis
             this.addresses[0] = addr;
-            
+
             for(int i = 1; i < this.addresses.length; i++) {
                 this.addresses[i] = oldAddr[i-1];
             }
@@ -606,52 +490,34 @@ class SQLSemanticTagStorage implements PropertyOwner {
             throw new SharkKBException("cannot access SQL DB properly: " + ex.getLocalizedMessage());
         }
         finally {
-            if(statement != null) {
-                try {
-                    statement.close();
-                } catch (SQLException ex) {
-                    // ignore
-                }
-            }
+            this.kb.returnConnection();
         }
     }
     /**
      * Removes entries in kb
      */
     void remove() throws SharkKBException {
-        Statement statement = null;
         try {
-            statement = this.kb.getConnection().createStatement();
-            
-            String sqlStatement = "DELETE FROM " + SQLSharkKB.ST_TABLE
-                    + " WHERE id = " + this.id;
-            
-            statement.execute(sqlStatement);
+            this.kb.beginTransaction();
             
+            this.executeWithID("DELETE FROM " + SQLSharkKB.ST_TABLE
+                    + " WHERE id = ?");
+
             // remove SI
-            sqlStatement = "DELETE FROM " + SQLSharkKB.SI_TABLE
-                    + " WHERE stid = " + this.id;
-            
-            statement.execute(sqlStatement);
-            
+            this.executeWithID("DELETE FROM " + SQLSharkKB.SI_TABLE
+                    + " WHERE stid = ?");
+
             // remove Addresses
-            sqlStatement = "DELETE FROM " + SQLSharkKB.ADDRESS_TABLE
-                    + " WHERE stid = " + this.id;
-            
-            statement.execute(sqlStatement);
-            
+            this.executeWithID("DELETE FROM " + SQLSharkKB.ADDRESS_TABLE
+                    + " WHERE stid = ?");
+            this.invalidate();
             
+            this.kb.commitTransaction();
         } catch (SQLException ex) {
             throw new SharkKBException("cannot access SQL DB properly: " + ex.getLocalizedMessage());
         }
         finally {
-            if(statement != null) {
-                try {
-                    statement.close();
-                } catch (SQLException ex) {
-                    // ignore
-                }
-            }
+            this.kb.endTransaction();
         }
     }
 }
@@ -1,14 +1,21 @@
 package net.sharkfw.knowledgeBase.sql;
 
+import java.sql.BatchUpdateException;
 import java.sql.Connection;
-import java.sql.DriverManager;
+import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
+import java.sql.Savepoint;
 import java.sql.Statement;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Enumeration;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 import net.sharkfw.knowledgeBase.AbstractSharkKB;
 import net.sharkfw.knowledgeBase.ContextCoordinates;
 import net.sharkfw.knowledgeBase.ContextPoint;
@@ -22,6 +29,7 @@ import net.sharkfw.knowledgeBase.STSet;
 import net.sharkfw.knowledgeBase.SemanticNet;
 import net.sharkfw.knowledgeBase.SemanticTag;
 import net.sharkfw.knowledgeBase.SharkCS;
+import net.sharkfw.knowledgeBase.SharkCSAlgebra;
 import net.sharkfw.knowledgeBase.SharkKB;
 import net.sharkfw.knowledgeBase.SharkKBException;
 import net.sharkfw.knowledgeBase.SpatialSTSet;
@@ -29,6 +37,9 @@ import net.sharkfw.knowledgeBase.SpatialSemanticTag;
 import net.sharkfw.knowledgeBase.Taxonomy;
 import net.sharkfw.knowledgeBase.TimeSTSet;
 import net.sharkfw.knowledgeBase.TimeSemanticTag;
+import net.sharkfw.knowledgeBase.inmemory.InMemoKnowledge;
+import net.sharkfw.knowledgeBase.inmemory.InMemoSharkKB;
+import net.sharkfw.system.Iterator2Enumeration;
 import net.sharkfw.system.L;
 
 /**
@@ -43,14 +54,16 @@ import net.sharkfw.system.L;
  * <li>Vocabulary: STSet, PeerSTSet, SpatialSTSet, TimeSTSet</li>
  * </ul>
  * 
+ * Connections are taken from a connection provider - a bounded pool by
+ * default. Each operation borrows a connection and returns it afterwards.
+ * Nested operations of a thread share that connection. Multi-statement 
+ * updates run in a transaction.
+ * 
  * @author thsc
  */
 public class SQLSharkKB extends AbstractSharkKB implements SharkKB {
 
-    private Connection connection;
-    private String connectionString;
-    private String user;
-    private String pwd;
+    private final SQLConnectionProvider connectionProvider;
     
     static final int UNKNOWN_SEMANTIC_TAG_TYPE = -1;
     static final int SEMANTIC_TAG_TYPE = 0;
@@ -63,19 +76,32 @@ public class SQLSharkKB extends AbstractSharkKB implements SharkKB {
     static final int KNOWLEDGEBASE = 2;
     static final int INFORMATION = 3;
     
+    // coordinate dimension is any
+    static final int ANY_ID = -1;
+    // tag isn't stored in database
+    static final int UNKNOWN_ID = -2;
+    
     public SQLSharkKB(String connectionString, String user, String pwd) throws SharkKBException {
-	try {
-            this.connectionString = connectionString;
-            this.user = user;
-            this.pwd = pwd;
-            connection = DriverManager.getConnection(connectionString, user, pwd);
- 	} catch (SQLException e) {
-            throw new SharkKBException("cannot connect to database: " + e.getLocalizedMessage());
- 	}
-        
- 	if (connection == null) {
-            throw new SharkKBException("cannot connect to database: reason unknown");
-	}
+        this(new SQLConnectionPool(connectionString, user, pwd));
+    }
+    
+    /**
+     * @param connectionProvider provides connections to database, e.g. 
+     * a SQLConnectionPool with more or less connections
+     * @throws SharkKBException 
+     */
+    public SQLSharkKB(SQLConnectionProvider connectionProvider) throws SharkKBException {
+        this.connectionProvider = connectionProvider;
+        
+        if(connectionProvider instanceof SQLConnectionPool) {
+            ((SQLConnectionPool) connectionProvider).addDropListener(
+                    new SQLConnectionPool.DropListener() {
+                @Override
+                public void connectionDropped(Connection connection) {
+                    SQLSharkKB.this.closeStatements(connection);
+                }
+            });
+        }
         
         // check if tables already created - if not - do it
         this.setupKB();
@@ -107,8 +133,197 @@ public class SQLSharkKB extends AbstractSharkKB implements SharkKB {
         }
     }
     
-    Connection getConnection() {
-        return this.connection;
+    public SQLConnectionProvider getConnectionProvider() {
+        return this.connectionProvider;
+    }
+    
+    ////////////////////////////////////////////////////////////////////////
+    //                   connection borrowing, transactions               //
+    ////////////////////////////////////////////////////////////////////////
+    
+    /**
+     * Connection which is borrowed by a thread
+     */
+    private static class BorrowedConnection {
+        final Connection connection;
+        int depth = 0;
+        int transactionDepth = 0;
+        boolean rollbackOnly = false; // an inner transaction failed
+        boolean levelCommitted = false;
+        
+        // tags changed in transaction
+        final HashSet<Integer> changedTags = new HashSet<>();
+        
+        BorrowedConnection(Connection connection) {
+            this.connection = connection;
+        }
+    }
+    
+    private final ThreadLocal<BorrowedConnection> borrowedConnection = new ThreadLocal<>();
+    
+    /**
+     * Borrows a connection for the calling thread. Calls can be nested -
+     * the connection is returned to the provider with the last matching
+     * returnConnection(). Use:
+     * 
+     * <pre>
+     * try {
+     *     kb.borrowConnection();
+     *     ...
+     * } finally {
+     *     kb.returnConnection();
+     * }
+     * </pre>
+     * 
+     * @throws SQLException 
+     */
+    void borrowConnection() throws SQLException {
+        BorrowedConnection borrowed = this.borrowedConnection.get();
+        if(borrowed == null) {
+            borrowed = new BorrowedConnection(this.connectionProvider.getConnection());
+            this.borrowedConnection.set(borrowed);
+        }
+        
+        borrowed.depth++;
+    }
+    
+    /**
+     * Counterpart of borrowConnection(). Does nothing if borrowing failed.
+     */
+    void returnConnection() {
+        BorrowedConnection borrowed = this.borrowedConnection.get();
+        if(borrowed == null) {
+            return;
+        }
+        
+        borrowed.depth--;
+        if(borrowed.depth == 0) {
+            this.borrowedConnection.remove();
+            this.connectionProvider.releaseConnection(borrowed.connection);
+        }
+    }
+    
+    /**
+     * Borrows a connection and starts a transaction. Transactions can be
+     * nested - only outermost transaction is committed. Use:
+     * 
+     * <pre>
+     * try {
+     *     kb.beginTransaction();
+     *     ...
+     *     kb.commitTransaction();
+     * } finally {
+     *     kb.endTransaction(); // rolls back if not committed
+     * }
+     * </pre>
+     * 
+     * @throws SQLException 
+     */
+    void beginTransaction() throws SQLException {
+        this.borrowConnection();
+        
+        BorrowedConnection borrowed = this.borrowedConnection.get();
+        if(borrowed.transactionDepth == 0) {
+            try {
+                borrowed.connection.setAutoCommit(false);
+            }
+            catch(SQLException e) {
+                this.returnConnection();
+                throw e;
+            }
+            
+            borrowed.rollbackOnly = false;
+        }
+        
+        borrowed.transactionDepth++;
+        borrowed.levelCommitted = false;
+    }
+    
+    /**
+     * Commits if this is the outermost transaction.
+     * @throws SQLException if commit fails or an inner transaction failed
+     */
+    void commitTransaction() throws SQLException {
+        BorrowedConnection borrowed = this.borrowedConnection.get();
+        if(borrowed == null || borrowed.transactionDepth == 0) {
+            throw new SQLException("no transaction started");
+        }
+        
+        if(borrowed.transactionDepth == 1) {
+            if(borrowed.rollbackOnly) {
+                throw new SQLException("transaction rolled back: nested transaction failed");
+            }
+            
+            borrowed.connection.commit();
+        }
+        
+        borrowed.levelCommitted = true;
+    }
+    
+    /**
+     * Ends a transaction - rolls back if it wasn't committed - and returns
+     * connection. Does nothing if beginTransaction() failed.
+     */
+    void endTransaction() {
+        BorrowedConnection borrowed = this.borrowedConnection.get();
+        if(borrowed == null || borrowed.transactionDepth == 0) {
+            return;
+        }
+        
+        if(!borrowed.levelCommitted) {
+            borrowed.rollbackOnly = true;
+        }
+        
+        borrowed.levelCommitted = false;
+        borrowed.transactionDepth--;
+        
+        try {
+            if(borrowed.transactionDepth == 0) {
+                if(borrowed.rollbackOnly) {
+                    // rows of this transaction weren't cached
+                    try {
+                        borrowed.connection.rollback();
+                    } catch (SQLException ex) {
+                        L.w("cannot rollback transaction: " + ex.getLocalizedMessage(), this);
+                    }
+                } else {
+                    // others could have cached old rows before commit
+                    for(Integer id : borrowed.changedTags) {
+                        this.tagCache.invalidate(id);
+                    }
+                }
+                
+                borrowed.changedTags.clear();
+                
+                try {
+                    borrowed.connection.setAutoCommit(true);
+                } catch (SQLException ex) {
+                    // provider must not hand it out again
+                    L.w("cannot reset auto commit - close connection: " + ex.getLocalizedMessage(), this);
+                    try {
+                        borrowed.connection.close();
+                    } catch (SQLException e) {
+                        // ignore
+                    }
+                }
+            }
+        }
+        finally {
+            this.returnConnection();
+        }
+    }
+    
+    /**
+     * @return connection borrowed by calling thread
+     * @throws SQLException if calling thread hasn't borrowed a connection
+     */
+    Connection getConnection() throws SQLException {
+        BorrowedConnection borrowed = this.borrowedConnection.get();
+        if(borrowed == null) {
+            throw new SQLException("no connection borrowed - call borrowConnection() first");
+        }
+        
+        return borrowed.connection;
     }
 
     public static final String SHARKKB_TABLE = "knowledgebase";
@@ -118,6 +333,7 @@ public class SQLSharkKB extends AbstractSharkKB implements SharkKB {
     public static final String ADDRESS_TABLE = "addresses";
     public static final String CP_TABLE = "contextpoints";
     public static final String PREDICATE_TABLE = "predicates";
+    public static final String INFORMATION_TABLE = "information";
     
     public static final String MAX_SI_SIZE = "200";
     public static final String MAX_ST_NAME_SIZE = "200";
@@ -141,7 +357,8 @@ public class SQLSharkKB extends AbstractSharkKB implements SharkKB {
     private void setupKB() throws SharkKBException {
         Statement statement = null;
         try {
-            statement  = connection.createStatement();
+            this.borrowConnection();
+            statement  = this.getConnection().createStatement();
             
             /************** Knowledge base table *****************************/
             try {
@@ -279,6 +496,33 @@ public class SQLSharkKB extends AbstractSharkKB implements SharkKB {
                         + "direction smallint"
                         + ");");
             }
+            
+            /************** information table *****************************/
+            try {
+                statement.execute("SELECT id from " + SQLSharkKB.INFORMATION_TABLE);
+                L.d(SQLSharkKB.INFORMATION_TABLE + " already exists", this);
+            }
+            catch(SQLException e) {
+                // does not exist: create
+                L.d(SQLSharkKB.INFORMATION_TABLE + " does not exists - create", this);
+                try { statement.execute("drop sequence infoid;"); }
+                catch(SQLException ee) { /* ignore */ }
+                statement.execute("create sequence infoid;");
+                statement.execute("CREATE TABLE " + SQLSharkKB.INFORMATION_TABLE + 
+                        " (id integer PRIMARY KEY default nextval('infoid'), "
+                        + "cpID integer, "
+                        + "content bytea"
+                        + ");");
+            }
+            
+            /************** indices *****************************/
+            // context points are found by coordinates
+            this.createIndex(statement, "cp_coordinates", SQLSharkKB.CP_TABLE, 
+                    "topicID, originatorID, peerID, remotePeerID, locationID, timeID, direction");
+            this.createIndex(statement, "info_cp", SQLSharkKB.INFORMATION_TABLE, "cpID");
+            this.createIndex(statement, "si_st", SQLSharkKB.SI_TABLE, "stID");
+            this.createIndex(statement, "addr_st", SQLSharkKB.ADDRESS_TABLE, "stID");
+            this.createIndex(statement, "property_owner", SQLSharkKB.PROPERTY_TABLE, "ownerID, entity_type");
         } catch (SQLException e) {
             L.w("error while setting up tables: " + e.getLocalizedMessage(), this);
             throw new SharkKBException("error while setting up tables: " + e.getLocalizedMessage());
@@ -291,53 +535,406 @@ public class SQLSharkKB extends AbstractSharkKB implements SharkKB {
                     // ignore
                 }
             }
+            
+            this.returnConnection();
         }
     }
     
-    SQLSemanticTagStorage getSQLSemanticTagStorage(String[] sis) throws SharkKBException {
-        if(sis == null || sis.length == 0) {
-            return null;
+    /**
+     * Index is created if it doesn't exist yet.
+     */
+    private void createIndex(Statement statement, String name, String table, 
+            String columns) {
+        try {
+            statement.execute("CREATE INDEX " + name + " ON " + table 
+                    + " (" + columns + ");");
+        }
+        catch(SQLException e) {
+            // already exists
         }
+    }
+    
+    ////////////////////////////////////////////////////////////////////////
+    //                           tag cache                                //
+    ////////////////////////////////////////////////////////////////////////
+    
+    private final SQLTagCache tagCache = new SQLTagCache(this, SQLTagCache.DEFAULT_MAX_TAGS);
+    
+    SQLTagCache getTagCache() {
+        return this.tagCache;
+    }
+    
+    /**
+     * @return true if calling thread runs a transaction - it reads rows
+     * which aren't committed yet
+     */
+    boolean inTransaction() {
+        BorrowedConnection borrowed = this.borrowedConnection.get();
+        return borrowed != null && borrowed.transactionDepth > 0;
+    }
+    
+    /**
+     * Must be called after each change of a tag. Cached entry is dropped -
+     * once more after commit if tag was changed in a transaction.
+     * 
+     * @param id 
+     */
+    void tagChanged(int id) {
+        this.tagCache.invalidate(id);
         
-        Statement statement = null;
+        BorrowedConnection borrowed = this.borrowedConnection.get();
+        if(borrowed != null && borrowed.transactionDepth > 0) {
+            borrowed.changedTags.add(id);
+        }
+    }
+    
+    /**
+     * Rows, subject identifiers, addresses and predicates of at most that 
+     * number of semantic tags are kept in memory. Least recently used
+     * tags are dropped first.
+     * 
+     * @param maxTags 
+     */
+    public void setTagCacheSize(int maxTags) {
+        this.tagCache.setMaxTags(maxTags);
+    }
+    
+    /**
+     * @return number of tag lookups answered without database access
+     */
+    public long getTagCacheHits() {
+        return this.tagCache.getHits();
+    }
+    
+    /**
+     * @return number of tag lookups which required database access
+     */
+    public long getTagCacheMisses() {
+        return this.tagCache.getMisses();
+    }
+    
+    public void resetTagCacheCounters() {
+        this.tagCache.resetCounters();
+    }
+    
+    ////////////////////////////////////////////////////////////////////////
+    //                        statement cache                             //
+    ////////////////////////////////////////////////////////////////////////
+    
+    // statements of a connection - least recently used are closed
+    static final int MAX_STATEMENTS = 64;
+    
+    private static class StatementCache extends LinkedHashMap<String, PreparedStatement> {
+        private static final long serialVersionUID = 1L;
+
+        StatementCache() {
+            super(16, 0.75f, true);
+        }
+
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, PreparedStatement> eldest) {
+            if(this.size() <= MAX_STATEMENTS) {
+                return false;
+            }
+            
+            SQLSharkKB.closeQuietly(eldest.getValue());
+            return true;
+        }
+    }
+    
+    private final HashMap<Connection, StatementCache> statements = new HashMap<>();
+    
+    /**
+     * Statements are prepared once per connection and reused afterwards. 
+     * Returned statement must not be closed. Statement belongs to the
+     * connection borrowed by calling thread. At most MAX_STATEMENTS 
+     * statements are kept per connection.
+     * 
+     * Note: A result set is closed when its statement is executed again. 
+     * Read results completely before calling other methods and before
+     * returning the connection.
+     * 
+     * @param sql
+     * @return
+     * @throws SQLException 
+     */
+    PreparedStatement prepare(String sql) throws SQLException {
+        Connection connection = this.getConnection();
         
+        synchronized(this.statements) {
+            StatementCache connectionStatements = this.statements.get(connection);
+            
+            if(connectionStatements == null) {
+                // a new connection - providers without drop listener
+                // might have closed others
+                this.removeClosedConnections();
+                
+                connectionStatements = new StatementCache();
+                this.statements.put(connection, connectionStatements);
+            }
+            
+            PreparedStatement statement = connectionStatements.get(sql);
+            if(statement == null) {
+                statement = connection.prepareStatement(sql);
+                connectionStatements.put(sql, statement);
+            }
+
+            return statement;
+        }
+    }
+    
+    private static void closeQuietly(Statement statement) {
         try {
-            statement  = this.getConnection().createStatement();
+            statement.close();
+        } catch (SQLException ex) {
+            // ignore
+        }
+    }
+    
+    private static void closeAll(StatementCache connectionStatements) {
+        if(connectionStatements == null) return;
+        
+        for(PreparedStatement statement : connectionStatements.values()) {
+            SQLSharkKB.closeQuietly(statement);
+        }
+    }
+    
+    private void removeClosedConnections() {
+        Iterator<Map.Entry<Connection, StatementCache>> entryIter = 
+                this.statements.entrySet().iterator();
+        
+        while(entryIter.hasNext()) {
+            Map.Entry<Connection, StatementCache> entry = entryIter.next();
+            boolean closed;
+            try {
+                closed = entry.getKey().isClosed();
+            } catch (SQLException ex) {
+                closed = true;
+            }
             
-            String sqlString = "select * from " + SQLSharkKB.ST_TABLE + 
-                    " where id = (select stid from " + 
-                    SQLSharkKB.SI_TABLE + " where si = '" + sis[0] + "'";
+            if(closed) {
+                SQLSharkKB.closeAll(entry.getValue());
+                entryIter.remove();
+            }
+        }
+    }
+    
+    /**
+     * Connection is dropped by provider - its statements as well.
+     * @param connection 
+     */
+    void closeStatements(Connection connection) {
+        synchronized(this.statements) {
+            SQLSharkKB.closeAll(this.statements.remove(connection));
+        }
+    }
+    
+    private void closeStatements() {
+        synchronized(this.statements) {
+            for(StatementCache connectionStatements : this.statements.values()) {
+                SQLSharkKB.closeAll(connectionStatements);
+            }
+
+            this.statements.clear();
+        }
+    }
+    
+    /**
+     * IN-lists are padded to a power of two - a few statements are 
+     * prepared for any list length.
+     * 
+     * @param length number of values
+     * @return number of parameters in IN-list
+     */
+    static int inListLength(int length) {
+        int bucket = 1;
+        while(bucket < length) {
+            bucket <<= 1;
+        }
+        
+        return bucket;
+    }
+    
+    /**
+     * Appends "(?, ?, ...)" with inListLength(values.size()) parameters 
+     * and adds values to params. List is padded with last value.
+     */
+    static <T> void appendInList(StringBuilder sql, List<T> params, List<T> values) {
+        int length = SQLSharkKB.inListLength(values.size());
+        
+        sql.append("(?");
+        for(int i = 1; i < length; i++) {
+            sql.append(", ?");
+        }
+        sql.append(")");
+        
+        params.addAll(values);
+        for(int i = values.size(); i < length; i++) {
+            params.add(values.get(values.size() - 1));
+        }
+    }
+    
+    /**
+     * Executes a batch. If it fails, statements are executed one by one - 
+     * failures are ignored, e.g. duplicate subject identifiers.
+     * 
+     * Inside a transaction failures are rolled back to a savepoint - 
+     * a failed statement would abort the whole transaction otherwise.
+     * 
+     * @param statement
+     * @param rows parameters of each row
+     * @throws SQLException 
+     */
+    void executeBatch(PreparedStatement statement, List<Object[]> rows) throws SQLException {
+        if(rows.isEmpty()) return;
+        
+        Connection connection = statement.getConnection();
+        boolean inTransaction = !connection.getAutoCommit();
+        
+        for(Object[] row : rows) {
+            for(int i = 0; i < row.length; i++) {
+                statement.setObject(i+1, row[i]);
+            }
+            statement.addBatch();
+        }
+        
+        Savepoint batchSavepoint = inTransaction ? connection.setSavepoint() : null;
+        try {
+            statement.executeBatch();
             
-            for(int i = 1; i < sis.length; i++) {
-                sqlString += " OR si = '" + sis[i] + "'";
+            if(batchSavepoint != null) {
+                connection.releaseSavepoint(batchSavepoint);
             }
+        }
+        catch(BatchUpdateException be) {
+            statement.clearBatch();
             
-            sqlString += ");";
+            if(batchSavepoint != null) {
+                connection.rollback(batchSavepoint);
+            }
             
-            ResultSet result = statement.executeQuery(sqlString);
+            for(Object[] row : rows) {
+                Savepoint rowSavepoint = inTransaction ? connection.setSavepoint() : null;
+                try {
+                    for(int i = 0; i < row.length; i++) {
+                        statement.setObject(i+1, row[i]);
+                    }
+                    statement.execute();
+                    
+                    if(rowSavepoint != null) {
+                        connection.releaseSavepoint(rowSavepoint);
+                    }
+                }
+                catch(SQLException e) {
+                    // ignore that row
+                    if(rowSavepoint != null) {
+                        connection.rollback(rowSavepoint);
+                    }
+                }
+            }
+        }
+    }
+    
+    /**
+     * @param sequence
+     * @return next value of that sequence
+     * @throws SQLException 
+     */
+    int nextID(String sequence) throws SQLException {
+        try {
+            this.borrowConnection();
             
+            ResultSet result = this.prepare("select nextval('" + sequence + "')").executeQuery();
             if(!result.next()) {
+                throw new SQLException("cannot get next value of sequence " + sequence);
+            }
+
+            return result.getInt(1);
+        }
+        finally {
+            this.returnConnection();
+        }
+    }
+    
+    /**
+     * @param sis
+     * @return id of semantic tag with one of those sis or UNKNOWN_ID
+     * @throws SQLException 
+     */
+    int getTagID(String[] sis) throws SQLException {
+        if(sis == null || sis.length == 0) {
+            return SQLSharkKB.UNKNOWN_ID;
+        }
+        
+        Integer cachedID = this.tagCache.getID(sis);
+        if(cachedID != null) {
+            return cachedID;
+        }
+        
+        // one statement for each IN-list length
+        StringBuilder sql = new StringBuilder();
+        sql.append("SELECT st.id FROM ").append(SQLSharkKB.ST_TABLE).append(" st, ")
+                .append(SQLSharkKB.SI_TABLE).append(" s WHERE s.stID = st.id AND s.si IN ");
+        
+        List<String> params = new ArrayList<>();
+        SQLSharkKB.appendInList(sql, params, Arrays.asList(sis));
+        
+        try {
+            this.borrowConnection();
+            
+            PreparedStatement statement = this.prepare(sql.toString());
+            for(int i = 0; i < params.size(); i++) {
+                statement.setString(i+1, params.get(i));
+            }
+
+            ResultSet result = statement.executeQuery();
+            if(!result.next()) {
+                return SQLSharkKB.UNKNOWN_ID;
+            }
+
+            return result.getInt(1);
+        }
+        finally {
+            this.returnConnection();
+        }
+    }
+    
+    /**
+     * @param tag
+     * @return id of tag in database, ANY_ID if tag is any, UNKNOWN_ID 
+     * if tag isn't stored in database
+     * @throws SharkKBException 
+     */
+    int getTagID(SemanticTag tag) throws SharkKBException {
+        if(tag == null || SharkCSAlgebra.isAny(tag)) {
+            return SQLSharkKB.ANY_ID;
+        }
+        
+        if(tag instanceof SQLSemanticTag && ((SQLSemanticTag)tag).kb == this) {
+            return ((SQLSemanticTag)tag).getSQLSemanticTagStorage().getID();
+        }
+        
+        try {
+            return this.getTagID(tag.getSI());
+        }
+        catch(SQLException e) {
+            throw new SharkKBException(e.getLocalizedMessage());
+        }
+    }
+    
+    SQLSemanticTagStorage getSQLSemanticTagStorage(String[] sis) throws SharkKBException {
+        try {
+            int stID = this.getTagID(sis);
+            if(stID == SQLSharkKB.UNKNOWN_ID) {
                 // nothing found - leave
                 return null;
             }
             
-            int stID = result.getInt("id");
-            
             return new SQLSemanticTagStorage(this, stID);
-            
         }
         catch(SQLException e) {
             throw new SharkKBException(e.getLocalizedMessage());
         }
-        finally {
-            if(statement != null) {
-                try {
-                    statement.close();
-                } catch (SQLException ex) {
-                    // ignore
-                }
-            }
-        }
     }
     
     /**
@@ -345,9 +942,14 @@ public class SQLSharkKB extends AbstractSharkKB implements SharkKB {
      * @throws net.sharkfw.knowledgeBase.SharkKBException
      */
     public void drop() throws SharkKBException {
+        // prepared statements refer to dropped tables
+        this.closeStatements();
+        this.tagCache.clear();
+        
         Statement statement = null;
         try {
-            statement  = connection.createStatement();
+            this.borrowConnection();
+            statement  = this.getConnection().createStatement();
             
             /************** Knowledge base table *****************************/
             try {
@@ -398,6 +1000,13 @@ public class SQLSharkKB extends AbstractSharkKB implements SharkKB {
             }
             catch(SQLException e) {
             }
+            
+            /************** information table *****************************/
+            try {
+                statement.execute("DROP TABLE " + SQLSharkKB.INFORMATION_TABLE);
+            }
+            catch(SQLException e) {
+            }
         } catch (SQLException e) {
             L.w("error while creating SQL-statement: " + e.getLocalizedMessage(), this);
             throw new SharkKBException("error while creating SQL-statement: " + e.getLocalizedMessage());
@@ -410,6 +1019,8 @@ public class SQLSharkKB extends AbstractSharkKB implements SharkKB {
                     // ignore
                 }
             }
+            
+            this.returnConnection();
         }
     }
     
@@ -418,79 +1029,58 @@ public class SQLSharkKB extends AbstractSharkKB implements SharkKB {
      * @throws net.sharkfw.knowledgeBase.SharkKBException
      */
     public void close() throws SharkKBException {
-        try {
-            this.connection.close();
-            this.connection = null;
-        } catch (SQLException ex) {
-            throw new SharkKBException(ex.getLocalizedMessage());
-        }
+        this.closeStatements();
+        
+        // database could be changed by others until reconnect
+        this.tagCache.clear();
+        
+        this.connectionProvider.close();
     }
     
     /**
      * Reconnect after prior close. Note: An open connection would be
      * closed an re-opened.
      * 
-     * Note also: A jdbc connection is already opened when constructor is
+     * Note also: Connection provider is already open when constructor is
      * called.
      * 
      * @throws SharkKBException 
      */
     public void reconnect() throws SharkKBException {
-        if(this.connection != null) {
+        if(this.connected()) {
             this.close();
         }
 
         try {
-            this.connection = DriverManager.getConnection(connectionString, user, pwd);
+            this.connectionProvider.open();
         } catch (SQLException ex) {
             throw new SharkKBException(ex.getLocalizedMessage());
         }
     }
     
     /**
-     * JDBC connection is open or not
+     * JDBC connection provider is open or not
      * @return 
      */
     public boolean connected() {
-        return this.connection != null;
+        return this.connectionProvider.isOpen();
     }
     
     String[] getSIs(int id) {
-        String[] sis = null;
-        
-        Statement statement = null;
         try {
-            statement  = connection.createStatement();
-            
-            ArrayList<String> sisList = new ArrayList(); 
-            ResultSet result = statement.executeQuery("SELECT si from " + SQLSharkKB.SI_TABLE + " where stid = " + id + ";");
-            while(result.next()) {
-                sisList.add(result.getString(1));
-            }
-
-            if(!sisList.isEmpty()) {
-                sis = new String[sisList.size()];
-                Iterator<String> sisIter = sisList.iterator();
-                for(int i = 0; i < sis.length; i++) {
-                    sis[i] = sisIter.next();
-                }
+            SQLTagCache.TagEntry entry = this.tagCache.get(id);
+            if(entry != null) {
+                return entry.sis;
             }
         } catch (SQLException e) {
         }
-        finally {
-            if(statement != null) {
-                try {
-                    statement.close();
-                } catch (SQLException ex) {
-                    // ignore
-                }
-            }
-        }
         
-        return sis;
+        return null;
     }
     
     /**
+     * Ids are read first. Tags which aren't cached are read afterwards 
+     * with set based queries - not tag by tag.
      *
      * @param result result set of semantic tags table - must constist of id
      * @return
@@ -498,10 +1088,18 @@ public class SQLSharkKB extends AbstractSharkKB implements SharkKB {
      * @throws SharkKBException
      */
     static List<SemanticTag> createSTListBySTTableEntries(SQLSharkKB kb, ResultSet result) throws SQLException, SharkKBException {
-        List<SemanticTag> tagList = new ArrayList<>();
+        List<Integer> ids = new ArrayList<>();
         while (result.next()) {
-            int id = result.getInt("id");
-            SQLSemanticTagStorage sqlST = new SQLSemanticTagStorage(kb, id);
+            ids.add(result.getInt("id"));
+        }
+        
+        return SQLSharkKB.createSTList(kb, kb.getTagCache().get(ids));
+    }
+    
+    static List<SemanticTag> createSTList(SQLSharkKB kb, List<SQLTagCache.TagEntry> entries) throws SharkKBException {
+        List<SemanticTag> tagList = new ArrayList<>();
+        for(SQLTagCache.TagEntry entry : entries) {
+            SQLSemanticTagStorage sqlST = new SQLSemanticTagStorage(kb, entry);
             
             SemanticTag newTag = SQLSharkKB.wrapSQLTagStorage(kb, sqlST, SQLSharkKB.UNKNOWN_SEMANTIC_TAG_TYPE);
             
@@ -572,34 +1170,361 @@ public class SQLSharkKB extends AbstractSharkKB implements SharkKB {
         throw new UnsupportedOperationException("Not supported yet."); //To change body of generated methods, choose Tools | Templates.
     }
 
+    ////////////////////////////////////////////////////////////////////////
+    //                        context points                              //
+    ////////////////////////////////////////////////////////////////////////
+    
+    // column order of coordinate ids
+    static final String CP_COORDINATE_COLUMNS = 
+            "topicID, originatorID, peerID, remotePeerID, locationID, timeID";
+    
+    /**
+     * @param coordinates
+     * @return tag ids in order of CP_COORDINATE_COLUMNS or null if at least
+     * one tag isn't stored in database
+     * @throws SharkKBException 
+     */
+    private int[] getCoordinateIDs(ContextCoordinates coordinates) throws SharkKBException {
+        int[] ids = new int[] {
+            this.getTagID(coordinates.getTopic()),
+            this.getTagID(coordinates.getOriginator()),
+            this.getTagID(coordinates.getPeer()),
+            this.getTagID(coordinates.getRemotePeer()),
+            this.getTagID(coordinates.getLocation()),
+            this.getTagID(coordinates.getTime())
+        };
+        
+        for(int i = 0; i < ids.length; i++) {
+            if(ids[i] == SQLSharkKB.UNKNOWN_ID) {
+                return null;
+            }
+        }
+        
+        return ids;
+    }
+    
     @Override
     public ContextPoint getContextPoint(ContextCoordinates coordinates) throws SharkKBException {
-        throw new UnsupportedOperationException("Not supported yet."); //To change body of generated methods, choose Tools | Templates.
+        if(coordinates == null) {
+            return null;
+        }
+        
+        int[] ids = this.getCoordinateIDs(coordinates);
+        if(ids == null) {
+            // there can't be a context point with an unknown tag
+            return null;
+        }
+        
+        try {
+            this.borrowConnection();
+            
+            // uses coordinate index
+            PreparedStatement statement = this.prepare("SELECT id FROM " 
+                    + SQLSharkKB.CP_TABLE + " WHERE topicID = ? AND originatorID = ? "
+                    + "AND peerID = ? AND remotePeerID = ? AND locationID = ? "
+                    + "AND timeID = ? AND direction = ?");
+            
+            for(int i = 0; i < ids.length; i++) {
+                statement.setInt(i+1, ids[i]);
+            }
+            statement.setInt(ids.length + 1, coordinates.getDirection());
+            
+            ResultSet result = statement.executeQuery();
+            if(!result.next()) {
+                return null;
+            }
+            
+            return new SQLContextPoint(this, result.getInt(1));
+        }
+        catch(SQLException e) {
+            throw new SharkKBException(e.getLocalizedMessage());
+        }
+        finally {
+            this.returnConnection();
+        }
     }
 
     @Override
     public ContextCoordinates createContextCoordinates(SemanticTag topic, PeerSemanticTag originator, PeerSemanticTag peer, PeerSemanticTag remotepeer, TimeSemanticTag time, SpatialSemanticTag location, int direction) throws SharkKBException {
-        throw new UnsupportedOperationException("Not supported yet."); //To change body of generated methods, choose Tools | Templates.
+        // tags become part of this kb
+        this.getTopicSTSet().merge(topic);
+        this.getPeerSTSet().merge(originator);
+        this.getPeerSTSet().merge(peer);
+        this.getPeerSTSet().merge(remotepeer);
+        this.getTimeSTSet().merge(time);
+        this.getSpatialSTSet().merge(location);
+        
+        return InMemoSharkKB.createInMemoContextCoordinates(topic, originator, peer, 
+                remotepeer, time, location, direction);
     }
 
     @Override
     public ContextPoint createContextPoint(ContextCoordinates coordinates) throws SharkKBException {
-        throw new UnsupportedOperationException("Not supported yet."); //To change body of generated methods, choose Tools | Templates.
-    }
+        ContextPoint cp = this.getContextPoint(coordinates);
+        if(cp != null) {
+            return cp;
+        }
+        
+        // coordinate tags and context point are stored together or not at all
+        try {
+            this.beginTransaction();
+            
+            // store coordinate tags if not yet done
+            coordinates = this.createContextCoordinates(coordinates.getTopic(), 
+                    coordinates.getOriginator(), coordinates.getPeer(), 
+                    coordinates.getRemotePeer(), coordinates.getTime(), 
+                    coordinates.getLocation(), coordinates.getDirection());
 
+            int[] ids = this.getCoordinateIDs(coordinates);
+            if(ids == null) {
+                throw new SharkKBException("cannot store coordinate tags of new context point");
+            }
+            
+            int cpID = this.nextID("cpid");
+            
+            PreparedStatement statement = this.prepare("INSERT INTO " 
+                    + SQLSharkKB.CP_TABLE + " (id, " + CP_COORDINATE_COLUMNS 
+                    + ", direction) VALUES (?, ?, ?, ?, ?, ?, ?, ?)");
+            
+            statement.setInt(1, cpID);
+            for(int i = 0; i < ids.length; i++) {
+                statement.setInt(i+2, ids[i]);
+            }
+            statement.setInt(ids.length + 2, coordinates.getDirection());
+            
+            statement.execute();
+            
+            this.commitTransaction();
+            
+            cp = new SQLContextPoint(this, cpID);
+        }
+        catch(SQLException e) {
+            throw new SharkKBException(e.getLocalizedMessage());
+        }
+        finally {
+            this.endTransaction();
+        }
+        
+        this.notifyCpCreated(cp);
+        
+        return cp;
+    }
+    
+    /**
+     * @return in memory knowledge - context points of this kb are added
+     * e.g. to be sent.
+     */
     @Override
     public Knowledge createKnowledge() {
-        throw new UnsupportedOperationException("Not supported yet."); //To change body of generated methods, choose Tools | Templates.
+        return new InMemoKnowledge(this);
+    }
+    
+    @Override
+    public void removeContextPoint(ContextCoordinates coordinates) throws SharkKBException {
+        SQLContextPoint cp = (SQLContextPoint) this.getContextPoint(coordinates);
+        if(cp != null) {
+            cp.remove();
+            this.notifyCpRemoved(cp);
+        }
+    }
+    
+    /**
+     * Adds a condition on a coordinate column. Matching context points
+     * have a tag of that set in that dimension. Any tags in that dimension
+     * match as well if matchAny is set.
+     * 
+     * An empty set stands for any. Any context point matches if matchAny
+     * is set. Context points must have an any coordinate otherwise.
+     * 
+     * @return false if no context point can match
+     */
+    private boolean addCoordinateCondition(StringBuilder sql, List<Integer> params,
+            String column, Enumeration<SemanticTag> tags, boolean matchAny) 
+            throws SharkKBException {
+        
+        if(tags == null || !tags.hasMoreElements()) {
+            if(!matchAny) {
+                sql.append(" AND ").append(column).append(" = ?");
+                params.add(SQLSharkKB.ANY_ID);
+            }
+            return true;
+        }
+        
+        ArrayList<Integer> ids = new ArrayList<>();
+        if(matchAny) {
+            ids.add(SQLSharkKB.ANY_ID);
+        }
+        
+        while(tags.hasMoreElements()) {
+            int id = this.getTagID(tags.nextElement());
+            if(id == SQLSharkKB.ANY_ID) {
+                // any tag in set: anything matches that dimension
+                if(matchAny) { return true; }
+            }
+            if(id != SQLSharkKB.UNKNOWN_ID && !ids.contains(id)) {
+                ids.add(id);
+            }
+        }
+        
+        if(ids.isEmpty()) {
+            // none of those tags is stored - no context point can match
+            return false;
+        }
+        
+        sql.append(" AND ").append(column).append(" IN ");
+        SQLSharkKB.appendInList(sql, params, ids);
+        
+        return true;
+    }
+    
+    private Enumeration<SemanticTag> enumTags(STSet set) throws SharkKBException {
+        if(set == null) {
+            return null;
+        }
+        
+        return set.tags();
+    }
+    
+    private Enumeration<SemanticTag> enumTag(SemanticTag tag) {
+        ArrayList<SemanticTag> list = new ArrayList<>();
+        if(tag != null) {
+            list.add(tag);
+        }
+        
+        return new Iterator2Enumeration(list.iterator());
     }
 
+    /**
+     * Context points are found by a single query which uses the 
+     * coordinate index. 
+     * 
+     * @param cs
+     * @param matchAny
+     * @return
+     * @throws SharkKBException 
+     */
     @Override
     public Iterator<ContextPoint> contextPoints(SharkCS cs, boolean matchAny) throws SharkKBException {
-        throw new UnsupportedOperationException("Not supported yet."); //To change body of generated methods, choose Tools | Templates.
+        if(cs == null) {
+            return null;
+        }
+        
+        StringBuilder sql = new StringBuilder();
+        sql.append("SELECT id FROM ").append(SQLSharkKB.CP_TABLE).append(" WHERE 1 = 1");
+        ArrayList<Integer> params = new ArrayList<>();
+        
+        if(!this.addCoordinateCondition(sql, params, "topicID", this.enumTags(cs.getTopics()), matchAny)
+            || !this.addCoordinateCondition(sql, params, "originatorID", this.enumTag(cs.getOriginator()), matchAny)
+            || !this.addCoordinateCondition(sql, params, "peerID", this.enumTags(cs.getPeers()), matchAny)
+            || !this.addCoordinateCondition(sql, params, "remotePeerID", this.enumTags(cs.getRemotePeers()), matchAny)
+            || !this.addCoordinateCondition(sql, params, "locationID", this.enumTags(cs.getLocations()), matchAny)
+            || !this.addCoordinateCondition(sql, params, "timeID", this.enumTags(cs.getTimes()), matchAny)) {
+            
+            return null;
+        }
+        
+        int direction = cs.getDirection();
+        if(!matchAny) {
+            sql.append(" AND direction = ?");
+            params.add(direction);
+        } 
+        else if(direction != SharkCS.DIRECTION_INOUT) {
+            sql.append(" AND direction IN (?, ?)");
+            params.add(direction);
+            params.add(SharkCS.DIRECTION_INOUT);
+        }
+        
+        List<Integer> cpIDs = new ArrayList<>();
+        try {
+            this.borrowConnection();
+            
+            PreparedStatement statement = this.prepare(sql.toString());
+            for(int i = 0; i < params.size(); i++) {
+                statement.setInt(i+1, params.get(i));
+            }
+            
+            ResultSet result = statement.executeQuery();
+            while(result.next()) {
+                cpIDs.add(result.getInt(1));
+            }
+        }
+        catch(SQLException e) {
+            throw new SharkKBException(e.getLocalizedMessage());
+        }
+        finally {
+            this.returnConnection();
+        }
+        
+        if(cpIDs.isEmpty()) {
+            return null;
+        }
+        
+        return this.createContextPoints(cpIDs).iterator();
+    }
+    
+    private List<ContextPoint> createContextPoints(List<Integer> cpIDs) {
+        ArrayList<ContextPoint> cps = new ArrayList<>();
+        for(Integer cpID : cpIDs) {
+            cps.add(new SQLContextPoint(this, cpID));
+        }
+        
+        return cps;
     }
 
     @Override
     public Enumeration<ContextPoint> getAllContextPoints() throws SharkKBException {
-        throw new UnsupportedOperationException("Not supported yet."); //To change body of generated methods, choose Tools | Templates.
+        List<Integer> cpIDs = new ArrayList<>();
+        try {
+            this.borrowConnection();
+            
+            ResultSet result = this.prepare("SELECT id FROM " 
+                    + SQLSharkKB.CP_TABLE + " ORDER BY id").executeQuery();
+            
+            while(result.next()) {
+                cpIDs.add(result.getInt(1));
+            }
+        }
+        catch(SQLException e) {
+            throw new SharkKBException(e.getLocalizedMessage());
+        }
+        finally {
+            this.returnConnection();
+        }
+        
+        return new Iterator2Enumeration(this.createContextPoints(cpIDs).iterator());
+    }
+    
+    /**
+     * @param cpID
+     * @return new information attached to that context point
+     * @throws SharkKBException 
+     */
+    SQLInformation createInformation(int cpID) throws SharkKBException {
+        try {
+            // row and initial properties
+            this.beginTransaction();
+            
+            int infoID = this.nextID("infoid");
+            
+            PreparedStatement statement = this.prepare("INSERT INTO " 
+                    + SQLSharkKB.INFORMATION_TABLE + " (id, cpID) VALUES (?, ?)");
+            
+            statement.setInt(1, infoID);
+            statement.setInt(2, cpID);
+            statement.execute();
+            
+            SQLInformation info = new SQLInformation(this, infoID, true);
+            
+            this.commitTransaction();
+            
+            return info;
+        }
+        catch(SQLException e) {
+            throw new SharkKBException(e.getLocalizedMessage());
+        }
+        finally {
+            this.endTransaction();
+        }
     }
 
     @Override
@@ -0,0 +1,486 @@
+package net.sharkfw.knowledgeBase.sql;
+
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Keeps rows of semantic tags together with their subject identifiers,
+ * addresses and predicates. Least recently used tags are dropped if more
+ * than maxTags are cached. Any write to a tag invalidates its entry.
+ *
+ * Loads run outside the cache monitor. An invalidation during a load
+ * would be lost if the load put its (old) rows afterwards. Therefore any
+ * invalidation increments a generation. Loads remember the generation
+ * they started with - rows of tags invalidated since are not cached.
+ *
+ * A thread inside a transaction reads its own uncommitted rows. They would
+ * be seen by other threads and outlive a rollback. Thus, loads inside a
+ * transaction aren't cached.
+ *
+ * Tags are loaded with set based queries: a row, its sis and addresses
+ * are read by three statements - for a single tag as well as for a whole
+ * set of tags.
+ *
+ * @author thsc
+ */
+class SQLTagCache {
+    static final int DEFAULT_MAX_TAGS = 1000;
+
+    // max number of ids in a single IN clause - a power of two, see
+    // SQLSharkKB.inListLength()
+    private static final int MAX_IN_IDS = 128;
+
+    /**
+     * Cached semantic tag. Predicate arrays are null until asked for.
+     */
+    static class TagEntry {
+        final int id;
+        String name;
+        String ewkt;
+        long startTime;
+        long durationTime;
+        boolean hidden;
+        int type;
+        String[] sis;
+        String[] addresses;
+        String[] sourcePredicates; // this tag is source
+        String[] targetPredicates; // this tag is target
+
+        TagEntry(int id) {
+            this.id = id;
+        }
+    }
+
+    private final SQLSharkKB kb;
+    private int maxTags;
+
+    private final LinkedHashMap<Integer, TagEntry> entries;
+    private final HashMap<String, Integer> si2id = new HashMap<>();
+
+    private long hits = 0;
+    private long misses = 0;
+
+    // incremented by any invalidation
+    private long generation = 0;
+    private long clearedAt = 0;
+    private long predicatesInvalidatedAt = 0;
+    // id -> generation of its last invalidation - kept while loads run
+    private final HashMap<Integer, Long> invalidatedAt = new HashMap<>();
+    private int runningLoads = 0;
+
+    SQLTagCache(SQLSharkKB kb, int maxTags) {
+        this.kb = kb;
+        this.maxTags = maxTags;
+
+        // access ordered - eldest entry is least recently used
+        this.entries = new LinkedHashMap<Integer, TagEntry>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Integer, TagEntry> eldest) {
+                if(this.size() > SQLTagCache.this.maxTags) {
+                    SQLTagCache.this.unindex(eldest.getValue());
+                    return true;
+                }
+                return false;
+            }
+        };
+    }
+
+    synchronized void setMaxTags(int maxTags) {
+        this.maxTags = maxTags;
+
+        // shrink
+        Iterator<TagEntry> entryIter = this.entries.values().iterator();
+        while(this.entries.size() > maxTags && entryIter.hasNext()) {
+            this.unindex(entryIter.next());
+            entryIter.remove();
+        }
+    }
+
+    synchronized int size() {
+        return this.entries.size();
+    }
+
+    synchronized long getHits() {
+        return this.hits;
+    }
+
+    synchronized long getMisses() {
+        return this.misses;
+    }
+
+    synchronized void resetCounters() {
+        this.hits = 0;
+        this.misses = 0;
+    }
+
+    private void unindex(TagEntry entry) {
+        if(entry.sis == null) { return; }
+
+        for(String si : entry.sis) {
+            Integer id = this.si2id.get(si);
+            if(id != null && id == entry.id) {
+                this.si2id.remove(si);
+            }
+        }
+    }
+
+    /**
+     * Call endLoad() afterwards.
+     * @return generation to pass to isStale()
+     */
+    private synchronized long beginLoad() {
+        this.runningLoads++;
+        return this.generation;
+    }
+
+    private synchronized void endLoad() {
+        this.runningLoads--;
+        if(this.runningLoads == 0) {
+            this.invalidatedAt.clear();
+        }
+    }
+
+    /**
+     * @return true if tag was invalidated since a load started
+     */
+    private boolean isStale(int id, long loadGeneration) {
+        if(this.clearedAt > loadGeneration) {
+            return true;
+        }
+
+        Long invalidation = this.invalidatedAt.get(id);
+        return invalidation != null && invalidation > loadGeneration;
+    }
+
+    // caller holds monitor
+    private void put(TagEntry entry) {
+        TagEntry old = this.entries.put(entry.id, entry);
+        if(old != null) {
+            this.unindex(old);
+        }
+
+        if(entry.sis != null) {
+            for(String si : entry.sis) {
+                this.si2id.put(si, entry.id);
+            }
+        }
+    }
+
+    /**
+     * Drops a tag - must be called after each change of that tag.
+     */
+    synchronized void invalidate(int id) {
+        this.generation++;
+        if(this.runningLoads > 0) {
+            this.invalidatedAt.put(id, this.generation);
+        }
+
+        TagEntry entry = this.entries.remove(id);
+        if(entry != null) {
+            this.unindex(entry);
+        }
+    }
+
+    /**
+     * Drops predicates of any tag. Predicates are changed seldom - it's
+     * not worth finding affected tags.
+     */
+    synchronized void invalidatePredicates() {
+        this.generation++;
+        this.predicatesInvalidatedAt = this.generation;
+
+        for(TagEntry entry : this.entries.values()) {
+            entry.sourcePredicates = null;
+            entry.targetPredicates = null;
+        }
+    }
+
+    synchronized void clear() {
+        this.generation++;
+        this.clearedAt = this.generation;
+
+        this.entries.clear();
+        this.si2id.clear();
+    }
+
+    /**
+     * @param sis
+     * @return id of a cached tag with one of those sis or null
+     */
+    synchronized Integer getID(String[] sis) {
+        for(String si : sis) {
+            Integer id = this.si2id.get(si);
+            if(id != null) {
+                this.hits++;
+                return id;
+            }
+        }
+
+        this.misses++;
+        return null;
+    }
+
+    /**
+     * @param id
+     * @return tag entry - loaded if not cached - or null if there is
+     * no such tag
+     * @throws SQLException
+     */
+    TagEntry get(int id) throws SQLException {
+        List<Integer> ids = new ArrayList<>();
+        ids.add(id);
+
+        List<TagEntry> result = this.get(ids);
+        return result.isEmpty() ? null : result.get(0);
+    }
+
+    /**
+     * Missing tags are loaded with set based queries.
+     *
+     * @param ids
+     * @return entries in order of ids - removed tags are left out
+     * @throws SQLException
+     */
+    List<TagEntry> get(List<Integer> ids) throws SQLException {
+        HashMap<Integer, TagEntry> found = new HashMap<>();
+        List<Integer> missingIDs = new ArrayList<>();
+
+        synchronized(this) {
+            for(Integer id : ids) {
+                TagEntry entry = this.entries.get(id);
+                if(entry != null) {
+                    this.hits++;
+                    found.put(id, entry);
+                } else {
+                    this.misses++;
+                    missingIDs.add(id);
+                }
+            }
+        }
+
+        // load missing in chunks
+        for(int i = 0; i < missingIDs.size(); i += MAX_IN_IDS) {
+            List<Integer> chunk = missingIDs.subList(i, Math.min(missingIDs.size(), i + MAX_IN_IDS));
+
+            StringBuilder condition = new StringBuilder("t.id IN ");
+            List<Integer> params = new ArrayList<>();
+            SQLSharkKB.appendInList(condition, params, chunk);
+
+            found.putAll(this.load(condition.toString(), params));
+        }
+
+        List<TagEntry> result = new ArrayList<>();
+        for(Integer id : ids) {
+            TagEntry entry = found.get(id);
+            if(entry != null) {
+                result.add(entry);
+            }
+        }
+
+        return result;
+    }
+
+    /**
+     * Loads all tags of that type. General semantic tag type stands for
+     * any tag. Three statements are executed - regardless of set size.
+     *
+     * @param type
+     * @return
+     * @throws SQLException
+     */
+    List<TagEntry> getByType(int type) throws SQLException {
+        List<Integer> params = new ArrayList<>();
+        String condition;
+
+        switch(type) {
+            case SQLSharkKB.PEER_SEMANTIC_TAG_TYPE:
+            case SQLSharkKB.SPATIAL_SEMANTIC_TAG_TYPE:
+            case SQLSharkKB.TIME_SEMANTIC_TAG_TYPE:
+                condition = "t.st_type = ?";
+                params.add(type);
+                break;
+            default:
+                condition = "1 = 1";
+        }
+
+        return new ArrayList<>(this.load(condition, params).values());
+    }
+
+    /**
+     * Reads rows, sis and addresses of tags which fulfill a condition on
+     * semantic tag table (alias t). Loaded tags are cached.
+     *
+     * @return id -> entry in row order
+     */
+    private LinkedHashMap<Integer, TagEntry> load(String condition, List<Integer> params)
+            throws SQLException {
+
+        LinkedHashMap<Integer, TagEntry> loaded = new LinkedHashMap<>();
+        HashMap<Integer, List<String>> sis;
+        HashMap<Integer, List<String>> addresses;
+
+        long loadGeneration = this.beginLoad();
+        try {
+            this.kb.borrowConnection();
+            boolean cacheable = !this.kb.inTransaction();
+
+            // rows
+            ResultSet result = this.execute("SELECT t.* FROM " + SQLSharkKB.ST_TABLE
+                    + " t WHERE " + condition + " ORDER BY t.id", params);
+
+            while(result.next()) {
+                TagEntry entry = new TagEntry(result.getInt("id"));
+                entry.name = result.getString("name");
+                entry.ewkt = result.getString("ewkt");
+                entry.startTime = result.getLong("startTime");
+                entry.durationTime = result.getLong("durationTime");
+                entry.hidden = result.getBoolean("hidden");
+                entry.type = result.getInt("st_type");
+
+                loaded.put(entry.id, entry);
+            }
+
+            if(loaded.isEmpty()) {
+                return loaded;
+            }
+
+            sis = this.loadStrings(SQLSharkKB.SI_TABLE, "si", condition, params);
+            addresses = this.loadStrings(SQLSharkKB.ADDRESS_TABLE, "addr", condition, params);
+
+            for(TagEntry entry : loaded.values()) {
+                entry.sis = SQLTagCache.toArray(sis.get(entry.id));
+                entry.addresses = SQLTagCache.toArray(addresses.get(entry.id));
+            }
+
+            if(cacheable) {
+                synchronized(this) {
+                    for(TagEntry entry : loaded.values()) {
+                        if(!this.isStale(entry.id, loadGeneration)) {
+                            this.put(entry);
+                        }
+                    }
+                }
+            }
+
+            return loaded;
+        }
+        finally {
+            this.kb.returnConnection();
+            this.endLoad();
+        }
+    }
+
+    private HashMap<Integer, List<String>> loadStrings(String table, String column,
+            String condition, List<Integer> params) throws SQLException {
+
+        ResultSet result = this.execute("SELECT s.stid, s." + column + " FROM "
+                + table + " s, " + SQLSharkKB.ST_TABLE + " t WHERE s.stid = t.id AND "
+                + condition, params);
+
+        HashMap<Integer, List<String>> values = new HashMap<>();
+        while(result.next()) {
+            int id = result.getInt(1);
+            List<String> idValues = values.get(id);
+            if(idValues == null) {
+                idValues = new ArrayList<>();
+                values.put(id, idValues);
+            }
+
+            idValues.add(result.getString(2));
+        }
+
+        return values;
+    }
+
+    /**
+     * Caller must have borrowed a connection - result is read with it.
+     */
+    private ResultSet execute(String sql, List<Integer> params) throws SQLException {
+        PreparedStatement statement = this.kb.prepare(sql);
+        for(int i = 0; i < params.size(); i++) {
+            statement.setInt(i+1, params.get(i));
+        }
+
+        return statement.executeQuery();
+    }
+
+    private static String[] toArray(List<String> values) {
+        if(values == null) {
+            return null;
+        }
+
+        return values.toArray(new String[values.size()]);
+    }
+
+    /**
+     * @param id
+     * @param source true: predicates of which this tag is source
+     * @return predicate names
+     * @throws SQLException
+     */
+    String[] getPredicates(int id, boolean source) throws SQLException {
+        synchronized(this) {
+            TagEntry entry = this.entries.get(id);
+            String[] predicates = null;
+            if(entry != null) {
+                predicates = source ? entry.sourcePredicates : entry.targetPredicates;
+            }
+
+            if(predicates != null) {
+                this.hits++;
+                return predicates;
+            }
+
+            this.misses++;
+        }
+
+        List<Integer> params = new ArrayList<>();
+        params.add(id);
+
+        List<String> predicateList = new ArrayList<>();
+        long loadGeneration = this.beginLoad();
+        try {
+            this.kb.borrowConnection();
+
+            ResultSet result = this.execute("SELECT predicate FROM "
+                    + SQLSharkKB.PREDICATE_TABLE + " WHERE "
+                    + (source ? "sourceid" : "targetid") + " = ?", params);
+
+            while(result.next()) {
+                predicateList.add(result.getString(1));
+            }
+
+            String[] predicates = predicateList.toArray(new String[predicateList.size()]);
+            if(this.kb.inTransaction()) {
+                // not committed yet
+                return predicates;
+            }
+
+            synchronized(this) {
+                TagEntry entry = this.entries.get(id);
+                if(entry != null && this.predicatesInvalidatedAt <= loadGeneration
+                        && !this.isStale(id, loadGeneration)) {
+
+                    if(source) {
+                        entry.sourcePredicates = predicates;
+                    } else {
+                        entry.targetPredicates = predicates;
+                    }
+                }
+            }
+
+            return predicates;
+        }
+        finally {
+            this.kb.returnConnection();
+            this.endLoad();
+        }
+    }
+}
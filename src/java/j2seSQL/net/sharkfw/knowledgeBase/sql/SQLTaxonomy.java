@@ -52,6 +52,7 @@ public class SQLTaxonomy extends TaxonomyWrapper implements Taxonomy {
             }
         
             try {
+                this.kb.borrowConnection();
                 statement  = this.kb.getConnection().createStatement();
 
                 // HIER WEITERMACHEN
@@ -61,6 +62,7 @@ public class SQLTaxonomy extends TaxonomyWrapper implements Taxonomy {
                         + " AND targetid = " + sqlST.getID();
 
                 statement.execute(sqlString);
+                this.kb.getTagCache().invalidatePredicates();
 
             }
             catch(SQLException e) {
@@ -74,6 +76,8 @@ public class SQLTaxonomy extends TaxonomyWrapper implements Taxonomy {
                         // ignore
                     }
                 }
+                
+                this.kb.returnConnection();
             }
         }
             
@@ -1,9 +1,11 @@
 package net.sharkfw.knowledgeBase.sql;
 
+import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.sql.Statement;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Enumeration;
 import java.util.Iterator;
 import java.util.List;
@@ -23,38 +25,18 @@ class SQL_SN_TX_SemanticTag extends SQLSemanticTag implements SNSemanticTag, TXS
         super(kb, sqlST);
     }
 
+    /**
+     * @param target true: predicates of which this tag is source
+     * @return predicate names - taken from tag cache if possible
+     */
     protected Iterator<String> predicates(boolean target) {
-        Statement statement = null;
-        String sqlString = null;
-        
-        List predicateList = new ArrayList();
-        
-        String idString = target ? "sourceid" : "targetid";
+        List<String> predicateList = new ArrayList<>();
         
         try {
-            statement  = this.kb.getConnection().createStatement();
-            
-             sqlString = "SELECT predicate FROM " + SQLSharkKB.PREDICATE_TABLE + 
-                    " WHERE " + idString + " = "
-                    + this.sqlST.getID();
-                    
-            ResultSet result = statement.executeQuery(sqlString);
-            while(result.next()) {
-                predicateList.add(result.getString(1));
-            }
-            
+            predicateList = Arrays.asList(this.kb.getTagCache().getPredicates(this.sqlST.getID(), target));
         }
         catch(SQLException e) {
-            L.l("couldn't execute: " + sqlString + " because: " + e.getLocalizedMessage(), this);
-        }
-        finally {
-            if(statement != null) {
-                try {
-                    statement.close();
-                } catch (SQLException ex) {
-                    // ignore
-                }
-            }
+            L.l("couldn't read predicates because: " + e.getLocalizedMessage(), this);
         }
         
         return predicateList.iterator();
@@ -87,13 +69,12 @@ class SQL_SN_TX_SemanticTag extends SQLSemanticTag implements SNSemanticTag, TXS
     }
     
     private Iterator connected_SQL_SN_TX_(int tagID, String predicateName, boolean isSource) {
-        Statement statement = null;
         String sqlString = null;
         
         List stList = new ArrayList();
         
         try {
-            statement  = this.kb.getConnection().createStatement();
+            this.kb.borrowConnection();
             
             /* Example
             select distinct semantictags.* from semantictags, predicates where semantictags.id = predicates.targetid and predicates.predicate = 'p1'
@@ -109,33 +90,30 @@ class SQL_SN_TX_SemanticTag extends SQLSemanticTag implements SNSemanticTag, TXS
                 nonaim = "targetid";
             }
             
-             sqlString = "SELECT DISTINCT " + SQLSharkKB.ST_TABLE + ".* FROM "
+             sqlString = "SELECT DISTINCT " + SQLSharkKB.ST_TABLE + ".id FROM "
                      + SQLSharkKB.ST_TABLE + ", " + SQLSharkKB.PREDICATE_TABLE 
                      + " WHERE "
                      + SQLSharkKB.ST_TABLE + ".id = " 
                      + SQLSharkKB.PREDICATE_TABLE + "." + aim 
                      + " AND "
                      + SQLSharkKB.PREDICATE_TABLE + "." + nonaim 
-                     + " = " + tagID
-                     + " AND "
-                     + SQLSharkKB.PREDICATE_TABLE + ".predicate = '"
-                     + predicateName + "'";
+                     + " = ? AND "
+                     + SQLSharkKB.PREDICATE_TABLE + ".predicate = ?";
                      
-            ResultSet result = statement.executeQuery(sqlString);
+            PreparedStatement statement = this.kb.prepare(sqlString);
+            statement.setInt(1, tagID);
+            statement.setString(2, predicateName);
             
+            ResultSet result = statement.executeQuery();
+            
+            // tags not yet cached are read with a single set based query
             stList = SQLSharkKB.createSTListBySTTableEntries(this.kb, result);
         }
         catch(SQLException | SharkKBException e) {
             L.l("couldn't execute: " + sqlString + " because: " + e.getLocalizedMessage(), this);
         }
         finally {
-            if(statement != null) {
-                try {
-                    statement.close();
-                } catch (SQLException ex) {
-                    // ignore
-                }
-            }
+            this.kb.returnConnection();
         }
         // those are only SQL_SN_TX_SemanticTag - be sure!
         return stList.iterator();
@@ -176,6 +154,7 @@ class SQL_SN_TX_SemanticTag extends SQLSemanticTag implements SNSemanticTag, TXS
         // TODO: duplicate supression!!!
         
         try {
+            this.kb.borrowConnection();
             statement  = this.kb.getConnection().createStatement();
             
              sqlString = "INSERT INTO " + SQLSharkKB.PREDICATE_TABLE + 
@@ -186,6 +165,7 @@ class SQL_SN_TX_SemanticTag extends SQLSemanticTag implements SNSemanticTag, TXS
                     + ")";
                     
             statement.execute(sqlString);
+            this.kb.getTagCache().invalidatePredicates();
         }
         catch(SQLException e) {
             L.l("couldn't execute: " + sqlString + " because: " + e.getLocalizedMessage(), this);
@@ -198,6 +178,8 @@ class SQL_SN_TX_SemanticTag extends SQLSemanticTag implements SNSemanticTag, TXS
                     // ignore
                 }
             }
+            
+            this.kb.returnConnection();
         }
     }
 
@@ -215,6 +197,7 @@ class SQL_SN_TX_SemanticTag extends SQLSemanticTag implements SNSemanticTag, TXS
             String sqlString = null;
 
             try {
+                this.kb.borrowConnection();
                 statement  = this.kb.getConnection().createStatement();
 
                  sqlString = "DELETE FROM " + SQLSharkKB.PREDICATE_TABLE + 
@@ -222,6 +205,7 @@ class SQL_SN_TX_SemanticTag extends SQLSemanticTag implements SNSemanticTag, TXS
                         + targetID;
 
                 statement.execute(sqlString);
+                this.kb.getTagCache().invalidatePredicates();
             }
             catch(SQLException e) {
                 L.l("couldn't execute: " + sqlString + " because: " + e.getLocalizedMessage(), this);
@@ -234,6 +218,8 @@ class SQL_SN_TX_SemanticTag extends SQLSemanticTag implements SNSemanticTag, TXS
                         // ignore
                     }
                 }
+                
+                this.kb.returnConnection();
             }
         } catch (SharkKBException ex) {
             L.d("cannot remove predicate: " + ex.getLocalizedMessage(), this);
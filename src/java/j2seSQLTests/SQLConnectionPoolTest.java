@@ -0,0 +1,244 @@
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import net.sharkfw.knowledgeBase.sql.SQLConnectionPool;
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * Pool is tested with fake connections - no database required.
+ *
+ * @author thsc
+ */
+public class SQLConnectionPoolTest {
+
+    /**
+     * Creates connections which only know whether they are closed.
+     */
+    private static class TestPool extends SQLConnectionPool {
+        volatile int created = 0;
+
+        // if set: connecting waits for it
+        CountDownLatch connectGate = null;
+        final CountDownLatch connecting = new CountDownLatch(1);
+
+        TestPool(int maxConnections) {
+            super("jdbc:test", "test", "test", maxConnections);
+        }
+
+        @Override
+        protected Connection createConnection() throws SQLException {
+            this.created++;
+
+            if(this.connectGate != null) {
+                this.connecting.countDown();
+                try {
+                    this.connectGate.await();
+                } catch (InterruptedException ex) {
+                    throw new SQLException("interrupted");
+                }
+            }
+
+            return (Connection) Proxy.newProxyInstance(
+                    Connection.class.getClassLoader(),
+                    new Class[] {Connection.class},
+                    new InvocationHandler() {
+                        private boolean closed = false;
+
+                        @Override
+                        public Object invoke(Object proxy, Method method, Object[] args) {
+                            switch(method.getName()) {
+                                case "close": this.closed = true; return null;
+                                case "isClosed": return this.closed;
+                                case "isValid": return !this.closed;
+                                case "hashCode": return System.identityHashCode(proxy);
+                                case "equals": return proxy == args[0];
+                                default: return null;
+                            }
+                        }
+                    });
+        }
+    }
+
+    @Test
+    public void reuseConnections() throws SQLException {
+        TestPool pool = new TestPool(2);
+
+        Connection c1 = pool.getConnection();
+        pool.releaseConnection(c1);
+        Connection c2 = pool.getConnection();
+
+        // released connection is handed out again
+        Assert.assertSame(c1, c2);
+        Assert.assertEquals(1, pool.created);
+
+        Connection c3 = pool.getConnection();
+        Assert.assertNotSame(c2, c3);
+        Assert.assertEquals(2, pool.getNumberOfConnections());
+        Assert.assertEquals(2, pool.getNumberOfBorrowedConnections());
+        Assert.assertEquals(2, pool.getPeakBorrowedConnections());
+        Assert.assertEquals(3, pool.getBorrowCount());
+
+        pool.releaseConnection(c2);
+        pool.releaseConnection(c3);
+        Assert.assertEquals(2, pool.getNumberOfIdleConnections());
+        Assert.assertEquals(0, pool.getNumberOfBorrowedConnections());
+    }
+
+    @Test
+    public void dropClosedConnections() throws SQLException {
+        TestPool pool = new TestPool(2);
+
+        Connection c1 = pool.getConnection();
+        c1.close();
+        pool.releaseConnection(c1);
+
+        Assert.assertEquals(0, pool.getNumberOfConnections());
+
+        Connection c2 = pool.getConnection();
+        Assert.assertNotSame(c1, c2);
+        Assert.assertEquals(2, pool.created);
+    }
+
+    @Test
+    public void dropListener() throws SQLException {
+        TestPool pool = new TestPool(2);
+        final List<Connection> dropped = new ArrayList<>();
+        pool.addDropListener(new SQLConnectionPool.DropListener() {
+            @Override
+            public void connectionDropped(Connection connection) {
+                // told before connection is closed
+                try {
+                    Assert.assertFalse(connection.isClosed());
+                } catch (SQLException ex) {
+                    Assert.fail(ex.getMessage());
+                }
+                dropped.add(connection);
+            }
+        });
+
+        Connection c1 = pool.getConnection();
+        Connection c2 = pool.getConnection();
+        pool.releaseConnection(c1);
+        Assert.assertTrue(dropped.isEmpty());
+
+        pool.close();
+        Assert.assertEquals(1, dropped.size());
+        Assert.assertSame(c1, dropped.get(0));
+
+        pool.releaseConnection(c2);
+        Assert.assertEquals(2, dropped.size());
+        Assert.assertSame(c2, dropped.get(1));
+    }
+
+    @Test(timeout = 10000)
+    public void connectOutsideMonitor() throws Exception {
+        final TestPool pool = new TestPool(2);
+        Connection idle = pool.getConnection();
+        pool.releaseConnection(idle);
+        Connection c1 = pool.getConnection();
+
+        pool.connectGate = new CountDownLatch(1);
+        Thread slow = new Thread() {
+            @Override
+            public void run() {
+                try {
+                    pool.releaseConnection(pool.getConnection());
+                } catch (SQLException ex) {
+                    // test fails below
+                }
+            }
+        };
+        slow.start();
+        Assert.assertTrue(pool.connecting.await(5, TimeUnit.SECONDS));
+
+        // slot is reserved - pool isn't blocked while connecting
+        Assert.assertEquals(2, pool.getNumberOfConnections());
+        pool.releaseConnection(c1);
+        Assert.assertSame(c1, pool.getConnection());
+
+        pool.connectGate.countDown();
+        slow.join(5000);
+        Assert.assertEquals(1, pool.getNumberOfIdleConnections());
+        Assert.assertEquals(2, pool.created);
+    }
+
+    @Test
+    public void saturation() throws Exception {
+        final TestPool pool = new TestPool(1);
+        pool.setMaxWait(100);
+
+        final Connection c1 = pool.getConnection();
+
+        // no connection left
+        try {
+            pool.getConnection();
+            Assert.fail("pool should be saturated");
+        }
+        catch(SQLException e) {
+            // expected
+        }
+
+        Assert.assertEquals(1, pool.getTimeoutCount());
+        Assert.assertEquals(1, pool.getWaitCount());
+
+        // waiting thread gets released connection
+        pool.setMaxWait(5000);
+        Thread releaser = new Thread() {
+            @Override
+            public void run() {
+                try {
+                    Thread.sleep(50);
+                } catch (InterruptedException ex) {
+                    // go ahead
+                }
+                pool.releaseConnection(c1);
+            }
+        };
+        releaser.start();
+
+        Connection c2 = pool.getConnection();
+        releaser.join();
+
+        Assert.assertSame(c1, c2);
+        Assert.assertEquals(2, pool.getWaitCount());
+        Assert.assertEquals(1, pool.getTimeoutCount());
+        Assert.assertTrue(pool.getTotalWaitTime() >= pool.getMaxWaitTime());
+        Assert.assertEquals(1, pool.created);
+    }
+
+    @Test
+    public void closePool() throws SQLException {
+        TestPool pool = new TestPool(2);
+
+        Connection c1 = pool.getConnection();
+        Connection c2 = pool.getConnection();
+        pool.releaseConnection(c1);
+
+        pool.close();
+        Assert.assertFalse(pool.isOpen());
+        Assert.assertTrue(c1.isClosed());
+
+        // borrowed connection is closed when released
+        pool.releaseConnection(c2);
+        Assert.assertTrue(c2.isClosed());
+        Assert.assertEquals(0, pool.getNumberOfConnections());
+
+        try {
+            pool.getConnection();
+            Assert.fail("pool is closed");
+        }
+        catch(SQLException e) {
+            // expected
+        }
+
+        pool.open();
+        Assert.assertNotNull(pool.getConnection());
+    }
+}
@@ -1,9 +1,16 @@
+import java.util.Enumeration;
+import java.util.Iterator;
+import net.sharkfw.knowledgeBase.ContextCoordinates;
+import net.sharkfw.knowledgeBase.ContextPoint;
+import net.sharkfw.knowledgeBase.Information;
+import net.sharkfw.knowledgeBase.Interest;
 import net.sharkfw.knowledgeBase.PeerSTSet;
 import net.sharkfw.knowledgeBase.PeerSemanticTag;
 import net.sharkfw.knowledgeBase.SNSemanticTag;
 import net.sharkfw.knowledgeBase.STSet;
 import net.sharkfw.knowledgeBase.SemanticNet;
 import net.sharkfw.knowledgeBase.SemanticTag;
+import net.sharkfw.knowledgeBase.SharkCS;
 import net.sharkfw.knowledgeBase.SharkCSAlgebra;
 import net.sharkfw.knowledgeBase.SharkKBException;
 import net.sharkfw.knowledgeBase.TXSemanticTag;
@@ -11,6 +18,7 @@ import net.sharkfw.knowledgeBase.Taxonomy;
 import net.sharkfw.knowledgeBase.TimeSTSet;
 import net.sharkfw.knowledgeBase.TimeSemanticTag;
 import net.sharkfw.knowledgeBase.geom.SharkGeometry;
+import net.sharkfw.knowledgeBase.inmemory.InMemoSharkKB;
 import net.sharkfw.knowledgeBase.sql.SQLSharkKB;
 import net.sharkfw.system.L;
 import org.junit.After;
@@ -231,4 +239,141 @@ public class SQLSharkKBTests {
         semanticTag = topics.getSemanticTag("http://a.de");
         Assert.assertNotNull(semanticTag);
      }
+     
+     @Test
+     public void contextPointTests() throws SharkKBException {
+        L.setLogLevel(L.LOGLEVEL_ALL);
+        SQLSharkKB kb = new SQLSharkKB("jdbc:postgresql://localhost:5432/SharkKB", "test", "test");
+        kb.drop();
+        kb.close();
+        kb = new SQLSharkKB("jdbc:postgresql://localhost:5432/SharkKB", "test", "test");
+        
+        SemanticTag shark = kb.getTopicSTSet().createSemanticTag("Shark", "http://sharksystem.net");
+        PeerSemanticTag alice = kb.getPeerSTSet().createPeerSemanticTag("Alice", "http://www.sharksystem.net/alice.html", "alice@sharksystem.net");
+        
+        ContextCoordinates cc = kb.createContextCoordinates(shark, alice, null, null, null, null, SharkCS.DIRECTION_OUT);
+        ContextPoint cp = kb.createContextPoint(cc);
+        
+        // same coordinates - same context point
+        Assert.assertEquals(cp, kb.createContextPoint(cc));
+        
+        Information info = cp.addInformation("Hello Shark");
+        info.setName("hello");
+        cp.setProperty("p1", "v1");
+        
+        // test persistency
+        kb.close();
+        kb = new SQLSharkKB("jdbc:postgresql://localhost:5432/SharkKB", "test", "test");
+        
+        // coordinates made of in memory tags
+        SemanticTag shark2 = InMemoSharkKB.createInMemoSemanticTag("Shark", new String[] {"http://sharksystem.net"});
+        cc = kb.createContextCoordinates(shark2, alice, null, null, null, null, SharkCS.DIRECTION_OUT);
+        
+        cp = kb.getContextPoint(cc);
+        Assert.assertNotNull(cp);
+        Assert.assertEquals("v1", cp.getProperty("p1"));
+        Assert.assertEquals(1, cp.getNumberInformation());
+        
+        info = cp.getInformation("hello").next();
+        Assert.assertEquals("Hello Shark", info.getContentAsString());
+        Assert.assertEquals("text/plain", info.getContentType());
+        Assert.assertEquals(11, info.getContentLength());
+        
+        ContextCoordinates cc2 = cp.getContextCoordinates();
+        Assert.assertTrue(SharkCSAlgebra.identical(shark, cc2.getTopic()));
+        Assert.assertTrue(SharkCSAlgebra.identical(alice, cc2.getOriginator()));
+        Assert.assertNull(cc2.getPeer());
+        
+        cp.removeInformation(info);
+        Assert.assertEquals(0, cp.getNumberInformation());
+        
+        kb.removeContextPoint(cc);
+        Assert.assertNull(kb.getContextPoint(cc));
+        
+        kb.close();
+     }
+     
+     @Test
+     public void contextPointsByContextSpace() throws SharkKBException {
+        L.setLogLevel(L.LOGLEVEL_ALL);
+        SQLSharkKB kb = new SQLSharkKB("jdbc:postgresql://localhost:5432/SharkKB", "test", "test");
+        kb.drop();
+        kb.close();
+        kb = new SQLSharkKB("jdbc:postgresql://localhost:5432/SharkKB", "test", "test");
+        
+        SemanticTag shark = kb.getTopicSTSet().createSemanticTag("Shark", "http://sharksystem.net");
+        SemanticTag java = kb.getTopicSTSet().createSemanticTag("Java", "http://java.com");
+        PeerSemanticTag alice = kb.getPeerSTSet().createPeerSemanticTag("Alice", "http://www.sharksystem.net/alice.html", "alice@sharksystem.net");
+        
+        kb.createContextPoint(kb.createContextCoordinates(shark, alice, null, null, null, null, SharkCS.DIRECTION_OUT));
+        kb.createContextPoint(kb.createContextCoordinates(java, alice, null, null, null, null, SharkCS.DIRECTION_OUT));
+        kb.createContextPoint(kb.createContextCoordinates(null, alice, null, null, null, null, SharkCS.DIRECTION_INOUT));
+        
+        Enumeration<ContextPoint> cpEnum = kb.getAllContextPoints();
+        int number = 0;
+        while(cpEnum.hasMoreElements()) {
+            cpEnum.nextElement();
+            number++;
+        }
+        Assert.assertEquals(3, number);
+        
+        // shark and any topic
+        STSet topics = InMemoSharkKB.createInMemoSTSet();
+        topics.merge(shark);
+        Interest interest = InMemoSharkKB.createInMemoInterest(topics, null, null, null, null, null, SharkCS.DIRECTION_IN);
+        
+        Iterator<ContextPoint> cpIter = kb.contextPoints(interest, true);
+        number = 0;
+        while(cpIter.hasNext()) {
+            cpIter.next();
+            number++;
+        }
+        Assert.assertEquals(2, number);
+        
+        kb.close();
+     }
+     
+     @Test
+     public void tagCacheTests() throws SharkKBException {
+        L.setLogLevel(L.LOGLEVEL_ALL);
+        SQLSharkKB kb = new SQLSharkKB("jdbc:postgresql://localhost:5432/SharkKB", "test", "test");
+        kb.drop();
+        kb.close();
+        kb = new SQLSharkKB("jdbc:postgresql://localhost:5432/SharkKB", "test", "test");
+        
+        STSet topics = kb.getTopicSTSet();
+        topics.createSemanticTag("Shark", "http://sharksystem.net");
+        topics.createSemanticTag("Java", "http://java.com");
+        
+        // enumeration fills cache
+        Enumeration<SemanticTag> tagEnum = topics.tags();
+        while(tagEnum.hasMoreElements()) {
+            tagEnum.nextElement().getSI();
+        }
+        
+        kb.resetTagCacheCounters();
+        
+        SemanticTag shark = topics.getSemanticTag("http://sharksystem.net");
+        Assert.assertEquals("Shark", shark.getName());
+        Assert.assertEquals(0, kb.getTagCacheMisses());
+        Assert.assertTrue(kb.getTagCacheHits() > 0);
+        
+        // writes invalidate
+        shark.addSI("http://sharkfw.net");
+        Assert.assertNotNull(topics.getSemanticTag("http://sharkfw.net"));
+        Assert.assertEquals(2, topics.getSemanticTag("http://sharksystem.net").getSI().length);
+        
+        shark.setName("SharkFW");
+        Assert.assertEquals("SharkFW", topics.getSemanticTag("http://sharkfw.net").getName());
+        
+        // bounded
+        kb.setTagCacheSize(1);
+        kb.resetTagCacheCounters();
+        topics.getSemanticTag("http://java.com").getSI();
+        topics.getSemanticTag("http://sharksystem.net").getSI();
+        topics.getSemanticTag("http://java.com").getSI();
+        Assert.assertTrue(kb.getTagCacheMisses() > 0);
+        
+        kb.close();
+     }
 }
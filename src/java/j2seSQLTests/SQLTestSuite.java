@@ -10,7 +10,8 @@ import org.junit.runners.Suite;
 @RunWith(Suite.class)
 @Suite.SuiteClasses({
     SQLSharkKBTests.class, 
-    SQKKBTests.class}
+    SQKKBTests.class,
+    SQLConnectionPoolTest.class}
 )
 public class SQLTestSuite {
 
@@ -0,0 +1,65 @@
+package ApiRev1;
+
+import net.sharkfw.knowledgeBase.ContextCoordinates;
+import net.sharkfw.knowledgeBase.ContextPoint;
+import net.sharkfw.knowledgeBase.SemanticTag;
+import net.sharkfw.knowledgeBase.SharkCS;
+import net.sharkfw.knowledgeBase.SharkKB;
+import net.sharkfw.knowledgeBase.SharkKBException;
+import net.sharkfw.knowledgeBase.logstore.LSSharkKB;
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ *
+ * @author thsc
+ */
+public class LSSharkKBTest extends PersistentSharkKBTest {
+
+    private static final String FOLDER = "Temp/lssharkkb";
+
+    public LSSharkKBTest() {
+        super(FOLDER);
+    }
+
+    @Override
+    protected SharkKB openKB(String folder) throws SharkKBException {
+        return new LSSharkKB(folder);
+    }
+
+    @Override
+    protected void removeStorage(String folder) {
+        LSSharkKB.removeLSStorage(folder);
+    }
+
+    @Test
+    public void reopenFromSegments() throws SharkKBException {
+        LSSharkKB.removeLSStorage(FOLDER);
+
+        LSSharkKB kb = new LSSharkKB(FOLDER);
+
+        String javaSI = "http://www.java.net";
+        SemanticTag javaTag = kb.createSemanticTag("Java", javaSI);
+        ContextCoordinates cc = kb.createContextCoordinates(javaTag, null, null, null, null, null, SharkCS.DIRECTION_OUT);
+        kb.createContextPoint(cc).addInformation("hallo");
+        kb.flush();
+
+        SemanticTag goTag = kb.createSemanticTag("Go", "http://golang.org");
+        kb.removeSemanticTag(goTag);
+        kb.compact();
+        kb.createSemanticTag("Shark", "http://www.sharksystem.net");
+        kb.close();
+
+        kb = new LSSharkKB(FOLDER);
+        Assert.assertNotNull(kb.getSemanticTag(javaSI));
+        Assert.assertNotNull(kb.getSemanticTag("http://www.sharksystem.net"));
+        Assert.assertNull(kb.getSemanticTag("http://golang.org"));
+
+        cc = kb.createContextCoordinates(kb.getSemanticTag(javaSI), null, null, null, null, null, SharkCS.DIRECTION_OUT);
+        ContextPoint cp = kb.getContextPoint(cc);
+        Assert.assertEquals("hallo", cp.enumInformation().nextElement().getContentAsString());
+        kb.close();
+
+        LSSharkKB.removeLSStorage(FOLDER);
+    }
+}
\ No newline at end of file
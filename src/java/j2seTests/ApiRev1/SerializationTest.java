@@ -6,7 +6,9 @@ import java.util.Arrays;
 import java.util.Enumeration;
 import java.util.List;
 import net.sharkfw.kep.KEPMessage;
+import net.sharkfw.kep.KnowledgeReader;
 import net.sharkfw.kep.KnowledgeSerializer;
+import net.sharkfw.kep.format.BinarySerializer;
 import net.sharkfw.kep.format.XMLSerializer;
 import net.sharkfw.knowledgeBase.*;
 import net.sharkfw.knowledgeBase.inmemory.InMemoSharkKB;
@@ -277,4 +279,268 @@ public class SerializationTest {
             Assert.assertTrue(content.equalsIgnoreCase(TestData.INFO_1_CONTENT));
         }
         
+
+        @Test
+        public void testBinaryKnowledgeSerialization() throws SharkKBException, IOException {
+            SharkKB kb = TestData.createKB1();
+            
+            SemanticTag topic1 = kb.getSemanticTag(TestData.TOPIC1_SI);
+            topic1.setProperty("color", "blue");
+            PeerSemanticTag peer1 = kb.getPeerSemanticTag(TestData.PEER1_SI);
+            
+            // second cp refers to the same tags
+            ContextCoordinates cc2 = kb.createContextCoordinates(topic1, peer1, null, null, null, null, SharkCS.DIRECTION_OUT);
+            ContextPoint cp2 = kb.createContextPoint(cc2);
+            cp2.setProperty("cpProp", "cpValue");
+            cp2.addInformation("Information2");
+            cp2.addInformation("Information3");
+            
+            // keep order of context points
+            Knowledge k = kb.createKnowledge();
+            ContextCoordinates cc1 = kb.createContextCoordinates(topic1, peer1, peer1, null, null, null, SharkCS.DIRECTION_INOUT);
+            k.addContextPoint(kb.getContextPoint(cc1));
+            k.addContextPoint(cp2);
+
+            KnowledgeSerializer ks = new BinarySerializer();
+            
+            ByteArrayOutputStream baos = new ByteArrayOutputStream();
+            SharkOutputStream sos = new UTF8SharkOutputStream(baos);
+            ks.write(k, sos);
+            
+            // something follows knowledge on stream - e.g. a signature
+            sos.write("end");
+
+            SharkInputStream sis = new StandardSharkInputStream(
+                    new ByteArrayInputStream(baos.toByteArray()));
+            
+            Knowledge rK = ks.parseKnowledge(sis);
+            
+            // nothing read beyond knowledge
+            Assert.assertEquals("end", sis.readUTF8());
+            
+            SharkVocabulary context = rK.getVocabulary();
+            SemanticTag rTopic1 = context.getSemanticTag(TestData.TOPIC1_SI);
+            Assert.assertNotNull(rTopic1);
+            Assert.assertEquals("blue", rTopic1.getProperty("color"));
+            
+            PeerSemanticTag rPeer1 = context.getPeerSemanticTag(TestData.PEER1_SI);
+            Assert.assertNotNull(rPeer1);
+            Assert.assertEquals("tcp://localhost:5555", rPeer1.getAddresses()[0]);
+            
+            Assert.assertEquals(2, rK.getNumberOfContextPoints());
+            
+            ContextPoint rCP1 = rK.getCP(0);
+            Assert.assertTrue(SharkCSAlgebra.identical(rCP1.getContextCoordinates(), cc1));
+            Assert.assertEquals(TestData.INFO_1_CONTENT, 
+                    new String(rCP1.enumInformation().nextElement().getContentAsByte(), "UTF-8"));
+
+            ContextPoint rCP2 = rK.getCP(1);
+            Assert.assertTrue(SharkCSAlgebra.identical(rCP2.getContextCoordinates(), cc2));
+            Assert.assertEquals(SharkCS.DIRECTION_OUT, rCP2.getContextCoordinates().getDirection());
+            Assert.assertEquals("cpValue", rCP2.getProperty("cpProp"));
+            Assert.assertEquals(2, rCP2.getNumberInformation());
+        }
+        
+        private void assertMalformed(byte[] message) throws SharkKBException {
+            SharkInputStream sis = new StandardSharkInputStream(
+                    new ByteArrayInputStream(message));
+            try {
+                new BinarySerializer().parseKnowledge(sis);
+                Assert.fail("malformed binary knowledge accepted");
+            }
+            catch(IOException e) {
+                // expected
+            }
+        }
+
+        /**
+         * Lengths and numbers sent by a peer must not be trusted.
+         */
+        @Test
+        public void testMalformedBinaryKnowledge() throws SharkKBException {
+            // segment of Integer.MAX_VALUE bytes announced
+            this.assertMalformed(new byte[] {(byte) 0xFF, (byte) 0xFF, (byte) 0xFF, (byte) 0xFF, 0x07, 1, 1});
+
+            // segment of 60 MB announced - just two bytes follow
+            this.assertMalformed(new byte[] {(byte) 0x80, (byte) 0x80, (byte) 0x80, 0x1E, 1, 1});
+
+            // version, context space, negative number of topics
+            this.assertMalformed(new byte[] {7, 1, 1, (byte) 0xFF, (byte) 0xFF, (byte) 0xFF, (byte) 0xFF, 0x0F});
+
+            // version, context space, far more topics than bytes
+            this.assertMalformed(new byte[] {7, 1, 1, (byte) 0xFF, (byte) 0xFF, (byte) 0xFF, (byte) 0xFF, 0x07});
+        }
+        
+        @Test
+        public void testKnowledgeReader() throws SharkKBException, IOException {
+            SharkKB kb = TestData.createKB1();
+            SemanticTag topic1 = kb.getSemanticTag(TestData.TOPIC1_SI);
+            PeerSemanticTag peer1 = kb.getPeerSemanticTag(TestData.PEER1_SI);
+            
+            ContextCoordinates cc2 = kb.createContextCoordinates(topic1, peer1, null, null, null, null, SharkCS.DIRECTION_OUT);
+            ContextPoint cp2 = kb.createContextPoint(cc2);
+            cp2.addInformation("Information2");
+            cp2.addInformation("Information3");
+            
+            // keep order of context points
+            Knowledge k = kb.createKnowledge();
+            ContextCoordinates cc1 = kb.createContextCoordinates(topic1, peer1, peer1, null, null, null, SharkCS.DIRECTION_INOUT);
+            k.addContextPoint(kb.getContextPoint(cc1));
+            k.addContextPoint(cp2);
+
+            KnowledgeSerializer[] serializers = {new XMLSerializer(), new BinarySerializer()};
+            for(KnowledgeSerializer ks : serializers) {
+                ByteArrayOutputStream baos = new ByteArrayOutputStream();
+                SharkOutputStream sos = new UTF8SharkOutputStream(baos);
+                ks.write(k, sos);
+                sos.write("end");
+
+                SharkInputStream sis = new StandardSharkInputStream(
+                        new ByteArrayInputStream(baos.toByteArray()));
+
+                KnowledgeReader reader = ks.createKnowledgeReader(sis);
+                
+                Assert.assertEquals(KnowledgeReader.BACKGROUND, reader.next());
+                Assert.assertNotNull(reader.getBackground().getTopics().getSemanticTag(TestData.TOPIC1_SI));
+                
+                Assert.assertEquals(KnowledgeReader.CONTEXT_POINT, reader.next());
+                Assert.assertEquals(KnowledgeReader.INFORMATION, reader.next());
+                // first content isn't taken
+                
+                Assert.assertEquals(KnowledgeReader.CONTEXT_POINT, reader.next());
+                Assert.assertTrue(SharkCSAlgebra.identical(
+                        reader.getContextPoint().getContextCoordinates(), cc2));
+                
+                Assert.assertEquals(KnowledgeReader.INFORMATION, reader.next());
+                ByteArrayOutputStream content = new ByteArrayOutputStream();
+                reader.streamContent(content);
+                Assert.assertEquals("Information2", content.toString("UTF-8"));
+                
+                Assert.assertEquals(KnowledgeReader.INFORMATION, reader.next());
+                Assert.assertEquals(KnowledgeReader.END, reader.next());
+                Assert.assertFalse(reader.hasNext());
+
+                // nothing read beyond knowledge
+                Assert.assertEquals("end", sis.readUTF8());
+            }
+        }
+        
+        @Test
+        public void testStreamedAssimilation() throws SharkKBException, IOException {
+            SharkKB kb = TestData.createKB1();
+            Knowledge k = kb.createKnowledge();
+            Enumeration<ContextPoint> cpEnum = kb.getAllContextPoints();
+            while(cpEnum.hasMoreElements()) {
+                k.addContextPoint(cpEnum.nextElement());
+            }
+
+            KnowledgeSerializer ks = new BinarySerializer();
+            ByteArrayOutputStream baos = new ByteArrayOutputStream();
+            ks.write(k, new UTF8SharkOutputStream(baos));
+
+            KnowledgeReader reader = ks.createKnowledgeReader(new StandardSharkInputStream(
+                        new ByteArrayInputStream(baos.toByteArray())));
+            
+            Assert.assertEquals(KnowledgeReader.BACKGROUND, reader.next());
+            
+            SharkKB target = new InMemoSharkKB();
+            ArrayList<ContextCoordinates> assimilated = SharkCSAlgebra.assimilate(target, 
+                    InMemoSharkKB.createInMemoInterest(), 
+                    FragmentationParameter.getZeroFPs(), reader, true);
+            
+            Assert.assertEquals(1, assimilated.size());
+            Assert.assertFalse(reader.hasNext());
+            
+            ContextPoint cp = target.getContextPoint(assimilated.get(0));
+            Assert.assertNotNull(cp);
+            Assert.assertNotNull(target.getSemanticTag(TestData.TOPIC1_SI));
+            Assert.assertEquals(TestData.INFO_1_CONTENT, 
+                    new String(cp.enumInformation().nextElement().getContentAsByte(), "UTF-8"));
+        }
+        
+        @Test
+        public void testStreamedAssimilationKeepsReceivedKnowledge() throws SharkKBException, IOException {
+            SharkKB kb = TestData.createKB1();
+            Knowledge k = kb.createKnowledge();
+            Enumeration<ContextPoint> cpEnum = kb.getAllContextPoints();
+            while(cpEnum.hasMoreElements()) {
+                k.addContextPoint(cpEnum.nextElement());
+            }
+
+            KnowledgeSerializer ks = new BinarySerializer();
+            ByteArrayOutputStream baos = new ByteArrayOutputStream();
+            ks.write(k, new UTF8SharkOutputStream(baos));
+
+            for(boolean deleteAssimilated : new boolean[] {false, true}) {
+                KnowledgeReader reader = ks.createKnowledgeReader(new StandardSharkInputStream(
+                            new ByteArrayInputStream(baos.toByteArray())));
+
+                Assert.assertEquals(KnowledgeReader.BACKGROUND, reader.next());
+
+                Knowledge received = new InMemoSharkKB().createKnowledge();
+                ArrayList<ContextCoordinates> assimilated = SharkCSAlgebra.assimilate(
+                        new InMemoSharkKB(), InMemoSharkKB.createInMemoInterest(), 
+                        FragmentationParameter.getZeroFPs(), reader, true, 
+                        received, deleteAssimilated);
+
+                Assert.assertEquals(1, assimilated.size());
+                
+                if(deleteAssimilated) {
+                    Assert.assertEquals(0, received.getNumberOfContextPoints());
+                } else {
+                    Assert.assertEquals(1, received.getNumberOfContextPoints());
+                    ContextPoint cp = received.contextPoints().nextElement();
+                    Assert.assertEquals(TestData.INFO_1_CONTENT, 
+                            cp.enumInformation().nextElement().getContentAsString());
+                }
+            }
+        }
+        
+        @Test
+        public void testBinaryInterestSerialization() throws SharkKBException, IOException {
+            SemanticNet topics = InMemoSharkKB.createInMemoSemanticNet();
+            SNSemanticTag java = topics.createSemanticTag("Java", "http://java.com");
+            SNSemanticTag lang = topics.createSemanticTag("Language", "http://language.org");
+            java.setPredicate("isA", lang);
+            
+            PeerSemanticTag alice = InMemoSharkKB.createInMemoPeerSemanticTag("Alice", "http://alice.org", "tcp://localhost:7070");
+            PeerSTSet peers = InMemoSharkKB.createInMemoPeerSTSet();
+            peers.merge(alice);
+            
+            Interest interest = InMemoSharkKB.createInMemoInterest(topics, alice, 
+                    peers, null, null, null, SharkCS.DIRECTION_OUT);
+
+            KnowledgeSerializer ks = new BinarySerializer();
+            
+            ByteArrayOutputStream baos = new ByteArrayOutputStream();
+            ks.write(interest, new UTF8SharkOutputStream(baos));
+            
+            SharkCS rInterest = ks.parseSharkCS(new StandardSharkInputStream(
+                    new ByteArrayInputStream(baos.toByteArray())));
+            
+            Assert.assertTrue(SharkCSAlgebra.identical(interest, rInterest));
+            Assert.assertEquals(SharkCS.DIRECTION_OUT, rInterest.getDirection());
+            Assert.assertEquals("tcp://localhost:7070", rInterest.getOriginator().getAddresses()[0]);
+            
+            // originator and peer are written once but result in two tags
+            PeerSemanticTag rAlice = rInterest.getPeers().getSemanticTag("http://alice.org");
+            Assert.assertNotNull(rAlice);
+            
+            SNSemanticTag rJava = (SNSemanticTag) rInterest.getTopics().getSemanticTag("http://java.com");
+            Enumeration<SNSemanticTag> targets = rJava.targetTags("isA");
+            Assert.assertNotNull(targets);
+            Assert.assertTrue(SharkCSAlgebra.identical(lang, targets.nextElement()));
+            
+            // strings are interned - binary is much smaller than xml
+            String xml = new XMLSerializer().serializeSharkCS(interest);
+            Assert.assertTrue(baos.size() < xml.length() / 2);
+        }
+        
+        @Test
+        public void testBinaryFormatVersion() {
+            Assert.assertTrue(KEPMessage.binaryFormatSupported(KEPMessage.THISVERSION));
+            Assert.assertTrue(KEPMessage.binaryFormatSupported("KEP 2.0 "));
+            Assert.assertFalse(KEPMessage.binaryFormatSupported("KEP 1.0 "));
+            Assert.assertFalse(KEPMessage.binaryFormatSupported(null));
+        }
 }
\ No newline at end of file
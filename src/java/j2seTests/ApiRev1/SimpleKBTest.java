@@ -1419,6 +1419,135 @@ public class SimpleKBTest {
         Assert.assertTrue(SharkCSAlgebra.identical(tag, sameTag));
     }
     
+    /**
+     * Create a number of context points and find each of them again by
+     * coordinates made from freshly created tags (other objects, SIs in
+     * different case).
+     *
+     * Remove some context points and make sure they are gone in exact and
+     * sloppy matching.
+     */
+    @Test
+    public void cpLookupAfterAddAndRemove() throws SharkKBException {
+        PeerSemanticTag peer = kb.createPeerSemanticTag("Peer", "http://peer.de", (String[]) null);
+        
+        int number = 100;
+        for(int i = 0; i < number; i++) {
+            SemanticTag topic = kb.createSemanticTag("Topic" + i, "http://topic.de/" + i);
+            ContextCoordinates cc = kb.createContextCoordinates(topic, peer, null, null, null, null, SharkCS.DIRECTION_INOUT);
+            kb.createContextPoint(cc).addInformation("CP" + i);
+        }
+        
+        for(int i = 0; i < number; i++) {
+            SemanticTag topic = InMemoSharkKB.createInMemoSemanticTag("t", "HTTP://TOPIC.DE/" + i);
+            PeerSemanticTag otherPeer = InMemoSharkKB.createInMemoPeerSemanticTag("p", "http://peer.de", (String) null);
+            ContextCoordinates cc = InMemoSharkKB.createInMemoContextCoordinates(topic, otherPeer, null, null, null, null, SharkCS.DIRECTION_INOUT);
+            
+            ContextPoint cp = kb.getContextPoint(cc);
+            Assert.assertNotNull(cp);
+            Assert.assertEquals("CP" + i, cp.getInformation().next().getContentAsString());
+        }
+        
+        // no cp with any topic
+        ContextCoordinates anyTopicCC = InMemoSharkKB.createInMemoContextCoordinates(null, peer, null, null, null, null, SharkCS.DIRECTION_INOUT);
+        Assert.assertNull(kb.getContextPoint(anyTopicCC));
+        
+        // but each cp matches if any is allowed
+        Enumeration<ContextPoint> cpEnum = kb.getContextPoints(anyTopicCC, true);
+        int counter = 0;
+        while(cpEnum.hasMoreElements()) {
+            cpEnum.nextElement();
+            counter++;
+        }
+        Assert.assertEquals(number, counter);
+        
+        // remove every second cp
+        for(int i = 0; i < number; i += 2) {
+            SemanticTag topic = kb.getSemanticTag("http://topic.de/" + i);
+            kb.removeContextPoint(kb.createContextCoordinates(topic, peer, null, null, null, null, SharkCS.DIRECTION_INOUT));
+        }
+        
+        for(int i = 0; i < number; i++) {
+            SemanticTag topic = kb.getSemanticTag("http://topic.de/" + i);
+            ContextCoordinates cc = kb.createContextCoordinates(topic, peer, null, null, null, null, SharkCS.DIRECTION_INOUT);
+            
+            if(i % 2 == 0) {
+                Assert.assertNull(kb.getContextPoint(cc));
+                Assert.assertNull(kb.getContextPoints(cc, true));
+            } else {
+                Assert.assertNotNull(kb.getContextPoint(cc));
+            }
+        }
+    }
+    
+    /**
+     * Ask for context points with a large context space (50 topics, 20 peers).
+     * Only three combinations hit a context point, they must be found in
+     * exact and sloppy matching.
+     */
+    @Test
+    public void cpsViaLargeContextSpace() throws SharkKBException {
+        STSet topics = InMemoSharkKB.createInMemoSTSet();
+        PeerSTSet peers = InMemoSharkKB.createInMemoPeerSTSet();
+        
+        for(int i = 0; i < 50; i++) {
+            topics.createSemanticTag("Topic" + i, "http://topic.de/" + i);
+        }
+        for(int i = 0; i < 20; i++) {
+            peers.createPeerSemanticTag("Peer" + i, "http://peer.de/" + i, (String) null);
+        }
+        
+        for(int i = 0; i < 3; i++) {
+            SemanticTag topic = kb.createSemanticTag("Topic" + i * 7, "http://topic.de/" + i * 7);
+            PeerSemanticTag peer = kb.createPeerSemanticTag("Peer" + i * 3, "http://peer.de/" + i * 3, (String) null);
+            kb.createContextPoint(kb.createContextCoordinates(topic, null, peer, null, null, null, SharkCS.DIRECTION_INOUT));
+        }
+        
+        Interest interest = InMemoSharkKB.createInMemoInterest(topics, null, peers, null, null, null, SharkCS.DIRECTION_INOUT);
+        
+        Enumeration<ContextPoint> cpEnum = kb.getContextPoints(interest, false);
+        int counter = 0;
+        while(cpEnum.hasMoreElements()) {
+            cpEnum.nextElement();
+            counter++;
+        }
+        Assert.assertEquals(3, counter);
+        
+        cpEnum = kb.getContextPoints(interest, true);
+        counter = 0;
+        while(cpEnum.hasMoreElements()) {
+            cpEnum.nextElement();
+            counter++;
+        }
+        Assert.assertEquals(3, counter);
+    }
+    
+    /**
+     * Coordinates get another SI after their context point was created.
+     * Context point must be found and removed with the new SI.
+     */
+    @Test
+    public void cpLookupAfterSIChange() throws SharkKBException {
+        PeerSemanticTag peer = kb.createPeerSemanticTag("Peer", "http://peer.de", (String[]) null);
+        SemanticTag topic = kb.createSemanticTag("Topic", "http://topic.de");
+        ContextCoordinates cc = kb.createContextCoordinates(topic, peer, null, null, null, null, SharkCS.DIRECTION_INOUT);
+        kb.createContextPoint(cc);
+        
+        // merge a tag with an additional si
+        SharkCSAlgebra.merge(topic, InMemoSharkKB.createInMemoSemanticTag("Topic", 
+                new String[] {"http://topic.de", "http://otherTopic.de"}));
+        
+        SemanticTag newTopic = InMemoSharkKB.createInMemoSemanticTag("t", "http://otherTopic.de");
+        ContextCoordinates newCC = InMemoSharkKB.createInMemoContextCoordinates(newTopic, peer, null, null, null, null, SharkCS.DIRECTION_INOUT);
+        
+        Assert.assertNotNull(kb.getContextPoint(newCC));
+        Assert.assertNotNull(kb.getContextPoints(newCC, true));
+        
+        kb.removeContextPoint(newCC);
+        Assert.assertNull(kb.getContextPoint(cc));
+        Assert.assertNull(kb.getContextPoint(newCC));
+    }
+    
     @Test
     public void mergePureSTIntoTaxonomyOrSemanticNet() throws SharkKBException {
         Taxonomy tx = InMemoSharkKB.createInMemoTaxonomy();
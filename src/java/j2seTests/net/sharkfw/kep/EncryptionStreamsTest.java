@@ -0,0 +1,109 @@
+package net.sharkfw.kep;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Arrays;
+import java.util.Random;
+import javax.crypto.KeyGenerator;
+import javax.crypto.SecretKey;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ *
+ * @author thsc
+ */
+public class EncryptionStreamsTest {
+
+    private byte[] createData(int length) {
+        byte[] data = new byte[length];
+        new Random(42).nextBytes(data);
+        return data;
+    }
+
+    private byte[] encrypt(byte[] data, SecretKey key, int framing) throws IOException {
+        ByteArrayOutputStream baos = new ByteArrayOutputStream();
+        EncryptingOutputStream eos = new EncryptingOutputStream(baos, key, framing);
+
+        // mix single byte and bulk writes
+        eos.write(data[0]);
+        eos.write(data, 1, data.length - 1);
+        eos.doFinal();
+
+        // next message on same stream
+        baos.write(77);
+
+        return baos.toByteArray();
+    }
+
+    private byte[] decrypt(InputStream is, SecretKey key, int framing, int length) throws IOException {
+        DecryptingInputStream dis = new DecryptingInputStream(is, key, framing);
+        byte[] data = new byte[length];
+
+        data[0] = (byte) dis.read();
+        int n = 1;
+        while(n < length) {
+            int read = dis.read(data, n, length - n);
+            assertTrue("message ended too early", read > 0);
+            n += read;
+        }
+
+        return data;
+    }
+
+    private void roundTrip(int framing, int length) throws Exception {
+        SecretKey key = KeyGenerator.getInstance("AES").generateKey();
+        byte[] data = this.createData(length);
+
+        InputStream is = new ByteArrayInputStream(this.encrypt(data, key, framing));
+        byte[] decrypted = this.decrypt(is, key, framing, length);
+
+        assertTrue(Arrays.equals(data, decrypted));
+
+        // nothing of next message consumed
+        assertEquals(77, is.read());
+    }
+
+    @Test
+    public void test_blocks_roundTrip() throws Exception {
+        this.roundTrip(EncryptingOutputStream.BLOCKS, 1000);
+        this.roundTrip(EncryptingOutputStream.BLOCKS, 1024);
+    }
+
+    @Test
+    public void test_chunks_roundTrip() throws Exception {
+        this.roundTrip(EncryptingOutputStream.CHUNKS, 1000);
+        this.roundTrip(EncryptingOutputStream.CHUNKS, EncryptingOutputStream.CHUNK_SIZE);
+        this.roundTrip(EncryptingOutputStream.CHUNKS, 5 * EncryptingOutputStream.CHUNK_SIZE + 3);
+    }
+
+    @Test
+    public void test_chunks_endOfMessage() throws Exception {
+        SecretKey key = KeyGenerator.getInstance("AES").generateKey();
+        byte[] data = this.createData(100);
+
+        InputStream is = new ByteArrayInputStream(
+                this.encrypt(data, key, EncryptingOutputStream.CHUNKS));
+
+        DecryptingInputStream dis = new DecryptingInputStream(is, key,
+                EncryptingOutputStream.CHUNKS);
+
+        byte[] buffer = new byte[200];
+        assertEquals(100, dis.read(buffer, 0, 200));
+        assertEquals(-1, dis.read());
+    }
+
+    @Test(expected = IOException.class)
+    public void test_chunks_modifiedMessage_refused() throws Exception {
+        SecretKey key = KeyGenerator.getInstance("AES").generateKey();
+        byte[] data = this.createData(3 * EncryptingOutputStream.CHUNK_SIZE);
+
+        byte[] encrypted = this.encrypt(data, key, EncryptingOutputStream.CHUNKS);
+        encrypted[EncryptingOutputStream.CHUNK_SIZE + 100]++;
+
+        this.decrypt(new ByteArrayInputStream(encrypted), key,
+                EncryptingOutputStream.CHUNKS, data.length);
+    }
+}
@@ -0,0 +1,63 @@
+package net.sharkfw.kep;
+
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ *
+ * @author thsc
+ */
+public class KEPSessionPoolTest {
+
+    private final Object lock = new Object();
+    private boolean released = false;
+
+    private Runnable blockingSession() {
+        return new Runnable() {
+            @Override
+            public void run() {
+                synchronized(lock) {
+                    while(!released) {
+                        try {
+                            lock.wait();
+                        } catch (InterruptedException ex) {
+                            return;
+                        }
+                    }
+                }
+            }
+        };
+    }
+
+    @Test
+    public void test_fullPool_sessionRefused() throws InterruptedException {
+        KEPSessionPool pool = new KEPSessionPool(1, 1, 100);
+
+        assertTrue(pool.execute(this.blockingSession()));
+        assertTrue(pool.execute(this.blockingSession()));
+
+        // give first session time to start
+        Thread.sleep(200);
+        assertEquals(1, pool.getActiveSessions());
+        assertEquals(1, pool.getQueuedSessions());
+
+        // neither a thread nor a queue place
+        assertFalse(pool.execute(this.blockingSession()));
+        assertEquals(1, pool.getRefusedSessions());
+
+        synchronized(lock) {
+            released = true;
+            lock.notifyAll();
+        }
+
+        Thread.sleep(200);
+        assertEquals(0, pool.getActiveSessions());
+        assertEquals(0, pool.getQueuedSessions());
+
+        // room again
+        assertTrue(pool.execute(this.blockingSession()));
+
+        pool.shutdown();
+        assertFalse(pool.execute(this.blockingSession()));
+    }
+}
@@ -0,0 +1,156 @@
+package net.sharkfw.kep;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.security.KeyPair;
+import java.security.KeyPairGenerator;
+import java.util.Arrays;
+import javax.crypto.SecretKey;
+import net.sharkfw.kep.format.XMLSerializer;
+import net.sharkfw.knowledgeBase.inmemory.InMemoSharkKB;
+import net.sharkfw.peer.J2SEAndroidSharkEngine;
+import net.sharkfw.peer.SharkEngine;
+import net.sharkfw.protocols.MessageStub;
+import net.sharkfw.protocols.RequestHandler;
+import net.sharkfw.protocols.StandardSharkInputStream;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ *
+ * @author thsc
+ */
+public class SessionKeyCacheTest {
+
+    private static class RecordingStub implements MessageStub {
+        byte[] msg = null;
+
+        @Override
+        public void setReplyAddressString(String addr) { }
+
+        @Override
+        public void sendMessage(byte[] msg, String recAddress) throws IOException {
+            this.msg = msg;
+        }
+
+        @Override
+        public String getReplyAddressString() { return null; }
+
+        @Override
+        public void setHandler(RequestHandler handler) { }
+
+        @Override
+        public void stop() { }
+
+        @Override
+        public void start() throws IOException { }
+
+        @Override
+        public boolean started() { return true; }
+    }
+
+    /**
+     * @return wrapped session key of an encrypted expose message
+     */
+    private byte[] sendExpose(SharkEngine se, KeyPair alice, KeyPair bob,
+            boolean chunked) throws Exception {
+
+        RecordingStub stub = new RecordingStub();
+        KEPOutMessage msg = new KEPOutMessage(se, stub, new XMLSerializer(),
+                "tcp://localhost:7070");
+        msg.setChunkedEncryption(chunked);
+        msg.initSecurity(alice.getPrivate(), bob.getPublic(),
+                new String[] {"http://alice.org"}, false);
+        msg.expose(InMemoSharkKB.createInMemoInterest());
+
+        // version, command, format, sender, signature flag, key length
+        StandardSharkInputStream sis = new StandardSharkInputStream(
+                new ByteArrayInputStream(stub.msg));
+        for(int i = 0; i < 5; i++) {
+            sis.readUTF8();
+        }
+        String keyLen = sis.readUTF8();
+        assertEquals(chunked, keyLen.startsWith(KEPMessage.CHUNKED_ENCRYPTION_MARKER));
+        if(chunked) {
+            keyLen = keyLen.substring(KEPMessage.CHUNKED_ENCRYPTION_MARKER.length());
+        }
+
+        byte[] wrappedKey = new byte[Integer.parseInt(keyLen)];
+        InputStream is = sis.getInputStream();
+        int read = 0;
+        while(read < wrappedKey.length) {
+            read += is.read(wrappedKey, read, wrappedKey.length - read);
+        }
+
+        return wrappedKey;
+    }
+
+    @Test
+    public void test_blockEncryption_freshKeys() throws Exception {
+        KeyPair alice = this.createKeyPair();
+        KeyPair bob = this.createKeyPair();
+        SharkEngine se = new J2SEAndroidSharkEngine();
+
+        byte[] first = this.sendExpose(se, alice, bob, false);
+        byte[] second = this.sendExpose(se, alice, bob, false);
+        assertFalse(Arrays.equals(first, second));
+
+        // chunked encryption reuses key
+        first = this.sendExpose(se, alice, bob, true);
+        second = this.sendExpose(se, alice, bob, true);
+        assertArrayEquals(first, second);
+    }
+
+    private KeyPair createKeyPair() throws Exception {
+        KeyPairGenerator gen = KeyPairGenerator.getInstance("RSA");
+        gen.initialize(1024);
+        return gen.generateKeyPair();
+    }
+
+    @Test
+    public void test_sendingKey_reused() throws Exception {
+        KeyPair bob = this.createKeyPair();
+        KeyPair clara = this.createKeyPair();
+
+        SessionKeyCache aliceCache = new SessionKeyCache();
+
+        SessionKeyCache.SessionKey first = aliceCache.getSendingKey(bob.getPublic());
+        SessionKeyCache.SessionKey second = aliceCache.getSendingKey(bob.getPublic());
+        assertSame(first, second);
+
+        // other recipient - other key
+        SessionKeyCache.SessionKey toClara = aliceCache.getSendingKey(clara.getPublic());
+        assertNotSame(first, toClara);
+
+        // receiver unwraps the same key each time
+        SessionKeyCache bobCache = new SessionKeyCache();
+        SecretKey received = bobCache.getReceivedKey(first.getWrappedKey(), bob.getPrivate());
+        assertEquals(first.getKey(), received);
+        assertSame(received, bobCache.getReceivedKey(second.getWrappedKey().clone(), bob.getPrivate()));
+    }
+
+    @Test
+    public void test_sendingKey_rekeyed() throws Exception {
+        KeyPair bob = this.createKeyPair();
+
+        SessionKeyCache cache = new SessionKeyCache();
+        cache.setMaxUses(2);
+
+        SessionKeyCache.SessionKey first = cache.getSendingKey(bob.getPublic());
+        assertSame(first, cache.getSendingKey(bob.getPublic()));
+
+        // used too often
+        SessionKeyCache.SessionKey third = cache.getSendingKey(bob.getPublic());
+        assertNotSame(first, third);
+
+        // expired
+        cache.setTTL(1);
+        Thread.sleep(10);
+        assertNotSame(third, cache.getSendingKey(bob.getPublic()));
+
+        // no caching at all
+        cache.setTTL(0);
+        assertNotSame(cache.getSendingKey(bob.getPublic()), cache.getSendingKey(bob.getPublic()));
+    }
+}
@@ -0,0 +1,87 @@
+package net.sharkfw.kep;
+
+import net.sharkfw.knowledgeBase.STSet;
+import net.sharkfw.knowledgeBase.SharkCS;
+import net.sharkfw.knowledgeBase.SharkKBException;
+import net.sharkfw.knowledgeBase.inmemory.InMemoSharkKB;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ *
+ * @author thsc
+ */
+public class SilenceTableTest {
+
+    private SharkCS createInterest(int direction, String[]... topics) throws SharkKBException {
+        STSet topicSet = InMemoSharkKB.createInMemoSTSet();
+        for(int i = 0; i < topics.length; i++) {
+            topicSet.createSemanticTag(topics[i][0], topics[i]);
+        }
+
+        return InMemoSharkKB.createInMemoInterest(topicSet, null, null, null,
+                null, null, direction);
+    }
+
+    @Test
+    public void test_fingerprint_orderIndependent() throws Exception {
+        SharkCS a = this.createInterest(SharkCS.DIRECTION_OUT,
+                new String[] {"http://a.org", "http://a.net"},
+                new String[] {"http://b.org"});
+
+        SharkCS b = this.createInterest(SharkCS.DIRECTION_OUT,
+                new String[] {"http://B.org"},
+                new String[] {"http://a.net", "http://a.org"});
+
+        assertEquals(SilenceTable.fingerprint(a), SilenceTable.fingerprint(b));
+
+        // other direction
+        SharkCS c = this.createInterest(SharkCS.DIRECTION_IN,
+                new String[] {"http://a.org", "http://a.net"},
+                new String[] {"http://b.org"});
+        assertFalse(SilenceTable.fingerprint(a).equals(SilenceTable.fingerprint(c)));
+
+        // sis of tags not mixed up
+        SharkCS d = this.createInterest(SharkCS.DIRECTION_OUT,
+                new String[] {"http://a.org"},
+                new String[] {"http://a.net", "http://b.org"});
+        assertFalse(SilenceTable.fingerprint(a).equals(SilenceTable.fingerprint(d)));
+    }
+
+    @Test
+    public void test_silentPeriod() throws Exception {
+        SilenceTable table = new SilenceTable();
+        SharkCS a = this.createInterest(SharkCS.DIRECTION_OUT, new String[] {"http://a.org"});
+        SharkCS b = this.createInterest(SharkCS.DIRECTION_OUT, new String[] {"http://b.org"});
+
+        assertTrue(table.allowed(a, 50));
+        table.sent(a, 50);
+        assertFalse(table.allowed(a, 50));
+        assertTrue(table.allowed(b, 50));
+
+        Thread.sleep(100);
+        assertTrue(table.allowed(a, 50));
+        assertEquals(0, table.size());
+    }
+
+    @Test
+    public void test_bounded() throws Exception {
+        SilenceTable table = new SilenceTable();
+        table.setMaxEntries(2);
+
+        SharkCS a = this.createInterest(SharkCS.DIRECTION_OUT, new String[] {"http://a.org"});
+        SharkCS b = this.createInterest(SharkCS.DIRECTION_OUT, new String[] {"http://b.org"});
+        SharkCS c = this.createInterest(SharkCS.DIRECTION_OUT, new String[] {"http://c.org"});
+
+        table.sent(a, 10000);
+        table.sent(b, 10000);
+        table.sent(a, 10000);
+        table.sent(c, 10000);
+
+        // b is oldest - a was sent again
+        assertEquals(2, table.size());
+        assertTrue(table.allowed(b, 10000));
+        assertFalse(table.allowed(a, 10000));
+        assertFalse(table.allowed(c, 10000));
+    }
+}
@@ -0,0 +1,179 @@
+package net.sharkfw.kep;
+
+import java.io.IOException;
+import net.sharkfw.peer.J2SEAndroidSharkEngine;
+import net.sharkfw.peer.SharkEngine;
+import net.sharkfw.protocols.ConnectionListenerManager;
+import net.sharkfw.protocols.SharkInputStream;
+import net.sharkfw.protocols.SharkOutputStream;
+import net.sharkfw.protocols.StreamConnection;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ *
+ * @author thsc
+ */
+public class SimpleKEPConnectionPoolTest {
+
+    private static class DummyConnection extends ConnectionListenerManager implements StreamConnection {
+        boolean closed = false;
+
+        @Override
+        public SharkInputStream getInputStream() { return null; }
+
+        @Override
+        public SharkOutputStream getOutputStream() { return null; }
+
+        @Override
+        public void sendMessage(byte[] msg) throws IOException { }
+
+        @Override
+        public String getReplyAddressString() { return null; }
+
+        @Override
+        public String getReceiverAddressString() { return null; }
+
+        @Override
+        public String getLocalAddressString() { return null; }
+
+        @Override
+        public void setLocalAddressString(String localAddress) { }
+
+        @Override
+        public void close() {
+            this.closed = true;
+            this.notifyConnectionClosed();
+        }
+    }
+
+    @Test
+    public void test_releasedConnection_reused() {
+        SimpleKEPConnectionPool pool = new SimpleKEPConnectionPool();
+        DummyConnection con = new DummyConnection();
+
+        pool.addConnection("tcp://localhost:7070", con);
+
+        // still leased by sender
+        assertNull(pool.getConnectionByAddress("tcp://localhost:7070"));
+
+        pool.releaseConnection(con);
+
+        // same peer - host name resolved
+        assertSame(con, pool.getConnectionByAddress("tcp://127.0.0.1:7070"));
+        assertNull(pool.getConnectionByAddress("tcp://127.0.0.1:7070"));
+        assertNull(pool.getConnectionByAddress("tcp://127.0.0.1:7071"));
+    }
+
+    @Test
+    public void test_leaseConnection_waitsForRelease() throws Exception {
+        final SimpleKEPConnectionPool pool = new SimpleKEPConnectionPool();
+        final DummyConnection con = new DummyConnection();
+
+        // not pooled - nothing to wait for
+        assertFalse(pool.leaseConnection(con));
+
+        // leased by sender
+        pool.addConnection("tcp://localhost:7070", con);
+
+        Thread sender = new Thread() {
+            @Override
+            public void run() {
+                try {
+                    Thread.sleep(200);
+                } catch (InterruptedException e) {
+                    // go ahead
+                }
+                pool.releaseConnection(con);
+            }
+        };
+
+        long start = System.currentTimeMillis();
+        sender.start();
+        assertTrue(pool.leaseConnection(con));
+        assertTrue(System.currentTimeMillis() - start >= 150);
+
+        // leased by replier
+        assertNull(pool.getConnectionByAddress("tcp://localhost:7070"));
+        sender.join();
+    }
+
+    @Test(expected = IOException.class)
+    public void test_leaseConnection_timeout() throws Exception {
+        SharkEngine se = new J2SEAndroidSharkEngine();
+        se.setConnectionTimeOut(100);
+        SimpleKEPConnectionPool pool = new SimpleKEPConnectionPool(se);
+        DummyConnection con = new DummyConnection();
+
+        pool.addConnection("tcp://localhost:7070", con);
+        pool.leaseConnection(con);
+    }
+
+    @Test
+    public void test_closedConnection_removed() {
+        SimpleKEPConnectionPool pool = new SimpleKEPConnectionPool();
+        DummyConnection con = new DummyConnection();
+
+        pool.addConnection("tcp://localhost:7070", con);
+        pool.releaseConnection(con);
+        assertEquals(1, pool.size());
+
+        con.close();
+        assertEquals(0, pool.size());
+        assertNull(pool.getConnectionByAddress("tcp://localhost:7070"));
+        assertFalse(pool.getConnectedAddresses().hasMoreElements());
+    }
+
+    @Test
+    public void test_idleTimeout_derivedFromEngine() {
+        SharkEngine se = new J2SEAndroidSharkEngine();
+        SimpleKEPConnectionPool pool = new SimpleKEPConnectionPool(se);
+
+        se.setConnectionTimeOut(6000);
+        assertEquals(6000 * SimpleKEPConnectionPool.IDLE_TIMEOUT_PERCENT / 100,
+                pool.getIdleTimeout());
+
+        // explicitly set
+        pool.setIdleTimeout(100);
+        se.setConnectionTimeOut(9000);
+        assertEquals(100, pool.getIdleTimeout());
+
+        // derived again
+        pool.setIdleTimeout(-1);
+        assertEquals(9000 * SimpleKEPConnectionPool.IDLE_TIMEOUT_PERCENT / 100,
+                pool.getIdleTimeout());
+    }
+
+    @Test
+    public void test_idleConnection_closed() throws InterruptedException {
+        SimpleKEPConnectionPool pool = new SimpleKEPConnectionPool();
+        pool.setIdleTimeout(100);
+
+        DummyConnection idle = new DummyConnection();
+        DummyConnection leased = new DummyConnection();
+
+        pool.addConnection("tcp://localhost:7070", idle);
+        pool.addConnection("tcp://localhost:7070", leased);
+        pool.releaseConnection(idle);
+
+        Thread.sleep(200);
+        pool.closeIdleConnections();
+
+        assertTrue(idle.closed);
+        assertFalse(leased.closed);
+        assertEquals(1, pool.size());
+    }
+
+    @Test
+    public void test_connectionsPerPeer_limited() {
+        SimpleKEPConnectionPool pool = new SimpleKEPConnectionPool();
+        pool.setMaxConnectionsPerPeer(2);
+
+        pool.addConnection("tcp://localhost:7070", new DummyConnection());
+        pool.addConnection("tcp://localhost:7070", new DummyConnection());
+        pool.addConnection("tcp://localhost:7070", new DummyConnection());
+        pool.addConnection("tcp://localhost:7071", new DummyConnection());
+
+        assertEquals(3, pool.size());
+    }
+}
@@ -0,0 +1,127 @@
+package net.sharkfw.knowledgeBase.filesystem;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.net.SocketTimeoutException;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import net.sharkfw.knowledgeBase.ContextCoordinates;
+import net.sharkfw.knowledgeBase.ContextPoint;
+import net.sharkfw.knowledgeBase.Information;
+import net.sharkfw.knowledgeBase.SemanticTag;
+import net.sharkfw.knowledgeBase.SharkCS;
+import net.sharkfw.protocols.TransferTarget;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ *
+ * @author thsc
+ */
+public class FSInformationTransferTest {
+
+    private static final String FOLDER = "Temp/transferkb";
+
+    /**
+     * Takes content from file channel like a socket stream.
+     */
+    private static class TransferringStream extends ByteArrayOutputStream implements TransferTarget {
+        private int transfers = 0;
+
+        @Override
+        public void transferFrom(FileChannel source, long position, long count) throws IOException {
+            this.transfers++;
+            while(count > 0) {
+                long n = source.transferTo(position, count, Channels.newChannel(this));
+                position += n;
+                count -= n;
+            }
+        }
+    }
+
+    private Information createInformation() throws Exception {
+        FSSharkKB.removeFSStorage(FOLDER);
+        FSSharkKB kb = new FSSharkKB(FOLDER);
+
+        SemanticTag java = kb.createSemanticTag("Java", "http://www.java.net");
+        ContextCoordinates cc = kb.createContextCoordinates(java, null, null,
+                null, null, null, SharkCS.DIRECTION_OUT);
+        ContextPoint cp = kb.createContextPoint(cc);
+
+        return cp.addInformation();
+    }
+
+    private byte[] createBytes(int len) {
+        byte[] bytes = new byte[len];
+        for(int i = 0; i < len; i++) {
+            bytes[i] = (byte) (i * 13);
+        }
+        return bytes;
+    }
+
+    @Test
+    public void test_streamContent() throws Exception {
+        Information info = this.createInformation();
+        byte[] bytes = this.createBytes(100000);
+        info.setContent(new ByteArrayInputStream(bytes), bytes.length);
+        assertEquals(bytes.length, info.getContentLength());
+
+        // channel path
+        TransferringStream target = new TransferringStream();
+        info.streamContent(target);
+        assertEquals(1, target.transfers);
+        assertArrayEquals(bytes, target.toByteArray());
+
+        // buffered path
+        ByteArrayOutputStream baos = new ByteArrayOutputStream();
+        info.streamContent(baos);
+        assertArrayEquals(bytes, baos.toByteArray());
+
+        FSSharkKB.removeFSStorage(FOLDER);
+    }
+
+    @Test
+    public void test_streamContent_timeout() throws Exception {
+        Information info = this.createInformation();
+        byte[] bytes = this.createBytes(1000);
+        info.setContent(new ByteArrayInputStream(bytes), bytes.length);
+
+        TransferringStream stalled = new TransferringStream() {
+            @Override
+            public void transferFrom(FileChannel source, long position, long count) throws IOException {
+                throw new SocketTimeoutException("write timed out");
+            }
+        };
+
+        try {
+            info.streamContent(stalled);
+            fail("truncated content taken as complete");
+        } catch (SocketTimeoutException e) {
+            // expected
+        }
+
+        // file released
+        assertArrayEquals(bytes, info.getContentAsByte());
+        info.setContent(new ByteArrayInputStream(bytes), 10);
+        assertEquals(10, info.getContentLength());
+
+        FSSharkKB.removeFSStorage(FOLDER);
+    }
+
+    @Test
+    public void test_setContentFromShortStream() throws Exception {
+        Information info = this.createInformation();
+        byte[] bytes = this.createBytes(1000);
+
+        // announced length larger than stream
+        info.setContent(new ByteArrayInputStream(bytes), 5000);
+        assertArrayEquals(bytes, info.getContentAsByte());
+
+        // only announced length is read
+        info.setContent(new ByteArrayInputStream(bytes), 10);
+        assertEquals(10, info.getContentLength());
+
+        FSSharkKB.removeFSStorage(FOLDER);
+    }
+}
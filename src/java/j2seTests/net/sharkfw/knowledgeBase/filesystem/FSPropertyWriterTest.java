@@ -0,0 +1,90 @@
+package net.sharkfw.knowledgeBase.filesystem;
+
+import java.io.File;
+import net.sharkfw.knowledgeBase.SemanticTag;
+import net.sharkfw.knowledgeBase.SharkCSAlgebra;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ *
+ * @author thsc
+ */
+public class FSPropertyWriterTest {
+
+    private static final String FOLDER = "Temp/writerkb";
+
+    @Before
+    public void setUp() {
+        FSSharkKB.removeFSStorage(FOLDER);
+    }
+
+    @After
+    public void tearDown() {
+        FSSharkKB.setDurability(FSSharkKB.DURABILITY_SYNC);
+        FSSharkKB.removeFSStorage(FOLDER);
+    }
+
+    @Test
+    public void test_writeOnClose() throws Exception {
+        FSSharkKB.setDurability(FSSharkKB.DURABILITY_ON_CLOSE);
+
+        FSSharkKB kb = new FSSharkKB(FOLDER);
+        SemanticTag java = kb.createSemanticTag("Java", "http://www.java.net");
+        for(int i = 0; i < 100; i++) {
+            java.setProperty("counter", String.valueOf(i));
+        }
+
+        // nothing written yet
+        File propertyFile = new File(FOLDER + FSSharkKB.TOPIC_FOLDER + "/Java/.sharkfw_st_properties");
+        assertFalse(propertyFile.exists());
+        assertTrue(FSPropertyWriter.numberOfPendingFiles() > 0);
+
+        kb.close();
+        assertEquals(0, FSPropertyWriter.numberOfPendingFiles());
+        assertTrue(propertyFile.exists());
+
+        kb = new FSSharkKB(FOLDER);
+        SemanticTag java2 = kb.getSemanticTag("http://www.java.net");
+        assertTrue(SharkCSAlgebra.identical(java, java2));
+        assertEquals("99", java2.getProperty("counter"));
+    }
+
+    @Test
+    public void test_readPendingChanges() throws Exception {
+        FSSharkKB.setDurability(FSSharkKB.DURABILITY_ON_CLOSE);
+
+        FSSharkKB kb = new FSSharkKB(FOLDER);
+        SemanticTag java = kb.createSemanticTag("Java", "http://www.java.net");
+        java.setProperty("prop", "value");
+
+        // files are written before they are read
+        kb = new FSSharkKB(FOLDER);
+        assertEquals("value", kb.getSemanticTag("http://www.java.net").getProperty("prop"));
+
+        // removed folder isn't written again
+        kb.createSemanticTag("Shark", "http://www.sharksystem.net");
+        FSSharkKB.removeFSStorage(FOLDER);
+        kb.flush();
+        assertFalse(new File(FOLDER).exists());
+    }
+
+    @Test
+    public void test_groupCommit() throws Exception {
+        FSSharkKB.setDurability(FSSharkKB.DURABILITY_GROUP_COMMIT, 50);
+
+        FSSharkKB kb = new FSSharkKB(FOLDER);
+        kb.createSemanticTag("Java", "http://www.java.net");
+
+        long deadline = System.currentTimeMillis() + 5000;
+        while(FSPropertyWriter.numberOfPendingFiles() > 0
+                && System.currentTimeMillis() < deadline) {
+            Thread.sleep(20);
+        }
+
+        assertEquals(0, FSPropertyWriter.numberOfPendingFiles());
+        assertTrue(new File(FOLDER + FSSharkKB.TOPIC_FOLDER + "/.tagSetProperties").exists());
+    }
+}
@@ -0,0 +1,167 @@
+package net.sharkfw.knowledgeBase.inmemory;
+
+import java.util.Enumeration;
+import java.util.Random;
+import net.sharkfw.knowledgeBase.FragmentationParameter;
+import net.sharkfw.knowledgeBase.SNSemanticTag;
+import net.sharkfw.knowledgeBase.SemanticNet;
+import net.sharkfw.knowledgeBase.SemanticTag;
+import net.sharkfw.knowledgeBase.SharkKB;
+import net.sharkfw.knowledgeBase.SharkKBException;
+import net.sharkfw.knowledgeBase.TXSemanticTag;
+import net.sharkfw.knowledgeBase.Taxonomy;
+import org.junit.Test;
+import static org.junit.Assert.*;
+import static net.sharkfw.knowledgeBase.inmemory.SemanticNetTestData.*;
+
+/**
+ *
+ * @author thsc
+ */
+public class CompactSemanticNetTest {
+
+    private boolean contains(Enumeration<SNSemanticTag> e, SemanticTag tag) {
+        while(e != null && e.hasMoreElements()) {
+            if(e.nextElement() == tag) return true;
+        }
+
+        return false;
+    }
+
+    @Test
+    public void predicatesInBothDirections() throws SharkKBException {
+        SemanticNet sn = InMemoSharkKB.createInMemoCompactSemanticNet();
+        SNSemanticTag[] t = createTags(sn, 3);
+
+        t[0].setPredicate(P, t[1]);
+        t[0].setPredicate(P, t[1]); // no duplicates
+        t[0].setPredicate(Q, t[2]);
+        t[2].setPredicate(P, t[1]);
+
+        assertEquals(2, count(t[0].predicateNames()));
+        assertEquals(1, count(t[0].targetTags(P)));
+        assertNull(t[1].predicateNames());
+        assertNull(t[0].targetTags("unknown"));
+
+        assertEquals(1, count(t[1].targetPredicateNames()));
+        assertEquals(2, count(t[1].sourceTags(P)));
+        assertTrue(this.contains(t[1].sourceTags(P), t[2]));
+
+        t[0].removePredicate(P, t[1]);
+        assertNull(t[0].targetTags(P));
+        assertEquals(1, count(t[1].sourceTags(P)));
+    }
+
+    @Test
+    public void removedTagLeavesNoPredicates() throws SharkKBException {
+        SemanticNet sn = InMemoSharkKB.createInMemoCompactSemanticNet();
+        SNSemanticTag[] t = createTags(sn, 3);
+
+        t[0].setPredicate(P, t[1]);
+        t[1].setPredicate(P, t[2]);
+
+        sn.removeSemanticTag(t[1]);
+
+        assertNull(sn.getSemanticTag(t[1].getSI()));
+        assertNull(t[0].targetTags(P));
+        assertNull(t[2].sourceTags(P));
+
+        // id is reused - new tag has no relations
+        SNSemanticTag t3 = sn.createSemanticTag("t3", "http://t3.de");
+        assertNull(t3.predicateNames());
+        assertNull(t3.targetPredicateNames());
+        assertEquals(0, ((InMemoCompactSemanticNet) sn).numberOfPredicates());
+    }
+
+    @Test
+    public void foreignTargetsAreMerged() throws SharkKBException {
+        SemanticNet sn = InMemoSharkKB.createInMemoCompactSemanticNet();
+        SNSemanticTag tag = sn.createSemanticTag("a", "http://a.de");
+
+        SNSemanticTag foreign = InMemoSharkKB.createInMemoSemanticNet()
+                .createSemanticTag("b", "http://b.de");
+
+        tag.setPredicate(P, foreign);
+
+        SNSemanticTag b = sn.getSemanticTag("http://b.de");
+        assertNotNull(b);
+        assertNotSame(foreign, b);
+        assertTrue(this.contains(tag.targetTags(P), b));
+    }
+
+    /**
+     * Same random changes on a compact and a hash set based semantic net.
+     * Enough changes to let overlay be compacted several times.
+     */
+    @Test
+    public void sameTopologyAsInMemoSemanticNet() throws SharkKBException {
+        int number = 200;
+        InMemoCompactSemanticNet compact = new InMemoCompactSemanticNet();
+        SemanticNet reference = InMemoSharkKB.createInMemoSemanticNet();
+        SNSemanticTag[] c = createTags(compact, number);
+        SNSemanticTag[] r = createTags(reference, number);
+
+        Random random = new Random(42);
+        for(int i = 0; i < 20000; i++) {
+            int s = random.nextInt(number);
+            int t = random.nextInt(number);
+            String p = random.nextBoolean() ? P : Q;
+
+            if(random.nextInt(3) == 0) {
+                c[s].removePredicate(p, c[t]);
+                r[s].removePredicate(p, r[t]);
+            } else {
+                c[s].setPredicate(p, c[t]);
+                r[s].setPredicate(p, r[t]);
+            }
+
+            if(i == 10000) {
+                compact.compact();
+            }
+        }
+
+        int edges = 0;
+        for(int i = 0; i < number; i++) {
+            for(String p : new String[] {P, Q}) {
+                assertEquals(count(r[i].targetTags(p)), count(c[i].targetTags(p)));
+                assertEquals(count(r[i].sourceTags(p)), count(c[i].sourceTags(p)));
+
+                Enumeration<SNSemanticTag> targets = r[i].targetTags(p);
+                while(targets != null && targets.hasMoreElements()) {
+                    SemanticTag target = targets.nextElement();
+                    assertTrue(this.contains(c[i].targetTags(p),
+                            compact.getSemanticTag(target.getSI())));
+                    edges++;
+                }
+            }
+        }
+
+        assertEquals(edges, compact.numberOfPredicates());
+    }
+
+    @Test
+    public void taxonomyAndFragmentationInKB() throws SharkKBException {
+        SharkKB kb = new InMemoSharkKB(InMemoSharkKB.createInMemoCompactSemanticNet());
+        assertTrue(kb.getTopicsAsSemanticNet() instanceof InMemoCompactSemanticNet);
+
+        Taxonomy tx = kb.getTopicsAsTaxonomy();
+        TXSemanticTag root = tx.createTXSemanticTag("root", "http://root.de");
+        TXSemanticTag sub = tx.createTXSemanticTag("sub", "http://sub.de");
+        TXSemanticTag subSub = tx.createTXSemanticTag("subSub", "http://subSub.de");
+        sub.move(root);
+        subSub.move(sub);
+
+        assertSame(root, sub.getSuperTag());
+        assertEquals(1, count(root.getSubTags()));
+        assertEquals(1, count(tx.rootTags()));
+
+        // move to root
+        subSub.move(root);
+        assertEquals(2, count(root.getSubTags()));
+        assertEquals(0, count(sub.getSubTags()));
+
+        SemanticNet fragment = kb.getTopicsAsSemanticNet().fragment(subSub,
+                new FragmentationParameter(1));
+        assertEquals(2, count(fragment.tags()));
+    }
+}
@@ -0,0 +1,142 @@
+package net.sharkfw.knowledgeBase.inmemory;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Arrays;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ *
+ * @author thsc
+ */
+public class InformationContentTest {
+
+    @Before
+    public void setUp() {
+        InMemoInformation.setContentThreshold(100);
+    }
+
+    @After
+    public void tearDown() {
+        InMemoInformation.setContentThreshold(InformationContent.DEFAULT_THRESHOLD);
+    }
+
+    private byte[] createBytes(int len) {
+        byte[] bytes = new byte[len];
+        for(int i = 0; i < len; i++) {
+            bytes[i] = (byte) (i * 7);
+        }
+        return bytes;
+    }
+
+    private byte[] readAll(InputStream is) throws Exception {
+        ByteArrayOutputStream baos = new ByteArrayOutputStream();
+        byte[] buffer = new byte[33];
+        int read = is.read(buffer);
+        while(read != -1) {
+            baos.write(buffer, 0, read);
+            read = is.read(buffer);
+        }
+        return baos.toByteArray();
+    }
+
+    @Test
+    public void test_smallContentStaysOnHeap() throws Exception {
+        InformationContent content = new InformationContent();
+        content.write(this.createBytes(100));
+
+        assertFalse(content.isSpilled());
+        assertEquals(100, content.size());
+        assertTrue(Arrays.equals(this.createBytes(100), this.readAll(content.getInputStream())));
+    }
+
+    @Test
+    public void test_spilledContent() throws Exception {
+        byte[] bytes = this.createBytes(1000);
+
+        InMemoInformation info = new InMemoInformation();
+        OutputStream os = info.getOutputStream();
+        os.write(bytes, 0, 60);
+        os.write(bytes, 60, 940);
+        os.close();
+
+        assertEquals(1000, info.getContentLength());
+        assertTrue(Arrays.equals(bytes, this.readAll(info.getInputStream())));
+
+        ByteArrayOutputStream baos = new ByteArrayOutputStream();
+        info.streamContent(baos);
+        assertTrue(Arrays.equals(bytes, baos.toByteArray()));
+        assertTrue(Arrays.equals(bytes, info.getContentAsByte()));
+
+        // same digest as heap content
+        InMemoInformation heapInfo = new InMemoInformation();
+        InMemoInformation.setContentThreshold(InformationContent.DEFAULT_THRESHOLD);
+        heapInfo.setContent(bytes);
+        assertTrue(Arrays.equals(heapInfo.getContentDigest(), info.getContentDigest()));
+
+        // append after reading
+        info.getOutputStream().write(42);
+        assertEquals(1001, info.getContentLength());
+        assertEquals(42, info.getContentAsByte()[1000]);
+    }
+
+    @Test
+    public void test_setContentFromStream() throws Exception {
+        byte[] bytes = this.createBytes(500);
+
+        InMemoInformation info = new InMemoInformation();
+        info.setContent(new ByteArrayInputStream(bytes), bytes.length);
+        assertTrue(Arrays.equals(bytes, info.getContentAsByte()));
+
+        // stream shorter than announced
+        info.setContent(new ByteArrayInputStream(bytes), 1000);
+        assertEquals(500, info.getContentLength());
+
+        info.removeContent();
+        assertEquals(0, info.getContentLength());
+    }
+
+    @Test
+    public void test_tempFilesRemoved() throws Exception {
+        File dir = File.createTempFile("sharkInfoTest", "");
+        dir.delete();
+        dir.mkdir();
+        InformationContent.setTempDirectory(dir);
+
+        try {
+            InformationContent content = new InformationContent();
+            content.write(this.createBytes(1000));
+            assertEquals(1, dir.list().length);
+
+            content.dispose();
+            assertEquals(0, dir.list().length);
+
+            // dropped without dispose
+            content = new InformationContent();
+            content.write(this.createBytes(1000));
+            content = null;
+
+            for(int i = 0; i < 50 && dir.list().length > 0; i++) {
+                System.gc();
+                Thread.sleep(20);
+
+                // removes files of collected contents
+                InformationContent other = new InformationContent();
+                other.write(this.createBytes(1000));
+                other.dispose();
+            }
+
+            assertEquals(0, dir.list().length);
+        }
+        finally {
+            InformationContent.setTempDirectory(null);
+            dir.delete();
+        }
+    }
+}
@@ -0,0 +1,124 @@
+package net.sharkfw.knowledgeBase.inmemory;
+
+import java.util.Vector;
+import net.sharkfw.knowledgeBase.FragmentationParameter;
+import net.sharkfw.knowledgeBase.SNSemanticTag;
+import net.sharkfw.knowledgeBase.STSet;
+import net.sharkfw.knowledgeBase.SemanticNet;
+import net.sharkfw.knowledgeBase.SemanticTag;
+import net.sharkfw.knowledgeBase.SharkCSAlgebra;
+import net.sharkfw.knowledgeBase.SharkKBException;
+import org.junit.Test;
+import static org.junit.Assert.*;
+import static net.sharkfw.knowledgeBase.inmemory.SemanticNetTestData.*;
+
+/**
+ *
+ * @author thsc
+ */
+public class SemanticNetFragmentationTest {
+
+    private SNSemanticTag get(SemanticNet sn, SemanticTag tag) throws SharkKBException {
+        return sn.getSemanticTag(tag.getSI());
+    }
+
+    @Test
+    public void chainIsCutAtDepth() throws SharkKBException {
+        SemanticNet sn = InMemoSharkKB.createInMemoSemanticNet();
+        SNSemanticTag[] t = createTags(sn, 4);
+        t[0].setPredicate(P, t[1]);
+        t[1].setPredicate(P, t[2]);
+        t[2].setPredicate(P, t[3]);
+
+        SemanticNet fragment = sn.fragment(t[0], new FragmentationParameter(2));
+
+        assertEquals(3, count(fragment.tags()));
+        assertNull(this.get(fragment, t[3]));
+
+        SNSemanticTag f1 = this.get(fragment, t[1]);
+        assertEquals(1, count(this.get(fragment, t[0]).targetTags(P)));
+        assertEquals(1, count(f1.targetTags(P)));
+
+        // tag in max distance has no relation to tags outside fragment
+        assertEquals(0, count(this.get(fragment, t[2]).targetTags(P)));
+    }
+
+    @Test
+    public void cyclicDenseNet() throws SharkKBException {
+        SemanticNet sn = InMemoSharkKB.createInMemoSemanticNet();
+        int number = 15;
+        SNSemanticTag[] t = createTags(sn, number);
+
+        // any tag refers any other tag
+        for(int i = 0; i < number; i++) {
+            for(int j = 0; j < number; j++) {
+                if(i != j) {
+                    t[i].setPredicate(P, t[j]);
+                }
+            }
+        }
+
+        // each tag is expanded once - would take ages otherwise
+        SemanticNet fragment = sn.fragment(t[0], new FragmentationParameter(10));
+
+        assertEquals(number, count(fragment.tags()));
+        for(int i = 0; i < number; i++) {
+            assertEquals(number - 1, count(this.get(fragment, t[i]).targetTags(P)));
+        }
+    }
+
+    @Test
+    public void relationsBetweenBorderTagsAreKept() throws SharkKBException {
+        SemanticNet sn = InMemoSharkKB.createInMemoSemanticNet();
+        SNSemanticTag[] t = createTags(sn, 3);
+        t[0].setPredicate(P, t[1]);
+        t[0].setPredicate(P, t[2]);
+        t[1].setPredicate(P, t[2]);
+
+        SemanticNet fragment = sn.fragment(t[0], new FragmentationParameter(1));
+
+        assertEquals(3, count(fragment.tags()));
+        assertEquals(1, count(this.get(fragment, t[1]).targetTags(P)));
+    }
+
+    @Test
+    public void forbiddenPredicatesAreNotFollowed() throws SharkKBException {
+        SemanticNet sn = InMemoSharkKB.createInMemoSemanticNet();
+        SNSemanticTag[] t = createTags(sn, 3);
+        t[0].setPredicate(P, t[1]);
+        t[0].setPredicate(Q, t[2]);
+
+        Vector<String> forbidden = new Vector<>();
+        forbidden.add(Q);
+
+        SemanticNet fragment = sn.fragment(t[0],
+                new FragmentationParameter(null, forbidden, 3));
+
+        assertEquals(2, count(fragment.tags()));
+        assertNull(this.get(fragment, t[2]));
+    }
+
+    @Test
+    public void multipleAnchors() throws SharkKBException {
+        SemanticNet sn = InMemoSharkKB.createInMemoSemanticNet();
+        SNSemanticTag[] t = createTags(sn, 5);
+        for(int i = 0; i < 4; i++) {
+            t[i].setPredicate(P, t[i+1]);
+        }
+
+        STSet context = InMemoSharkKB.createInMemoSTSet();
+        context.merge(t[0]);
+        context.merge(t[3]);
+
+        SemanticNet fragment = sn.contextualize(context, new FragmentationParameter(1));
+
+        // t0, t1 and t3, t4
+        assertEquals(4, count(fragment.tags()));
+        assertNull(this.get(fragment, t[2]));
+
+        // same result as algebra with single anchors
+        SemanticNet fragment2 = SharkCSAlgebra.contextualize(sn, context,
+                new FragmentationParameter(1));
+        assertEquals(4, count(fragment2.tags()));
+    }
+}
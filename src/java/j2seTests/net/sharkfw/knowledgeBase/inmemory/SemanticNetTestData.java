@@ -0,0 +1,44 @@
+package net.sharkfw.knowledgeBase.inmemory;
+
+import java.util.Enumeration;
+import net.sharkfw.knowledgeBase.SNSemanticTag;
+import net.sharkfw.knowledgeBase.SemanticNet;
+import net.sharkfw.knowledgeBase.SharkKBException;
+
+/**
+ * Fixtures of semantic net tests.
+ *
+ * @author thsc
+ */
+public class SemanticNetTestData {
+
+    public static final String P = "p";
+    public static final String Q = "q";
+
+    /**
+     * creates tags t0 ... t(number-1) with si http://t0.de ...
+     */
+    public static SNSemanticTag[] createTags(SemanticNet sn, int number) throws SharkKBException {
+        SNSemanticTag[] tags = new SNSemanticTag[number];
+        for(int i = 0; i < number; i++) {
+            tags[i] = sn.createSemanticTag("t" + i, "http://t" + i + ".de");
+        }
+
+        return tags;
+    }
+
+    /**
+     * @return number of elements - 0 if e is null
+     */
+    public static int count(Enumeration e) {
+        int n = 0;
+        if(e == null) return n;
+
+        while(e.hasMoreElements()) {
+            e.nextElement();
+            n++;
+        }
+
+        return n;
+    }
+}
@@ -0,0 +1,196 @@
+package net.sharkfw.knowledgeBase.logstore;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.RandomAccessFile;
+import java.util.SortedMap;
+import java.util.TreeMap;
+import net.sharkfw.knowledgeBase.filesystem.FSSharkKB;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ *
+ * @author thsc
+ */
+public class LogStoreTest {
+
+    private static final String FOLDER = "Temp/logstore";
+
+    @Before
+    public void setUp() {
+        FSSharkKB.removeFSStorage(FOLDER);
+    }
+
+    @After
+    public void tearDown() {
+        FSSharkKB.removeFSStorage(FOLDER);
+    }
+
+    @Test
+    public void test_replayLog() throws Exception {
+        LogStore store = new LogStore(FOLDER);
+        store.put("a|1", "one");
+        store.put("a|2", "two");
+        store.put("b|1", "three");
+        store.put("a|2", null);
+
+        // not closed - log is replayed
+        store = new LogStore(FOLDER);
+        assertEquals("one", store.get("a|1"));
+        assertNull(store.get("a|2"));
+
+        SortedMap<String, String> entries = store.scan("a|");
+        assertEquals(1, entries.size());
+        assertEquals("one", entries.get("a|1"));
+        store.close();
+    }
+
+    @Test
+    public void test_incompleteLogEntry() throws Exception {
+        LogStore store = new LogStore(FOLDER);
+        store.put("key", "value");
+        store.put("other", "value");
+
+        // cut last entry
+        File log = new File(FOLDER, "log");
+        RandomAccessFile raf = new RandomAccessFile(log, "rw");
+        raf.setLength(raf.length() - 3);
+        raf.close();
+
+        store = new LogStore(FOLDER);
+        assertEquals("value", store.get("key"));
+        assertNull(store.get("other"));
+
+        // further entries are readable
+        store.put("other", "again");
+        store = new LogStore(FOLDER);
+        assertEquals("again", store.get("other"));
+        store.close();
+    }
+
+    @Test
+    public void test_garbageLogEntryLength() throws Exception {
+        LogStore store = new LogStore(FOLDER);
+        store.put("key", "value");
+
+        // length beyond end of file - must not be allocated
+        File log = new File(FOLDER, "log");
+        RandomAccessFile raf = new RandomAccessFile(log, "rw");
+        long validLength = raf.length();
+        raf.seek(validLength);
+        raf.writeInt(Integer.MAX_VALUE);
+        raf.writeInt(0);
+        raf.close();
+
+        store = new LogStore(FOLDER);
+        assertEquals("value", store.get("key"));
+        assertEquals(validLength, log.length());
+        store.close();
+    }
+
+    @Test
+    public void test_segmentsAndCompaction() throws Exception {
+        LogStore store = new LogStore(FOLDER);
+        store.setMaxSegments(3);
+
+        store.put("x", "1");
+        store.put("y", "1");
+        store.flush();
+        assertEquals(1, store.numberOfSegments());
+
+        // tombstone hides value in older segment
+        store.put("y", null);
+        store.put("z", "2");
+        store.flush();
+        assertEquals(2, store.numberOfSegments());
+
+        store.put("x", "3");
+        store.flush();
+        assertEquals(3, store.numberOfSegments());
+
+        store = new LogStore(FOLDER);
+        assertEquals("3", store.get("x"));
+        assertNull(store.get("y"));
+        assertEquals("2", store.get("z"));
+
+        // fourth segment exceeds limit
+        store.setMaxSegments(3);
+        store.put("w", "4");
+        store.flush();
+        assertEquals(1, store.numberOfSegments());
+        assertEquals(1, new File(FOLDER).list().length - 1); // and log
+        store.close();
+
+        store = new LogStore(FOLDER);
+        assertEquals("3", store.get("x"));
+        assertNull(store.get("y"));
+        assertEquals("4", store.get("w"));
+        assertEquals(3, store.scan("").size());
+        store.close();
+    }
+
+    @Test
+    public void test_compactMergesSegments() throws Exception {
+        LogStore store = new LogStore(FOLDER);
+        store.setMaxSegments(10);
+        TreeMap<String, String> expected = new TreeMap<String, String>();
+
+        // overlapping keys in each segment - some removed again
+        for(int segment = 0; segment < 4; segment++) {
+            for(int i = segment; i < 50; i += 2) {
+                String key = "key" + i;
+                if(i % 7 == segment) {
+                    store.put(key, null);
+                    expected.remove(key);
+                } else {
+                    store.put(key, "value" + i + "_" + segment);
+                    expected.put(key, "value" + i + "_" + segment);
+                }
+            }
+            store.flush();
+        }
+        assertEquals(4, store.numberOfSegments());
+
+        // unflushed changes are newest
+        store.put("key0", "fromLog");
+        expected.put("key0", "fromLog");
+        store.put("key1", null);
+        expected.remove("key1");
+
+        store.compact();
+        assertEquals(1, store.numberOfSegments());
+        assertEquals(expected, store.scan(""));
+        store.close();
+
+        store = new LogStore(FOLDER);
+        assertEquals(expected, store.scan(""));
+        store.close();
+    }
+
+    @Test
+    public void test_flushBySize() throws Exception {
+        LogStore store = new LogStore(FOLDER);
+        store.setFlushSize(100);
+
+        for(int i = 0; i < 20; i++) {
+            store.put("key" + i, "value" + i);
+        }
+
+        assertTrue(store.numberOfSegments() > 0);
+        assertTrue(new File(FOLDER, "log").length() < 100);
+
+        // unfinished segment is ignored
+        FileOutputStream fos = new FileOutputStream(new File(FOLDER, "segment_999999999999.tmp"));
+        fos.write(new byte[] {1, 2, 3});
+        fos.close();
+
+        store = new LogStore(FOLDER);
+        for(int i = 0; i < 20; i++) {
+            assertEquals("value" + i, store.get("key" + i));
+        }
+        store.close();
+    }
+}
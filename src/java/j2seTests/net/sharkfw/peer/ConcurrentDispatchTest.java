@@ -0,0 +1,138 @@
+package net.sharkfw.peer;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import net.sharkfw.kep.KEPMessage;
+import net.sharkfw.knowledgeBase.Knowledge;
+import net.sharkfw.knowledgeBase.SharkCS;
+import net.sharkfw.knowledgeBase.SharkKB;
+import net.sharkfw.knowledgeBase.inmemory.InMemoSharkKB;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ *
+ * @author thsc
+ */
+public class ConcurrentDispatchTest {
+
+    private static class BlockingKP extends KnowledgePort {
+        private final CountDownLatch entered = new CountDownLatch(1);
+        private final CountDownLatch release;
+        private final boolean threadSafe;
+        private int exposed = 0;
+
+        BlockingKP(SharkEngine se, SharkKB kb, CountDownLatch release, boolean threadSafe) {
+            super(se, kb);
+            this.release = release;
+            this.threadSafe = threadSafe;
+        }
+
+        @Override
+        public boolean isThreadSafe() {
+            return this.threadSafe;
+        }
+
+        @Override
+        protected void doInsert(Knowledge knowledge, KEPConnection kepConnection) {
+        }
+
+        @Override
+        protected void doExpose(SharkCS interest, KEPConnection kepConnection) {
+            synchronized(this) {
+                this.exposed++;
+            }
+            this.entered.countDown();
+            try {
+                this.release.await(5, TimeUnit.SECONDS);
+            } catch (InterruptedException ex) {
+                // go ahead
+            }
+        }
+
+        synchronized int getExposed() {
+            return this.exposed;
+        }
+    }
+
+    private Thread handleInBackground(final KnowledgePort kp, final SharkEngine se) {
+        Thread t = new Thread() {
+            @Override
+            public void run() {
+                kp.handleMessage(ConcurrentDispatchTest.this.createMessage(se));
+            }
+        };
+        t.start();
+        return t;
+    }
+
+    private KEPInMessage createMessage(SharkEngine se) {
+        return new KEPInMessage(se, KEPMessage.KEP_EXPOSE,
+                InMemoSharkKB.createInMemoInterest(), se.getKepStub());
+    }
+
+    @Test
+    public void test_slowKP_otherKBNotBlocked() throws Exception {
+        SharkEngine se = new J2SEAndroidSharkEngine();
+        CountDownLatch release = new CountDownLatch(1);
+
+        BlockingKP slowKP = new BlockingKP(se, new InMemoSharkKB(), release, false);
+        BlockingKP otherKP = new BlockingKP(se, new InMemoSharkKB(), new CountDownLatch(0), false);
+
+        Thread slow = this.handleInBackground(slowKP, se);
+        assertTrue(slowKP.entered.await(2, TimeUnit.SECONDS));
+
+        // not blocked by slow kp
+        Thread other = this.handleInBackground(otherKP, se);
+        other.join(2000);
+        assertFalse(other.isAlive());
+        assertEquals(1, otherKP.getExposed());
+
+        release.countDown();
+        slow.join(2000);
+    }
+
+    @Test
+    public void test_sameKB_serialized() throws Exception {
+        SharkEngine se = new J2SEAndroidSharkEngine();
+        CountDownLatch release = new CountDownLatch(1);
+        SharkKB kb = new InMemoSharkKB();
+
+        BlockingKP slowKP = new BlockingKP(se, kb, release, false);
+        BlockingKP otherKP = new BlockingKP(se, kb, new CountDownLatch(0), false);
+
+        Thread slow = this.handleInBackground(slowKP, se);
+        assertTrue(slowKP.entered.await(2, TimeUnit.SECONDS));
+
+        Thread other = this.handleInBackground(otherKP, se);
+        other.join(300);
+        assertEquals(0, otherKP.getExposed());
+
+        release.countDown();
+        other.join(2000);
+        assertEquals(1, otherKP.getExposed());
+        slow.join(2000);
+    }
+
+    @Test
+    public void test_threadSafeKP_concurrent() throws Exception {
+        SharkEngine se = new J2SEAndroidSharkEngine();
+        CountDownLatch release = new CountDownLatch(1);
+
+        BlockingKP kp = new BlockingKP(se, new InMemoSharkKB(), release, true);
+
+        Thread first = this.handleInBackground(kp, se);
+        Thread second = this.handleInBackground(kp, se);
+
+        // both messages are in doExpose at the same time
+        long deadline = System.currentTimeMillis() + 2000;
+        while(kp.getExposed() < 2 && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        assertEquals(2, kp.getExposed());
+
+        release.countDown();
+        first.join(2000);
+        second.join(2000);
+    }
+}
@@ -0,0 +1,77 @@
+package net.sharkfw.peer;
+
+import java.util.Arrays;
+import net.sharkfw.knowledgeBase.Information;
+import net.sharkfw.knowledgeBase.inmemory.InMemoInformation;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ *
+ * @author thsc
+ */
+public class DeliveryLedgerTest {
+
+    private Information createInformation(String content) {
+        Information info = new InMemoInformation();
+        info.setContent(content);
+        return info;
+    }
+
+    @Test
+    public void test_perPeer() throws Exception {
+        DeliveryLedger ledger = new DeliveryLedger();
+
+        ledger.delivered(this.createInformation("hello"), "tcp://alice.org:7070");
+        ledger.delivered(this.createInformation("hello"), "tcp://bob.org:7070");
+
+        // same content - other object, address case ignored
+        Information hello = this.createInformation("hello");
+        assertTrue(ledger.isDelivered(hello, "TCP://alice.org:7070"));
+        assertTrue(ledger.isDelivered(hello, "tcp://bob.org:7070"));
+        assertFalse(ledger.isDelivered(hello, "tcp://clara.org:7070"));
+        assertFalse(ledger.isDelivered(this.createInformation("world"), "tcp://alice.org:7070"));
+    }
+
+    @Test
+    public void test_bounded() throws Exception {
+        DeliveryLedger ledger = new DeliveryLedger(10, 2);
+
+        Information first = this.createInformation("first");
+        ledger.delivered(first, "alice");
+        for(int i = 0; i < 15; i++) {
+            ledger.delivered(this.createInformation("info " + i), "alice");
+        }
+        // still in previous generation
+        assertTrue(ledger.isDelivered(first, "alice"));
+
+        for(int i = 15; i < 25; i++) {
+            ledger.delivered(this.createInformation("info " + i), "alice");
+        }
+        assertFalse(ledger.isDelivered(first, "alice"));
+        assertTrue(ledger.isDelivered(this.createInformation("info 24"), "alice"));
+
+        // least recently used peer forgotten
+        ledger.delivered(first, "bob");
+        ledger.delivered(first, "clara");
+        assertEquals(2, ledger.numberOfPeers());
+        assertFalse(ledger.isDelivered(this.createInformation("info 24"), "alice"));
+    }
+
+    @Test
+    public void test_digestFollowsContent() throws Exception {
+        Information info = this.createInformation("hello");
+        byte[] digest = info.getContentDigest();
+        assertTrue(Arrays.equals(digest, this.createInformation("hello").getContentDigest()));
+
+        info.setContent("world");
+        assertFalse(Arrays.equals(digest, info.getContentDigest()));
+
+        // written by stream
+        digest = info.getContentDigest();
+        info.getOutputStream().write('!');
+        assertFalse(Arrays.equals(digest, info.getContentDigest()));
+        assertTrue(Arrays.equals(info.getContentDigest(),
+                this.createInformation("world!").getContentDigest()));
+    }
+}
@@ -0,0 +1,122 @@
+package net.sharkfw.peer;
+
+import net.sharkfw.kep.KEPMessage;
+import net.sharkfw.knowledgeBase.Knowledge;
+import net.sharkfw.knowledgeBase.STSet;
+import net.sharkfw.knowledgeBase.SharkCS;
+import net.sharkfw.knowledgeBase.SharkKB;
+import net.sharkfw.knowledgeBase.SharkKBException;
+import net.sharkfw.knowledgeBase.inmemory.InMemoSharkKB;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ *
+ * @author thsc
+ */
+public class InterestRoutingTest {
+
+    private static class CountingKP extends StandardKP {
+        private int exposed = 0;
+
+        CountingKP(SharkEngine se, SharkCS interest, SharkKB kb) {
+            super(se, interest, kb);
+            this.setTopicRouting(true);
+        }
+
+        @Override
+        protected void doInsert(Knowledge knowledge, KEPConnection kepConnection) {
+        }
+
+        @Override
+        protected void doExpose(SharkCS interest, KEPConnection kepConnection) {
+            this.exposed++;
+        }
+    }
+
+    private SharkCS createInterest(String si) throws SharkKBException {
+        STSet topics = InMemoSharkKB.createInMemoSTSet();
+        if(si != null) {
+            topics.createSemanticTag(si, si);
+        }
+
+        return InMemoSharkKB.createInMemoInterest(topics, null, null, null,
+                null, null, SharkCS.DIRECTION_INOUT);
+    }
+
+    private void expose(SharkEngine se, String si) throws SharkKBException {
+        KEPInMessage msg = new KEPInMessage(se, KEPMessage.KEP_EXPOSE,
+                this.createInterest(si), se.getKepStub());
+
+        se.getKepStub().handleMessage(msg);
+    }
+
+    @Test
+    public void test_onlyMatchingKPsCalled() throws Exception {
+        SharkEngine se = new J2SEAndroidSharkEngine();
+
+        CountingKP javaKP = new CountingKP(se, this.createInterest("http://java.com"), new InMemoSharkKB());
+        CountingKP sharkKP = new CountingKP(se, this.createInterest("http://sharkfw.net"), new InMemoSharkKB());
+        CountingKP anyKP = new CountingKP(se, this.createInterest(null), new InMemoSharkKB());
+
+        // sis are compared ignoring case
+        this.expose(se, "http://JAVA.com");
+        assertEquals(1, javaKP.exposed);
+        assertEquals(0, sharkKP.exposed);
+        assertEquals(1, anyKP.exposed);
+
+        // not offered but remembered
+        assertNotNull(sharkKP.receivedInterest);
+
+        // any topic - all KPs
+        this.expose(se, null);
+        assertEquals(2, javaKP.exposed);
+        assertEquals(1, sharkKP.exposed);
+        assertEquals(2, anyKP.exposed);
+
+        // unknown topic - any kp only
+        this.expose(se, "http://unknown.org");
+        assertEquals(2, javaKP.exposed);
+        assertEquals(1, sharkKP.exposed);
+        assertEquals(3, anyKP.exposed);
+    }
+
+    @Test
+    public void test_routingIsOptIn() throws Exception {
+        SharkEngine se = new J2SEAndroidSharkEngine();
+
+        CountingKP kp = new CountingKP(se, this.createInterest("http://sharkfw.net"), new InMemoSharkKB());
+        kp.setTopicRouting(false);
+
+        // overridden doExpose gets any interest
+        this.expose(se, "http://java.com");
+        assertEquals(1, kp.exposed);
+
+        kp.setTopicRouting(true);
+        this.expose(se, "http://java.com");
+        assertEquals(1, kp.exposed);
+    }
+
+    @Test
+    public void test_routingFollowsKB() throws Exception {
+        SharkEngine se = new J2SEAndroidSharkEngine();
+        SharkKB kb = new InMemoSharkKB();
+
+        CountingKP kp = new CountingKP(se, this.createInterest("http://sharkfw.net"), kb);
+
+        this.expose(se, "http://shark.org");
+        assertEquals(0, kp.exposed);
+
+        // kb knows another si of that topic - effective interest grows
+        kb.createSemanticTag("Shark", new String[] {"http://sharkfw.net", "http://shark.org"});
+
+        this.expose(se, "http://shark.org");
+        assertEquals(1, kp.exposed);
+
+        // withdrawn kp is not called at all
+        kp.stop();
+        this.expose(se, "http://shark.org");
+        this.expose(se, null);
+        assertEquals(1, kp.exposed);
+    }
+}
@@ -0,0 +1,158 @@
+package net.sharkfw.protocols.tcp;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import net.sharkfw.peer.J2SEAndroidSharkEngine;
+import net.sharkfw.protocols.MessageStub;
+import net.sharkfw.protocols.Protocols;
+import net.sharkfw.protocols.RequestHandler;
+import net.sharkfw.protocols.SelectableConnection;
+import net.sharkfw.protocols.StreamConnection;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ *
+ * @author thsc
+ */
+public class NIOTCPStreamStubTest {
+
+    /**
+     * Echoes five bytes - reads from connection within handleStream.
+     */
+    private static class EchoHandler implements RequestHandler {
+        volatile int calls = 0;
+
+        @Override
+        public void handleMessage(byte[] msg, MessageStub stub) { }
+
+        @Override
+        public void handleStream(StreamConnection con) {
+            this.calls++;
+            try {
+                byte[] b = readFully(con.getInputStream().getInputStream(), 5);
+                OutputStream os = con.getOutputStream().getOutputStream();
+                os.write(b);
+                os.flush();
+
+                // like a KEP session: don't wait for next message
+                ((SelectableConnection) con).idle();
+            } catch (IOException e) {
+                con.close();
+            }
+        }
+
+        @Override
+        public void handleNewConnectionStream(StreamConnection con) { }
+    }
+
+    private static byte[] readFully(InputStream is, int len) throws IOException {
+        byte[] b = new byte[len];
+        int read = 0;
+        while(read < len) {
+            int n = is.read(b, read, len - read);
+            if(n < 0) {
+                throw new IOException("connection closed");
+            }
+            read += n;
+        }
+
+        return b;
+    }
+
+    private int port(NIOTCPStreamStub stub) {
+        String address = stub.getLocalAddress();
+        return Integer.parseInt(address.substring(address.lastIndexOf(':') + 1));
+    }
+
+    @Test(timeout = 10000)
+    public void loopbackRoundTrip() throws IOException, InterruptedException {
+        NIOTCPStreamStub server = new NIOTCPStreamStub(new EchoHandler(),
+                Protocols.ARBITRARY_PORT);
+        server.start();
+
+        NIOTCPStreamStub client = new NIOTCPStreamStub(new EchoHandler(),
+                Protocols.ARBITRARY_PORT);
+
+        try {
+            StreamConnection con = client.createStreamConnection(
+                    "tcp://localhost:" + this.port(server));
+
+            // handler is already waiting for the rest
+            OutputStream os = con.getOutputStream().getOutputStream();
+            os.write("he".getBytes("UTF-8"));
+            os.flush();
+            Thread.sleep(200);
+            os.write("llo".getBytes("UTF-8"));
+            os.flush();
+
+            byte[] echo = readFully(con.getInputStream().getInputStream(), 5);
+            assertEquals("hello", new String(echo, "UTF-8"));
+
+            con.close();
+        }
+        finally {
+            server.stop();
+        }
+    }
+
+    @Test(timeout = 10000)
+    public void idleConnectionIsDispatchedAgain() throws IOException, InterruptedException {
+        EchoHandler handler = new EchoHandler();
+        NIOTCPStreamStub server = new NIOTCPStreamStub(handler,
+                Protocols.ARBITRARY_PORT);
+        server.start();
+
+        NIOTCPStreamStub client = new NIOTCPStreamStub(new EchoHandler(),
+                Protocols.ARBITRARY_PORT);
+
+        try {
+            StreamConnection con = client.createStreamConnection(
+                    "tcp://localhost:" + this.port(server));
+            OutputStream os = con.getOutputStream().getOutputStream();
+            InputStream is = con.getInputStream().getInputStream();
+
+            os.write("first".getBytes("UTF-8"));
+            os.flush();
+            assertEquals("first", new String(readFully(is, 5), "UTF-8"));
+
+            // handler returned - connection is idle
+            Thread.sleep(200);
+            os.write("again".getBytes("UTF-8"));
+            os.flush();
+            assertEquals("again", new String(readFully(is, 5), "UTF-8"));
+
+            // two messages at once: second one is handed over at once
+            os.write("threefour!".getBytes("UTF-8"));
+            os.flush();
+            assertEquals("three", new String(readFully(is, 5), "UTF-8"));
+            assertEquals("four!", new String(readFully(is, 5), "UTF-8"));
+
+            assertEquals(4, handler.calls);
+            con.close();
+        }
+        finally {
+            server.stop();
+        }
+    }
+
+    @Test
+    public void startTCPReplacesStub() throws Exception {
+        J2SEAndroidSharkEngine se = new J2SEAndroidSharkEngine();
+        try {
+            se.startTCP(7391);
+            assertTrue(se.getProtocolStub(Protocols.TCP) instanceof TCPStreamStub);
+
+            se.startTCP(7391, true);
+            assertTrue(se.getProtocolStub(Protocols.TCP) instanceof NIOTCPStreamStub);
+            assertTrue(se.tcpProtocolRunning());
+
+            se.startTCP(7391);
+            assertTrue(se.getProtocolStub(Protocols.TCP) instanceof TCPStreamStub);
+        }
+        finally {
+            se.stopTCP();
+        }
+    }
+}
@@ -0,0 +1,208 @@
+package net.sharkfw.system;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import net.sharkfw.knowledgeBase.FragmentationParameter;
+import net.sharkfw.knowledgeBase.PeerSemanticTag;
+import net.sharkfw.knowledgeBase.STSet;
+import net.sharkfw.knowledgeBase.SharkCS;
+import net.sharkfw.knowledgeBase.SharkCSAlgebra;
+import net.sharkfw.knowledgeBase.SharkKBException;
+import net.sharkfw.knowledgeBase.inmemory.InMemoSharkKB;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ *
+ * @author thsc
+ */
+public class InterestStoreTest {
+
+    private SharkCS createInterest(String originatorSI, int direction, String... topicSIs)
+            throws SharkKBException {
+
+        STSet topics = InMemoSharkKB.createInMemoSTSet();
+        for(int i = 0; i < topicSIs.length; i++) {
+            topics.createSemanticTag(topicSIs[i], topicSIs[i]);
+        }
+
+        PeerSemanticTag originator = null;
+        if(originatorSI != null) {
+            originator = InMemoSharkKB.createInMemoPeerSemanticTag(originatorSI,
+                    originatorSI, (String) null);
+        }
+
+        return InMemoSharkKB.createInMemoInterest(topics, originator, null, null,
+                null, null, direction);
+    }
+
+    private ArrayList<SharkCS> toList(Iterator<SharkCS> iter) {
+        ArrayList<SharkCS> list = new ArrayList<SharkCS>();
+        while(iter.hasNext()) {
+            list.add(iter.next());
+        }
+        return list;
+    }
+
+    @Test
+    public void test_candidates() throws Exception {
+        InterestStore store = new InterestStore();
+
+        SharkCS java = this.createInterest(null, SharkCS.DIRECTION_OUT, "http://java.com");
+        SharkCS shark = this.createInterest(null, SharkCS.DIRECTION_OUT, "http://sharkfw.net", "http://shark.org");
+        SharkCS any = this.createInterest(null, SharkCS.DIRECTION_OUT);
+        SharkCS bobsShark = this.createInterest("http://bob.org", SharkCS.DIRECTION_OUT, "http://shark.org");
+
+        store.addInterest(java);
+        store.addInterest(shark);
+        store.addInterest(any);
+        store.addInterest(bobsShark);
+
+        // case of sis is ignored - candidates in order of arrival
+        ArrayList<SharkCS> candidates = this.toList(store.getCandidates(
+                this.createInterest(null, SharkCS.DIRECTION_IN, "http://SHARK.org")));
+        assertEquals(3, candidates.size());
+        assertSame(shark, candidates.get(0));
+        assertSame(any, candidates.get(1));
+        assertSame(bobsShark, candidates.get(2));
+
+        // originator must fit
+        candidates = this.toList(store.getCandidates(
+                this.createInterest("http://alice.org", SharkCS.DIRECTION_IN, "http://shark.org")));
+        assertEquals(2, candidates.size());
+        assertFalse(candidates.contains(bobsShark));
+
+        // any topic
+        candidates = this.toList(store.getCandidates(
+                this.createInterest("http://bob.org", SharkCS.DIRECTION_IN)));
+        assertEquals(4, candidates.size());
+    }
+
+    @Test
+    public void test_candidates_containMutualInterests() throws Exception {
+        InterestStore store = new InterestStore();
+        String[] sis = {"http://a.org", "http://b.org", "http://c.org"};
+        String[] originators = {null, "http://alice.org", "http://bob.org"};
+
+        ArrayList<SharkCS> stored = new ArrayList<SharkCS>();
+        for(int o = 0; o < originators.length; o++) {
+            for(int i = 0; i < sis.length; i++) {
+                SharkCS interest = this.createInterest(originators[o], SharkCS.DIRECTION_OUT, sis[i]);
+                stored.add(interest);
+                store.addInterest(interest);
+            }
+            SharkCS interest = this.createInterest(originators[o], SharkCS.DIRECTION_OUT);
+            stored.add(interest);
+            store.addInterest(interest);
+        }
+
+        FragmentationParameter[] fps = new FragmentationParameter[SharkCS.MAXDIMENSIONS];
+        for(int i = 0; i < SharkCS.MAXDIMENSIONS; i++) {
+            fps[i] = new FragmentationParameter();
+        }
+
+        for(int o = 0; o < originators.length; o++) {
+            for(int i = 0; i < sis.length; i++) {
+                SharkCS received = this.createInterest(originators[o], SharkCS.DIRECTION_IN, sis[i]);
+                ArrayList<SharkCS> candidates = this.toList(store.getCandidates(received));
+
+                for(int s = 0; s < stored.size(); s++) {
+                    boolean mutual = SharkCSAlgebra.contextualize(stored.get(s), received, fps) != null;
+                    assertEquals(mutual, candidates.contains(stored.get(s)));
+                }
+            }
+        }
+    }
+
+    @Test
+    public void test_expiredInterestsRemoved() throws Exception {
+        InterestStore store = new InterestStore(50);
+
+        SharkCS old = this.createInterest(null, SharkCS.DIRECTION_OUT, "http://shark.org");
+        store.addInterest(old);
+
+        Thread.sleep(100);
+
+        SharkCS fresh = this.createInterest(null, SharkCS.DIRECTION_OUT, "http://shark.org");
+        store.addInterest(fresh);
+
+        ArrayList<SharkCS> candidates = this.toList(store.getCandidates(
+                this.createInterest(null, SharkCS.DIRECTION_IN, "http://shark.org")));
+        assertEquals(1, candidates.size());
+        assertSame(fresh, candidates.get(0));
+
+        assertEquals(1, this.toList(store.getInterests()).size());
+    }
+
+    @Test
+    public void test_since() throws Exception {
+        InterestStore store = new InterestStore();
+
+        SharkCS first = this.createInterest(null, SharkCS.DIRECTION_OUT, "http://a.org");
+        store.addInterest(first);
+
+        Thread.sleep(20);
+        long since = System.currentTimeMillis();
+
+        SharkCS second = this.createInterest(null, SharkCS.DIRECTION_OUT, "http://b.org");
+        store.addInterest(second);
+
+        ArrayList<SharkCS> interests = this.toList(store.getInterests(since));
+        assertEquals(1, interests.size());
+        assertSame(second, interests.get(0));
+
+        assertEquals(2, this.toList(store.getInterests()).size());
+        assertEquals(0, this.toList(store.getInterests(System.currentTimeMillis() + 1000)).size());
+    }
+
+    @Test
+    public void test_limits() throws Exception {
+        InterestStore store = new InterestStore();
+        store.setMaxMessages(2);
+
+        SharkCS a = this.createInterest(null, SharkCS.DIRECTION_OUT, "http://a.org");
+        SharkCS b = this.createInterest(null, SharkCS.DIRECTION_OUT, "http://b.org");
+        SharkCS c = this.createInterest(null, SharkCS.DIRECTION_OUT, "http://c.org");
+        store.addInterest(a);
+        store.addInterest(b);
+        store.addInterest(c);
+
+        // oldest dropped - also from index
+        ArrayList<SharkCS> interests = this.toList(store.getInterests());
+        assertEquals(2, interests.size());
+        assertSame(b, interests.get(0));
+        assertFalse(store.getCandidates(
+                this.createInterest(null, SharkCS.DIRECTION_IN, "http://a.org")).hasNext());
+
+        // bytes
+        store.setMaxMessages(Integer.MAX_VALUE);
+        int length = store.serializeMessage(c).length();
+        store.setMaxBytes(length + length / 2);
+        assertEquals(1, store.size());
+        assertSame(c, store.getInterests().next());
+    }
+
+    @Test
+    public void test_serializeRestore() throws Exception {
+        InterestStore store = new InterestStore();
+        store.addInterest(this.createInterest(null, SharkCS.DIRECTION_OUT, "http://a.org"));
+        store.addInterest(this.createInterest("http://bob.org", SharkCS.DIRECTION_OUT, "http://b.org"));
+
+        InterestStore restored = new InterestStore();
+        restored.addInterest(this.createInterest(null, SharkCS.DIRECTION_OUT, "http://dropped.org"));
+        restored.restore(store.serialize());
+
+        assertEquals(2, restored.size());
+        assertFalse(restored.getCandidates(
+                this.createInterest(null, SharkCS.DIRECTION_IN, "http://dropped.org")).hasNext());
+
+        // index rebuilt
+        ArrayList<SharkCS> candidates = this.toList(restored.getCandidates(
+                this.createInterest(null, SharkCS.DIRECTION_IN, "http://b.org")));
+        assertEquals(1, candidates.size());
+        assertEquals("http://bob.org", candidates.get(0).getOriginator().getSI()[0]);
+
+        // same serialization again
+        assertEquals(store.serialize(), restored.serialize());
+    }
+}
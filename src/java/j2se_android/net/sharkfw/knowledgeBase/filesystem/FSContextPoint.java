@@ -78,7 +78,11 @@ public class FSContextPoint extends InMemoContextPoint {
         } catch (SharkKBException e) {
         }
         
-        info.streamContent(writeAccess);
+        try {
+            info.streamContent(writeAccess);
+        } catch (IOException ex) {
+            L.w("cannot copy information content: " + ex.getMessage(), this);
+        }
 
         try {
             // close stream
@@ -117,6 +121,7 @@ public class FSContextPoint extends InMemoContextPoint {
         this.infoFolder.remove(fsinfo.getPath());
         if (this.information.isEmpty()){
             File file = new File(getCPFildername() + "/.sharkfw_st_systemProperties");
+            FSPropertyWriter.discard(file.getPath());
             file.delete();
         } else {
             this.persist();
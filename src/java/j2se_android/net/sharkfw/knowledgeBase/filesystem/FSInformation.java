@@ -10,13 +10,17 @@ import java.io.OutputStream;
 import java.io.PrintStream;
 import java.nio.channels.FileChannel;
 import java.nio.channels.FileLock;
+import java.nio.channels.Channels;
 import java.nio.channels.NonReadableChannelException;
+import java.nio.channels.ReadableByteChannel;
+import java.security.MessageDigest;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
 import net.sharkfw.system.TimeLong;
 import net.sharkfw.knowledgeBase.SharkKBException;
 import net.sharkfw.knowledgeBase.inmemory.InMemoInformation;
+import net.sharkfw.protocols.TransferTarget;
 import net.sharkfw.system.L;
 
 /**
@@ -175,32 +179,37 @@ public class FSInformation extends InMemoInformation {
         }
     }
     
-    private static final int MAX_BUFFER_LEN = 1024*100; // 100 kByte
-    
+    /**
+     * Content is read from a channel into the file. Bytes are moved by
+     * the kernel if the stream is a file stream.
+     * 
+     * @param is
+     * @param len 
+     */
     @Override
     public void setContent(InputStream is, long len) {
-        byte[] buffer = null;
-        int index = 0;
-        
         FileOutputStream fos;
         try {
             fos = new FileOutputStream(this.contentFile);
-			lockFile(fos.getChannel(), true);
+            FileChannel target = fos.getChannel();
+			lockFile(target, true);
             
-            while(len > 0) {
-                int byte2write = (int) (len > MAX_BUFFER_LEN ? MAX_BUFFER_LEN : len);
-                if(buffer == null) {
-                    buffer = new byte[byte2write];
+            ReadableByteChannel source;
+            if(is instanceof FileInputStream) {
+                source = ((FileInputStream) is).getChannel();
+            } else {
+                source = Channels.newChannel(is);
+            }
+            
+            long position = 0;
+            while(position < len) {
+                long n = target.transferFrom(source, position, len - position);
+                if(n <= 0) {
+                    break; // end of stream
                 }
-
-                // fill buffer
-                int bytesRead = is.read(buffer);
-
-                // write to content
-                fos.write(buffer, 0, bytesRead);
-                
-                len -= bytesRead;
+                position += n;
             }
+            
 			unlockFile();
             fos.close();
             
@@ -224,22 +233,48 @@ public class FSInformation extends InMemoInformation {
 		}
     }
     
+    private static final int COPY_BUFFER_LEN = 1024*8;
+    
+    /**
+     * Content is handed directly to streams which can take a file channel
+     * (see TransferTarget). It is copied through a buffer otherwise.
+     * 
+     * @param os 
+     * @throws IOException content couldn't be written completely, e.g. 
+     * transfer timed out
+     */
     @Override
-    public void streamContent(OutputStream os) {
-        FileInputStream fis;
+    public void streamContent(OutputStream os) throws IOException {
+        if(!this.contentFile.exists()) {
+            return; // no content
+        }
+        
+        FileInputStream fis = new FileInputStream(this.contentFile);
         try {
-            fis = new FileInputStream(this.contentFile);
-			lockFile(fis.getChannel(), false);	
-            int b = fis.read();
-            while(b != -1) {
-                os.write(b);
-                b = fis.read();
+            FileChannel source = fis.getChannel();
+			lockFile(source, false);	
+            try {
+                if(os instanceof TransferTarget) {
+                    ((TransferTarget) os).transferFrom(source, 0, source.size());
+                } else {
+                    byte[] buffer = new byte[COPY_BUFFER_LEN];
+                    int read = fis.read(buffer);
+                    while(read != -1) {
+                        os.write(buffer, 0, read);
+                        read = fis.read(buffer);
+                    }
+                }
+            }
+            finally {
+                unlockFile();
+            }
+        }
+        finally {
+            try {
+                fis.close();
+            } catch (IOException ex) {
+                // nothing to do
             }
-			unlockFile();
-            fis.close();
-        } catch (Exception ex) {
-            L.l("streamContent(): couldn't read information from file (might be ok - no content)" + ex.getMessage(), this);
-			ex.printStackTrace();
         }
 //        finally {
 //            try {
@@ -250,6 +285,45 @@ public class FSInformation extends InMemoInformation {
 //        }
     }
     
+    /**
+     * Content file is read in chunks - it isn't copied into memory.
+     * @param md 
+     */
+    @Override
+    protected void digestContent(MessageDigest md) {
+        if(!this.contentFile.exists()) {
+            return; // no content
+        }
+        
+        FileInputStream fis = null;
+        try {
+            fis = new FileInputStream(this.contentFile);
+			lockFile(fis.getChannel(), false);
+            try {
+                byte[] buffer = new byte[COPY_BUFFER_LEN];
+                int read = fis.read(buffer);
+                while(read != -1) {
+                    md.update(buffer, 0, read);
+                    read = fis.read(buffer);
+                }
+            }
+            finally {
+                unlockFile();
+            }
+        } catch (IOException ex) {
+            L.e("digestContent(): couldn't read information from file: " + ex.getMessage(), this);
+        }
+        finally {
+            if(fis != null) {
+                try {
+                    fis.close();
+                } catch (IOException ex) {
+                    // nothing to do
+                }
+            }
+        }
+    }
+    
     /**
      * Handle with care - this creates a byte array and copies any byte 
      * into that array. Might be huge.
@@ -3,12 +3,9 @@ package net.sharkfw.knowledgeBase.filesystem;
 import java.io.BufferedReader;
 import java.io.File;
 import java.io.FileNotFoundException;
-import java.io.FileOutputStream;
 import java.io.FileReader;
 import java.io.IOException;
-import java.io.PrintStream;
 import java.util.HashMap;
-import java.util.Iterator;
 import java.util.StringTokenizer;
 import net.sharkfw.knowledgeBase.SharkKBException;
 import net.sharkfw.knowledgeBase.inmemory.InMemoPropertyHolder;
@@ -112,37 +109,20 @@ public class FSPropertyHolder extends InMemoPropertyHolder {
     
     public static final String DELIMITER = ":\t";
     
+    /**
+     * Properties are written immediately or later on - depending on
+     * durability mode (see FSSharkKB.setDurability).
+     */
     static void persistToFile(HashMap<String,String> properties, String filename) throws FileNotFoundException, IOException {
-        if(properties == null || properties.size() < 1) { 
-            // remove file
-            File f = new File(filename);
-            f.delete();
-            return; 
-        }
-        
-        // open File
-        FileOutputStream fos = new FileOutputStream(filename);
-        PrintStream ps = new PrintStream(fos);
-        
-        Iterator<String> nameIter = properties.keySet().iterator();
-     
-        while(nameIter.hasNext()) {
-            String name = nameIter.next();
-            
-            String value = properties.get(name);
-
-            // write properties
-            ps.print(name);
-            ps.print(DELIMITER);
-            ps.println(value);
-        }
-        
-        fos.close();
+        FSPropertyWriter.write(properties, filename);
     }
     
     static void restoreFromFile(HashMap<String,String> properties, String filename) 
             throws SharkKBException {
         
+        // pending changes first
+        FSPropertyWriter.flush(filename);
+        
         try {
             FileReader fr = new FileReader(filename);
             BufferedReader reader = new BufferedReader(fr);
@@ -201,6 +181,10 @@ public class FSPropertyHolder extends InMemoPropertyHolder {
     }
 
     void remove() {
+        FSPropertyWriter.discard(this.getHiddenPropertyFilename());
+        FSPropertyWriter.discard(this.getPropertyFilename());
+        FSPropertyWriter.discard(this.getSystemPropertyFilename());
+        
         File f = new File(this.getHiddenPropertyFilename());
         f.delete();
         f = new File(this.getPropertyFilename());
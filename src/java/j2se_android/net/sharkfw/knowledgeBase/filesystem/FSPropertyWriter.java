@@ -0,0 +1,203 @@
+package net.sharkfw.knowledgeBase.filesystem;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import net.sharkfw.system.L;
+
+/**
+ * Writes property files of FS property holders and tag sets. Each file
+ * used to be rewritten whenever a single property changed. Depending on
+ * durability mode, a copy of changed properties is kept instead and
+ * written later on - a file changed a thousand times is written once.
+ *
+ * Files are flushed before they are read. Pending writes of removed
+ * folders are dropped.
+ *
+ * @author thsc
+ */
+class FSPropertyWriter {
+    private static int durability = FSSharkKB.DURABILITY_SYNC;
+    private static long groupCommitInterval = FSSharkKB.DEFAULT_GROUP_COMMIT_INTERVAL;
+
+    // filename -> properties to be written, insertion ordered
+    private static final LinkedHashMap<String, HashMap<String,String>> pending =
+            new LinkedHashMap<String, HashMap<String,String>>();
+
+    private static ScheduledExecutorService flusher = null;
+    private static ScheduledFuture<?> groupCommit = null;
+    private static boolean shutdownHookAdded = false;
+
+    static synchronized void setDurability(int mode, long interval) {
+        // keep what was written so far
+        FSPropertyWriter.flush();
+
+        FSPropertyWriter.durability = mode;
+        FSPropertyWriter.groupCommitInterval = interval;
+
+        if(FSPropertyWriter.groupCommit != null) {
+            FSPropertyWriter.groupCommit.cancel(false);
+            FSPropertyWriter.groupCommit = null;
+        }
+
+        if(mode != FSSharkKB.DURABILITY_SYNC && !FSPropertyWriter.shutdownHookAdded) {
+            // don't lose pending writes when vm ends
+            Runtime.getRuntime().addShutdownHook(new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    FSPropertyWriter.flush();
+                }
+            }, "FSPropertyWriter-shutdown"));
+            FSPropertyWriter.shutdownHookAdded = true;
+        }
+
+        if(mode == FSSharkKB.DURABILITY_GROUP_COMMIT) {
+            if(FSPropertyWriter.flusher == null) {
+                FSPropertyWriter.flusher = new ScheduledThreadPoolExecutor(1, new ThreadFactory() {
+                    @Override
+                    public Thread newThread(Runnable r) {
+                        Thread t = new Thread(r, "FSPropertyWriter");
+                        t.setDaemon(true);
+                        return t;
+                    }
+                });
+            }
+
+            FSPropertyWriter.groupCommit = FSPropertyWriter.flusher.scheduleWithFixedDelay(
+                new Runnable() {
+                    @Override
+                    public void run() {
+                        FSPropertyWriter.flush();
+                    }
+                }, interval, interval, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    static synchronized int getDurability() {
+        return FSPropertyWriter.durability;
+    }
+
+    static synchronized long getGroupCommitInterval() {
+        return FSPropertyWriter.groupCommitInterval;
+    }
+
+    /**
+     * Writes properties into file or remembers them to be written later.
+     * Empty properties remove that file.
+     */
+    static synchronized void write(HashMap<String,String> properties, String filename)
+            throws IOException {
+
+        if(FSPropertyWriter.durability == FSSharkKB.DURABILITY_SYNC) {
+            FSPropertyWriter.writeFile(properties, filename);
+            return;
+        }
+
+        // copy - holder changes its properties in another thread
+        HashMap<String,String> copy = properties == null ?
+                new HashMap<String,String>() : new HashMap<String,String>(properties);
+
+        FSPropertyWriter.pending.put(filename, copy);
+    }
+
+    /**
+     * Writes pending properties of that file.
+     */
+    static synchronized void flush(String filename) {
+        HashMap<String,String> properties = FSPropertyWriter.pending.remove(filename);
+        if(properties == null) {
+            return;
+        }
+
+        try {
+            FSPropertyWriter.writeFile(properties, filename);
+        } catch (IOException ex) {
+            L.w("cannot write property file " + filename + ": " + ex.getMessage(), null);
+        }
+    }
+
+    /**
+     * Writes all pending properties.
+     * @return number of written files
+     */
+    static synchronized int flush() {
+        int written = 0;
+        Iterator<Map.Entry<String, HashMap<String,String>>> entryIter =
+                FSPropertyWriter.pending.entrySet().iterator();
+
+        while(entryIter.hasNext()) {
+            Map.Entry<String, HashMap<String,String>> entry = entryIter.next();
+            entryIter.remove();
+
+            try {
+                FSPropertyWriter.writeFile(entry.getValue(), entry.getKey());
+                written++;
+            } catch (IOException ex) {
+                L.w("cannot write property file " + entry.getKey() + ": " + ex.getMessage(), null);
+            }
+        }
+
+        return written;
+    }
+
+    /**
+     * Drops pending writes of files in that folder and its sub folders.
+     */
+    static synchronized void discard(String foldername) {
+        String folderPath = new File(foldername).getAbsolutePath();
+
+        Iterator<String> filenameIter = FSPropertyWriter.pending.keySet().iterator();
+        while(filenameIter.hasNext()) {
+            String filePath = new File(filenameIter.next()).getAbsolutePath();
+            if(filePath.equals(folderPath)
+                    || filePath.startsWith(folderPath + File.separator)) {
+                filenameIter.remove();
+            }
+        }
+    }
+
+    static synchronized int numberOfPendingFiles() {
+        return FSPropertyWriter.pending.size();
+    }
+
+    private static void writeFile(HashMap<String,String> properties, String filename)
+            throws IOException {
+
+        if(properties == null || properties.size() < 1) {
+            // remove file
+            File f = new File(filename);
+            f.delete();
+            return;
+        }
+
+        // open File
+        FileOutputStream fos = new FileOutputStream(filename);
+        PrintStream ps = new PrintStream(fos);
+
+        Iterator<String> nameIter = properties.keySet().iterator();
+
+        while(nameIter.hasNext()) {
+            String name = nameIter.next();
+
+            String value = properties.get(name);
+
+            // write properties
+            ps.print(name);
+            ps.print(FSPropertyHolder.DELIMITER);
+            ps.println(value);
+        }
+
+        ps.flush();
+        fos.close();
+    }
+}
@@ -26,6 +26,15 @@ public class FSSharkKB extends InMemoSharkKB implements SharkKB {
     public static final String TIMES_FOLDER = "/times";
     public static final String KNOWLEDGE_FOLDER = "/knowledge";
     
+    /** property files are written with each change (default) */
+    public static final int DURABILITY_SYNC = 0;
+    /** changed property files are written periodically */
+    public static final int DURABILITY_GROUP_COMMIT = 1;
+    /** changed property files are written with flush() or close() */
+    public static final int DURABILITY_ON_CLOSE = 2;
+    
+    public static final long DEFAULT_GROUP_COMMIT_INTERVAL = 500; // ms
+    
     private static String chosenName = null;
     private static String uniqueFileName(String proposedName) {
         if(chosenName == null) {
@@ -100,6 +109,9 @@ public class FSSharkKB extends InMemoSharkKB implements SharkKB {
      * @param folderName 
      */
     public static void removeFSStorage(String folderName) {
+        // don't write into removed folder later on
+        FSPropertyWriter.discard(folderName);
+        
         File folder = new File(folderName);
         
         try {
@@ -153,6 +165,43 @@ public class FSSharkKB extends InMemoSharkKB implements SharkKB {
         return this.fsk.createContextPoint(coordinates);
     }
     
+    /**
+     * Defines when changed properties are written. Bulk operations
+     * (e.g. merging a received vocabulary) change a property file over
+     * and over again. It is written once with group commit or on close.
+     * Changes are lost if the process crashes before they are written.
+     * Setting applies to all fs knowledge bases.
+     * 
+     * @param mode DURABILITY_SYNC, DURABILITY_GROUP_COMMIT or DURABILITY_ON_CLOSE
+     * @param groupCommitInterval ms between writes with group commit
+     */
+    public static void setDurability(int mode, long groupCommitInterval) {
+        FSPropertyWriter.setDurability(mode, groupCommitInterval);
+    }
+    
+    public static void setDurability(int mode) {
+        FSSharkKB.setDurability(mode, DEFAULT_GROUP_COMMIT_INTERVAL);
+    }
+    
+    public static int getDurability() {
+        return FSPropertyWriter.getDurability();
+    }
+    
+    /**
+     * Writes any pending property change. Files are written after
+     * that method returns.
+     */
+    public void flush() {
+        FSPropertyWriter.flush();
+    }
+    
+    /**
+     * Writes pending changes. Knowledge base can be used nevertheless.
+     */
+    public void close() {
+        this.flush();
+    }
+    
     public String getFoldername() {
         return this.rootFolder;
     }
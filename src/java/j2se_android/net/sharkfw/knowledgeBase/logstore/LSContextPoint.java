@@ -0,0 +1,193 @@
+package net.sharkfw.knowledgeBase.logstore;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Iterator;
+import net.sharkfw.kep.format.XMLSerializer;
+import net.sharkfw.knowledgeBase.ContextCoordinates;
+import net.sharkfw.knowledgeBase.Information;
+import net.sharkfw.knowledgeBase.SharkKBException;
+import net.sharkfw.knowledgeBase.inmemory.InMemoContextPoint;
+import net.sharkfw.knowledgeBase.inmemory.InMemoSharkKB;
+import net.sharkfw.system.L;
+import net.sharkfw.system.Util;
+
+/**
+ * Context point in a log store. Information are listed by entries
+ * of their own - adding information doesn't rewrite a list.
+ *
+ * @author thsc
+ */
+public class LSContextPoint extends InMemoContextPoint {
+    private static final String INFO_KEY_PREFIX = "i|";
+
+    public static final String CP_COORDINATE = "coordinates";
+
+    private final LogStore store;
+    private final File contentFolder;
+
+    LSContextPoint(ContextCoordinates coordinates, LSPropertyHolder lsph,
+            LogStore store, File contentFolder) {
+        super(coordinates);
+
+        this.store = store;
+        this.contentFolder = contentFolder;
+        this.setPropertyHolder(lsph);
+    }
+
+    LSContextPoint(LSPropertyHolder lsph, LogStore store, File contentFolder) {
+        super(lsph);
+
+        this.store = store;
+        this.contentFolder = contentFolder;
+    }
+
+    private LSPropertyHolder getLSPropertyHolder() {
+        return (LSPropertyHolder) this.getPropertyHolder();
+    }
+
+    private String getInfoKeyPrefix() {
+        return INFO_KEY_PREFIX + this.getLSPropertyHolder().getId() + "|";
+    }
+
+    @Override
+    public LSInformation addInformation() {
+        LSPropertyHolder infoPh = LSPropertyHolder.create(this.store);
+
+        LSInformation newInfo = null;
+        try {
+            newInfo = new LSInformation(infoPh, this.contentFolder);
+            this.store.put(this.getInfoKeyPrefix() + infoPh.getId(), "");
+        } catch (SharkKBException ex) {
+            L.w("couldn't create information: " + ex.getMessage(), this);
+        } catch (IOException ex) {
+            L.w("couldn't write information to log store: " + ex.getMessage(), this);
+        }
+
+        super.putInformation(newInfo);
+
+        return newInfo;
+    }
+
+    /**
+     * make a copy in this log store
+     * @param info
+     */
+    @Override
+    public void addInformation(Information info){
+        LSInformation infoCopy = this.addInformation();
+
+        Util.copyPropertiesFromPropertyHolderToPropertyHolder(info, infoCopy);
+
+        try {
+            OutputStream writeAccess = infoCopy.getOutputStream();
+            info.streamContent(writeAccess);
+            writeAccess.close();
+        } catch (SharkKBException ex) {
+            L.w("cannot copy information content: " + ex.getMessage(), this);
+        } catch (IOException ex) {
+            L.w("cannot copy information content: " + ex.getMessage(), this);
+        }
+
+        try {
+            infoCopy.setName(info.getName());
+        } catch (SharkKBException ex) {
+            // name was already checked in original information
+        }
+
+        infoCopy.setContentType(info.getContentType());
+    }
+
+    @Override
+    public void removeInformation(Information info) {
+        super.removeInformation(info);
+
+        if(info instanceof LSInformation) {
+            LSInformation lsinfo = (LSInformation) info;
+            lsinfo.remove();
+
+            try {
+                this.store.put(this.getInfoKeyPrefix()
+                        + lsinfo.getLSPropertyHolder().getId(), null);
+            } catch (IOException ex) {
+                L.w("couldn't remove information from log store: " + ex.getMessage(), this);
+            }
+        }
+    }
+
+    /**
+     * Removes any information and properties of this context point.
+     */
+    void remove() {
+        Iterator<Information> infoIter = this.getInformation();
+        while(infoIter.hasNext()) {
+            Information info = infoIter.next();
+            if(info instanceof LSInformation) {
+                ((LSInformation) info).remove();
+            }
+        }
+
+        try {
+            this.store.removePrefix(this.getInfoKeyPrefix());
+        } catch (IOException ex) {
+            L.w("couldn't remove information from log store: " + ex.getMessage(), this);
+        }
+
+        this.getLSPropertyHolder().remove();
+    }
+
+    ///////////////////////////////////////////////////////////////
+    //                       persistency                         //
+    ///////////////////////////////////////////////////////////////
+
+    /**
+     * write coordinates into system properties
+     */
+    @Override
+    public void persist() {
+        super.persist();
+
+        XMLSerializer xs = new XMLSerializer();
+        try {
+            String cooString = xs.serializeSharkCS(this.getContextCoordinates());
+            this.setSystemProperty(CP_COORDINATE, cooString);
+        } catch (SharkKBException ex) {
+            L.w(ex.getMessage(), this);
+        }
+    }
+
+    @Override
+    public void refreshStatus() {
+        super.refreshStatus();
+
+        // refresh coordinates from system
+        String cooString = this.getSystemProperty(CP_COORDINATE);
+
+        XMLSerializer xs = new XMLSerializer();
+        try {
+            // create in memory copy and use it
+            this.setContextCoordinates(xs.deserializeContextCoordinates(new InMemoSharkKB(), cooString));
+        } catch (SharkKBException ex) {
+            L.w("cannot deserialize context coordinates from log store: " + ex.getMessage(), this);
+        }
+
+        // recreate information
+        try {
+            String prefix = this.getInfoKeyPrefix();
+            Iterator<String> keyIter = this.store.scan(prefix).keySet().iterator();
+            while(keyIter.hasNext()) {
+                String infoId = keyIter.next().substring(prefix.length());
+
+                LSInformation lsInfo = new LSInformation(
+                        new LSPropertyHolder(this.store, infoId), this.contentFolder);
+
+                super.putInformation(lsInfo);
+            }
+        } catch (IOException ex) {
+            L.w("cannot read information from log store: " + ex.getMessage(), this);
+        } catch (SharkKBException ex) {
+            L.w("cannot read information from log store: " + ex.getMessage(), this);
+        }
+    }
+}
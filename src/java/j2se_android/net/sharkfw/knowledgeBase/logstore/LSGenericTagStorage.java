@@ -0,0 +1,240 @@
+package net.sharkfw.knowledgeBase.logstore;
+
+import java.io.IOException;
+import java.util.Enumeration;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import net.sharkfw.knowledgeBase.AbstractSemanticTag;
+import net.sharkfw.knowledgeBase.PropertyHolderDelegate;
+import net.sharkfw.knowledgeBase.SemanticTag;
+import net.sharkfw.knowledgeBase.SharkKBException;
+import net.sharkfw.knowledgeBase.SystemPropertyHolder;
+import net.sharkfw.knowledgeBase.inmemory.InMemoGenericTagStorage;
+import net.sharkfw.knowledgeBase.inmemory.InMemoSemanticTag;
+import net.sharkfw.knowledgeBase.inmemory.InMemoSpatialSemanticTag;
+import net.sharkfw.knowledgeBase.inmemory.InMemoTimeSemanticTag;
+import net.sharkfw.knowledgeBase.inmemory.InMemo_SN_TX_PeerSemanticTag;
+import net.sharkfw.knowledgeBase.inmemory.InMemo_SN_TX_SemanticTag;
+import net.sharkfw.system.L;
+
+/**
+ * Tag storage in a log store. Each tag has a property holder of its own.
+ * Tags are read when first asked for, see FSGenericTagStorage.
+ *
+ * @author thsc
+ */
+public class LSGenericTagStorage<ST extends SemanticTag> extends
+        InMemoGenericTagStorage<ST> {
+
+    private static final String KEY_PREFIX = "t|";
+
+    private final LogStore store;
+    private final String name;
+    private final HashMap<String, String> si2holderId = new HashMap<String, String>();
+
+    LSGenericTagStorage(LogStore store, String name) {
+        this.store = store;
+        this.name = name;
+
+        try {
+            // already data there?
+            Iterator<Map.Entry<String, String>> entryIter =
+                    this.store.scan(this.getKeyPrefix()).entrySet().iterator();
+
+            int prefixLength = this.getKeyPrefix().length();
+            while(entryIter.hasNext()) {
+                Map.Entry<String, String> entry = entryIter.next();
+                this.si2holderId.put(entry.getKey().substring(prefixLength), entry.getValue());
+            }
+        } catch (IOException ex) {
+            L.w("cannot read tag set from log store: " + ex.getMessage(), this);
+        }
+    }
+
+    public String getName() {
+        return this.name;
+    }
+
+    private String getKeyPrefix() {
+        return KEY_PREFIX + this.name + "|";
+    }
+
+    private void writeMapping(String si, String holderId) {
+        try {
+            this.store.put(this.getKeyPrefix() + si, holderId);
+        } catch (IOException ex) {
+            L.w("cannot write tag set to log store: " + ex.getMessage(), this);
+        }
+    }
+
+    @Override
+    public void add(ST tag) throws SharkKBException {
+        super.add(tag);
+
+        String[] sis = tag.getSI();
+        if(sis == null) {
+            // makes no sense persisting a tag that cannot be retrieved
+            return;
+        }
+
+        try {
+            PropertyHolderDelegate pTag = (PropertyHolderDelegate) tag;
+
+            LSPropertyHolder lsph = LSPropertyHolder.create(this.store);
+
+            // add to tag
+            pTag.setPropertyHolder(lsph);
+
+            // persist tag - at least system properties are present
+            pTag.persist();
+
+            // remember si -> holder mapping
+            for(int i = 0; i < sis.length; i++) {
+                this.si2holderId.put(sis[i], lsph.getId());
+                this.writeMapping(sis[i], lsph.getId());
+            }
+        }
+        catch(Exception e) {
+            L.w("problem while creating property holder: " + e.getMessage(), this);
+        }
+    }
+
+    @Override
+    public void removeSemanticTag(ST tag) {
+        ST tag2Remove = null;
+        try {
+            // maybe that tag is just the identical object - take it from this storage
+            tag2Remove = this.getSemanticTag(tag.getSI());
+        } catch (SharkKBException ex) {
+            // nothing to delete
+            return;
+        }
+
+        super.removeSemanticTag(tag2Remove);
+
+        try {
+            PropertyHolderDelegate pTag = (PropertyHolderDelegate) tag2Remove;
+
+            SystemPropertyHolder ph = pTag.getPropertyHolder();
+
+            if(ph instanceof LSPropertyHolder) {
+                ((LSPropertyHolder) ph).remove();
+
+                String[] sis = tag2Remove.getSI();
+                if(sis == null || sis.length == 0) { return; }
+
+                for(int i = 0; i < sis.length; i++) {
+                    this.si2holderId.remove(sis[i]);
+                    this.writeMapping(sis[i], null);
+                }
+            }
+        }
+        catch(Exception e) {
+            L.w("problem while removing property holder: " + e.getMessage(), this);
+        }
+    }
+
+    @Override
+    public ST getSemanticTag(String si) throws SharkKBException {
+        // already in memory ?
+        ST tag = super.getSemanticTag(si);
+
+        if(tag != null) {
+            return tag;
+        }
+
+        String holderId = this.si2holderId.get(si);
+        if(holderId != null) {
+            tag = this.restoreSemanticTag(holderId);
+            super.put(tag);
+            return tag;
+        }
+
+        return null;
+    }
+
+    @Override
+    public void siAdded(String addSI, ST tag) {
+        if(addSI == null) { return; }
+
+        super.siAdded(addSI, tag);
+
+        if(tag instanceof AbstractSemanticTag) {
+            SystemPropertyHolder propertyHolder = ((AbstractSemanticTag) tag).getPropertyHolder();
+
+            if(propertyHolder instanceof LSPropertyHolder) {
+                String holderId = ((LSPropertyHolder) propertyHolder).getId();
+                this.si2holderId.put(addSI, holderId);
+                this.writeMapping(addSI, holderId);
+            }
+        }
+    }
+
+    @Override
+    public void siRemoved(String deleteSI, ST tag) {
+        if(deleteSI == null) { return; }
+
+        super.siRemoved(deleteSI, tag);
+
+        this.si2holderId.remove(deleteSI);
+        this.writeMapping(deleteSI, null);
+    }
+
+    private ST restoreSemanticTag(String holderId) throws SharkKBException {
+        LSPropertyHolder lsph = new LSPropertyHolder(this.store, holderId);
+        lsph.restore();
+
+        // check ST type..
+        String className = lsph.getSystemProperty(AbstractSemanticTag.TYPE_SYSTEM_PROPERTY_NAME);
+        if(className == null) {
+            className = AbstractSemanticTag.PLAIN_ST;
+        }
+
+        AbstractSemanticTag tag;
+
+        if(className.equalsIgnoreCase(AbstractSemanticTag.SN_TX_PST)) {
+            tag = new InMemo_SN_TX_PeerSemanticTag(lsph, this);
+        }
+        else if(className.equalsIgnoreCase(AbstractSemanticTag.SN_TX_ST)) {
+            tag = new InMemo_SN_TX_SemanticTag(lsph, this);
+        }
+        else if(className.equalsIgnoreCase(AbstractSemanticTag.SPATIAL_ST)) {
+            tag = new InMemoSpatialSemanticTag(lsph, this);
+        }
+        else if(className.equalsIgnoreCase(AbstractSemanticTag.TIME_ST)) {
+            tag = new InMemoTimeSemanticTag(lsph, this);
+        }
+        else {
+            tag = new InMemoSemanticTag(lsph);
+        }
+
+        tag.refreshStatus();
+
+        return (ST)tag;
+    }
+
+    private boolean refreshedAll = false;
+
+    @Override
+    public Enumeration<ST> tags() {
+        if(this.refreshedAll) {
+            return super.tags();
+        }
+
+        // read any tag from store
+        this.refreshedAll = true;
+
+        Iterator<String> siIter = this.si2holderId.keySet().iterator();
+        while(siIter.hasNext()) {
+            try {
+                // just touch it - it comes now into memory;
+                this.getSemanticTag(siIter.next());
+            } catch (SharkKBException ex) {
+                L.w("cannot read tag from log store", this);
+            }
+        }
+
+        return super.tags();
+    }
+}
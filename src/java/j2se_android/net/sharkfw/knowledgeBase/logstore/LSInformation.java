@@ -0,0 +1,198 @@
+package net.sharkfw.knowledgeBase.logstore;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileNotFoundException;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.channels.FileChannel;
+import java.security.MessageDigest;
+import net.sharkfw.knowledgeBase.SharkKBException;
+import net.sharkfw.knowledgeBase.inmemory.InMemoInformation;
+import net.sharkfw.protocols.TransferTarget;
+import net.sharkfw.system.L;
+
+/**
+ * Information whose properties are kept in a log store. Content isn't
+ * written into the log - it is kept in a file of its own which is
+ * named by the property holder id.
+ *
+ * @author thsc
+ */
+public class LSInformation extends InMemoInformation {
+    private static final int COPY_BUFFER_LEN = 1024*8;
+
+    private final File contentFile;
+
+    LSInformation(LSPropertyHolder lsph, File contentFolder) throws SharkKBException {
+        super(lsph);
+        lsph.restore();
+
+        this.contentFile = new File(contentFolder, lsph.getId());
+
+        if (this.getUniqueID().equals("")){
+            //there is no id yet, so we set it
+            this.setProperty(InMemoInformation.INFO_ID_PROPERTY_NAME, java.util.UUID.randomUUID().toString());
+        }
+    }
+
+    LSPropertyHolder getLSPropertyHolder() {
+        return (LSPropertyHolder) this.getPropertyHolder();
+    }
+
+    /**
+     * Removes content file and properties.
+     */
+    void remove() {
+        this.contentFile.delete();
+        this.getLSPropertyHolder().remove();
+    }
+
+    ////////////////////////////////////////////////////////////////////
+    //                      content handling                          //
+    ////////////////////////////////////////////////////////////////////
+
+    @Override
+    public long getContentLength() {
+        return this.contentFile.length();
+    }
+
+    @Override
+    public void setContent(byte[] content) {
+        try {
+            FileOutputStream fos = this.openContentFile();
+            try {
+                fos.write(content);
+            } finally {
+                fos.close();
+            }
+
+            this.setTimes();
+        } catch (IOException ex) {
+            L.e("setContent(byte[]): couldn't write information to file: " + ex.getMessage(), this);
+        }
+    }
+
+    @Override
+    public void setContent(InputStream is, long len) {
+        try {
+            FileOutputStream fos = this.openContentFile();
+            try {
+                byte[] buffer = new byte[(int) Math.min(len, COPY_BUFFER_LEN)];
+                while(len > 0) {
+                    int read = is.read(buffer, 0, (int) Math.min(len, buffer.length));
+                    if(read == -1) {
+                        break; // end of stream
+                    }
+                    fos.write(buffer, 0, read);
+                    len -= read;
+                }
+            } finally {
+                fos.close();
+            }
+
+            this.setTimes();
+        } catch (IOException ex) {
+            L.e("setContent(InputStream," + len + "): couldn't write information to file: " + ex.getMessage(), this);
+        }
+    }
+
+    @Override
+    public void removeContent() {
+        this.contentFile.delete();
+        this.setTimes();
+    }
+
+    private FileOutputStream openContentFile() throws FileNotFoundException {
+        this.contentFile.getParentFile().mkdirs();
+        return new FileOutputStream(this.contentFile);
+    }
+
+    /**
+     * Content is handed directly to streams which can take a file channel
+     * (see TransferTarget). It is copied through a buffer otherwise.
+     *
+     * @param os
+     * @throws IOException content couldn't be written completely
+     */
+    @Override
+    public void streamContent(OutputStream os) throws IOException {
+        if(!this.contentFile.exists()) {
+            return; // no content
+        }
+
+        FileInputStream fis = new FileInputStream(this.contentFile);
+        try {
+            if(os instanceof TransferTarget) {
+                FileChannel source = fis.getChannel();
+                ((TransferTarget) os).transferFrom(source, 0, source.size());
+            } else {
+                byte[] buffer = new byte[COPY_BUFFER_LEN];
+                int read = fis.read(buffer);
+                while(read != -1) {
+                    os.write(buffer, 0, read);
+                    read = fis.read(buffer);
+                }
+            }
+        } finally {
+            fis.close();
+        }
+    }
+
+    @Override
+    protected void digestContent(final MessageDigest md) {
+        try {
+            this.streamContent(new OutputStream() {
+                @Override
+                public void write(int b) {
+                    md.update((byte) b);
+                }
+
+                @Override
+                public void write(byte[] b, int off, int len) {
+                    md.update(b, off, len);
+                }
+            });
+        } catch (IOException ex) {
+            L.e("digestContent(): couldn't read information from file: " + ex.getMessage(), this);
+        }
+    }
+
+    /**
+     * Handle with care - this creates a byte array and copies any byte
+     * into that array. Might be huge.
+     *
+     * @return
+     */
+    @Override
+    public byte[] getContentAsByte() {
+        ByteArrayOutputStream baos = new ByteArrayOutputStream((int) this.getContentLength());
+        try {
+            this.streamContent(baos);
+        } catch (IOException ex) {
+            L.e("getContentAsByte(): couldn't read information from file: " + ex.getMessage(), this);
+        }
+        return baos.toByteArray();
+    }
+
+    @Override
+    public OutputStream getOutputStream() throws SharkKBException {
+        try {
+            return this.openContentFile();
+        } catch (FileNotFoundException ex) {
+            throw new SharkKBException(ex.getMessage());
+        }
+    }
+
+    @Override
+    public InputStream getInputStream() throws SharkKBException {
+        try {
+            return new FileInputStream(this.contentFile);
+        } catch (FileNotFoundException ex) {
+            throw new SharkKBException(ex.getMessage());
+        }
+    }
+}
@@ -0,0 +1,89 @@
+package net.sharkfw.knowledgeBase.logstore;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Iterator;
+import net.sharkfw.knowledgeBase.ContextCoordinates;
+import net.sharkfw.knowledgeBase.ContextPoint;
+import net.sharkfw.knowledgeBase.SharkKBException;
+import net.sharkfw.knowledgeBase.SharkVocabulary;
+import net.sharkfw.knowledgeBase.inmemory.InMemoKnowledge;
+import net.sharkfw.system.L;
+
+/**
+ * Knowledge in a log store. Each context point is listed by an entry
+ * of its own.
+ *
+ * @author thsc
+ */
+public class LSKnowledge extends InMemoKnowledge {
+    private static final String CP_KEY_PREFIX = "c|";
+
+    private final LogStore store;
+    private final File contentFolder;
+
+    public LSKnowledge(SharkVocabulary background, LogStore store, File contentFolder) {
+        super(background);
+
+        this.store = store;
+        this.contentFolder = contentFolder;
+    }
+
+    ContextPoint createContextPoint(ContextCoordinates coordinates) throws SharkKBException {
+        LSPropertyHolder cpPh = LSPropertyHolder.create(this.store);
+
+        LSContextPoint cp = new LSContextPoint(coordinates, cpPh, this.store, this.contentFolder);
+        cp.persist();
+
+        try {
+            this.store.put(CP_KEY_PREFIX + cpPh.getId(), "");
+        } catch (IOException ex) {
+            throw new SharkKBException("cannot write context point to log store: " + ex.getMessage());
+        }
+
+        super.addContextPoint(cp);
+
+        return cp;
+    }
+
+    @Override
+    public void removeContextPoint(ContextPoint cp) {
+        if(cp instanceof LSContextPoint) {
+            LSContextPoint lscp = (LSContextPoint) cp;
+            String id = ((LSPropertyHolder) lscp.getPropertyHolder()).getId();
+
+            try {
+                this.store.put(CP_KEY_PREFIX + id, null);
+            } catch (IOException ex) {
+                L.w("cannot remove context point from log store: " + ex.getMessage(), this);
+            }
+
+            lscp.remove();
+        }
+
+        // remove from memory
+        super.removeContextPoint(cp);
+    }
+
+    public void refreshStatus() throws SharkKBException {
+        Iterator<String> keyIter;
+        try {
+            keyIter = this.store.scan(CP_KEY_PREFIX).keySet().iterator();
+        } catch (IOException ex) {
+            throw new SharkKBException("cannot read context points from log store: " + ex.getMessage());
+        }
+
+        // bring all cps (back) into memory
+        while(keyIter.hasNext()) {
+            String id = keyIter.next().substring(CP_KEY_PREFIX.length());
+
+            LSPropertyHolder lsph = new LSPropertyHolder(this.store, id);
+            lsph.restore();
+
+            LSContextPoint lscp = new LSContextPoint(lsph, this.store, this.contentFolder);
+            lscp.refreshStatus();
+
+            super.addContextPoint(lscp);
+        }
+    }
+}
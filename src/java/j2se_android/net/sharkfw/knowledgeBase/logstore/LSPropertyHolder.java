@@ -0,0 +1,141 @@
+package net.sharkfw.knowledgeBase.logstore;
+
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.SortedMap;
+import net.sharkfw.knowledgeBase.SharkKBException;
+import net.sharkfw.knowledgeBase.inmemory.InMemoPropertyHolder;
+import net.sharkfw.system.L;
+
+/**
+ * Property holder whose changes are appended to a log store. Each
+ * property is an entry of its own - setting a property writes a single
+ * entry and not all properties of that holder.
+ *
+ * @author thsc
+ */
+public class LSPropertyHolder extends InMemoPropertyHolder {
+    static final String KEY_PREFIX = "p|";
+
+    private static final String PROPERTY = "p|";
+    private static final String HIDDEN_PROPERTY = "h|";
+    private static final String SYSTEM_PROPERTY = "s|";
+
+    private final LogStore store;
+    private final String id;
+    private final HashMap<String,String> systemProperties = new HashMap<String,String>();
+
+    LSPropertyHolder(LogStore store, String id) {
+        this.store = store;
+        this.id = id;
+    }
+
+    /**
+     * @param store
+     * @return holder with a new unique id
+     */
+    static LSPropertyHolder create(LogStore store) {
+        return new LSPropertyHolder(store, java.util.UUID.randomUUID().toString());
+    }
+
+    public String getId() {
+        return this.id;
+    }
+
+    private String getKeyPrefix() {
+        return KEY_PREFIX + this.id + "|";
+    }
+
+    private String getKey(String kind, String name) {
+        return this.getKeyPrefix() + kind + name;
+    }
+
+    private void write(String kind, String name, String value) {
+        try {
+            this.store.put(this.getKey(kind, name), value);
+        }
+        catch(IOException ioe) {
+            L.e("couldn't write property to log: " + ioe.getMessage(), this);
+        }
+    }
+
+    @Override
+    public void setProperty(String name, String value, boolean transfer) {
+        super.setProperty(name, value, transfer);
+
+        this.write(transfer ? PROPERTY : HIDDEN_PROPERTY, name, value);
+    }
+
+    @Override
+    public void setSystemProperty(String name, String value) {
+        if(value == null) {
+            this.systemProperties.remove(name);
+        } else {
+            this.systemProperties.put(name, value);
+        }
+
+        this.write(SYSTEM_PROPERTY, name, value);
+    }
+
+    @Override
+    public String getSystemProperty(String name) {
+        return this.systemProperties.get(name);
+    }
+
+    /**
+     * @return true if any property of this holder is in the store
+     * @throws SharkKBException
+     */
+    public boolean exists() throws SharkKBException {
+        try {
+            return !this.store.scan(this.getKeyPrefix()).isEmpty();
+        }
+        catch(IOException ioe) {
+            throw new SharkKBException("cannot read from log store: " + ioe.getMessage());
+        }
+    }
+
+    public void restore() throws SharkKBException {
+        SortedMap<String, String> entries;
+        try {
+            entries = this.store.scan(this.getKeyPrefix());
+        }
+        catch(IOException ioe) {
+            throw new SharkKBException("cannot read from log store: " + ioe.getMessage());
+        }
+
+        this.getUnhiddenProperties().clear();
+        this.getHiddenProperties().clear();
+        this.systemProperties.clear();
+
+        int prefixLength = this.getKeyPrefix().length();
+        Iterator<Map.Entry<String, String>> entryIter = entries.entrySet().iterator();
+        while(entryIter.hasNext()) {
+            Map.Entry<String, String> entry = entryIter.next();
+            String kind = entry.getKey().substring(prefixLength, prefixLength + 2);
+            String name = entry.getKey().substring(prefixLength + 2);
+
+            if(kind.equals(PROPERTY)) {
+                this.getUnhiddenProperties().put(name, entry.getValue());
+            } else if(kind.equals(HIDDEN_PROPERTY)) {
+                this.getHiddenProperties().put(name, entry.getValue());
+            } else if(kind.equals(SYSTEM_PROPERTY)) {
+                this.systemProperties.put(name, entry.getValue());
+            }
+        }
+    }
+
+    /**
+     * Removes all properties of this holder from the store.
+     */
+    void remove() {
+        try {
+            this.store.removePrefix(this.getKeyPrefix());
+        }
+        catch(IOException ioe) {
+            L.e("couldn't remove properties from log: " + ioe.getMessage(), this);
+        }
+    }
+}
@@ -0,0 +1,142 @@
+package net.sharkfw.knowledgeBase.logstore;
+
+import java.io.File;
+import java.io.IOException;
+import net.sharkfw.knowledgeBase.ContextCoordinates;
+import net.sharkfw.knowledgeBase.ContextPoint;
+import net.sharkfw.knowledgeBase.PeerSemanticTag;
+import net.sharkfw.knowledgeBase.SemanticTag;
+import net.sharkfw.knowledgeBase.SharkKB;
+import net.sharkfw.knowledgeBase.SharkKBException;
+import net.sharkfw.knowledgeBase.SpatialSemanticTag;
+import net.sharkfw.knowledgeBase.TimeSemanticTag;
+import net.sharkfw.knowledgeBase.filesystem.FSSharkKB;
+import net.sharkfw.knowledgeBase.inmemory.*;
+
+/**
+ * Persistent knowledge base which can replace FSSharkKB. Any change is
+ * appended to a log (see LogStore) - tags, context points and information
+ * don't need folders and property files of their own. Information content
+ * is kept in files in folder content.
+ *
+ * Call close() if the knowledge base isn't used any longer. The log is
+ * replayed otherwise when the knowledge base is opened again.
+ *
+ * @author thsc
+ */
+public class LSSharkKB extends InMemoSharkKB implements SharkKB {
+    private final String rootFolder;
+    private final LogStore store;
+    private final LSKnowledge lsk;
+
+    public static final String TOPICS = "topics";
+    public static final String PEERS = "peers";
+    public static final String LOCATIONS = "locations";
+    public static final String TIMES = "times";
+    public static final String CONTENT_FOLDER = "/content";
+
+    private static final String KB_PROPERTY_HOLDER_ID = "kb";
+
+    public LSSharkKB(String rootFolder) throws SharkKBException {
+        this(LSSharkKB.openStore(rootFolder), rootFolder);
+    }
+
+    private LSSharkKB(LogStore store, String rootFolder) throws SharkKBException {
+        super(
+            // topics
+            new InMemoSemanticNet(new LSGenericTagStorage<SemanticTag>(store, TOPICS)),
+
+            // peers
+            new InMemoPeerTaxonomy(new InMemoPeerSemanticNet(
+                    new LSGenericTagStorage<PeerSemanticTag>(store, PEERS))),
+
+            // locations
+            new InMemoSpatialSTSet(new LSGenericTagStorage<SpatialSemanticTag>(store, LOCATIONS)),
+
+            // times
+            new InMemoTimeSTSet(new LSGenericTagStorage<TimeSemanticTag>(store, TIMES))
+        );
+
+        this.rootFolder = rootFolder;
+        this.store = store;
+
+        this.lsk = new LSKnowledge(this, store, new File(rootFolder + CONTENT_FOLDER));
+        this.lsk.refreshStatus();
+        this.setKnowledge(this.lsk);
+
+        LSPropertyHolder lsph = new LSPropertyHolder(store, KB_PROPERTY_HOLDER_ID);
+        lsph.restore();
+        this.setPropertyHolder(lsph);
+        this.refreshStatus();
+    }
+
+    private static LogStore openStore(String rootFolder) throws SharkKBException {
+        try {
+            return new LogStore(rootFolder);
+        }
+        catch(IOException ioe) {
+            throw new SharkKBException("cannot open log store: " + ioe.getMessage());
+        }
+    }
+
+    /**
+     * That methode removes directory and all its content.  Take care.
+     * @param folderName
+     */
+    public static void removeLSStorage(String folderName) {
+        FSSharkKB.removeFSStorage(folderName);
+    }
+
+    @Override
+    public ContextPoint createContextPoint(ContextCoordinates coordinates) throws SharkKBException {
+        ContextPoint cp = this.getContextPoint(coordinates);
+        if(cp != null) {
+            return cp;
+        }
+
+        return this.lsk.createContextPoint(coordinates);
+    }
+
+    /**
+     * Writes log entries into a segment and compacts segments if required.
+     * @throws SharkKBException
+     */
+    public void flush() throws SharkKBException {
+        try {
+            this.store.flush();
+        }
+        catch(IOException ioe) {
+            throw new SharkKBException("cannot flush log store: " + ioe.getMessage());
+        }
+    }
+
+    /**
+     * Merges all segments into a single one.
+     * @throws SharkKBException
+     */
+    public void compact() throws SharkKBException {
+        try {
+            this.store.compact();
+        }
+        catch(IOException ioe) {
+            throw new SharkKBException("cannot compact log store: " + ioe.getMessage());
+        }
+    }
+
+    public void close() throws SharkKBException {
+        try {
+            this.store.close();
+        }
+        catch(IOException ioe) {
+            throw new SharkKBException("cannot close log store: " + ioe.getMessage());
+        }
+    }
+
+    LogStore getLogStore() {
+        return this.store;
+    }
+
+    public String getFoldername() {
+        return this.rootFolder;
+    }
+}
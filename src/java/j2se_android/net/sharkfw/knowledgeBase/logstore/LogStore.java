@@ -0,0 +1,858 @@
+package net.sharkfw.knowledgeBase.logstore;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.io.UnsupportedEncodingException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.SortedMap;
+import java.util.TreeMap;
+import java.util.zip.CRC32;
+import net.sharkfw.system.L;
+
+/**
+ * Append-only key value store. Strings are mapped to strings.
+ *
+ * Each change is appended to a write-ahead log. If the log grows too large
+ * its entries are flushed into a new segment file: values sorted by key,
+ * followed by a footer that indexes them. Segments are never changed. If
+ * there are too many of them, they are compacted into a single one which
+ * holds current values only. Compaction merges the sorted segments - values
+ * are copied one by one, they aren't loaded into memory.
+ *
+ * All keys are kept in memory. The index is rebuilt from segment footers
+ * when the store is opened - values are read on demand. Afterwards, the
+ * log is replayed. A partly written log entry (crash) is dropped.
+ *
+ * @author thsc
+ */
+public class LogStore {
+    /** log size in bytes which causes a flush into a segment */
+    public static final int DEFAULT_FLUSH_SIZE = 1024 * 1024;
+    public static final int DEFAULT_MAX_SEGMENTS = 4;
+
+    private static final String LOG_FILENAME = "log";
+    private static final String SEGMENT_PREFIX = "segment_";
+    private static final String SEGMENT_SUFFIX = ".seg";
+    private static final String TEMP_SUFFIX = ".tmp";
+
+    private static final int SEGMENT_MAGIC = 0x53484b53;
+    // segment contains all values - older segments are obsolete
+    private static final int FLAG_COMPLETE = 1;
+
+    private static final byte PUT = 1;
+    private static final byte DELETE = 2;
+
+    private static final String ENCODING = "UTF-8";
+
+    private final File folder;
+    private int flushSize = DEFAULT_FLUSH_SIZE;
+    private int maxSegments = DEFAULT_MAX_SEGMENTS;
+
+    // key -> location of current value
+    private final TreeMap<String, Location> index = new TreeMap<String, Location>();
+    // keys deleted since last flush - older segments still hold them
+    private final HashSet<String> deleted = new HashSet<String>();
+
+    // oldest first
+    private final ArrayList<Segment> segments = new ArrayList<Segment>();
+    private long nextSegmentNumber = 0;
+
+    private FileOutputStream log;
+    private long logSize = 0;
+
+    /**
+     * Value is either in memory (written to log since last flush) or
+     * in a segment.
+     */
+    private static class Location {
+        private final String value;
+        private final Segment segment;
+        private final long offset;
+        private final int length;
+
+        Location(String value) {
+            this.value = value;
+            this.segment = null;
+            this.offset = 0;
+            this.length = 0;
+        }
+
+        Location(Segment segment, long offset, int length) {
+            this.value = null;
+            this.segment = segment;
+            this.offset = offset;
+            this.length = length;
+        }
+    }
+
+    private static class Segment {
+        private final File file;
+        private RandomAccessFile reader = null;
+
+        Segment(File file) {
+            this.file = file;
+        }
+
+        String read(long offset, int length) throws IOException {
+            return new String(this.readBytes(offset, length), ENCODING);
+        }
+
+        byte[] readBytes(long offset, int length) throws IOException {
+            if(this.reader == null) {
+                this.reader = new RandomAccessFile(this.file, "r");
+            }
+
+            byte[] bytes = new byte[length];
+            this.reader.seek(offset);
+            this.reader.readFully(bytes);
+            return bytes;
+        }
+
+        void close() {
+            if(this.reader != null) {
+                try {
+                    this.reader.close();
+                } catch (IOException ex) {
+                    // ignore
+                }
+                this.reader = null;
+            }
+        }
+    }
+
+    /**
+     * Opens store in that folder. Folder is created if it doesn't exist.
+     *
+     * @param foldername
+     * @throws IOException
+     */
+    public LogStore(String foldername) throws IOException {
+        this.folder = new File(foldername);
+        if(!this.folder.exists()) {
+            this.folder.mkdirs();
+        }
+
+        this.readSegments();
+        this.replayLog();
+
+        this.log = new FileOutputStream(this.getLogFile(), true);
+    }
+
+    /**
+     * @param bytes log size which causes a flush into a segment
+     */
+    public synchronized void setFlushSize(int bytes) {
+        this.flushSize = bytes;
+    }
+
+    /**
+     * @param number segments which are kept before they are compacted
+     */
+    public synchronized void setMaxSegments(int number) {
+        this.maxSegments = number;
+    }
+
+    public synchronized int numberOfSegments() {
+        return this.segments.size();
+    }
+
+    public File getFolder() {
+        return this.folder;
+    }
+
+    ////////////////////////////////////////////////////////////////////////
+    //                           read and write                           //
+    ////////////////////////////////////////////////////////////////////////
+
+    /**
+     * @param key
+     * @return value or null if key isn't set
+     * @throws IOException
+     */
+    public synchronized String get(String key) throws IOException {
+        Location location = this.index.get(key);
+        if(location == null) {
+            return null;
+        }
+
+        return this.read(location);
+    }
+
+    /**
+     * Returns all entries whose key starts with prefix.
+     *
+     * @param prefix
+     * @return sorted entries
+     * @throws IOException
+     */
+    public synchronized SortedMap<String, String> scan(String prefix) throws IOException {
+        TreeMap<String, String> result = new TreeMap<String, String>();
+
+        Iterator<Map.Entry<String, Location>> entryIter =
+                this.index.tailMap(prefix).entrySet().iterator();
+
+        while(entryIter.hasNext()) {
+            Map.Entry<String, Location> entry = entryIter.next();
+            if(!entry.getKey().startsWith(prefix)) {
+                break;
+            }
+
+            result.put(entry.getKey(), this.read(entry.getValue()));
+        }
+
+        return result;
+    }
+
+    /**
+     * @param key
+     * @param value new value, null removes key
+     * @throws IOException
+     */
+    public synchronized void put(String key, String value) throws IOException {
+        if(value == null) {
+            if(!this.index.containsKey(key)) {
+                return;
+            }
+            this.appendToLog(DELETE, key, null);
+        } else {
+            this.appendToLog(PUT, key, value);
+        }
+
+        this.apply(key, value);
+
+        if(this.logSize >= this.flushSize) {
+            this.flush();
+        }
+    }
+
+    /**
+     * Removes any key starting with prefix.
+     *
+     * @param prefix
+     * @throws IOException
+     */
+    public synchronized void removePrefix(String prefix) throws IOException {
+        ArrayList<String> keys = new ArrayList<String>(
+                this.scanKeys(prefix));
+
+        for(int i = 0; i < keys.size(); i++) {
+            this.put(keys.get(i), null);
+        }
+    }
+
+    private ArrayList<String> scanKeys(String prefix) {
+        ArrayList<String> keys = new ArrayList<String>();
+        Iterator<String> keyIter = this.index.tailMap(prefix).keySet().iterator();
+        while(keyIter.hasNext()) {
+            String key = keyIter.next();
+            if(!key.startsWith(prefix)) {
+                break;
+            }
+            keys.add(key);
+        }
+
+        return keys;
+    }
+
+    private String read(Location location) throws IOException {
+        if(location.segment == null) {
+            return location.value;
+        }
+
+        return location.segment.read(location.offset, location.length);
+    }
+
+    private void apply(String key, String value) {
+        if(value == null) {
+            this.index.remove(key);
+            if(!this.segments.isEmpty()) {
+                this.deleted.add(key);
+            }
+        } else {
+            this.index.put(key, new Location(value));
+            this.deleted.remove(key);
+        }
+    }
+
+    ////////////////////////////////////////////////////////////////////////
+    //                                log                                 //
+    ////////////////////////////////////////////////////////////////////////
+
+    private File getLogFile() {
+        return new File(this.folder, LOG_FILENAME);
+    }
+
+    /**
+     * Entry: length, crc, operation, key, value. Entry is written at once -
+     * it reaches the file system even if process crashes afterwards.
+     */
+    private void appendToLog(byte operation, String key, String value) throws IOException {
+        ByteArrayOutputStream payload = new ByteArrayOutputStream();
+        DataOutputStream dos = new DataOutputStream(payload);
+        dos.writeByte(operation);
+        LogStore.writeString(dos, key);
+        if(operation == PUT) {
+            LogStore.writeString(dos, value);
+        }
+        dos.flush();
+
+        byte[] payloadBytes = payload.toByteArray();
+        CRC32 crc = new CRC32();
+        crc.update(payloadBytes);
+
+        ByteArrayOutputStream entry = new ByteArrayOutputStream(payloadBytes.length + 8);
+        dos = new DataOutputStream(entry);
+        dos.writeInt(payloadBytes.length);
+        dos.writeInt((int) crc.getValue());
+        dos.write(payloadBytes);
+        dos.flush();
+
+        this.log.write(entry.toByteArray());
+        this.logSize += entry.size();
+    }
+
+    private void replayLog() throws IOException {
+        File logFile = this.getLogFile();
+        if(!logFile.exists()) {
+            return;
+        }
+
+        long fileLength = logFile.length();
+        long validLength = 0;
+        DataInputStream dis = new DataInputStream(
+                new BufferedInputStream(new FileInputStream(logFile)));
+
+        try {
+            while(true) {
+                int length = dis.readInt();
+                int checksum = dis.readInt();
+                if(length < 1 || length > fileLength - validLength - 8) {
+                    // garbage length - don't allocate it
+                    break;
+                }
+
+                byte[] payload = new byte[length];
+                dis.readFully(payload);
+
+                CRC32 crc = new CRC32();
+                crc.update(payload);
+                if((int) crc.getValue() != checksum) {
+                    break;
+                }
+
+                DataInputStream entry = new DataInputStream(
+                        new java.io.ByteArrayInputStream(payload));
+                byte operation = entry.readByte();
+                String key = LogStore.readString(entry, length);
+                String value = operation == PUT ? LogStore.readString(entry, length) : null;
+
+                this.apply(key, value);
+                validLength += 8 + length;
+            }
+        }
+        catch(EOFException eof) {
+            // end of log - maybe a partly written entry
+        }
+        finally {
+            dis.close();
+        }
+
+        if(validLength < fileLength) {
+            L.w("drop incomplete log entries: " + (fileLength - validLength) + " bytes", this);
+            RandomAccessFile raf = new RandomAccessFile(logFile, "rw");
+            try {
+                raf.setLength(validLength);
+            } finally {
+                raf.close();
+            }
+        }
+
+        this.logSize = validLength;
+    }
+
+    private void clearLog() throws IOException {
+        this.log.close();
+        this.log = new FileOutputStream(this.getLogFile(), false);
+        this.logSize = 0;
+    }
+
+    ////////////////////////////////////////////////////////////////////////
+    //                              segments                              //
+    ////////////////////////////////////////////////////////////////////////
+
+    /**
+     * Writes entries of the log into a new segment. Log is cleared
+     * afterwards. Segments are compacted if there are too many.
+     *
+     * @throws IOException
+     */
+    public synchronized void flush() throws IOException {
+        if(this.logSize == 0) {
+            return;
+        }
+
+        if(this.segments.size() + 1 > this.maxSegments) {
+            this.compact();
+            return;
+        }
+
+        TreeMap<String, String> changes = this.getLogChanges();
+        SegmentWriter writer = new SegmentWriter();
+        try {
+            Iterator<Map.Entry<String, String>> entryIter = changes.entrySet().iterator();
+            while(entryIter.hasNext()) {
+                Map.Entry<String, String> entry = entryIter.next();
+                if(entry.getValue() == null) {
+                    writer.delete(entry.getKey());
+                } else {
+                    writer.put(entry.getKey(), entry.getValue().getBytes(ENCODING));
+                }
+            }
+            writer.finish(false);
+        } finally {
+            writer.abort();
+        }
+
+        this.deleted.clear();
+        this.clearLog();
+    }
+
+    /**
+     * @return changes since last flush - value is null if key was removed
+     */
+    private TreeMap<String, String> getLogChanges() {
+        TreeMap<String, String> changes = new TreeMap<String, String>();
+        Iterator<Map.Entry<String, Location>> entryIter = this.index.entrySet().iterator();
+        while(entryIter.hasNext()) {
+            Map.Entry<String, Location> entry = entryIter.next();
+            if(entry.getValue().segment == null) {
+                changes.put(entry.getKey(), entry.getValue().value);
+            }
+        }
+
+        Iterator<String> deletedIter = this.deleted.iterator();
+        while(deletedIter.hasNext()) {
+            changes.put(deletedIter.next(), null);
+        }
+
+        return changes;
+    }
+
+    /**
+     * Writes all current values into a single segment. Older segments
+     * and log are removed afterwards.
+     *
+     * Segments and log changes are merged in key order. The newest entry
+     * of a key wins, removed keys are dropped. Each segment is read
+     * sequentially.
+     *
+     * @throws IOException
+     */
+    public synchronized void compact() throws IOException {
+        ArrayList<Segment> obsolete = new ArrayList<Segment>(this.segments);
+
+        Iterator<Map.Entry<String, String>> logIter =
+                this.getLogChanges().entrySet().iterator();
+        Map.Entry<String, String> logEntry = logIter.hasNext() ? logIter.next() : null;
+
+        PriorityQueue<SegmentCursor> cursors = new PriorityQueue<SegmentCursor>();
+        SegmentWriter writer = null;
+        try {
+            for(int i = 0; i < obsolete.size(); i++) {
+                SegmentCursor cursor = new SegmentCursor(obsolete.get(i), i);
+                if(cursor.next()) {
+                    cursors.add(cursor);
+                } else {
+                    cursor.close();
+                }
+            }
+
+            writer = new SegmentWriter();
+            while(logEntry != null || !cursors.isEmpty()) {
+                String key;
+                byte[] value;
+
+                // log is newer than any segment
+                if(logEntry != null && (cursors.isEmpty() 
+                        || logEntry.getKey().compareTo(cursors.peek().key) <= 0)) {
+
+                    key = logEntry.getKey();
+                    value = logEntry.getValue() == null ? null : logEntry.getValue().getBytes(ENCODING);
+                    logEntry = logIter.hasNext() ? logIter.next() : null;
+                } else {
+                    SegmentCursor newest = cursors.peek();
+                    key = newest.key;
+                    value = newest.operation == PUT ? 
+                            newest.segment.readBytes(newest.offset, newest.length) : null;
+                }
+
+                // older entries of that key are obsolete
+                while(!cursors.isEmpty() && cursors.peek().key.equals(key)) {
+                    SegmentCursor cursor = cursors.poll();
+                    if(cursor.next()) {
+                        cursors.add(cursor);
+                    } else {
+                        cursor.close();
+                    }
+                }
+
+                if(value != null) {
+                    writer.put(key, value);
+                }
+            }
+
+            writer.finish(true);
+        } finally {
+            if(writer != null) {
+                writer.abort();
+            }
+            while(!cursors.isEmpty()) {
+                cursors.poll().close();
+            }
+        }
+
+        this.deleted.clear();
+        this.clearLog();
+
+        for(int i = 0; i < obsolete.size(); i++) {
+            Segment segment = obsolete.get(i);
+            segment.close();
+            segment.file.delete();
+            this.segments.remove(segment);
+        }
+    }
+
+    /**
+     * Segment: values, footer (key, operation, offset, length of each entry),
+     * trailer (footer offset, flags, magic). Segment is written to a temporary
+     * file and renamed when complete.
+     *
+     * Entries must be added in key order. Values are written at once - only
+     * keys and locations are kept until the footer is written.
+     */
+    private class SegmentWriter {
+        private final File tempFile;
+        private final Segment segment;
+        private final FileOutputStream fos;
+        private final DataOutputStream dos;
+        private long offset = 0;
+        private boolean finished = false;
+
+        // location is null if key was removed
+        private final ArrayList<String> keys = new ArrayList<String>();
+        private final ArrayList<Location> locations = new ArrayList<Location>();
+
+        SegmentWriter() throws IOException {
+            String name = SEGMENT_PREFIX + LogStore.pad(LogStore.this.nextSegmentNumber++);
+            this.tempFile = new File(LogStore.this.folder, name + TEMP_SUFFIX);
+            this.segment = new Segment(new File(LogStore.this.folder, name + SEGMENT_SUFFIX));
+            this.fos = new FileOutputStream(this.tempFile);
+            this.dos = new DataOutputStream(new BufferedOutputStream(this.fos));
+        }
+
+        void put(String key, byte[] value) throws IOException {
+            this.dos.write(value);
+            this.keys.add(key);
+            this.locations.add(new Location(this.segment, this.offset, value.length));
+            this.offset += value.length;
+        }
+
+        void delete(String key) {
+            this.keys.add(key);
+            this.locations.add(null);
+        }
+
+        /**
+         * Writes footer and trailer. Segment becomes part of the store.
+         */
+        void finish(boolean complete) throws IOException {
+            // footer
+            long footerOffset = this.offset;
+            this.dos.writeInt(this.keys.size());
+            for(int i = 0; i < this.keys.size(); i++) {
+                LogStore.writeString(this.dos, this.keys.get(i));
+
+                Location location = this.locations.get(i);
+                if(location == null) {
+                    this.dos.writeByte(DELETE);
+                } else {
+                    this.dos.writeByte(PUT);
+                    this.dos.writeLong(location.offset);
+                    this.dos.writeInt(location.length);
+                }
+            }
+
+            // trailer
+            this.dos.writeLong(footerOffset);
+            this.dos.writeInt(complete ? FLAG_COMPLETE : 0);
+            this.dos.writeInt(SEGMENT_MAGIC);
+            this.dos.flush();
+
+            this.fos.getFD().sync();
+            this.fos.close();
+
+            if(!this.tempFile.renameTo(this.segment.file)) {
+                throw new IOException("cannot rename segment file: " + this.tempFile.getAbsolutePath());
+            }
+            this.finished = true;
+
+            LogStore.this.segments.add(this.segment);
+            for(int i = 0; i < this.keys.size(); i++) {
+                Location location = this.locations.get(i);
+                if(location != null) {
+                    LogStore.this.index.put(this.keys.get(i), location);
+                }
+            }
+        }
+
+        /**
+         * Removes temporary file if segment wasn't finished.
+         */
+        void abort() {
+            if(this.finished) {
+                return;
+            }
+
+            try {
+                this.fos.close();
+            } catch (IOException ex) {
+                // ignore
+            }
+            this.tempFile.delete();
+        }
+    }
+
+    /**
+     * Reads footer entries of a segment in key order. Cursors are ordered
+     * by their current key - newer segments first if keys are equal.
+     */
+    private static class SegmentCursor implements Comparable<SegmentCursor> {
+        private final Segment segment;
+        // position in list of segments - higher is newer
+        private final int age;
+        private final DataInputStream dis;
+        private final long maxLength;
+        private int remaining;
+
+        private String key;
+        private byte operation;
+        private long offset;
+        private int length;
+
+        SegmentCursor(Segment segment, int age) throws IOException {
+            this.segment = segment;
+            this.age = age;
+
+            long footerOffset;
+            long fileLength;
+            RandomAccessFile raf = new RandomAccessFile(segment.file, "r");
+            try {
+                fileLength = raf.length();
+                raf.seek(fileLength - 16);
+                footerOffset = raf.readLong();
+            } finally {
+                raf.close();
+            }
+
+            FileInputStream fis = new FileInputStream(segment.file);
+            fis.getChannel().position(footerOffset);
+            this.dis = new DataInputStream(new BufferedInputStream(fis));
+            this.maxLength = fileLength - footerOffset;
+            this.remaining = this.dis.readInt();
+        }
+
+        /**
+         * @return false if there are no further entries
+         */
+        boolean next() throws IOException {
+            if(this.remaining <= 0) {
+                return false;
+            }
+            this.remaining--;
+
+            this.key = LogStore.readString(this.dis, this.maxLength);
+            this.operation = this.dis.readByte();
+            if(this.operation == PUT) {
+                this.offset = this.dis.readLong();
+                this.length = this.dis.readInt();
+            }
+
+            return true;
+        }
+
+        void close() {
+            try {
+                this.dis.close();
+            } catch (IOException ex) {
+                // ignore
+            }
+        }
+
+        @Override
+        public int compareTo(SegmentCursor other) {
+            int c = this.key.compareTo(other.key);
+            if(c != 0) {
+                return c;
+            }
+
+            return other.age - this.age;
+        }
+    }
+
+    private void readSegments() throws IOException {
+        String[] names = this.folder.list();
+        if(names == null) {
+            return;
+        }
+        Arrays.sort(names);
+
+        for(int i = 0; i < names.length; i++) {
+            String name = names[i];
+            if(!name.startsWith(SEGMENT_PREFIX)) {
+                continue;
+            }
+
+            if(name.endsWith(TEMP_SUFFIX)) {
+                // incomplete
+                new File(this.folder, name).delete();
+                continue;
+            }
+
+            if(!name.endsWith(SEGMENT_SUFFIX)) {
+                continue;
+            }
+
+            long number = Long.parseLong(name.substring(SEGMENT_PREFIX.length(),
+                    name.length() - SEGMENT_SUFFIX.length()));
+            this.nextSegmentNumber = Math.max(this.nextSegmentNumber, number + 1);
+
+            this.readFooter(new Segment(new File(this.folder, name)));
+        }
+    }
+
+    private void readFooter(Segment segment) throws IOException {
+        RandomAccessFile raf = new RandomAccessFile(segment.file, "r");
+        long length;
+        long footerOffset;
+        int flags;
+        try {
+            length = raf.length();
+            if(length < 16) {
+                throw new IOException("segment too short: " + segment.file.getName());
+            }
+
+            raf.seek(length - 16);
+            footerOffset = raf.readLong();
+            flags = raf.readInt();
+            if(raf.readInt() != SEGMENT_MAGIC) {
+                throw new IOException("not a segment: " + segment.file.getName());
+            }
+
+            if(footerOffset < 0 || footerOffset > length - 16) {
+                throw new IOException("corrupt footer offset: " + segment.file.getName());
+            }
+        } finally {
+            raf.close();
+        }
+
+        if((flags & FLAG_COMPLETE) != 0) {
+            // older segments were compacted into this one
+            for(int i = 0; i < this.segments.size(); i++) {
+                this.segments.get(i).file.delete();
+            }
+            this.segments.clear();
+            this.index.clear();
+        }
+
+        FileInputStream fis = new FileInputStream(segment.file);
+        try {
+            fis.getChannel().position(footerOffset);
+
+            DataInputStream dis = new DataInputStream(new BufferedInputStream(fis));
+            int number = dis.readInt();
+            for(int i = 0; i < number; i++) {
+                String key = LogStore.readString(dis, length - footerOffset);
+                if(dis.readByte() == PUT) {
+                    long offset = dis.readLong();
+                    int valueLength = dis.readInt();
+                    if(offset < 0 || valueLength < 0 || offset + valueLength > footerOffset) {
+                        throw new IOException("corrupt footer entry: " + segment.file.getName());
+                    }
+                    this.index.put(key, new Location(segment, offset, valueLength));
+                } else {
+                    this.index.remove(key);
+                }
+            }
+        } finally {
+            fis.close();
+        }
+
+        this.segments.add(segment);
+    }
+
+    /**
+     * Flushes log and closes files. Store must not be used afterwards.
+     *
+     * @throws IOException
+     */
+    public synchronized void close() throws IOException {
+        this.flush();
+        this.log.close();
+
+        for(int i = 0; i < this.segments.size(); i++) {
+            this.segments.get(i).close();
+        }
+    }
+
+    ////////////////////////////////////////////////////////////////////////
+    //                              helper                                //
+    ////////////////////////////////////////////////////////////////////////
+
+    private static void writeString(DataOutputStream dos, String s) throws IOException {
+        byte[] bytes = s.getBytes(ENCODING);
+        dos.writeInt(bytes.length);
+        dos.write(bytes);
+    }
+
+    /**
+     * @param maxLength strings longer than that are malformed - guards
+     * against allocating a garbage length.
+     */
+    private static String readString(DataInputStream dis, long maxLength) throws IOException {
+        int length = dis.readInt();
+        if(length < 0 || length > maxLength) {
+            throw new IOException("malformed string length: " + length);
+        }
+
+        byte[] bytes = new byte[length];
+        dis.readFully(bytes);
+        try {
+            return new String(bytes, ENCODING);
+        } catch (UnsupportedEncodingException ex) {
+            throw new IOException(ex.getMessage());
+        }
+    }
+
+    private static String pad(long number) {
+        String s = Long.toString(number);
+        StringBuilder sb = new StringBuilder();
+        for(int i = s.length(); i < 12; i++) {
+            sb.append('0');
+        }
+        return sb.append(s).toString();
+    }
+}
@@ -29,6 +29,7 @@ import net.sharkfw.protocols.m2s.M2SStub;
 import net.sharkfw.protocols.m2s.MessageStorage;
 import net.sharkfw.protocols.m2s.SharkKBMessageStorage;
 import net.sharkfw.protocols.mail.MailMessageStub;
+import net.sharkfw.protocols.tcp.NIOTCPStreamStub;
 import net.sharkfw.protocols.tcp.TCPStreamStub;
 import net.sharkfw.system.L;
 import net.sharkfw.system.Util;
@@ -64,7 +65,8 @@ public class J2SEAndroidSharkEngine extends SharkEngine {
     private int defaultHTTPPort = 8080;
     private int kpStoreCount = 0;
     
-	TCPStreamStub tcp;
+	StreamStub tcp;
+    private boolean nioTCP = false;
     private static final boolean DEFAULT_SSL = false;
     private boolean sslSMTP = DEFAULT_SSL, sslPOP3 = DEFAULT_SSL;
     
@@ -83,7 +85,11 @@ public class J2SEAndroidSharkEngine extends SharkEngine {
     @Override
     protected StreamStub createTCPStreamStub(RequestHandler handler, int port, boolean isHTTP) throws SharkProtocolNotSupportedException {
         try {
-            tcp = new TCPStreamStub(handler, port);
+            if(this.nioTCP) {
+                tcp = new NIOTCPStreamStub(handler, port);
+            } else {
+                tcp = new TCPStreamStub(handler, port);
+            }
             return tcp;
         } catch (IOException ioe) {
 //            ioe.printStackTrace();
@@ -172,6 +178,21 @@ public class J2SEAndroidSharkEngine extends SharkEngine {
      */
     @Override
     public void startTCP(int port) throws IOException {
+        this.startTCP(port, false);
+    }
+
+    /**
+     * Start the TCP stub at the given portnumber. A running TCP stub is
+     * stopped and replaced.
+     *
+     * @param port The portnumber to use for TCP traffic.
+     * @param nio true: all connections are served by a single selector 
+     * thread (NIOTCPStreamStub). Idle connections don't bind threads.
+     * @throws java.io.IOException
+     */
+    @Override
+    public void startTCP(int port, boolean nio) throws IOException {
+        this.nioTCP = nio;
         try {
             this.start(Protocols.TCP, port);
         } catch (SharkProtocolNotSupportedException ex) {
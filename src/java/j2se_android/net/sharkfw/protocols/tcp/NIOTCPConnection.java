@@ -0,0 +1,432 @@
+package net.sharkfw.protocols.tcp;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.net.SocketTimeoutException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.SocketChannel;
+import java.util.LinkedList;
+import net.sharkfw.protocols.ConnectionListenerManager;
+import net.sharkfw.protocols.SharkInputStream;
+import net.sharkfw.protocols.SelectableConnection;
+import net.sharkfw.protocols.SharkOutputStream;
+import net.sharkfw.protocols.StandardSharkInputStream;
+import net.sharkfw.protocols.TransferTarget;
+import net.sharkfw.protocols.UTF8SharkOutputStream;
+import net.sharkfw.system.L;
+
+/**
+ * TCP connection on a non-blocking socket channel. Data are read by the
+ * selector thread of NIOTCPServer and buffered in this object. KEP
+ * parses them from a blocking input stream on that buffer - as they arrive.
+ *
+ * Reading is paused if too much data are buffered and resumed when the
+ * parser has caught up. Writing blocks the writing thread until the
+ * channel takes the data. File content is handed to the channel directly
+ * (see TransferTarget).
+ *
+ * No thread is bound to an idle connection. Sessions call idle() after a
+ * message - connection is handed to request handler again with next data.
+ *
+ * @see NIOTCPServer
+ * @author thsc
+ */
+public class NIOTCPConnection extends ConnectionListenerManager
+                                implements SelectableConnection {
+    static final int MAX_BUFFERED = 64 * 1024;
+
+    private final SocketChannel channel;
+    private final NIOTCPServer server;
+
+    private final String recAddress;
+    private final int portNo;
+    private String localAddress;
+    private final String replyAddressString;
+    private int socketTimeout = 10000;
+
+    // incoming data - guarded by this
+    private final LinkedList<byte[]> chunks = new LinkedList<byte[]>();
+    private int chunkPosition = 0;
+    private int buffered = 0;
+    private boolean eof = false;
+    private boolean closed = false;
+
+    // selector state - guarded by this
+    private boolean readingPaused = false;
+    private boolean waitingForWrite = false;
+    private boolean dispatched;
+
+    private final InputStream in = new ChannelInputStream();
+    private final OutputStream out = new ChannelOutputStream();
+
+    /**
+     * Connection accepted by server. It is handed to the request handler
+     * when first data arrive.
+     */
+    NIOTCPConnection(SocketChannel channel, NIOTCPServer server, String replyAddressString) {
+        this.channel = channel;
+        this.server = server;
+        this.replyAddressString = replyAddressString;
+        this.localAddress = replyAddressString;
+        this.dispatched = false;
+
+        Socket s = channel.socket();
+        this.recAddress = s.getInetAddress().getHostAddress();
+        this.portNo = s.getPort();
+    }
+
+    /**
+     * Establishes a new connection to the given address.
+     */
+    NIOTCPConnection(String recAddress, int port, NIOTCPServer server) throws IOException {
+        this.recAddress = recAddress;
+        this.portNo = port;
+        this.server = server;
+        this.replyAddressString = null;
+        this.localAddress = null;
+
+        // caller handles this connection
+        this.dispatched = true;
+
+        this.channel = SocketChannel.open();
+        try {
+            this.channel.socket().connect(new InetSocketAddress(recAddress, port),
+                    this.socketTimeout);
+            this.channel.configureBlocking(false);
+        }
+        catch(IOException ioe) {
+            this.channel.close();
+            throw ioe;
+        }
+        catch(RuntimeException re) {
+            this.channel.close();
+            throw new IOException(re.getMessage());
+        }
+
+        L.d("Creating NIOTCPConnection to " + recAddress + ":" + port, this);
+    }
+
+    SocketChannel getChannel() {
+        return this.channel;
+    }
+
+    ////////////////////////////////////////////////////////////////////////
+    //                   called by selector thread                        //
+    ////////////////////////////////////////////////////////////////////////
+
+    /**
+     * Reads everything the channel offers.
+     *
+     * @param buffer direct buffer of selector thread
+     * @return true if connection is to be handed to request handler now
+     */
+    boolean readFromChannel(ByteBuffer buffer) throws IOException {
+        int n;
+        do {
+            buffer.clear();
+            n = this.channel.read(buffer);
+            if(n > 0) {
+                buffer.flip();
+                byte[] chunk = new byte[n];
+                buffer.get(chunk);
+
+                synchronized(this) {
+                    this.chunks.add(chunk);
+                    this.buffered += n;
+                    if(this.buffered >= MAX_BUFFERED) {
+                        this.readingPaused = true;
+                    }
+                    this.notifyAll();
+                }
+            }
+        } while(n > 0 && !this.isReadingPaused());
+
+        synchronized(this) {
+            if(n < 0) {
+                this.eof = true;
+                this.notifyAll();
+            }
+
+            if(!this.dispatched && this.buffered > 0) {
+                this.dispatched = true;
+                return true;
+            }
+        }
+
+        return false;
+    }
+
+    synchronized boolean wantsToRead() {
+        return !this.eof && !this.readingPaused;
+    }
+
+    synchronized boolean wantsToWrite() {
+        return this.waitingForWrite;
+    }
+
+    synchronized boolean isReadingPaused() {
+        return this.readingPaused;
+    }
+
+    /**
+     * @return true if peer closed connection before sending anything
+     */
+    synchronized boolean closedUnused() {
+        return this.eof && !this.dispatched;
+    }
+
+    synchronized void writable() {
+        this.waitingForWrite = false;
+        this.notifyAll();
+    }
+
+    ////////////////////////////////////////////////////////////////////////
+    //                       SelectableConnection                         //
+    ////////////////////////////////////////////////////////////////////////
+
+    @Override
+    public void idle() {
+        boolean redispatch = false;
+        boolean lost = false;
+
+        synchronized(this) {
+            if(this.closed) {
+                return;
+            }
+
+            if(this.buffered > 0) {
+                // next message already arrived - stay dispatched
+                redispatch = true;
+            } else if(this.eof) {
+                lost = true;
+            } else {
+                // selector thread dispatches with next data
+                this.dispatched = false;
+            }
+        }
+
+        if(redispatch) {
+            this.server.dispatch(this);
+        } else if(lost) {
+            this.close();
+        }
+    }
+
+    ////////////////////////////////////////////////////////////////////////
+    //                            streams                                 //
+    ////////////////////////////////////////////////////////////////////////
+
+    private class ChannelInputStream extends InputStream {
+        @Override
+        public int read() throws IOException {
+            byte[] b = new byte[1];
+            int n = this.read(b, 0, 1);
+            return n < 0 ? -1 : b[0] & 0xff;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            if(len == 0) {
+                return 0;
+            }
+
+            NIOTCPConnection con = NIOTCPConnection.this;
+            boolean resume = false;
+            int n = 0;
+
+            synchronized(con) {
+                long deadline = System.currentTimeMillis() + con.socketTimeout;
+                while(con.buffered == 0) {
+                    if(con.eof || con.closed) {
+                        return -1;
+                    }
+
+                    long wait = deadline - System.currentTimeMillis();
+                    if(wait <= 0) {
+                        throw new SocketTimeoutException("read timed out");
+                    }
+
+                    try {
+                        con.wait(wait);
+                    } catch (InterruptedException ex) {
+                        throw new IOException("interrupted while reading");
+                    }
+                }
+
+                while(n < len && !con.chunks.isEmpty()) {
+                    byte[] chunk = con.chunks.getFirst();
+                    int copy = Math.min(len - n, chunk.length - con.chunkPosition);
+                    System.arraycopy(chunk, con.chunkPosition, b, off + n, copy);
+                    n += copy;
+                    con.chunkPosition += copy;
+
+                    if(con.chunkPosition == chunk.length) {
+                        con.chunks.removeFirst();
+                        con.chunkPosition = 0;
+                    }
+                }
+
+                con.buffered -= n;
+
+                if(con.readingPaused && con.buffered < MAX_BUFFERED / 2) {
+                    con.readingPaused = false;
+                    resume = true;
+                }
+            }
+
+            if(resume) {
+                con.server.interestChanged(con);
+            }
+
+            return n;
+        }
+
+        @Override
+        public int available() {
+            synchronized(NIOTCPConnection.this) {
+                return NIOTCPConnection.this.buffered;
+            }
+        }
+    }
+
+    private class ChannelOutputStream extends OutputStream implements TransferTarget {
+        @Override
+        public void write(int b) throws IOException {
+            this.write(new byte[] {(byte) b}, 0, 1);
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            NIOTCPConnection con = NIOTCPConnection.this;
+            ByteBuffer buffer = ByteBuffer.wrap(b, off, len);
+
+            while(buffer.hasRemaining()) {
+                if(con.channel.write(buffer) == 0) {
+                    con.awaitWritable();
+                }
+            }
+        }
+
+        /**
+         * File region is sent by the kernel - it isn't copied into
+         * user space.
+         */
+        @Override
+        public void transferFrom(FileChannel source, long position, long count) throws IOException {
+            NIOTCPConnection con = NIOTCPConnection.this;
+
+            while(count > 0) {
+                long n = source.transferTo(position, count, con.channel);
+                if(n == 0) {
+                    if(position >= source.size()) {
+                        throw new EOFException("file shorter than announced");
+                    }
+                    con.awaitWritable();
+                }
+
+                position += n;
+                count -= n;
+            }
+        }
+    }
+
+    private void awaitWritable() throws IOException {
+        synchronized(this) {
+            this.waitingForWrite = true;
+        }
+
+        this.server.interestChanged(this);
+
+        synchronized(this) {
+            long deadline = System.currentTimeMillis() + this.socketTimeout;
+            while(this.waitingForWrite) {
+                if(this.closed) {
+                    throw new IOException("connection closed");
+                }
+
+                long wait = deadline - System.currentTimeMillis();
+                if(wait <= 0) {
+                    throw new SocketTimeoutException("write timed out");
+                }
+
+                try {
+                    this.wait(wait);
+                } catch (InterruptedException ex) {
+                    throw new IOException("interrupted while writing");
+                }
+            }
+        }
+    }
+
+    ////////////////////////////////////////////////////////////////////////
+    //                        StreamConnection                            //
+    ////////////////////////////////////////////////////////////////////////
+
+    @Override
+    public SharkInputStream getInputStream() {
+        return new StandardSharkInputStream(this.in);
+    }
+
+    @Override
+    public SharkOutputStream getOutputStream() {
+        return new UTF8SharkOutputStream(this.out);
+    }
+
+    @Override
+    public void sendMessage(byte[] msg) throws IOException {
+        this.out.write(msg);
+    }
+
+    @Override
+    public String getReplyAddressString() {
+        return this.replyAddressString;
+    }
+
+    @Override
+    public String getReceiverAddressString() {
+        return "tcp://" + this.recAddress + ":" + Integer.toString(this.portNo);
+    }
+
+    @Override
+    public String getLocalAddressString() {
+        return this.localAddress;
+    }
+
+    @Override
+    public void setLocalAddressString(String localAddress) {
+        this.localAddress = localAddress;
+    }
+
+    /**
+     * Terminates the connection.
+     */
+    @Override
+    public void close() {
+        L.d("Closing NIOTCP-Connection to: " + this.recAddress, this);
+
+        synchronized(this) {
+            if(this.closed) {
+                return;
+            }
+
+            this.closed = true;
+            if(this.buffered > 0) {
+                L.d("closing connection although " + this.buffered + " bytes are unread", this);
+            }
+            this.notifyAll();
+        }
+
+        try {
+            this.channel.close();
+        } catch (IOException ex) {
+            L.d(ex.getMessage(), this);
+        }
+
+        this.notifyConnectionClosed();
+    }
+}
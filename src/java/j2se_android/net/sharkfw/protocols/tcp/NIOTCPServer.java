@@ -0,0 +1,335 @@
+package net.sharkfw.protocols.tcp;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.CancelledKeyException;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import net.sharkfw.protocols.Protocols;
+import net.sharkfw.protocols.RequestHandler;
+import net.sharkfw.protocols.StreamStub;
+import net.sharkfw.system.L;
+
+/**
+ * Selector based TCP server. A single thread accepts connections and
+ * reads from all connections - incoming and outgoing ones. Connections
+ * are handed to the request handler as soon as first data arrive - and
+ * again with next data after its session called idle(). Thus, idle
+ * connections don't bind any thread.
+ *
+ * The request handler is never called by the selector thread but by a
+ * dispatcher thread. A blocking handler delays handing over further
+ * connections but reading from connections goes on - handlers can read
+ * from their connection.
+ *
+ * @see NIOTCPConnection
+ * @author thsc
+ */
+class NIOTCPServer implements SharkServer {
+    private static final int READ_BUFFER_SIZE = 16 * 1024;
+    private static final long DISPATCHER_KEEP_ALIVE = 60;
+    private static final long HOLD_TIMEOUT = 1000;
+
+    private final Selector selector;
+    private ServerSocketChannel serverChannel = null;
+    private RequestHandler handler;
+    private final StreamStub stub;
+
+    // connections to be registered or with changed interests - guarded by itself
+    private final ArrayList<NIOTCPConnection> pending = new ArrayList<NIOTCPConnection>();
+
+    // hold() calls waiting for closed server channels to be released - guarded by pending
+    private final ArrayList<CountDownLatch> holds = new ArrayList<CountDownLatch>();
+
+    private volatile Thread selectorThread = null;
+
+    private final ByteBuffer readBuffer = ByteBuffer.allocateDirect(READ_BUFFER_SIZE);
+
+    // calls request handler - its thread ends if there is nothing to do
+    private final ThreadPoolExecutor dispatcher = new ThreadPoolExecutor(1, 1,
+            DISPATCHER_KEEP_ALIVE, TimeUnit.SECONDS,
+            new LinkedBlockingQueue<Runnable>(), new ThreadFactory() {
+                @Override
+                public Thread newThread(Runnable r) {
+                    Thread t = new Thread(r, "NIOTCPServer-dispatcher");
+                    t.setDaemon(true);
+                    return t;
+                }
+            });
+
+    NIOTCPServer(RequestHandler handler, StreamStub stub) throws IOException {
+        this.handler = handler;
+        this.stub = stub;
+        this.selector = Selector.open();
+        this.dispatcher.allowCoreThreadTimeOut(true);
+    }
+
+    /**
+     * Starts accepting connections on given port.
+     */
+    void listen(int port) throws IOException {
+        ServerSocketChannel channel = ServerSocketChannel.open();
+        try {
+            if (port == Protocols.ARBITRARY_PORT) {
+                channel.socket().bind(new InetSocketAddress(0));
+            } else {
+                channel.socket().bind(new InetSocketAddress(port));
+            }
+            channel.configureBlocking(false);
+        }
+        catch(IOException e) {
+            channel.close();
+            throw e;
+        }
+
+        this.serverChannel = channel;
+        this.register(null);
+
+        L.l("NIO TCP Server is bound to port " + this.getPortNumber(), this);
+    }
+
+    /**
+     * Connection is read by selector thread from now on.
+     */
+    void register(NIOTCPConnection con) {
+        synchronized(this.pending) {
+            if(con != null) {
+                this.pending.add(con);
+            }
+        }
+
+        this.selector.wakeup();
+    }
+
+    /**
+     * Called by any thread if connection likes to read or write again.
+     */
+    void interestChanged(NIOTCPConnection con) {
+        this.register(con);
+    }
+
+    @Override
+    public int getPortNumber() {
+        ServerSocketChannel channel = this.serverChannel;
+        return channel == null ? -1 : channel.socket().getLocalPort();
+    }
+
+    /**
+     * Stops accepting connections. Established connections are still served.
+     * Returns when port is released - a registered channel is only closed
+     * when the selector thread deregisters it.
+     */
+    @Override
+    public void hold() {
+        ServerSocketChannel channel = this.serverChannel;
+        this.serverChannel = null;
+
+        if(channel == null) {
+            return;
+        }
+
+        try {
+            channel.close();
+        } catch (IOException ex) {
+            L.e("NIO TCP Server hold failed: " + ex.getMessage(), this);
+        }
+
+        if(channel.isRegistered() && Thread.currentThread() != this.selectorThread) {
+            CountDownLatch released = new CountDownLatch(1);
+            synchronized(this.pending) {
+                this.holds.add(released);
+            }
+            this.selector.wakeup();
+
+            try {
+                released.await(HOLD_TIMEOUT, TimeUnit.MILLISECONDS);
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    @Override
+    public void setHandler(RequestHandler handler) {
+        this.handler = handler;
+    }
+
+    @Override
+    public void run() {
+        this.selectorThread = Thread.currentThread();
+
+        while(this.selector.isOpen()) {
+            try {
+                this.selector.select();
+                this.processPending();
+
+                Iterator<SelectionKey> keyIter = this.selector.selectedKeys().iterator();
+                while(keyIter.hasNext()) {
+                    SelectionKey key = keyIter.next();
+                    keyIter.remove();
+
+                    if(!key.isValid()) {
+                        continue;
+                    }
+
+                    if(key.isAcceptable()) {
+                        this.accept((ServerSocketChannel) key.channel());
+                    } else {
+                        this.serve(key);
+                    }
+                }
+            }
+            catch(IOException e) {
+                L.w("NIO TCP Server: " + e.getMessage(), this);
+            }
+        }
+    }
+
+    private void processPending() throws IOException {
+        ArrayList<NIOTCPConnection> cons;
+        ArrayList<CountDownLatch> released;
+        synchronized(this.pending) {
+            cons = new ArrayList<NIOTCPConnection>(this.pending);
+            this.pending.clear();
+            released = new ArrayList<CountDownLatch>(this.holds);
+            this.holds.clear();
+        }
+
+        if(!released.isEmpty()) {
+            try {
+                // deregisters cancelled keys - closed channels are released
+                this.selector.selectNow();
+            }
+            finally {
+                for(CountDownLatch latch : released) {
+                    latch.countDown();
+                }
+            }
+        }
+
+        ServerSocketChannel channel = this.serverChannel;
+        if(channel != null && channel.keyFor(this.selector) == null) {
+            try {
+                channel.register(this.selector, SelectionKey.OP_ACCEPT);
+            } catch (ClosedChannelException ex) {
+                // hold was called in between
+            }
+        }
+
+        for(NIOTCPConnection con : cons) {
+            SocketChannel conChannel = con.getChannel();
+            if(!conChannel.isOpen()) {
+                continue;
+            }
+
+            try {
+                SelectionKey key = conChannel.keyFor(this.selector);
+                if(key == null) {
+                    conChannel.configureBlocking(false);
+                    key = conChannel.register(this.selector, 0, con);
+                }
+
+                this.updateInterest(key, con);
+            } catch (IOException ex) {
+                L.w("cannot register connection: " + ex.getMessage(), this);
+                con.close();
+            }
+        }
+    }
+
+    private void updateInterest(SelectionKey key, NIOTCPConnection con) {
+        if(!key.isValid()) {
+            return;
+        }
+
+        int ops = 0;
+        if(con.wantsToRead()) {
+            ops |= SelectionKey.OP_READ;
+        }
+        if(con.wantsToWrite()) {
+            ops |= SelectionKey.OP_WRITE;
+        }
+
+        try {
+            key.interestOps(ops);
+        } catch(CancelledKeyException e) {
+            // closed by another thread
+        }
+    }
+
+    private void accept(ServerSocketChannel channel) throws IOException {
+        SocketChannel conChannel = channel.accept();
+        if(conChannel == null) {
+            return;
+        }
+
+        conChannel.configureBlocking(false);
+        NIOTCPConnection con = new NIOTCPConnection(conChannel, this,
+                this.stub.getLocalAddress());
+
+        conChannel.register(this.selector, SelectionKey.OP_READ, con);
+    }
+
+    private void serve(SelectionKey key) {
+        NIOTCPConnection con = (NIOTCPConnection) key.attachment();
+
+        try {
+            if(key.isWritable()) {
+                con.writable();
+            }
+
+            if(key.isValid() && key.isReadable()) {
+                if(con.readFromChannel(this.readBuffer)) {
+                    this.dispatch(con);
+                }
+
+                if(con.closedUnused()) {
+                    con.close();
+                    return;
+                }
+            }
+
+            this.updateInterest(key, con);
+        }
+        catch(IOException e) {
+            L.d("connection lost: " + e.getMessage(), this);
+            con.close();
+        }
+        catch(CancelledKeyException e) {
+            // closed by another thread
+        }
+    }
+
+    /**
+     * Hands connection to request handler - selector thread doesn't wait.
+     */
+    void dispatch(final NIOTCPConnection con) {
+        final RequestHandler h = this.handler;
+
+        try {
+            this.dispatcher.execute(new Runnable() {
+                @Override
+                public void run() {
+                    L.d("Calling handler for stream", NIOTCPServer.this);
+                    h.handleStream(con);
+                }
+            });
+        }
+        catch(RejectedExecutionException e) {
+            L.w("cannot dispatch connection: " + e.getMessage(), this);
+            con.close();
+        }
+    }
+}
@@ -0,0 +1,162 @@
+package net.sharkfw.protocols.tcp;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.UnknownHostException;
+import java.util.NoSuchElementException;
+import java.util.StringTokenizer;
+import net.sharkfw.peer.J2SEAndroidSharkEngine;
+import net.sharkfw.protocols.RequestHandler;
+import net.sharkfw.protocols.StreamConnection;
+import net.sharkfw.protocols.StreamStub;
+import net.sharkfw.system.L;
+import net.sharkfw.system.Util;
+
+/**
+ * Alternative to TCPStreamStub based on java.nio. All connections of this
+ * stub are served by a single selector thread. Threads are only bound
+ * while KEP messages are handled - not by idle connections.
+ *
+ * @see NIOTCPServer
+ * @see TCPStreamStub
+ * @author thsc
+ */
+public class NIOTCPStreamStub implements StreamStub {
+
+    private NIOTCPServer server = null;
+    private boolean listening = false;
+    private final RequestHandler handler;
+    private final int port;
+
+    private String hostName = null;
+
+    /**
+     * @param handler Listener which will be notified if a connection is established
+     * @param port Port the server is listening on
+     */
+    public NIOTCPStreamStub(RequestHandler handler, int port) {
+        this.handler = handler;
+        this.port = port;
+    }
+
+    /**
+     * Selector thread is started with first connection or server.
+     */
+    private synchronized NIOTCPServer getServer() throws IOException {
+        if(this.server == null) {
+            this.server = new NIOTCPServer(this.handler, this);
+
+            Thread selectorThread = new Thread(this.server, "NIOTCPServer");
+            selectorThread.setDaemon(true);
+            selectorThread.start();
+        }
+
+        return this.server;
+    }
+
+    @Override
+    public final synchronized void start() throws IOException {
+        if(!this.started()) {
+            try {
+                this.getServer().listen(this.port);
+                this.listening = true;
+            } catch (IOException ex) {
+                System.err.println("cannot create NIOTCPStreamStub: fatal");
+                throw ex;
+            }
+        }
+    }
+
+    @Override
+    public synchronized boolean started() {
+        return this.listening;
+    }
+
+    /**
+     * No new connections are accepted. Established connections are
+     * still served.
+     */
+    @Override
+    public synchronized void stop() {
+        if(this.started()) {
+            this.server.hold();
+            this.listening = false;
+        }
+    }
+
+    /**
+     * @return "tcp://hostname:port"
+     * @see TCPStreamStub#getLocalAddress()
+     */
+    @Override
+    public String getLocalAddress() {
+        // resolved once - called for each accepted connection
+        if(this.hostName == null) {
+            try {
+                InetAddress adr = InetAddress.getLocalHost();
+                this.hostName = Util.DNtoIP(adr.getHostAddress());
+            } catch (UnknownHostException ex) {
+                return null;
+            }
+        }
+
+        String addr = "tcp://" + this.hostName + ":";
+        if (this.started()) {
+            addr += Integer.toString(this.server.getPortNumber());
+        } else {
+            addr += J2SEAndroidSharkEngine.defaultTCPPort;
+        }
+
+        return addr;
+    }
+
+    /**
+     * @param addrStr e.g. tcp://213.32.123.42:4221
+     * @return new connection which is served by selector thread
+     * @throws IOException
+     */
+    @Override
+    public StreamConnection createStreamConnection(String addrStr) throws IOException {
+        // shark uses GCF convention to describe addresses - translate it
+        if (!addrStr.startsWith("tcp://")) {
+            L.w("NIO TCP stub cannot send to address:" + addrStr, this);
+            return null;
+        }
+
+        addrStr = addrStr.substring("tcp://".length());
+
+        StringTokenizer st = new StringTokenizer(addrStr, ":");
+
+        String hostname;
+        int portno;
+        try {
+            hostname = st.nextToken();
+            portno = Integer.parseInt(st.nextToken());
+        } catch (NoSuchElementException ne) {
+            throw new IOException("wrong connection string format: " + addrStr);
+        } catch (NumberFormatException nfe) {
+            throw new IOException("wrong port in connection string: " + addrStr);
+        }
+
+        NIOTCPServer nioServer = this.getServer();
+
+        if (this.started() && hostname.equalsIgnoreCase("localhost")
+                && portno == nioServer.getPortNumber()) {
+            throw new IOException("message loop detected");
+        }
+
+        NIOTCPConnection con = new NIOTCPConnection(hostname, portno, nioServer);
+        nioServer.register(con);
+
+        return con;
+    }
+
+    @Override
+    public void setHandler(RequestHandler handler) {
+        try {
+            this.getServer().setHandler(handler);
+        } catch (IOException ex) {
+            L.w("cannot set handler: " + ex.getMessage(), this);
+        }
+    }
+}